@@ -8,10 +8,13 @@ import ai.datalens.dto.response.UserResponse;
 import ai.datalens.service.AuthService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.concurrent.RejectedExecutionException;
+
 @RestController
 @RequestMapping("/auth")
 @CrossOrigin(origins = "*", maxAge = 3600)
@@ -25,6 +28,8 @@ public class AuthController {
         try {
             UserResponse user = authService.register(registerRequest);
             return ResponseEntity.status(HttpStatus.CREATED).body(user);
+        } catch (RejectedExecutionException e) {
+            return unavailable(e);
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
@@ -35,6 +40,8 @@ public class AuthController {
         try {
             AuthResponse authResponse = authService.login(loginRequest);
             return ResponseEntity.ok(authResponse);
+        } catch (RejectedExecutionException e) {
+            return unavailable(e);
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
@@ -75,11 +82,20 @@ public class AuthController {
         try {
             authService.resetPassword(token, new_password);
             return ResponseEntity.ok(new SuccessResponse("Password reset successfully"));
+        } catch (RejectedExecutionException e) {
+            return unavailable(e);
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
     }
 
+    // Password hashing is saturated; the client should try again shortly
+    private ResponseEntity<ErrorResponse> unavailable(RejectedExecutionException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "5")
+                .body(new ErrorResponse(e.getMessage()));
+    }
+
     // Helper classes for responses
     public static class ErrorResponse {
         private String detail;
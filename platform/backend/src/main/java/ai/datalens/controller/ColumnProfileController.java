@@ -0,0 +1,120 @@
+package ai.datalens.controller;
+
+import ai.datalens.dto.request.ProfileRequest;
+import ai.datalens.dto.response.ColumnProfileResponse;
+import ai.datalens.dto.response.ErrorResponse;
+import ai.datalens.security.UserPrincipal;
+import ai.datalens.service.ColumnProfileService;
+import ai.datalens.service.QueryThrottledException;
+import ai.datalens.service.SnowflakeUnavailableException;
+import jakarta.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+
+@RestController
+@RequestMapping("/projects/{projectId}/profiles")
+@PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+public class ColumnProfileController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ColumnProfileController.class);
+
+    @Autowired
+    private ColumnProfileService columnProfileService;
+
+    /**
+     * Profile a table or staged file. The stored profile is returned when it is still
+     * current; "stored" in the response says which, and refresh=true forces a new pass.
+     */
+    @PostMapping
+    public ResponseEntity<?> profile(
+            @AuthenticationPrincipal UserPrincipal userPrincipal,
+            @PathVariable String projectId,
+            @Valid @RequestBody ProfileRequest request) {
+        try {
+            ColumnProfileResponse profile = columnProfileService.profile(userPrincipal.getId(), UUID.fromString(projectId), request);
+            return ResponseEntity.ok(profile);
+
+        } catch (QueryThrottledException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfterSeconds())))
+                    .body(new ErrorResponse("Too Many Requests", e.getMessage(), 429));
+        } catch (SnowflakeUnavailableException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfterSeconds())))
+                    .body(new ErrorResponse("Service Unavailable", e.getMessage(), 503));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "30")
+                    .body(new ErrorResponse("Service Unavailable", "Too many profiles running; try again later", 503));
+        } catch (SQLException e) {
+            // Unknown tables and unreadable files are the request's fault, not the server's
+            if (e.getSQLState() != null && (e.getSQLState().startsWith("42") || e.getSQLState().startsWith("22"))) {
+                return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+            }
+            logger.error("Error profiling for project {}: {}", projectId, e.getMessage(), e);
+            return ResponseEntity.internalServerError()
+                    .body(new ErrorResponse("Internal Server Error", "Profile failed: " + e.getMessage(), 500));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        } catch (RuntimeException e) {
+            if ("Project not found".equals(e.getMessage()) || "File not found".equals(e.getMessage())) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(new ErrorResponse("Not Found", e.getMessage(), 404));
+            }
+            logger.error("Error profiling for project {}: {}", projectId, e.getMessage(), e);
+            return ResponseEntity.internalServerError().build();
+        } catch (Exception e) {
+            logger.error("Error profiling for project {}: {}", projectId, e.getMessage(), e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Stored profiles of the project, most recent first, without column details
+     */
+    @GetMapping
+    public ResponseEntity<List<ColumnProfileResponse>> listProfiles(
+            @AuthenticationPrincipal UserPrincipal userPrincipal,
+            @PathVariable String projectId) {
+        try {
+            return ResponseEntity.ok(columnProfileService.listProfiles(userPrincipal.getId(), UUID.fromString(projectId)));
+        } catch (RuntimeException e) {
+            if ("Project not found".equals(e.getMessage())) {
+                return ResponseEntity.notFound().build();
+            }
+            logger.error("Error listing profiles for project {}: {}", projectId, e.getMessage(), e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    @GetMapping("/{profileId}")
+    public ResponseEntity<ColumnProfileResponse> getProfile(
+            @AuthenticationPrincipal UserPrincipal userPrincipal,
+            @PathVariable String projectId,
+            @PathVariable String profileId) {
+        try {
+            return ResponseEntity.ok(columnProfileService.getProfile(userPrincipal.getId(), UUID.fromString(projectId),
+                    UUID.fromString(profileId)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (RuntimeException e) {
+            if ("Project not found".equals(e.getMessage()) || "Profile not found".equals(e.getMessage())) {
+                return ResponseEntity.notFound().build();
+            }
+            logger.error("Error fetching profile {} for project {}: {}", profileId, projectId, e.getMessage(), e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package ai.datalens.controller;
+
+import ai.datalens.dto.response.ErrorResponse;
+import ai.datalens.dto.response.NameSearchResponse;
+import ai.datalens.security.UserPrincipal;
+import ai.datalens.service.NameSearchService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/projects/{projectId}/search")
+@PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+public class NameSearchController {
+
+    private static final Logger logger = LoggerFactory.getLogger(NameSearchController.class);
+
+    @Autowired
+    private NameSearchService nameSearchService;
+
+    /**
+     * Typeahead over the project's stage, table and column names
+     */
+    @GetMapping
+    public ResponseEntity<?> search(
+            @AuthenticationPrincipal UserPrincipal userPrincipal,
+            @PathVariable String projectId,
+            @RequestParam String q,
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(defaultValue = "true") boolean fuzzy) {
+        try {
+            List<NameSearchResponse> results = nameSearchService.search(userPrincipal.getId(), UUID.fromString(projectId),
+                    q, limit, fuzzy);
+            return ResponseEntity.ok(results);
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        } catch (RuntimeException e) {
+            if ("Project not found".equals(e.getMessage())) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(new ErrorResponse("Not Found", e.getMessage(), 404));
+            }
+            logger.error("Error searching names for project {}: {}", projectId, e.getMessage(), e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package ai.datalens.controller;
+
+import ai.datalens.dto.request.ConnectionProfileRequest;
+import ai.datalens.dto.response.ConnectionProfileResponse;
+import ai.datalens.dto.response.ErrorResponse;
+import ai.datalens.security.UserPrincipal;
+import ai.datalens.service.ProjectConnectionProfileService;
+import jakarta.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/projects/{projectId}/connection-profile")
+@PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+public class ProjectConnectionProfileController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProjectConnectionProfileController.class);
+
+    @Autowired
+    private ProjectConnectionProfileService profileService;
+
+    /**
+     * The project's own warehouse connection profile, without its secret
+     */
+    @GetMapping
+    public ResponseEntity<?> getProfile(
+            @AuthenticationPrincipal UserPrincipal userPrincipal,
+            @PathVariable String projectId) {
+        try {
+            return profileService.getProfile(userPrincipal.getId(), UUID.fromString(projectId))
+                    .<ResponseEntity<?>>map(ResponseEntity::ok)
+                    .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                            .body(new ErrorResponse("Not Found", "Project has no connection profile", 404)));
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        } catch (RuntimeException e) {
+            return handle(projectId, e);
+        }
+    }
+
+    /**
+     * Create or replace the project's connection profile. The password may be left out when
+     * replacing a profile to keep the stored one.
+     */
+    @PutMapping
+    public ResponseEntity<?> saveProfile(
+            @AuthenticationPrincipal UserPrincipal userPrincipal,
+            @PathVariable String projectId,
+            @Valid @RequestBody ConnectionProfileRequest request) {
+        try {
+            ConnectionProfileResponse profile = profileService.saveProfile(userPrincipal.getId(),
+                    UUID.fromString(projectId), request);
+            return ResponseEntity.ok(profile);
+
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(new ErrorResponse("Service Unavailable", e.getMessage(), 503));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        } catch (RuntimeException e) {
+            return handle(projectId, e);
+        }
+    }
+
+    /**
+     * Remove the project's connection profile; its queries go back to the shared connection
+     */
+    @DeleteMapping
+    public ResponseEntity<?> deleteProfile(
+            @AuthenticationPrincipal UserPrincipal userPrincipal,
+            @PathVariable String projectId) {
+        try {
+            if (!profileService.deleteProfile(userPrincipal.getId(), UUID.fromString(projectId))) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(new ErrorResponse("Not Found", "Project has no connection profile", 404));
+            }
+            return ResponseEntity.noContent().build();
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        } catch (RuntimeException e) {
+            return handle(projectId, e);
+        }
+    }
+
+    private ResponseEntity<?> handle(String projectId, RuntimeException e) {
+        if ("Project not found".equals(e.getMessage())) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new ErrorResponse("Not Found", e.getMessage(), 404));
+        }
+        logger.error("Error handling connection profile of project {}: {}", projectId, e.getMessage(), e);
+        return ResponseEntity.internalServerError().build();
+    }
+}
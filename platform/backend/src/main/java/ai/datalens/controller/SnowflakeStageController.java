@@ -1,15 +1,37 @@
 package ai.datalens.controller;
 
 import ai.datalens.dto.response.SnowflakeStageResponse;
-import ai.datalens.service.SnowflakeStageService;
+import ai.datalens.dto.response.StageFilePageResponse;
+import ai.datalens.dto.response.StageRefreshJobResponse;
+import ai.datalens.security.UserPrincipal;
+import ai.datalens.service.ProjectStageCatalogService;
+import ai.datalens.service.QueryThrottledException;
+import ai.datalens.service.SnowflakeUnavailableException;
+import ai.datalens.service.StageDiscoveryService;
+import ai.datalens.service.StageFileService;
+import ai.datalens.service.StagePreview;
+import ai.datalens.service.StagePreviewService;
+import ai.datalens.service.StageRefreshJobService;
+import ai.datalens.service.StageStreamWriter;
+import ai.datalens.service.WarehouseQueryScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.net.URI;
+import java.sql.SQLException;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/projects/{projectId}/stages")
@@ -18,20 +40,57 @@ public class SnowflakeStageController {
     
     private static final Logger logger = LoggerFactory.getLogger(SnowflakeStageController.class);
     
+    static final String CATALOG_STALE_HEADER = "X-Stage-Catalog-Stale";
+    
+    static final String CATALOG_SYNCED_AT_HEADER = "X-Stage-Catalog-Synced-At";
+    
+    @Autowired
+    private ProjectStageCatalogService projectStageCatalogService;
+    
+    @Autowired
+    private StageStreamWriter stageStreamWriter;
+    
     @Autowired
-    private SnowflakeStageService snowflakeStageService;
+    private StageDiscoveryService stageDiscoveryService;
+    
+    @Autowired
+    private StageFileService stageFileService;
+    
+    @Autowired
+    private StagePreviewService stagePreviewService;
+    
+    @Autowired
+    private StageRefreshJobService stageRefreshJobService;
+    
+    @Autowired
+    private WarehouseQueryScheduler scheduler;
     
     @GetMapping
-    public ResponseEntity<List<SnowflakeStageResponse>> getProjectStages(@PathVariable String projectId) {
+    public ResponseEntity<List<SnowflakeStageResponse>> getProjectStages(
+            @AuthenticationPrincipal UserPrincipal userPrincipal,
+            @PathVariable String projectId) {
         try {
-            logger.info("Fetching stages from Snowflake for project: {}", projectId);
+            logger.info("Fetching stages for project: {}", projectId);
             
-            // Get fresh data from Snowflake each time
-            List<SnowflakeStageResponse> stages = snowflakeStageService.getStagesFromSnowflake();
+            // Served from the project's persisted stage catalog
+            ProjectStageCatalogService.CatalogView catalog = projectStageCatalogService.getCatalog(userPrincipal.getId(),
+                    UUID.fromString(projectId));
             
-            logger.info("Successfully retrieved {} stages for project: {}", stages.size(), projectId);
-            return ResponseEntity.ok(stages);
+            logger.info("Successfully retrieved {} stages for project: {}", catalog.stages().size(), projectId);
+            return catalogResponse(catalog);
             
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (SQLException e) {
+            // Never synced and Snowflake can't be reached: there is no catalog to serve
+            logger.error("No stage catalog available for project {}: {}", projectId, e.getMessage());
+            return unavailable(e);
+        } catch (RuntimeException e) {
+            if ("Project not found".equals(e.getMessage())) {
+                return ResponseEntity.notFound().build();
+            }
+            logger.error("Error fetching stages for project {}: {}", projectId, e.getMessage(), e);
+            return ResponseEntity.internalServerError().build();
         } catch (Exception e) {
             logger.error("Error fetching stages for project {}: {}", projectId, e.getMessage(), e);
             return ResponseEntity.internalServerError().build();
@@ -39,52 +98,318 @@ public class SnowflakeStageController {
     }
     
     @GetMapping("/active")
-    public ResponseEntity<List<SnowflakeStageResponse>> getActiveProjectStages(@PathVariable String projectId) {
+    public ResponseEntity<List<SnowflakeStageResponse>> getActiveProjectStages(
+            @AuthenticationPrincipal UserPrincipal userPrincipal,
+            @PathVariable String projectId) {
         try {
-            logger.info("Fetching stages from Snowflake for project: {}", projectId);
+            logger.info("Fetching stages for project: {}", projectId);
             
-            // Get all stages from Snowflake (no filtering needed as we get live data)
-            List<SnowflakeStageResponse> stages = snowflakeStageService.getStagesFromSnowflake();
+            // Get all stages (no filtering needed, Snowflake only lists existing stages)
+            ProjectStageCatalogService.CatalogView catalog = projectStageCatalogService.getCatalog(userPrincipal.getId(),
+                    UUID.fromString(projectId));
             
-            logger.info("Successfully retrieved {} stages for project: {}", stages.size(), projectId);
-            return ResponseEntity.ok(stages);
+            logger.info("Successfully retrieved {} stages for project: {}", catalog.stages().size(), projectId);
+            return catalogResponse(catalog);
             
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (SQLException e) {
+            // Never synced and Snowflake can't be reached: there is no catalog to serve
+            logger.error("No stage catalog available for project {}: {}", projectId, e.getMessage());
+            return unavailable(e);
+        } catch (RuntimeException e) {
+            if ("Project not found".equals(e.getMessage())) {
+                return ResponseEntity.notFound().build();
+            }
+            logger.error("Error fetching stages for project {}: {}", projectId, e.getMessage(), e);
+            return ResponseEntity.internalServerError().build();
         } catch (Exception e) {
             logger.error("Error fetching stages for project {}: {}", projectId, e.getMessage(), e);
             return ResponseEntity.internalServerError().build();
         }
     }
     
-    @PostMapping("/refresh")
-    public ResponseEntity<List<SnowflakeStageResponse>> refreshProjectStages(@PathVariable String projectId) {
+    /**
+     * Stream live stages from Snowflake row by row (format=ndjson, the default, or format=json)
+     */
+    @GetMapping("/stream")
+    public ResponseEntity<StreamingResponseBody> streamProjectStages(
+            @AuthenticationPrincipal UserPrincipal userPrincipal,
+            @PathVariable String projectId,
+            @RequestParam(defaultValue = "ndjson") String format) {
         try {
-            logger.info("Refreshing stages from Snowflake for project: {}", projectId);
+            logger.info("Streaming stages from Snowflake for project: {} as {}", projectId, format);
             
-            List<SnowflakeStageResponse> stages = snowflakeStageService.refreshStagesFromSnowflake();
+            UUID userId = userPrincipal.getId();
+            UUID project = UUID.fromString(projectId);
+            stageStreamWriter.requireProject(userId, project);
+            // The slot is taken once the body runs, after the status is sent; refuse while a 429 still can be
+            scheduler.checkAdmission(userId, project);
             
-            logger.info("Successfully refreshed {} stages for project: {}", stages.size(), projectId);
-            return ResponseEntity.ok(stages);
+            StageStreamWriter.Format streamFormat = StageStreamWriter.Format.from(format);
+            MediaType contentType = streamFormat == StageStreamWriter.Format.NDJSON
+                    ? MediaType.parseMediaType(StageStreamWriter.NDJSON_CONTENT_TYPE)
+                    : MediaType.APPLICATION_JSON;
             
+            StreamingResponseBody body = out -> stageStreamWriter.write(userId, project, out, streamFormat);
+            return ResponseEntity.ok().contentType(contentType).body(body);
+            
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (QueryThrottledException e) {
+            return throttled(e);
+        } catch (RuntimeException e) {
+            if ("Project not found".equals(e.getMessage())) {
+                return ResponseEntity.notFound().build();
+            }
+            logger.error("Error streaming stages for project {}: {}", projectId, e.getMessage(), e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
+    /**
+     * List stages in every visible database/schema, with per-schema failures reported alongside
+     */
+    @GetMapping("/discovery")
+    public ResponseEntity<StageDiscoveryService.DiscoveryResult> discoverProjectStages(
+            @AuthenticationPrincipal UserPrincipal userPrincipal,
+            @PathVariable String projectId) {
+        try {
+            logger.info("Discovering stages across all schemas for project: {}", projectId);
+            
+            StageDiscoveryService.DiscoveryResult result = stageDiscoveryService.discover(userPrincipal.getId(),
+                    UUID.fromString(projectId));
+            
+            logger.info("Discovered {} stages in {} schemas for project: {} ({} failed)",
+                    result.stages().size(), result.schemasScanned(), projectId, result.failures().size());
+            return ResponseEntity.ok(result);
+            
+        } catch (SnowflakeUnavailableException e) {
+            return unavailable(e);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (RuntimeException e) {
+            if ("Project not found".equals(e.getMessage())) {
+                return ResponseEntity.notFound().build();
+            }
+            logger.error("Error discovering stages for project {}: {}", projectId, e.getMessage(), e);
+            return ResponseEntity.internalServerError().build();
+        } catch (Exception e) {
+            logger.error("Error discovering stages for project {}: {}", projectId, e.getMessage(), e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
+    /**
+     * Page through the files in a stage, optionally under a path prefix
+     */
+    @GetMapping("/{stage}/files")
+    public ResponseEntity<StageFilePageResponse> getStageFiles(
+            @AuthenticationPrincipal UserPrincipal userPrincipal,
+            @PathVariable String projectId,
+            @PathVariable String stage,
+            @RequestParam(required = false) String prefix,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(defaultValue = "false") boolean refresh) {
+        try {
+            logger.info("Listing files in stage {} for project: {}", stage, projectId);
+            
+            StageFilePageResponse page = stageFileService.listFiles(userPrincipal.getId(), UUID.fromString(projectId),
+                    stage, prefix, cursor, limit, refresh);
+            
+            logger.info("Returned {} of {} files in stage {} for project: {}",
+                    page.getFiles().size(), page.getTotalFiles(), stage, projectId);
+            return ResponseEntity.ok(page);
+            
+        } catch (QueryThrottledException e) {
+            return throttled(e);
+        } catch (SnowflakeUnavailableException e) {
+            return unavailable(e);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid file listing request for stage {}: {}", stage, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (RuntimeException e) {
+            if ("Project not found".equals(e.getMessage())) {
+                return ResponseEntity.notFound().build();
+            }
+            logger.error("Error listing files in stage {} for project {}: {}", stage, projectId, e.getMessage(), e);
+            return ResponseEntity.internalServerError().build();
         } catch (Exception e) {
-            logger.error("Error refreshing stages for project {}: {}", projectId, e.getMessage(), e);
+            logger.error("Error listing files in stage {} for project {}: {}", stage, projectId, e.getMessage(), e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
+    /**
+     * First rows and inferred column types of a staged CSV, JSON or Parquet file
+     */
+    @GetMapping("/{stage}/preview")
+    public ResponseEntity<StagePreview> previewStageFile(
+            @AuthenticationPrincipal UserPrincipal userPrincipal,
+            @PathVariable String projectId,
+            @PathVariable String stage,
+            @RequestParam String path,
+            @RequestParam(required = false) String format,
+            @RequestParam(required = false) Integer rows,
+            @RequestParam(defaultValue = "true") boolean header,
+            @RequestParam(name = "file_format", required = false) String fileFormat) {
+        try {
+            logger.info("Previewing {} in stage {} for project: {}", path, stage, projectId);
+            
+            StagePreview preview = stagePreviewService.preview(userPrincipal.getId(), UUID.fromString(projectId),
+                    stage, path, format, rows, header, fileFormat);
+            
+            return ResponseEntity.ok().eTag(preview.getEtag()).body(preview);
+            
+        } catch (QueryThrottledException e) {
+            return throttled(e);
+        } catch (SnowflakeUnavailableException e) {
+            return unavailable(e);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid preview request for {} in stage {}: {}", path, stage, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (RuntimeException e) {
+            if ("Project not found".equals(e.getMessage()) || "File not found".equals(e.getMessage())) {
+                return ResponseEntity.notFound().build();
+            }
+            logger.error("Error previewing {} in stage {} for project {}: {}", path, stage, projectId, e.getMessage(), e);
+            return ResponseEntity.internalServerError().build();
+        } catch (Exception e) {
+            logger.error("Error previewing {} in stage {} for project {}: {}", path, stage, projectId, e.getMessage(), e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
+    /**
+     * Start a background refresh from Snowflake. Returns 202 with the job; a refresh already
+     * queued or running for the project is returned instead of starting another.
+     */
+    @PostMapping("/refresh")
+    public ResponseEntity<StageRefreshJobResponse> refreshProjectStages(
+            @AuthenticationPrincipal UserPrincipal userPrincipal,
+            @PathVariable String projectId) {
+        try {
+            logger.info("Submitting stage refresh from Snowflake for project: {}", projectId);
+            
+            StageRefreshJobResponse job = stageRefreshJobService.submit(userPrincipal.getId(), UUID.fromString(projectId));
+            
+            return ResponseEntity.accepted()
+                    .location(URI.create("/projects/" + projectId + "/stages/refresh/" + job.getJobId()))
+                    .body(job);
+            
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (RejectedExecutionException e) {
+            logger.warn("Stage refresh queue full, rejecting refresh for project {}", projectId);
+            return unavailable(30);
+        } catch (RuntimeException e) {
+            if ("Project not found".equals(e.getMessage())) {
+                return ResponseEntity.notFound().build();
+            }
+            logger.error("Error submitting stage refresh for project {}: {}", projectId, e.getMessage(), e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
+    @GetMapping("/refresh/{jobId}")
+    public ResponseEntity<StageRefreshJobResponse> getRefreshJob(
+            @AuthenticationPrincipal UserPrincipal userPrincipal,
+            @PathVariable String projectId,
+            @PathVariable String jobId) {
+        try {
+            StageRefreshJobResponse job = stageRefreshJobService.getJob(userPrincipal.getId(), UUID.fromString(projectId),
+                    UUID.fromString(jobId));
+            return job != null ? ResponseEntity.ok(job) : ResponseEntity.notFound().build();
+            
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (RuntimeException e) {
+            if ("Project not found".equals(e.getMessage())) {
+                return ResponseEntity.notFound().build();
+            }
+            logger.error("Error fetching stage refresh job {} for project {}: {}", jobId, projectId, e.getMessage(), e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
+    /**
+     * Server-sent "status" events for a refresh job until it finishes
+     */
+    @GetMapping(value = "/refresh/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamRefreshJob(
+            @AuthenticationPrincipal UserPrincipal userPrincipal,
+            @PathVariable String projectId,
+            @PathVariable String jobId) {
+        try {
+            return ResponseEntity.ok(stageRefreshJobService.subscribe(userPrincipal.getId(), UUID.fromString(projectId),
+                    UUID.fromString(jobId)));
+            
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (RuntimeException e) {
+            if ("Project not found".equals(e.getMessage()) || "Job not found".equals(e.getMessage())) {
+                return ResponseEntity.notFound().build();
+            }
+            logger.error("Error streaming stage refresh job {} for project {}: {}", jobId, projectId, e.getMessage(), e);
             return ResponseEntity.internalServerError().build();
         }
     }
     
     @GetMapping("/count")
-    public ResponseEntity<Long> getActiveStagesCount(@PathVariable String projectId) {
+    public ResponseEntity<Long> getActiveStagesCount(
+            @AuthenticationPrincipal UserPrincipal userPrincipal,
+            @PathVariable String projectId) {
         try {
-            logger.info("Counting stages from Snowflake for project: {}", projectId);
+            logger.info("Counting stages for project: {}", projectId);
             
-            List<SnowflakeStageResponse> stages = snowflakeStageService.getStagesFromSnowflake();
-            long count = stages.size();
+            long count = projectStageCatalogService.countStages(userPrincipal.getId(), UUID.fromString(projectId));
             
             logger.info("Found {} stages for project: {}", count, projectId);
             return ResponseEntity.ok(count);
             
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (SQLException e) {
+            logger.error("No stage catalog available for project {}: {}", projectId, e.getMessage());
+            return unavailable(e);
+        } catch (RuntimeException e) {
+            if ("Project not found".equals(e.getMessage())) {
+                return ResponseEntity.notFound().build();
+            }
+            logger.error("Error counting stages for project {}: {}", projectId, e.getMessage(), e);
+            return ResponseEntity.internalServerError().build();
         } catch (Exception e) {
             logger.error("Error counting stages for project {}: {}", projectId, e.getMessage(), e);
             return ResponseEntity.internalServerError().build();
         }
     }
-}
\ No newline at end of file
+    
+    /**
+     * The catalog with headers telling clients whether it may be out of date
+     */
+    private ResponseEntity<List<SnowflakeStageResponse>> catalogResponse(ProjectStageCatalogService.CatalogView catalog) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .header(CATALOG_STALE_HEADER, String.valueOf(catalog.stale()));
+        if (catalog.syncedAt() != null) {
+            response.header(CATALOG_SYNCED_AT_HEADER, catalog.syncedAt().toString());
+        }
+        return response.body(catalog.stages());
+    }
+    
+    private <T> ResponseEntity<T> throttled(QueryThrottledException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfterSeconds())))
+                .build();
+    }
+    
+    private <T> ResponseEntity<T> unavailable(SQLException e) {
+        return unavailable(e instanceof SnowflakeUnavailableException unavailable ? unavailable.getRetryAfterSeconds() : 30);
+    }
+    
+    private <T> ResponseEntity<T> unavailable(long retryAfterSeconds) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, retryAfterSeconds)))
+                .build();
+    }
+}
@@ -0,0 +1,141 @@
+package ai.datalens.controller;
+
+import ai.datalens.dto.response.CatalogTableResponse;
+import ai.datalens.dto.response.ErrorResponse;
+import ai.datalens.security.UserPrincipal;
+import ai.datalens.service.SnowflakeUnavailableException;
+import ai.datalens.service.WarehouseCatalogService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.sql.SQLException;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/projects/{projectId}/catalog")
+@PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+public class WarehouseCatalogController {
+
+    private static final Logger logger = LoggerFactory.getLogger(WarehouseCatalogController.class);
+
+    @Autowired
+    private WarehouseCatalogService warehouseCatalogService;
+
+    /**
+     * Tables of the project's warehouse, from the stored catalog
+     */
+    @GetMapping("/tables")
+    public ResponseEntity<?> listTables(
+            @AuthenticationPrincipal UserPrincipal userPrincipal,
+            @PathVariable String projectId,
+            @RequestParam(required = false) String schema,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "100") int size) {
+        try {
+            Page<CatalogTableResponse> tables = warehouseCatalogService.listTables(userPrincipal.getId(),
+                    UUID.fromString(projectId), schema, page, size);
+            return ResponseEntity.ok(tables);
+
+        } catch (SnowflakeUnavailableException e) {
+            return unavailable(e);
+        } catch (SQLException e) {
+            logger.error("Error crawling catalog for project {}: {}", projectId, e.getMessage(), e);
+            return ResponseEntity.internalServerError()
+                    .body(new ErrorResponse("Internal Server Error", "Catalog crawl failed: " + e.getMessage(), 500));
+        } catch (IllegalStateException e) {
+            return crawlInProgress(e);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        } catch (RuntimeException e) {
+            if ("Project not found".equals(e.getMessage())) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(new ErrorResponse("Not Found", e.getMessage(), 404));
+            }
+            logger.error("Error listing catalog for project {}: {}", projectId, e.getMessage(), e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * One table with its columns
+     */
+    @GetMapping("/tables/{schema}/{table}")
+    public ResponseEntity<?> getTable(
+            @AuthenticationPrincipal UserPrincipal userPrincipal,
+            @PathVariable String projectId,
+            @PathVariable String schema,
+            @PathVariable String table) {
+        try {
+            return ResponseEntity.ok(warehouseCatalogService.getTable(userPrincipal.getId(), UUID.fromString(projectId),
+                    schema, table));
+
+        } catch (SnowflakeUnavailableException e) {
+            return unavailable(e);
+        } catch (SQLException e) {
+            logger.error("Error crawling catalog for project {}: {}", projectId, e.getMessage(), e);
+            return ResponseEntity.internalServerError()
+                    .body(new ErrorResponse("Internal Server Error", "Catalog crawl failed: " + e.getMessage(), 500));
+        } catch (IllegalStateException e) {
+            return crawlInProgress(e);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        } catch (RuntimeException e) {
+            if ("Project not found".equals(e.getMessage()) || "Table not found".equals(e.getMessage())) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(new ErrorResponse("Not Found", e.getMessage(), 404));
+            }
+            logger.error("Error fetching table {}.{} for project {}: {}", schema, table, projectId, e.getMessage(), e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Crawl now instead of waiting for the schedule. Incremental unless full=true.
+     */
+    @PostMapping("/crawl")
+    public ResponseEntity<?> crawl(
+            @AuthenticationPrincipal UserPrincipal userPrincipal,
+            @PathVariable String projectId,
+            @RequestParam(defaultValue = "false") boolean full) {
+        try {
+            return ResponseEntity.ok(warehouseCatalogService.crawl(userPrincipal.getId(), UUID.fromString(projectId), full));
+
+        } catch (SnowflakeUnavailableException e) {
+            return unavailable(e);
+        } catch (SQLException e) {
+            logger.error("Error crawling catalog for project {}: {}", projectId, e.getMessage(), e);
+            return ResponseEntity.internalServerError()
+                    .body(new ErrorResponse("Internal Server Error", "Catalog crawl failed: " + e.getMessage(), 500));
+        } catch (IllegalStateException e) {
+            return crawlInProgress(e);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        } catch (RuntimeException e) {
+            if ("Project not found".equals(e.getMessage())) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(new ErrorResponse("Not Found", e.getMessage(), 404));
+            }
+            logger.error("Error crawling catalog for project {}: {}", projectId, e.getMessage(), e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    private ResponseEntity<ErrorResponse> unavailable(SnowflakeUnavailableException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfterSeconds())))
+                .body(new ErrorResponse("Service Unavailable", e.getMessage(), 503));
+    }
+
+    private ResponseEntity<ErrorResponse> crawlInProgress(IllegalStateException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(new ErrorResponse("Conflict", e.getMessage(), 409));
+    }
+}
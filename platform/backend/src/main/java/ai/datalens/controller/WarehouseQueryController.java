@@ -0,0 +1,282 @@
+package ai.datalens.controller;
+
+import ai.datalens.dto.request.QueryRequest;
+import ai.datalens.dto.response.ErrorResponse;
+import ai.datalens.dto.response.QueryJobResponse;
+import ai.datalens.dto.response.QueryResultResponse;
+import ai.datalens.security.UserPrincipal;
+import ai.datalens.service.ColumnarQueryResult;
+import ai.datalens.service.QueryCancelledException;
+import ai.datalens.service.QueryJobService;
+import ai.datalens.service.QueryThrottledException;
+import ai.datalens.service.SnowflakeUnavailableException;
+import ai.datalens.service.WarehouseQueryService;
+import jakarta.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.net.URI;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+
+@RestController
+@RequestMapping("/projects/{projectId}/query")
+@PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+public class WarehouseQueryController {
+
+    private static final Logger logger = LoggerFactory.getLogger(WarehouseQueryController.class);
+
+    @Autowired
+    private WarehouseQueryService warehouseQueryService;
+
+    @Autowired
+    private QueryJobService queryJobService;
+
+    private static final MediaType COLUMNAR = MediaType.parseMediaType(ColumnarQueryResult.MEDIA_TYPE);
+
+    /**
+     * Run a read-only statement against the project's warehouse. Repeated deterministic
+     * queries are answered from the result cache; "cached" in the response says which.
+     *
+     * Clients that prefer application/vnd.datalens.columnar in Accept get the rows streamed in
+     * the columnar binary format instead of JSON. Errors are always JSON, whatever Accept says.
+     */
+    @PostMapping
+    public ResponseEntity<?> runQuery(
+            @AuthenticationPrincipal UserPrincipal userPrincipal,
+            @PathVariable String projectId,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @Valid @RequestBody QueryRequest request) {
+        try {
+            if (prefersColumnar(accept)) {
+                ColumnarQueryResult result = warehouseQueryService.executeColumnar(userPrincipal.getId(),
+                        UUID.fromString(projectId), request);
+                StreamingResponseBody body = result::writeTo;
+                return ResponseEntity.ok().contentType(COLUMNAR).body(body);
+            }
+            QueryResultResponse result = warehouseQueryService.execute(userPrincipal.getId(), UUID.fromString(projectId), request);
+            return ResponseEntity.ok(result);
+
+        } catch (QueryThrottledException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfterSeconds())))
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(new ErrorResponse("Too Many Requests", e.getMessage(), 429));
+        } catch (SnowflakeUnavailableException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfterSeconds())))
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(new ErrorResponse("Service Unavailable", e.getMessage(), 503));
+        } catch (QueryCancelledException e) {
+            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(new ErrorResponse("Gateway Timeout", e.getMessage(), 504));
+        } catch (SQLException e) {
+            // Syntax errors, unknown objects, bad casts: the query's fault, not the server's
+            if (e.getSQLState() != null && (e.getSQLState().startsWith("42") || e.getSQLState().startsWith("22"))) {
+                return ResponseEntity.badRequest().contentType(MediaType.APPLICATION_JSON)
+                        .body(new ErrorResponse(e.getMessage()));
+            }
+            logger.error("Error running query for project {}: {}", projectId, e.getMessage(), e);
+            return ResponseEntity.internalServerError()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(new ErrorResponse("Internal Server Error", "Query failed: " + e.getMessage(), 500));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().contentType(MediaType.APPLICATION_JSON)
+                    .body(new ErrorResponse(e.getMessage()));
+        } catch (RuntimeException e) {
+            if ("Project not found".equals(e.getMessage())) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(new ErrorResponse("Not Found", e.getMessage(), 404));
+            }
+            logger.error("Error running query for project {}: {}", projectId, e.getMessage(), e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Queue a read-only statement to run in the background and return its query id at once.
+     * Poll the query, or subscribe to its events, then fetch the result; a query nobody polls
+     * for a while is cancelled.
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<?> submitQuery(
+            @AuthenticationPrincipal UserPrincipal userPrincipal,
+            @PathVariable String projectId,
+            @Valid @RequestBody QueryRequest request) {
+        try {
+            QueryJobResponse job = queryJobService.submit(userPrincipal.getId(), UUID.fromString(projectId), request);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/projects/" + projectId + "/query/jobs/" + job.getQueryId()))
+                    .body(job);
+
+        } catch (QueryThrottledException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfterSeconds())))
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(new ErrorResponse("Too Many Requests", e.getMessage(), 429));
+        } catch (RejectedExecutionException e) {
+            logger.warn("Query queue full, rejecting query for project {}", projectId);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(new ErrorResponse("Service Unavailable", "Too many queries queued", 503));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().contentType(MediaType.APPLICATION_JSON)
+                    .body(new ErrorResponse(e.getMessage()));
+        } catch (RuntimeException e) {
+            return notFoundOrError(projectId, e);
+        }
+    }
+
+    @GetMapping("/jobs/{queryId}")
+    public ResponseEntity<?> getQuery(
+            @AuthenticationPrincipal UserPrincipal userPrincipal,
+            @PathVariable String projectId,
+            @PathVariable String queryId) {
+        try {
+            QueryJobResponse job = queryJobService.getJob(userPrincipal.getId(), UUID.fromString(projectId),
+                    UUID.fromString(queryId));
+            return job != null ? ResponseEntity.ok(job) : queryNotFound();
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().contentType(MediaType.APPLICATION_JSON)
+                    .body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    /**
+     * Server-sent "status" events for a query until it finishes
+     */
+    @GetMapping(value = "/jobs/{queryId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamQuery(
+            @AuthenticationPrincipal UserPrincipal userPrincipal,
+            @PathVariable String projectId,
+            @PathVariable String queryId) {
+        try {
+            return ResponseEntity.ok(queryJobService.subscribe(userPrincipal.getId(), UUID.fromString(projectId),
+                    UUID.fromString(queryId)));
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * A page of a finished query's result, as JSON or in the columnar format like {@link #runQuery}.
+     * Pages at any offset come from the stored result; the query is not run again. "truncated"
+     * says whether rows follow the page, and the JSON form also carries the offset and total rows.
+     */
+    @GetMapping("/jobs/{queryId}/result")
+    public ResponseEntity<?> getQueryResult(
+            @AuthenticationPrincipal UserPrincipal userPrincipal,
+            @PathVariable String projectId,
+            @PathVariable String queryId,
+            @RequestParam(defaultValue = "0") long offset,
+            @RequestParam(required = false) Integer limit,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        try {
+            QueryJobService.ResultPage page = queryJobService.getResult(userPrincipal.getId(),
+                    UUID.fromString(projectId), UUID.fromString(queryId), offset, limit);
+            if (prefersColumnar(accept)) {
+                StreamingResponseBody body = page.result()::writeTo;
+                return ResponseEntity.ok().contentType(COLUMNAR).body(body);
+            }
+            QueryResultResponse response = WarehouseQueryService.toResponse(page.result());
+            response.setOffset(page.offset());
+            response.setTotalRows(page.totalRows());
+            return ResponseEntity.ok(response);
+
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(new ErrorResponse("Conflict", e.getMessage(), 409));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().contentType(MediaType.APPLICATION_JSON)
+                    .body(new ErrorResponse(e.getMessage()));
+        } catch (RuntimeException e) {
+            return queryNotFound();
+        }
+    }
+
+    /**
+     * Cancel a queued or running query; its statement is cancelled in the warehouse and its
+     * connection released. Returns the query's state afterwards.
+     */
+    @DeleteMapping("/jobs/{queryId}")
+    public ResponseEntity<?> cancelQuery(
+            @AuthenticationPrincipal UserPrincipal userPrincipal,
+            @PathVariable String projectId,
+            @PathVariable String queryId) {
+        try {
+            QueryJobResponse job = queryJobService.cancel(userPrincipal.getId(), UUID.fromString(projectId),
+                    UUID.fromString(queryId));
+            return job != null ? ResponseEntity.ok(job) : queryNotFound();
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().contentType(MediaType.APPLICATION_JSON)
+                    .body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    private ResponseEntity<?> queryNotFound() {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(new ErrorResponse("Not Found", "Query not found", 404));
+    }
+
+    private ResponseEntity<?> notFoundOrError(String projectId, RuntimeException e) {
+        if ("Project not found".equals(e.getMessage())) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(new ErrorResponse("Not Found", e.getMessage(), 404));
+        }
+        logger.error("Error submitting query for project {}: {}", projectId, e.getMessage(), e);
+        return ResponseEntity.internalServerError().build();
+    }
+
+    /**
+     * True when the columnar format ranks above JSON in the Accept header
+     */
+    private static boolean prefersColumnar(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return false;
+        }
+        try {
+            List<MediaType> mediaTypes = MediaType.parseMediaTypes(accept);
+            // Stable sort: equal qualities keep the client's order
+            mediaTypes.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+            for (MediaType mediaType : mediaTypes) {
+                if (mediaType.getQualityValue() == 0) {
+                    break;
+                }
+                if (mediaType.equalsTypeAndSubtype(COLUMNAR)) {
+                    return true;
+                }
+                if (mediaType.includes(MediaType.APPLICATION_JSON)) {
+                    return false;
+                }
+            }
+        } catch (InvalidMediaTypeException e) {
+            logger.debug("Ignoring unparseable Accept header: {}", accept);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,124 @@
+package ai.datalens.dto.request;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
+
+public class ConnectionProfileRequest {
+
+    // Dot-separated names only: the account becomes the host name of the JDBC URL
+    public static final String ACCOUNT_PATTERN = "^[A-Za-z0-9_-]+(\\.[A-Za-z0-9_-]+)*$";
+
+    // Account identifier, e.g. xy12345.eu-west-1
+    @NotBlank(message = "Account is required")
+    @Size(max = 255, message = "Account must not exceed 255 characters")
+    @Pattern(regexp = ACCOUNT_PATTERN, message = "Account must be a Snowflake account identifier, e.g. xy12345.eu-west-1")
+    private String account;
+
+    @NotBlank(message = "Username is required")
+    @Size(max = 255, message = "Username must not exceed 255 characters")
+    private String username;
+
+    // Required when the profile is created; left out on update to keep the stored one
+    @Size(max = 4096, message = "Password must not exceed 4096 characters")
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
+    private String password;
+
+    @Size(max = 255, message = "Role must not exceed 255 characters")
+    private String role;
+
+    @Size(max = 255, message = "Warehouse must not exceed 255 characters")
+    private String warehouse;
+
+    @Size(max = 255, message = "Database must not exceed 255 characters")
+    private String database;
+
+    @Size(max = 255, message = "Schema must not exceed 255 characters")
+    private String schema;
+
+    @Min(value = 1, message = "Pool size must be at least 1")
+    @JsonProperty("max_pool_size")
+    private Integer maxPoolSize;
+
+    @Min(value = 0, message = "Queue depth must not be negative")
+    @JsonProperty("queue_depth")
+    private Integer queueDepth;
+
+    // Constructors
+    public ConnectionProfileRequest() {}
+
+    // Getters and Setters
+    public String getAccount() {
+        return account;
+    }
+
+    public void setAccount(String account) {
+        this.account = account;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public void setRole(String role) {
+        this.role = role;
+    }
+
+    public String getWarehouse() {
+        return warehouse;
+    }
+
+    public void setWarehouse(String warehouse) {
+        this.warehouse = warehouse;
+    }
+
+    public String getDatabase() {
+        return database;
+    }
+
+    public void setDatabase(String database) {
+        this.database = database;
+    }
+
+    public String getSchema() {
+        return schema;
+    }
+
+    public void setSchema(String schema) {
+        this.schema = schema;
+    }
+
+    public Integer getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    public void setMaxPoolSize(Integer maxPoolSize) {
+        this.maxPoolSize = maxPoolSize;
+    }
+
+    public Integer getQueueDepth() {
+        return queueDepth;
+    }
+
+    public void setQueueDepth(Integer queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+}
@@ -0,0 +1,89 @@
+package ai.datalens.dto.request;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Size;
+
+/**
+ * What to profile: a table, or a file in a stage. Set either table or stage and path.
+ */
+public class ProfileRequest {
+
+    @Size(max = 767, message = "Table name must not exceed 767 characters")
+    private String table;
+
+    @Size(max = 255, message = "Stage name must not exceed 255 characters")
+    private String stage;
+
+    @Size(max = 1024, message = "Path must not exceed 1024 characters")
+    private String path;
+
+    private String format;
+
+    private Boolean header;
+
+    @JsonProperty("file_format")
+    private String fileFormat;
+
+    // Recompute even if a stored profile is still current
+    private Boolean refresh;
+
+    // Constructors
+    public ProfileRequest() {}
+
+    // Getters and Setters
+    public String getTable() {
+        return table;
+    }
+
+    public void setTable(String table) {
+        this.table = table;
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    public void setStage(String stage) {
+        this.stage = stage;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public void setFormat(String format) {
+        this.format = format;
+    }
+
+    public Boolean getHeader() {
+        return header;
+    }
+
+    public void setHeader(Boolean header) {
+        this.header = header;
+    }
+
+    public String getFileFormat() {
+        return fileFormat;
+    }
+
+    public void setFileFormat(String fileFormat) {
+        this.fileFormat = fileFormat;
+    }
+
+    public Boolean getRefresh() {
+        return refresh;
+    }
+
+    public void setRefresh(Boolean refresh) {
+        this.refresh = refresh;
+    }
+}
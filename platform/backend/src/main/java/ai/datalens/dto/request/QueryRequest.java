@@ -0,0 +1,66 @@
+package ai.datalens.dto.request;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
+
+public class QueryRequest {
+
+    @NotBlank(message = "SQL is required")
+    @Size(max = 100000, message = "SQL must not exceed 100000 characters")
+    private String sql;
+
+    @JsonProperty("max_rows")
+    private Integer maxRows;
+
+    @JsonProperty("use_cache")
+    private Boolean useCache;
+
+    // Capped by warehouse.query.max-timeout; warehouse.query.timeout when left out
+    @Positive(message = "Timeout must be positive")
+    @JsonProperty("timeout_ms")
+    private Long timeoutMs;
+
+    // Constructors
+    public QueryRequest() {}
+
+    public QueryRequest(String sql, Integer maxRows, Boolean useCache) {
+        this.sql = sql;
+        this.maxRows = maxRows;
+        this.useCache = useCache;
+    }
+
+    // Getters and Setters
+    public String getSql() {
+        return sql;
+    }
+
+    public void setSql(String sql) {
+        this.sql = sql;
+    }
+
+    public Integer getMaxRows() {
+        return maxRows;
+    }
+
+    public void setMaxRows(Integer maxRows) {
+        this.maxRows = maxRows;
+    }
+
+    public Boolean getUseCache() {
+        return useCache;
+    }
+
+    public void setUseCache(Boolean useCache) {
+        this.useCache = useCache;
+    }
+
+    public Long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    public void setTimeoutMs(Long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+}
@@ -0,0 +1,95 @@
+package ai.datalens.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CatalogColumnResponse {
+    
+    private String name;
+    
+    private int position;
+    
+    @JsonProperty("data_type")
+    private String dataType;
+    
+    @JsonProperty("max_length")
+    private Long maxLength;
+    
+    private Integer precision;
+    
+    private Integer scale;
+    
+    private boolean nullable;
+    
+    private String comment;
+    
+    // Default constructor
+    public CatalogColumnResponse() {}
+    
+    // Getters and Setters
+    
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    public int getPosition() {
+        return position;
+    }
+    
+    public void setPosition(int position) {
+        this.position = position;
+    }
+    
+    public String getDataType() {
+        return dataType;
+    }
+    
+    public void setDataType(String dataType) {
+        this.dataType = dataType;
+    }
+    
+    public Long getMaxLength() {
+        return maxLength;
+    }
+    
+    public void setMaxLength(Long maxLength) {
+        this.maxLength = maxLength;
+    }
+    
+    public Integer getPrecision() {
+        return precision;
+    }
+    
+    public void setPrecision(Integer precision) {
+        this.precision = precision;
+    }
+    
+    public Integer getScale() {
+        return scale;
+    }
+    
+    public void setScale(Integer scale) {
+        this.scale = scale;
+    }
+    
+    public boolean isNullable() {
+        return nullable;
+    }
+    
+    public void setNullable(boolean nullable) {
+        this.nullable = nullable;
+    }
+    
+    public String getComment() {
+        return comment;
+    }
+    
+    public void setComment(String comment) {
+        this.comment = comment;
+    }
+}
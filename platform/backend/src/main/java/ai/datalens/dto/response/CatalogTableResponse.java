@@ -0,0 +1,108 @@
+package ai.datalens.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CatalogTableResponse {
+    
+    private String database;
+    
+    private String schema;
+    
+    private String name;
+    
+    private String type;
+    
+    @JsonProperty("row_count")
+    private Long rowCount;
+    
+    private Long bytes;
+    
+    private String comment;
+    
+    @JsonProperty("last_altered")
+    private LocalDateTime lastAltered;
+    
+    private List<CatalogColumnResponse> columns;
+    
+    // Default constructor
+    public CatalogTableResponse() {}
+    
+    // Getters and Setters
+    
+    public String getDatabase() {
+        return database;
+    }
+    
+    public void setDatabase(String database) {
+        this.database = database;
+    }
+    
+    public String getSchema() {
+        return schema;
+    }
+    
+    public void setSchema(String schema) {
+        this.schema = schema;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    public String getType() {
+        return type;
+    }
+    
+    public void setType(String type) {
+        this.type = type;
+    }
+    
+    public Long getRowCount() {
+        return rowCount;
+    }
+    
+    public void setRowCount(Long rowCount) {
+        this.rowCount = rowCount;
+    }
+    
+    public Long getBytes() {
+        return bytes;
+    }
+    
+    public void setBytes(Long bytes) {
+        this.bytes = bytes;
+    }
+    
+    public String getComment() {
+        return comment;
+    }
+    
+    public void setComment(String comment) {
+        this.comment = comment;
+    }
+    
+    public LocalDateTime getLastAltered() {
+        return lastAltered;
+    }
+    
+    public void setLastAltered(LocalDateTime lastAltered) {
+        this.lastAltered = lastAltered;
+    }
+    
+    public List<CatalogColumnResponse> getColumns() {
+        return columns;
+    }
+    
+    public void setColumns(List<CatalogColumnResponse> columns) {
+        this.columns = columns;
+    }
+}
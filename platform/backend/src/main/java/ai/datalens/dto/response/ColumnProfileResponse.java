@@ -0,0 +1,134 @@
+package ai.datalens.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ColumnProfileResponse {
+    
+    private UUID id;
+    
+    @JsonProperty("project_id")
+    private UUID projectId;
+    
+    @JsonProperty("source_type")
+    private String sourceType;
+    
+    private String source;
+    
+    @JsonProperty("source_version")
+    private String sourceVersion;
+    
+    @JsonProperty("row_count")
+    private long rowCount;
+    
+    @JsonProperty("column_count")
+    private int columnCount;
+    
+    @JsonProperty("elapsed_ms")
+    private long elapsedMs;
+    
+    @JsonProperty("profiled_at")
+    private LocalDateTime profiledAt;
+    
+    private boolean stored;
+    
+    private List<ColumnStatsResponse> columns;
+    
+    // Default constructor
+    public ColumnProfileResponse() {}
+    
+    // Getters and Setters
+    
+    public UUID getId() {
+        return id;
+    }
+    
+    public void setId(UUID id) {
+        this.id = id;
+    }
+    
+    public UUID getProjectId() {
+        return projectId;
+    }
+    
+    public void setProjectId(UUID projectId) {
+        this.projectId = projectId;
+    }
+    
+    public String getSourceType() {
+        return sourceType;
+    }
+    
+    public void setSourceType(String sourceType) {
+        this.sourceType = sourceType;
+    }
+    
+    public String getSource() {
+        return source;
+    }
+    
+    public void setSource(String source) {
+        this.source = source;
+    }
+    
+    public String getSourceVersion() {
+        return sourceVersion;
+    }
+    
+    public void setSourceVersion(String sourceVersion) {
+        this.sourceVersion = sourceVersion;
+    }
+    
+    public long getRowCount() {
+        return rowCount;
+    }
+    
+    public void setRowCount(long rowCount) {
+        this.rowCount = rowCount;
+    }
+    
+    public int getColumnCount() {
+        return columnCount;
+    }
+    
+    public void setColumnCount(int columnCount) {
+        this.columnCount = columnCount;
+    }
+    
+    public long getElapsedMs() {
+        return elapsedMs;
+    }
+    
+    public void setElapsedMs(long elapsedMs) {
+        this.elapsedMs = elapsedMs;
+    }
+    
+    public LocalDateTime getProfiledAt() {
+        return profiledAt;
+    }
+    
+    public void setProfiledAt(LocalDateTime profiledAt) {
+        this.profiledAt = profiledAt;
+    }
+    
+    public boolean isStored() {
+        return stored;
+    }
+    
+    public void setStored(boolean stored) {
+        this.stored = stored;
+    }
+    
+    public List<ColumnStatsResponse> getColumns() {
+        return columns;
+    }
+    
+    public void setColumns(List<ColumnStatsResponse> columns) {
+        this.columns = columns;
+    }
+}
@@ -0,0 +1,133 @@
+package ai.datalens.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Map;
+
+/**
+ * Profile of one column. Numeric fields are only set when the column holds numbers;
+ * distinct_count and quantiles are approximate.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ColumnStatsResponse {
+    
+    private String name;
+    
+    private String type;
+    
+    @JsonProperty("row_count")
+    private long rowCount;
+    
+    @JsonProperty("null_count")
+    private long nullCount;
+    
+    @JsonProperty("distinct_count")
+    private long distinctCount;
+    
+    @JsonProperty("non_numeric_count")
+    private Long nonNumericCount;
+    
+    private Object min;
+    
+    private Object max;
+    
+    private Double mean;
+    
+    private Double variance;
+    
+    private Map<String, Double> quantiles;
+    
+    // Default constructor
+    public ColumnStatsResponse() {}
+    
+    // Getters and Setters
+    
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    public String getType() {
+        return type;
+    }
+    
+    public void setType(String type) {
+        this.type = type;
+    }
+    
+    public long getRowCount() {
+        return rowCount;
+    }
+    
+    public void setRowCount(long rowCount) {
+        this.rowCount = rowCount;
+    }
+    
+    public long getNullCount() {
+        return nullCount;
+    }
+    
+    public void setNullCount(long nullCount) {
+        this.nullCount = nullCount;
+    }
+    
+    public long getDistinctCount() {
+        return distinctCount;
+    }
+    
+    public void setDistinctCount(long distinctCount) {
+        this.distinctCount = distinctCount;
+    }
+    
+    public Long getNonNumericCount() {
+        return nonNumericCount;
+    }
+    
+    public void setNonNumericCount(Long nonNumericCount) {
+        this.nonNumericCount = nonNumericCount;
+    }
+    
+    public Object getMin() {
+        return min;
+    }
+    
+    public void setMin(Object min) {
+        this.min = min;
+    }
+    
+    public Object getMax() {
+        return max;
+    }
+    
+    public void setMax(Object max) {
+        this.max = max;
+    }
+    
+    public Double getMean() {
+        return mean;
+    }
+    
+    public void setMean(Double mean) {
+        this.mean = mean;
+    }
+    
+    public Double getVariance() {
+        return variance;
+    }
+    
+    public void setVariance(Double variance) {
+        this.variance = variance;
+    }
+    
+    public Map<String, Double> getQuantiles() {
+        return quantiles;
+    }
+    
+    public void setQuantiles(Map<String, Double> quantiles) {
+        this.quantiles = quantiles;
+    }
+}
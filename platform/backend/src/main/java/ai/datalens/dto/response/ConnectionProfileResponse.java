@@ -0,0 +1,142 @@
+package ai.datalens.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.LocalDateTime;
+
+/**
+ * A project's connection profile as shown to its owner; the secret is never included
+ */
+public class ConnectionProfileResponse {
+    
+    private String account;
+    
+    private String username;
+    
+    private String role;
+    
+    private String warehouse;
+    
+    private String database;
+    
+    private String schema;
+    
+    @JsonProperty("max_pool_size")
+    private int maxPoolSize;
+    
+    @JsonProperty("queue_depth")
+    private int queueDepth;
+    
+    @JsonProperty("pool_open")
+    private boolean poolOpen;
+    
+    @JsonProperty("in_flight")
+    private int inFlight;
+    
+    @JsonProperty("created_at")
+    private LocalDateTime createdAt;
+    
+    @JsonProperty("updated_at")
+    private LocalDateTime updatedAt;
+    
+    // Default constructor
+    public ConnectionProfileResponse() {}
+    
+    // Getters and Setters
+    
+    public String getAccount() {
+        return account;
+    }
+    
+    public void setAccount(String account) {
+        this.account = account;
+    }
+    
+    public String getUsername() {
+        return username;
+    }
+    
+    public void setUsername(String username) {
+        this.username = username;
+    }
+    
+    public String getRole() {
+        return role;
+    }
+    
+    public void setRole(String role) {
+        this.role = role;
+    }
+    
+    public String getWarehouse() {
+        return warehouse;
+    }
+    
+    public void setWarehouse(String warehouse) {
+        this.warehouse = warehouse;
+    }
+    
+    public String getDatabase() {
+        return database;
+    }
+    
+    public void setDatabase(String database) {
+        this.database = database;
+    }
+    
+    public String getSchema() {
+        return schema;
+    }
+    
+    public void setSchema(String schema) {
+        this.schema = schema;
+    }
+    
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+    
+    public void setMaxPoolSize(int maxPoolSize) {
+        this.maxPoolSize = maxPoolSize;
+    }
+    
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+    
+    public void setQueueDepth(int queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+    
+    public boolean isPoolOpen() {
+        return poolOpen;
+    }
+    
+    public void setPoolOpen(boolean poolOpen) {
+        this.poolOpen = poolOpen;
+    }
+    
+    public int getInFlight() {
+        return inFlight;
+    }
+    
+    public void setInFlight(int inFlight) {
+        this.inFlight = inFlight;
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+    
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
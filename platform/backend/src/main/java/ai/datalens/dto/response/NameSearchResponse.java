@@ -0,0 +1,56 @@
+package ai.datalens.dto.response;
+
+public class NameSearchResponse {
+    
+    private String kind;
+    
+    private String name;
+    
+    private String path;
+    
+    private int distance;
+    
+    // Default constructor
+    public NameSearchResponse() {}
+    
+    public NameSearchResponse(String kind, String name, String path, int distance) {
+        this.kind = kind;
+        this.name = name;
+        this.path = path;
+        this.distance = distance;
+    }
+    
+    // Getters and Setters
+    
+    public String getKind() {
+        return kind;
+    }
+    
+    public void setKind(String kind) {
+        this.kind = kind;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    public String getPath() {
+        return path;
+    }
+    
+    public void setPath(String path) {
+        this.path = path;
+    }
+    
+    public int getDistance() {
+        return distance;
+    }
+    
+    public void setDistance(int distance) {
+        this.distance = distance;
+    }
+}
@@ -0,0 +1,141 @@
+package ai.datalens.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+public class QueryJobResponse {
+    
+    @JsonProperty("query_id")
+    private UUID queryId;
+    
+    @JsonProperty("project_id")
+    private UUID projectId;
+    
+    private String status;
+    
+    private String fingerprint;
+    
+    @JsonProperty("timeout_ms")
+    private Long timeoutMs;
+    
+    @JsonProperty("submitted_at")
+    private LocalDateTime submittedAt;
+    
+    @JsonProperty("started_at")
+    private LocalDateTime startedAt;
+    
+    @JsonProperty("finished_at")
+    private LocalDateTime finishedAt;
+    
+    @JsonProperty("row_count")
+    private Integer rowCount;
+    
+    private Boolean truncated;
+    
+    private Boolean cached;
+    
+    private String error;
+    
+    // Default constructor
+    public QueryJobResponse() {}
+    
+    // Getters and Setters
+    
+    public UUID getQueryId() {
+        return queryId;
+    }
+    
+    public void setQueryId(UUID queryId) {
+        this.queryId = queryId;
+    }
+    
+    public UUID getProjectId() {
+        return projectId;
+    }
+    
+    public void setProjectId(UUID projectId) {
+        this.projectId = projectId;
+    }
+    
+    public String getStatus() {
+        return status;
+    }
+    
+    public void setStatus(String status) {
+        this.status = status;
+    }
+    
+    public String getFingerprint() {
+        return fingerprint;
+    }
+    
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+    
+    public Long getTimeoutMs() {
+        return timeoutMs;
+    }
+    
+    public void setTimeoutMs(Long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+    
+    public LocalDateTime getSubmittedAt() {
+        return submittedAt;
+    }
+    
+    public void setSubmittedAt(LocalDateTime submittedAt) {
+        this.submittedAt = submittedAt;
+    }
+    
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+    
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+    
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+    
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+    
+    public Integer getRowCount() {
+        return rowCount;
+    }
+    
+    public void setRowCount(Integer rowCount) {
+        this.rowCount = rowCount;
+    }
+    
+    public Boolean getTruncated() {
+        return truncated;
+    }
+    
+    public void setTruncated(Boolean truncated) {
+        this.truncated = truncated;
+    }
+    
+    public Boolean getCached() {
+        return cached;
+    }
+    
+    public void setCached(Boolean cached) {
+        this.cached = cached;
+    }
+    
+    public String getError() {
+        return error;
+    }
+    
+    public void setError(String error) {
+        this.error = error;
+    }
+}
@@ -0,0 +1,133 @@
+package ai.datalens.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+import java.util.List;
+
+public class QueryResultResponse {
+    
+    private String fingerprint;
+    
+    private List<String> columns;
+    
+    @JsonProperty("column_types")
+    private List<String> columnTypes;
+    
+    private List<Object[]> rows;
+    
+    @JsonProperty("row_count")
+    private int rowCount;
+    
+    private boolean truncated;
+    
+    private boolean cached;
+    
+    @JsonProperty("executed_at")
+    private Instant executedAt;
+    
+    @JsonProperty("elapsed_ms")
+    private long elapsedMs;
+    
+    // Only set for pages of a stored result
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long offset;
+    
+    @JsonProperty("total_rows")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long totalRows;
+    
+    // Default constructor
+    public QueryResultResponse() {}
+    
+    // Getters and Setters
+    
+    public String getFingerprint() {
+        return fingerprint;
+    }
+    
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+    
+    public List<String> getColumns() {
+        return columns;
+    }
+    
+    public void setColumns(List<String> columns) {
+        this.columns = columns;
+    }
+    
+    public List<String> getColumnTypes() {
+        return columnTypes;
+    }
+    
+    public void setColumnTypes(List<String> columnTypes) {
+        this.columnTypes = columnTypes;
+    }
+    
+    public List<Object[]> getRows() {
+        return rows;
+    }
+    
+    public void setRows(List<Object[]> rows) {
+        this.rows = rows;
+    }
+    
+    public int getRowCount() {
+        return rowCount;
+    }
+    
+    public void setRowCount(int rowCount) {
+        this.rowCount = rowCount;
+    }
+    
+    public boolean isTruncated() {
+        return truncated;
+    }
+    
+    public void setTruncated(boolean truncated) {
+        this.truncated = truncated;
+    }
+    
+    public boolean isCached() {
+        return cached;
+    }
+    
+    public void setCached(boolean cached) {
+        this.cached = cached;
+    }
+    
+    public Instant getExecutedAt() {
+        return executedAt;
+    }
+    
+    public void setExecutedAt(Instant executedAt) {
+        this.executedAt = executedAt;
+    }
+    
+    public long getElapsedMs() {
+        return elapsedMs;
+    }
+    
+    public void setElapsedMs(long elapsedMs) {
+        this.elapsedMs = elapsedMs;
+    }
+    
+    public Long getOffset() {
+        return offset;
+    }
+    
+    public void setOffset(Long offset) {
+        this.offset = offset;
+    }
+    
+    public Long getTotalRows() {
+        return totalRows;
+    }
+    
+    public void setTotalRows(Long totalRows) {
+        this.totalRows = totalRows;
+    }
+}
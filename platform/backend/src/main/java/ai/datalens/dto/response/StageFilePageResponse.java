@@ -0,0 +1,51 @@
+package ai.datalens.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+public class StageFilePageResponse {
+    
+    private List<StageFileResponse> files;
+    
+    @JsonProperty("next_cursor")
+    private String nextCursor;
+    
+    @JsonProperty("total_files")
+    private long totalFiles;
+    
+    // Default constructor
+    public StageFilePageResponse() {}
+    
+    public StageFilePageResponse(List<StageFileResponse> files, String nextCursor, long totalFiles) {
+        this.files = files;
+        this.nextCursor = nextCursor;
+        this.totalFiles = totalFiles;
+    }
+    
+    // Getters and Setters
+    
+    public List<StageFileResponse> getFiles() {
+        return files;
+    }
+    
+    public void setFiles(List<StageFileResponse> files) {
+        this.files = files;
+    }
+    
+    public String getNextCursor() {
+        return nextCursor;
+    }
+    
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+    
+    public long getTotalFiles() {
+        return totalFiles;
+    }
+    
+    public void setTotalFiles(long totalFiles) {
+        this.totalFiles = totalFiles;
+    }
+}
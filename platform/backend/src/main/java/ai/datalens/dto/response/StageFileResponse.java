@@ -0,0 +1,61 @@
+package ai.datalens.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+
+public class StageFileResponse {
+    
+    private String path;
+    
+    private long size;
+    
+    private String md5;
+    
+    @JsonProperty("last_modified")
+    private Instant lastModified;
+    
+    // Default constructor
+    public StageFileResponse() {}
+    
+    public StageFileResponse(String path, long size, String md5, Instant lastModified) {
+        this.path = path;
+        this.size = size;
+        this.md5 = md5;
+        this.lastModified = lastModified;
+    }
+    
+    // Getters and Setters
+    
+    public String getPath() {
+        return path;
+    }
+    
+    public void setPath(String path) {
+        this.path = path;
+    }
+    
+    public long getSize() {
+        return size;
+    }
+    
+    public void setSize(long size) {
+        this.size = size;
+    }
+    
+    public String getMd5() {
+        return md5;
+    }
+    
+    public void setMd5(String md5) {
+        this.md5 = md5;
+    }
+    
+    public Instant getLastModified() {
+        return lastModified;
+    }
+    
+    public void setLastModified(Instant lastModified) {
+        this.lastModified = lastModified;
+    }
+}
@@ -0,0 +1,133 @@
+package ai.datalens.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+public class StageRefreshJobResponse {
+    
+    @JsonProperty("job_id")
+    private UUID jobId;
+    
+    @JsonProperty("project_id")
+    private UUID projectId;
+    
+    private String status;
+    
+    @JsonProperty("submitted_at")
+    private LocalDateTime submittedAt;
+    
+    @JsonProperty("started_at")
+    private LocalDateTime startedAt;
+    
+    @JsonProperty("finished_at")
+    private LocalDateTime finishedAt;
+    
+    @JsonProperty("stage_count")
+    private Integer stageCount;
+    
+    @JsonProperty("inserted_count")
+    private Integer insertedCount;
+    
+    @JsonProperty("updated_count")
+    private Integer updatedCount;
+    
+    @JsonProperty("deleted_count")
+    private Integer deletedCount;
+    
+    private String error;
+    
+    // Default constructor
+    public StageRefreshJobResponse() {}
+    
+    // Getters and Setters
+    
+    public UUID getJobId() {
+        return jobId;
+    }
+    
+    public void setJobId(UUID jobId) {
+        this.jobId = jobId;
+    }
+    
+    public UUID getProjectId() {
+        return projectId;
+    }
+    
+    public void setProjectId(UUID projectId) {
+        this.projectId = projectId;
+    }
+    
+    public String getStatus() {
+        return status;
+    }
+    
+    public void setStatus(String status) {
+        this.status = status;
+    }
+    
+    public LocalDateTime getSubmittedAt() {
+        return submittedAt;
+    }
+    
+    public void setSubmittedAt(LocalDateTime submittedAt) {
+        this.submittedAt = submittedAt;
+    }
+    
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+    
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+    
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+    
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+    
+    public Integer getStageCount() {
+        return stageCount;
+    }
+    
+    public void setStageCount(Integer stageCount) {
+        this.stageCount = stageCount;
+    }
+    
+    public Integer getInsertedCount() {
+        return insertedCount;
+    }
+    
+    public void setInsertedCount(Integer insertedCount) {
+        this.insertedCount = insertedCount;
+    }
+    
+    public Integer getUpdatedCount() {
+        return updatedCount;
+    }
+    
+    public void setUpdatedCount(Integer updatedCount) {
+        this.updatedCount = updatedCount;
+    }
+    
+    public Integer getDeletedCount() {
+        return deletedCount;
+    }
+    
+    public void setDeletedCount(Integer deletedCount) {
+        this.deletedCount = deletedCount;
+    }
+    
+    public String getError() {
+        return error;
+    }
+    
+    public void setError(String error) {
+        this.error = error;
+    }
+}
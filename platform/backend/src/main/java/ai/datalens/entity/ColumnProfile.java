@@ -0,0 +1,126 @@
+package ai.datalens.entity;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+
+import java.util.UUID;
+
+@Entity
+@Table(name = "column_profiles",
+    uniqueConstraints = @UniqueConstraint(name = "uk_column_profile_source",
+        columnNames = {"project_id", "source_type", "source_name"}),
+    indexes = {
+        @Index(name = "idx_column_profile_project", columnList = "project_id")
+    })
+public class ColumnProfile extends BaseEntity {
+
+    @Column(name = "project_id", nullable = false)
+    private UUID projectId;
+
+    @NotBlank
+    @Size(max = 20)
+    @Column(name = "source_type", nullable = false)
+    private String sourceType;
+
+    @NotBlank
+    @Size(max = 1300)
+    @Column(name = "source_name", nullable = false)
+    private String sourceName;
+
+    // File etag for staged files; a changed file is profiled again
+    @Size(max = 255)
+    @Column(name = "source_version")
+    private String sourceVersion;
+
+    @Column(name = "row_count", nullable = false)
+    private long rowCount;
+
+    @Column(name = "column_count", nullable = false)
+    private int columnCount;
+
+    @Column(name = "elapsed_ms", nullable = false)
+    private long elapsedMs;
+
+    @Column(name = "columns_json", nullable = false, columnDefinition = "TEXT")
+    private String columnsJson;
+
+    // Constructors
+    public ColumnProfile() {}
+
+    // Getters and Setters
+    public UUID getProjectId() {
+        return projectId;
+    }
+
+    public void setProjectId(UUID projectId) {
+        this.projectId = projectId;
+    }
+
+    public String getSourceType() {
+        return sourceType;
+    }
+
+    public void setSourceType(String sourceType) {
+        this.sourceType = sourceType;
+    }
+
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    public void setSourceName(String sourceName) {
+        this.sourceName = sourceName;
+    }
+
+    public String getSourceVersion() {
+        return sourceVersion;
+    }
+
+    public void setSourceVersion(String sourceVersion) {
+        this.sourceVersion = sourceVersion;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public void setRowCount(long rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    public void setColumnCount(int columnCount) {
+        this.columnCount = columnCount;
+    }
+
+    public long getElapsedMs() {
+        return elapsedMs;
+    }
+
+    public void setElapsedMs(long elapsedMs) {
+        this.elapsedMs = elapsedMs;
+    }
+
+    public String getColumnsJson() {
+        return columnsJson;
+    }
+
+    public void setColumnsJson(String columnsJson) {
+        this.columnsJson = columnsJson;
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnProfile{" +
+            "id=" + getId() +
+            ", projectId=" + projectId +
+            ", sourceType='" + sourceType + '\'' +
+            ", sourceName='" + sourceName + '\'' +
+            ", rowCount=" + rowCount +
+            '}';
+    }
+}
@@ -0,0 +1,120 @@
+package ai.datalens.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(name = "project_catalog_crawls")
+public class ProjectCatalogCrawl {
+
+    @Id
+    @Column(name = "project_id", nullable = false, updatable = false)
+    private UUID projectId;
+
+    // Newest LAST_ALTERED stored; the next incremental crawl starts from here
+    @Column(name = "watermark")
+    private LocalDateTime watermark;
+
+    @Column(name = "crawled_at", nullable = false)
+    private LocalDateTime crawledAt;
+
+    @Column(name = "full_crawled_at")
+    private LocalDateTime fullCrawledAt;
+
+    @Column(name = "table_count", nullable = false)
+    private int tableCount;
+
+    @Column(name = "column_count", nullable = false)
+    private int columnCount;
+
+    @Column(name = "changed_count", nullable = false)
+    private int changedCount;
+
+    @Column(name = "deleted_count", nullable = false)
+    private int deletedCount;
+
+    @Column(name = "elapsed_ms", nullable = false)
+    private long elapsedMs;
+
+    // Constructors
+    public ProjectCatalogCrawl() {}
+
+    public ProjectCatalogCrawl(UUID projectId) {
+        this.projectId = projectId;
+    }
+
+    // Getters and Setters
+    public UUID getProjectId() {
+        return projectId;
+    }
+
+    public void setProjectId(UUID projectId) {
+        this.projectId = projectId;
+    }
+
+    public LocalDateTime getWatermark() {
+        return watermark;
+    }
+
+    public void setWatermark(LocalDateTime watermark) {
+        this.watermark = watermark;
+    }
+
+    public LocalDateTime getCrawledAt() {
+        return crawledAt;
+    }
+
+    public void setCrawledAt(LocalDateTime crawledAt) {
+        this.crawledAt = crawledAt;
+    }
+
+    public LocalDateTime getFullCrawledAt() {
+        return fullCrawledAt;
+    }
+
+    public void setFullCrawledAt(LocalDateTime fullCrawledAt) {
+        this.fullCrawledAt = fullCrawledAt;
+    }
+
+    public int getTableCount() {
+        return tableCount;
+    }
+
+    public void setTableCount(int tableCount) {
+        this.tableCount = tableCount;
+    }
+
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    public void setColumnCount(int columnCount) {
+        this.columnCount = columnCount;
+    }
+
+    public int getChangedCount() {
+        return changedCount;
+    }
+
+    public void setChangedCount(int changedCount) {
+        this.changedCount = changedCount;
+    }
+
+    public int getDeletedCount() {
+        return deletedCount;
+    }
+
+    public void setDeletedCount(int deletedCount) {
+        this.deletedCount = deletedCount;
+    }
+
+    public long getElapsedMs() {
+        return elapsedMs;
+    }
+
+    public void setElapsedMs(long elapsedMs) {
+        this.elapsedMs = elapsedMs;
+    }
+}
@@ -0,0 +1,129 @@
+package ai.datalens.entity;
+
+import jakarta.persistence.*;
+
+import java.util.UUID;
+
+@Entity
+@Table(name = "project_columns",
+    uniqueConstraints = @UniqueConstraint(name = "uk_project_column", columnNames = {"table_id", "column_name"}),
+    indexes = {
+        @Index(name = "idx_project_column_table", columnList = "table_id")
+    })
+public class ProjectColumn {
+
+    @Id
+    @Column(name = "id", nullable = false, updatable = false)
+    private UUID id;
+
+    @Column(name = "table_id", nullable = false)
+    private UUID tableId;
+
+    @Column(name = "column_name", nullable = false)
+    private String columnName;
+
+    @Column(name = "ordinal_position", nullable = false)
+    private int ordinalPosition;
+
+    @Column(name = "data_type")
+    private String dataType;
+
+    @Column(name = "character_maximum_length")
+    private Long characterMaximumLength;
+
+    @Column(name = "numeric_precision")
+    private Integer numericPrecision;
+
+    @Column(name = "numeric_scale")
+    private Integer numericScale;
+
+    @Column(name = "is_nullable", nullable = false)
+    private boolean nullable = true;
+
+    @Column(name = "comment", length = 2000)
+    private String comment;
+
+    // Constructors
+    public ProjectColumn() {}
+
+    // Getters and Setters
+    public UUID getId() {
+        return id;
+    }
+
+    public void setId(UUID id) {
+        this.id = id;
+    }
+
+    public UUID getTableId() {
+        return tableId;
+    }
+
+    public void setTableId(UUID tableId) {
+        this.tableId = tableId;
+    }
+
+    public String getColumnName() {
+        return columnName;
+    }
+
+    public void setColumnName(String columnName) {
+        this.columnName = columnName;
+    }
+
+    public int getOrdinalPosition() {
+        return ordinalPosition;
+    }
+
+    public void setOrdinalPosition(int ordinalPosition) {
+        this.ordinalPosition = ordinalPosition;
+    }
+
+    public String getDataType() {
+        return dataType;
+    }
+
+    public void setDataType(String dataType) {
+        this.dataType = dataType;
+    }
+
+    public Long getCharacterMaximumLength() {
+        return characterMaximumLength;
+    }
+
+    public void setCharacterMaximumLength(Long characterMaximumLength) {
+        this.characterMaximumLength = characterMaximumLength;
+    }
+
+    public Integer getNumericPrecision() {
+        return numericPrecision;
+    }
+
+    public void setNumericPrecision(Integer numericPrecision) {
+        this.numericPrecision = numericPrecision;
+    }
+
+    public Integer getNumericScale() {
+        return numericScale;
+    }
+
+    public void setNumericScale(Integer numericScale) {
+        this.numericScale = numericScale;
+    }
+
+    public boolean isNullable() {
+        return nullable;
+    }
+
+    public void setNullable(boolean nullable) {
+        this.nullable = nullable;
+    }
+
+    public String getComment() {
+        return comment;
+    }
+
+    public void setComment(String comment) {
+        this.comment = comment;
+    }
+}
@@ -0,0 +1,137 @@
+package ai.datalens.entity;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+
+import java.util.UUID;
+
+@Entity
+@Table(name = "project_connection_profiles",
+    uniqueConstraints = @UniqueConstraint(name = "uk_project_connection_profile", columnNames = "project_id"))
+public class ProjectConnectionProfile extends BaseEntity {
+
+    @Column(name = "project_id", nullable = false)
+    private UUID projectId;
+
+    // Account identifier, e.g. xy12345.eu-west-1
+    @NotBlank
+    @Size(max = 255)
+    @Column(name = "account", nullable = false)
+    private String account;
+
+    @NotBlank
+    @Size(max = 255)
+    @Column(name = "username", nullable = false)
+    private String username;
+
+    @Size(max = 255)
+    @Column(name = "role")
+    private String role;
+
+    @Size(max = 255)
+    @Column(name = "warehouse")
+    private String warehouse;
+
+    @Size(max = 255)
+    @Column(name = "database_name")
+    private String databaseName;
+
+    @Size(max = 255)
+    @Column(name = "schema_name")
+    private String schemaName;
+
+    @Column(name = "secret_ciphertext", nullable = false, columnDefinition = "TEXT")
+    private String secretCiphertext;
+
+    @Column(name = "max_pool_size", nullable = false)
+    private int maxPoolSize;
+
+    // Calls allowed to wait for a connection once all of them are in use
+    @Column(name = "queue_depth", nullable = false)
+    private int queueDepth;
+
+    // Constructors
+    public ProjectConnectionProfile() {}
+
+    // Getters and Setters
+    public UUID getProjectId() {
+        return projectId;
+    }
+
+    public void setProjectId(UUID projectId) {
+        this.projectId = projectId;
+    }
+
+    public String getAccount() {
+        return account;
+    }
+
+    public void setAccount(String account) {
+        this.account = account;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public void setRole(String role) {
+        this.role = role;
+    }
+
+    public String getWarehouse() {
+        return warehouse;
+    }
+
+    public void setWarehouse(String warehouse) {
+        this.warehouse = warehouse;
+    }
+
+    public String getDatabaseName() {
+        return databaseName;
+    }
+
+    public void setDatabaseName(String databaseName) {
+        this.databaseName = databaseName;
+    }
+
+    public String getSchemaName() {
+        return schemaName;
+    }
+
+    public void setSchemaName(String schemaName) {
+        this.schemaName = schemaName;
+    }
+
+    public String getSecretCiphertext() {
+        return secretCiphertext;
+    }
+
+    public void setSecretCiphertext(String secretCiphertext) {
+        this.secretCiphertext = secretCiphertext;
+    }
+
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    public void setMaxPoolSize(int maxPoolSize) {
+        this.maxPoolSize = maxPoolSize;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public void setQueueDepth(int queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+}
@@ -0,0 +1,140 @@
+package ai.datalens.entity;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+
+import java.util.UUID;
+
+@Entity
+@Table(name = "project_stages",
+    uniqueConstraints = @UniqueConstraint(name = "uk_project_stage",
+        columnNames = {"project_id", "stage_database", "stage_schema", "stage_name"}),
+    indexes = {
+        @Index(name = "idx_project_stage_project", columnList = "project_id")
+    })
+public class ProjectStage extends BaseEntity {
+
+    @Column(name = "project_id", nullable = false)
+    private UUID projectId;
+
+    @Size(max = 255)
+    @Column(name = "stage_database", nullable = false)
+    private String stageDatabase = "";
+
+    @Size(max = 255)
+    @Column(name = "stage_schema", nullable = false)
+    private String stageSchema = "";
+
+    @NotBlank
+    @Size(max = 255)
+    @Column(name = "stage_name", nullable = false)
+    private String stageName;
+
+    @Size(max = 50)
+    @Column(name = "stage_type")
+    private String stageType;
+
+    @Size(max = 2000)
+    @Column(name = "stage_location")
+    private String stageLocation;
+
+    @Size(max = 2000)
+    @Column(name = "comment")
+    private String comment;
+
+    @Size(max = 255)
+    @Column(name = "owner")
+    private String owner;
+
+    @Size(max = 64)
+    @Column(name = "stage_created")
+    private String stageCreated;
+
+    // Constructors
+    public ProjectStage() {}
+
+    // Getters and Setters
+    public UUID getProjectId() {
+        return projectId;
+    }
+
+    public void setProjectId(UUID projectId) {
+        this.projectId = projectId;
+    }
+
+    public String getStageDatabase() {
+        return stageDatabase;
+    }
+
+    public void setStageDatabase(String stageDatabase) {
+        this.stageDatabase = stageDatabase;
+    }
+
+    public String getStageSchema() {
+        return stageSchema;
+    }
+
+    public void setStageSchema(String stageSchema) {
+        this.stageSchema = stageSchema;
+    }
+
+    public String getStageName() {
+        return stageName;
+    }
+
+    public void setStageName(String stageName) {
+        this.stageName = stageName;
+    }
+
+    public String getStageType() {
+        return stageType;
+    }
+
+    public void setStageType(String stageType) {
+        this.stageType = stageType;
+    }
+
+    public String getStageLocation() {
+        return stageLocation;
+    }
+
+    public void setStageLocation(String stageLocation) {
+        this.stageLocation = stageLocation;
+    }
+
+    public String getComment() {
+        return comment;
+    }
+
+    public void setComment(String comment) {
+        this.comment = comment;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    public String getStageCreated() {
+        return stageCreated;
+    }
+
+    public void setStageCreated(String stageCreated) {
+        this.stageCreated = stageCreated;
+    }
+
+    @Override
+    public String toString() {
+        return "ProjectStage{" +
+            "id=" + getId() +
+            ", projectId=" + projectId +
+            ", stageDatabase='" + stageDatabase + '\'' +
+            ", stageSchema='" + stageSchema + '\'' +
+            ", stageName='" + stageName + '\'' +
+            '}';
+    }
+}
@@ -0,0 +1,86 @@
+package ai.datalens.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(name = "project_stage_syncs")
+public class ProjectStageSync {
+
+    @Id
+    @Column(name = "project_id", nullable = false, updatable = false)
+    private UUID projectId;
+
+    @Column(name = "synced_at", nullable = false)
+    private LocalDateTime syncedAt;
+
+    @Column(name = "stage_count", nullable = false)
+    private int stageCount;
+
+    @Column(name = "inserted_count", nullable = false)
+    private int insertedCount;
+
+    @Column(name = "updated_count", nullable = false)
+    private int updatedCount;
+
+    @Column(name = "deleted_count", nullable = false)
+    private int deletedCount;
+
+    // Constructors
+    public ProjectStageSync() {}
+
+    public ProjectStageSync(UUID projectId) {
+        this.projectId = projectId;
+    }
+
+    // Getters and Setters
+    public UUID getProjectId() {
+        return projectId;
+    }
+
+    public void setProjectId(UUID projectId) {
+        this.projectId = projectId;
+    }
+
+    public LocalDateTime getSyncedAt() {
+        return syncedAt;
+    }
+
+    public void setSyncedAt(LocalDateTime syncedAt) {
+        this.syncedAt = syncedAt;
+    }
+
+    public int getStageCount() {
+        return stageCount;
+    }
+
+    public void setStageCount(int stageCount) {
+        this.stageCount = stageCount;
+    }
+
+    public int getInsertedCount() {
+        return insertedCount;
+    }
+
+    public void setInsertedCount(int insertedCount) {
+        this.insertedCount = insertedCount;
+    }
+
+    public int getUpdatedCount() {
+        return updatedCount;
+    }
+
+    public void setUpdatedCount(int updatedCount) {
+        this.updatedCount = updatedCount;
+    }
+
+    public int getDeletedCount() {
+        return deletedCount;
+    }
+
+    public void setDeletedCount(int deletedCount) {
+        this.deletedCount = deletedCount;
+    }
+}
@@ -0,0 +1,138 @@
+package ai.datalens.entity;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(name = "project_tables",
+    uniqueConstraints = @UniqueConstraint(name = "uk_project_table",
+        columnNames = {"project_id", "table_catalog", "table_schema", "table_name"}),
+    indexes = {
+        @Index(name = "idx_project_table_project", columnList = "project_id")
+    })
+public class ProjectTable extends BaseEntity {
+
+    @Column(name = "project_id", nullable = false)
+    private UUID projectId;
+
+    @Size(max = 255)
+    @Column(name = "table_catalog", nullable = false)
+    private String tableCatalog = "";
+
+    @NotBlank
+    @Size(max = 255)
+    @Column(name = "table_schema", nullable = false)
+    private String tableSchema;
+
+    @NotBlank
+    @Size(max = 255)
+    @Column(name = "table_name", nullable = false)
+    private String tableName;
+
+    @Size(max = 50)
+    @Column(name = "table_type")
+    private String tableType;
+
+    @Column(name = "row_count")
+    private Long rowCount;
+
+    @Column(name = "bytes")
+    private Long bytes;
+
+    @Size(max = 2000)
+    @Column(name = "comment")
+    private String comment;
+
+    @Column(name = "last_altered")
+    private LocalDateTime lastAltered;
+
+    // Constructors
+    public ProjectTable() {}
+
+    // Getters and Setters
+    public UUID getProjectId() {
+        return projectId;
+    }
+
+    public void setProjectId(UUID projectId) {
+        this.projectId = projectId;
+    }
+
+    public String getTableCatalog() {
+        return tableCatalog;
+    }
+
+    public void setTableCatalog(String tableCatalog) {
+        this.tableCatalog = tableCatalog;
+    }
+
+    public String getTableSchema() {
+        return tableSchema;
+    }
+
+    public void setTableSchema(String tableSchema) {
+        this.tableSchema = tableSchema;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public void setTableName(String tableName) {
+        this.tableName = tableName;
+    }
+
+    public String getTableType() {
+        return tableType;
+    }
+
+    public void setTableType(String tableType) {
+        this.tableType = tableType;
+    }
+
+    public Long getRowCount() {
+        return rowCount;
+    }
+
+    public void setRowCount(Long rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    public Long getBytes() {
+        return bytes;
+    }
+
+    public void setBytes(Long bytes) {
+        this.bytes = bytes;
+    }
+
+    public String getComment() {
+        return comment;
+    }
+
+    public void setComment(String comment) {
+        this.comment = comment;
+    }
+
+    public LocalDateTime getLastAltered() {
+        return lastAltered;
+    }
+
+    public void setLastAltered(LocalDateTime lastAltered) {
+        this.lastAltered = lastAltered;
+    }
+
+    @Override
+    public String toString() {
+        return "ProjectTable{" +
+            "id=" + getId() +
+            ", projectId=" + projectId +
+            ", tableSchema='" + tableSchema + '\'' +
+            ", tableName='" + tableName + '\'' +
+            '}';
+    }
+}
@@ -0,0 +1,42 @@
+package ai.datalens.entity;
+
+import jakarta.persistence.*;
+
+import java.util.UUID;
+
+@Entity
+@Table(name = "security_versions")
+public class SecurityVersion {
+
+    @Id
+    @Column(name = "user_id", nullable = false, updatable = false)
+    private UUID userId;
+
+    @Column(name = "version", nullable = false)
+    private long version;
+
+    // Constructors
+    public SecurityVersion() {}
+
+    public SecurityVersion(UUID userId, long version) {
+        this.userId = userId;
+        this.version = version;
+    }
+
+    // Getters and Setters
+    public UUID getUserId() {
+        return userId;
+    }
+
+    public void setUserId(UUID userId) {
+        this.userId = userId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+}
@@ -0,0 +1,28 @@
+package ai.datalens.repository;
+
+import ai.datalens.entity.ColumnProfile;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface ColumnProfileRepository extends JpaRepository<ColumnProfile, UUID> {
+
+    /**
+     * Find a project's profiles, most recently computed first
+     */
+    List<ColumnProfile> findByProjectIdOrderByUpdatedAtDesc(UUID projectId);
+
+    /**
+     * Find the stored profile of one table or staged file
+     */
+    Optional<ColumnProfile> findByProjectIdAndSourceTypeAndSourceName(UUID projectId, String sourceType, String sourceName);
+
+    /**
+     * Find a profile within a project
+     */
+    Optional<ColumnProfile> findByIdAndProjectId(UUID id, UUID projectId);
+}
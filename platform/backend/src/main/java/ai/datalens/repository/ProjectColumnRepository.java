@@ -0,0 +1,17 @@
+package ai.datalens.repository;
+
+import ai.datalens.entity.ProjectColumn;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface ProjectColumnRepository extends JpaRepository<ProjectColumn, UUID> {
+
+    /**
+     * Find a table's columns in their declared order
+     */
+    List<ProjectColumn> findByTableIdOrderByOrdinalPositionAsc(UUID tableId);
+}
@@ -0,0 +1,17 @@
+package ai.datalens.repository;
+
+import ai.datalens.entity.ProjectConnectionProfile;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface ProjectConnectionProfileRepository extends JpaRepository<ProjectConnectionProfile, UUID> {
+
+    /**
+     * Find a project's connection profile, if it has its own
+     */
+    Optional<ProjectConnectionProfile> findByProjectId(UUID projectId);
+}
@@ -142,6 +142,17 @@ public interface ProjectRepository extends JpaRepository<Project, UUID> {
     @Query("SELECT p FROM Project p WHERE p.user = :user AND p.isActive = true ORDER BY p.updateDate DESC")
     Page<Project> findActiveProjectsByUserOrderByUpdateDateDesc(@Param("user") User user, Pageable pageable);
 
+    /**
+     * Find IDs of active projects updated since a date, most recently updated first
+     */
+    @Query("SELECT p.id FROM Project p WHERE p.isActive = true AND p.updateDate >= :since ORDER BY p.updateDate DESC")
+    List<UUID> findActiveProjectIdsUpdatedSince(@Param("since") java.time.LocalDateTime since, Pageable pageable);
+
+    /**
+     * Find all active projects
+     */
+    List<Project> findByIsActiveTrue();
+
     /**
      * Find all projects with user eagerly loaded (for admin)
      */
@@ -0,0 +1,22 @@
+package ai.datalens.repository;
+
+import ai.datalens.entity.ProjectStage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface ProjectStageRepository extends JpaRepository<ProjectStage, UUID> {
+
+    /**
+     * Find the stage catalog of a project ordered by stage name
+     */
+    List<ProjectStage> findByProjectIdOrderByStageNameAsc(UUID projectId);
+
+    /**
+     * Count stages in a project's catalog
+     */
+    long countByProjectId(UUID projectId);
+}
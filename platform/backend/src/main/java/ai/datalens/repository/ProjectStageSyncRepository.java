@@ -0,0 +1,11 @@
+package ai.datalens.repository;
+
+import ai.datalens.entity.ProjectStageSync;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.UUID;
+
+@Repository
+public interface ProjectStageSyncRepository extends JpaRepository<ProjectStageSync, UUID> {
+}
@@ -0,0 +1,29 @@
+package ai.datalens.repository;
+
+import ai.datalens.entity.ProjectTable;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface ProjectTableRepository extends JpaRepository<ProjectTable, UUID> {
+
+    /**
+     * Find a page of a project's catalogued tables ordered by schema and name
+     */
+    Page<ProjectTable> findByProjectIdOrderByTableSchemaAscTableNameAsc(UUID projectId, Pageable pageable);
+
+    /**
+     * Find a page of the catalogued tables in one schema
+     */
+    Page<ProjectTable> findByProjectIdAndTableSchemaOrderByTableNameAsc(UUID projectId, String tableSchema, Pageable pageable);
+
+    /**
+     * Find one catalogued table
+     */
+    Optional<ProjectTable> findFirstByProjectIdAndTableSchemaAndTableName(UUID projectId, String tableSchema, String tableName);
+}
@@ -0,0 +1,21 @@
+package ai.datalens.repository;
+
+import ai.datalens.entity.SecurityVersion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.UUID;
+
+@Repository
+public interface SecurityVersionRepository extends JpaRepository<SecurityVersion, UUID> {
+
+    /**
+     * @return the number of rows updated: 0 if the user has no version yet
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE SecurityVersion v SET v.version = v.version + 1 WHERE v.userId = :userId")
+    int increment(@Param("userId") UUID userId);
+}
@@ -1,7 +1,7 @@
 package ai.datalens.security;
 
 import ai.datalens.constants.SecurityConstants;
-import ai.datalens.service.UserDetailsServiceImpl;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -9,6 +9,7 @@ import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.authentication.DisabledException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -28,17 +29,22 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private JwtUtils jwtUtils;
 
     @Autowired
-    private UserDetailsServiceImpl userDetailsService;
+    private UserPrincipalCache principalCache;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
                                     FilterChain filterChain) throws ServletException, IOException {
         try {
             String jwt = parseJwt(request);
-            if (jwt != null && jwtUtils.validateAccessToken(jwt)) {
-                String email = jwtUtils.getEmailFromAccessToken(jwt);
-
-                UserDetails userDetails = userDetailsService.loadUserByUsername(email);
+            Claims claims = jwt != null ? jwtUtils.getAccessTokenClaims(jwt) : null;
+            if (claims != null) {
+                UserDetails userDetails = jwtUtils.getPrincipalFromClaims(claims);
+                if (userDetails == null) {
+                    userDetails = principalCache.get(claims.getSubject());
+                }
+                if (!userDetails.isEnabled()) {
+                    throw new DisabledException("User account is not active");
+                }
                 UsernamePasswordAuthenticationToken authentication = 
                     new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
                 authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
@@ -0,0 +1,374 @@
+package ai.datalens.security;
+
+import ai.datalens.service.SecretCipher;
+import io.jsonwebtoken.Header;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.ProtectedHeader;
+import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * JWT signing keys by {@code kid}.
+ *
+ * The key from spring.security.jwt.secret-key has kid "static-" plus a fingerprint of the
+ * secret, and also verifies tokens issued without a kid or with the plain kid "static". When the
+ * secret changes, the previous key keeps verifying under its own kid for refresh-expiration.
+ * With spring.security.jwt.rotation.enabled, one node adds a random key every rotation.interval
+ * to a Redis hash, encrypted under rotation.encryption-key; every node loads the hash every
+ * reload-interval, and right away when it meets a kid it doesn't know. A new key starts signing
+ * after activation-delay, once all nodes have it, and the key it replaces keeps verifying for
+ * refresh-expiration after that, as does a key that vanished from Redis. Sessions therefore roll
+ * over to the new key as their tokens are refreshed instead of all at once.
+ */
+@Component
+public class JwtKeyRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(JwtKeyRegistry.class);
+
+    static final String STATIC_KID = "static";
+
+    private static final String SECRET_KEY_PROPERTY = "spring.security.jwt.secret-key";
+
+    static final String ENCRYPTION_KEY_PROPERTY = "spring.security.jwt.rotation.encryption-key";
+
+    private static final String KEYS_KEY = "datalens:jwt-keys";
+
+    private static final String ROTATION_LOCK_KEY = "datalens:jwt-keys:rotation";
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Value("${spring.security.jwt.secret-key}")
+    private String jwtSecret;
+
+    @Value("${spring.security.jwt.refresh-expiration}")
+    private long refreshExpirationMs;
+
+    @Value("${spring.security.jwt.rotation.enabled:false}")
+    private boolean rotationEnabled;
+
+    @Value("${spring.security.jwt.rotation.encryption-key:}")
+    private String rotationEncryptionKey;
+
+    @Value("${spring.security.jwt.rotation.interval:604800000}")
+    private long rotationIntervalMs;
+
+    @Value("${spring.security.jwt.rotation.activation-delay:120000}")
+    private long activationDelayMs;
+
+    // Reloads triggered by unknown kids are at most this frequent
+    @Value("${spring.security.jwt.rotation.unknown-kid-reload-interval:5000}")
+    private long unknownKidReloadIntervalMs;
+
+    private volatile KeySet keySet;
+
+    private volatile String staticSecret;
+
+    private volatile long lastReloadAt;
+
+    private JwtParser parser;
+
+    private SecretCipher keyCipher;
+
+    /**
+     * @throws IllegalStateException if rotation is enabled without a valid rotation.encryption-key
+     */
+    @PostConstruct
+    public void init() {
+        staticSecret = jwtSecret;
+        SigningKey staticKey = staticKey(jwtSecret);
+        keySet = new KeySet(staticKey, Map.of(staticKey.kid(), staticKey));
+        parser = Jwts.parser().keyLocator(this::locate).build();
+        if (rotationEnabled) {
+            if (rotationEncryptionKey == null || rotationEncryptionKey.isBlank()) {
+                throw new IllegalStateException("JWT key rotation is enabled but " + ENCRYPTION_KEY_PROPERTY + " is not set");
+            }
+            keyCipher = new SecretCipher(ENCRYPTION_KEY_PROPERTY, rotationEncryptionKey);
+            reload();
+            rotateIfDue();
+        }
+    }
+
+    /**
+     * Parser verifying tokens with whichever registered key their kid names
+     */
+    public JwtParser parser() {
+        return parser;
+    }
+
+    /**
+     * Key new tokens are signed with
+     */
+    public SigningKey signingKey() {
+        long now = System.currentTimeMillis();
+        KeySet current = keySet;
+        return current.byKid().values().stream()
+                .filter(key -> key != current.staticKey() && key.activatesAt() <= now && key.supersededAt() > now)
+                .max(Comparator.comparingLong(SigningKey::activatesAt))
+                .orElse(current.staticKey());
+    }
+
+    /**
+     * The registered, unretired key with this kid, or null; a null or "static" kid names the static key
+     */
+    public SigningKey find(String kid) {
+        KeySet current = keySet;
+        if (kid == null || STATIC_KID.equals(kid)) {
+            return current.staticKey();
+        }
+        SigningKey key = current.byKid().get(kid);
+        return key != null && !isRetired(key, System.currentTimeMillis()) ? key : null;
+    }
+
+    /**
+     * Pick up a changed static secret, other nodes' keys, rotate when due, and retire keys no
+     * unexpired token can have been signed with
+     */
+    @Scheduled(fixedDelayString = "${spring.security.jwt.rotation.reload-interval:30000}")
+    public void refresh() {
+        String secret = environment.getProperty(SECRET_KEY_PROPERTY);
+        if (secret != null && !secret.equals(staticSecret)) {
+            synchronized (this) {
+                KeySet current = keySet;
+                staticSecret = secret;
+                SigningKey previous = current.staticKey();
+                SigningKey staticKey = staticKey(secret);
+                Map<String, SigningKey> byKid = new HashMap<>(current.byKid());
+                // Tokens signed with the previous secret stay valid until they expire
+                byKid.put(previous.kid(), previous.superseded(System.currentTimeMillis()));
+                byKid.put(staticKey.kid(), staticKey);
+                keySet = new KeySet(staticKey, Map.copyOf(byKid));
+                logger.info("JWT secret key changed; static key {} replaces {}, which verifies for another {} ms",
+                        staticKey.kid(), previous.kid(), refreshExpirationMs);
+            }
+        }
+        if (rotationEnabled) {
+            reload();
+            rotateIfDue();
+        } else {
+            retire();
+        }
+    }
+
+    private Key locate(Header header) {
+        String kid = header instanceof ProtectedHeader protectedHeader ? protectedHeader.getKeyId() : null;
+        SigningKey key = find(kid);
+        if (key == null && rotationEnabled && System.currentTimeMillis() - lastReloadAt >= unknownKidReloadIntervalMs) {
+            // Possibly rotated on another node since the last reload
+            reload();
+            key = find(kid);
+        }
+        if (key == null) {
+            throw new JwtException("Unknown signing key: " + kid);
+        }
+        return key.key();
+    }
+
+    /**
+     * Replace the rotated keys with those in Redis, and delete from Redis the keys whose
+     * successor has been signing for longer than refresh-expiration
+     */
+    synchronized void reload() {
+        long now = System.currentTimeMillis();
+        lastReloadAt = now;
+        Map<Object, Object> stored;
+        try {
+            stored = redisTemplate.opsForHash().entries(KEYS_KEY);
+        } catch (RuntimeException e) {
+            logger.warn("Could not load JWT signing keys: {}", e.getMessage());
+            return;
+        }
+
+        KeySet current = keySet;
+        List<SigningKey> rotated = new ArrayList<>();
+        stored.forEach((field, value) -> {
+            String kid = field.toString();
+            if (kid.startsWith(STATIC_KID)) {
+                return;
+            }
+            SigningKey known = current.byKid().get(kid);
+            if (known != null) {
+                rotated.add(known);
+                return;
+            }
+            try {
+                rotated.add(decode(kid, value.toString()));
+            } catch (RuntimeException e) {
+                logger.warn("Ignoring unreadable JWT signing key {}: {}", kid, e.getMessage());
+            }
+        });
+
+        // A key stops signing when its successor activates
+        rotated.sort(Comparator.comparingLong(SigningKey::activatesAt));
+        Map<String, SigningKey> byKid = new HashMap<>();
+        for (int i = 0; i < rotated.size(); i++) {
+            SigningKey key = rotated.get(i);
+            byKid.put(key.kid(), i + 1 < rotated.size() ? key.superseded(rotated.get(i + 1).activatesAt()) : key);
+        }
+        // Static keys, and keys gone from Redis (flushed, or deleted by another node), are kept
+        // until they retire; the latter stop signing now
+        current.byKid().values().forEach(key -> {
+            if (key.kid().startsWith(STATIC_KID)) {
+                byKid.put(key.kid(), key);
+            } else if (!byKid.containsKey(key.kid())) {
+                byKid.put(key.kid(), key.superseded(now));
+            }
+        });
+
+        for (SigningKey key : rotated) {
+            if (isRetired(byKid.get(key.kid()), now)) {
+                try {
+                    redisTemplate.opsForHash().delete(KEYS_KEY, key.kid());
+                    logger.info("Dropped expired JWT signing key {}", key.kid());
+                } catch (RuntimeException e) {
+                    logger.warn("Could not drop expired JWT signing key {}: {}", key.kid(), e.getMessage());
+                }
+            }
+        }
+        keySet = new KeySet(current.staticKey(), unretired(byKid, now));
+    }
+
+    /**
+     * Forget keys no unexpired token can have been signed with
+     */
+    synchronized void retire() {
+        KeySet current = keySet;
+        Map<String, SigningKey> byKid = unretired(current.byKid(), System.currentTimeMillis());
+        if (byKid.size() != current.byKid().size()) {
+            keySet = new KeySet(current.staticKey(), byKid);
+        }
+    }
+
+    /**
+     * Add a key when the newest is older than the rotation interval
+     */
+    void rotateIfDue() {
+        long now = System.currentTimeMillis();
+        KeySet current = keySet;
+        SigningKey newest = current.byKid().values().stream()
+                .filter(key -> !key.kid().startsWith(STATIC_KID) && key.supersededAt() == Long.MAX_VALUE)
+                .max(Comparator.comparingLong(SigningKey::activatesAt))
+                .orElse(null);
+        if (newest != null && now - newest.createdAt() < rotationIntervalMs) {
+            return;
+        }
+
+        try {
+            // One node per round adds the key
+            Boolean locked = redisTemplate.opsForValue().setIfAbsent(ROTATION_LOCK_KEY, "1",
+                    Duration.ofMillis(Math.max(activationDelayMs, 60000)));
+            if (!Boolean.TRUE.equals(locked)) {
+                return;
+            }
+            byte[] secret = new byte[32];
+            RANDOM.nextBytes(secret);
+            String kid = UUID.randomUUID().toString();
+            redisTemplate.opsForHash().put(KEYS_KEY, kid, encode(kid, secret, now));
+            logger.info("Added JWT signing key {}; it signs from {} ms from now", kid, activationDelayMs);
+        } catch (RuntimeException e) {
+            logger.warn("Could not rotate JWT signing key: {}", e.getMessage());
+            return;
+        }
+        reload();
+    }
+
+    /**
+     * A superseded key retires once the longest-lived token it could have signed has expired
+     */
+    private boolean isRetired(SigningKey key, long now) {
+        return key.supersededAt() != Long.MAX_VALUE && key.supersededAt() + refreshExpirationMs <= now;
+    }
+
+    private Map<String, SigningKey> unretired(Map<String, SigningKey> byKid, long now) {
+        Map<String, SigningKey> kept = new HashMap<>();
+        byKid.forEach((kid, key) -> {
+            if (!isRetired(key, now)) {
+                kept.put(kid, key);
+            }
+        });
+        return Map.copyOf(kept);
+    }
+
+    private static SigningKey staticKey(String secret) {
+        return SigningKey.of(staticKid(secret), secret.getBytes(StandardCharsets.UTF_8), 0, 0);
+    }
+
+    /**
+     * "static-" plus a MAC of a fixed label under the secret, the same on every node and
+     * revealing nothing a signed token doesn't
+     */
+    static String staticKid(String secret) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            byte[] digest = mac.doFinal(STATIC_KID.getBytes(StandardCharsets.UTF_8));
+            return STATIC_KID + "-" + HexFormat.of().formatHex(digest, 0, 8);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not derive the static key id", e);
+        }
+    }
+
+    private String encode(String kid, byte[] secret, long createdAt) {
+        return createdAt + ":" + keyCipher.encrypt(Base64.getEncoder().encodeToString(secret), kid);
+    }
+
+    private SigningKey decode(String kid, String value) {
+        int separator = value.indexOf(':');
+        long createdAt = Long.parseLong(value.substring(0, separator));
+        byte[] secret = Base64.getDecoder().decode(keyCipher.decrypt(value.substring(separator + 1), kid));
+        return SigningKey.of(kid, secret, createdAt, createdAt + activationDelayMs);
+    }
+
+    /**
+     * A registered key; it signs new tokens from activatesAt until supersededAt, when a newer key
+     * took over, and verifies them for refresh-expiration after that
+     */
+    public record SigningKey(String kid, SecretKey key, long createdAt, long activatesAt, long supersededAt) {
+
+        static SigningKey of(String kid, byte[] secret, long createdAt, long activatesAt) {
+            return new SigningKey(kid, Keys.hmacShaKeyFor(secret), createdAt, activatesAt, Long.MAX_VALUE);
+        }
+
+        /**
+         * This key superseded at the given time, or at its earlier supersession; unchanged keys are
+         * returned as is so tokens cached against them stay valid
+         */
+        SigningKey superseded(long at) {
+            return at >= supersededAt ? this : new SigningKey(kid, key, createdAt, activatesAt, at);
+        }
+    }
+
+    private record KeySet(SigningKey staticKey, Map<String, SigningKey> byKid) {}
+}
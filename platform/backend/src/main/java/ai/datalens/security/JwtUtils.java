@@ -1,25 +1,61 @@
 package ai.datalens.security;
 
 import ai.datalens.constants.JwtTokenType;
+import ai.datalens.constants.SecurityConstants;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.*;
-import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.CredentialsExpiredException;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Component;
 
-import javax.crypto.SecretKey;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Date;
-
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Issues and verifies the application's JWTs.
+ *
+ * Tokens are signed with the current key of {@link JwtKeyRegistry} and name it in their kid
+ * header. Verified claims are kept by token signature, up to
+ * spring.security.jwt.claims-cache.max-size tokens and each until its token expires, so a
+ * bearer token seen before costs a lookup instead of an HMAC check.
+ */
 @Component
 public class JwtUtils {
 
     private static final Logger logger = LoggerFactory.getLogger(JwtUtils.class);
 
-    @Value("${spring.security.jwt.secret-key}")
-    private String jwtSecret;
+    static final String CACHE_NAME = "jwt.claims";
+
+    // Claims of access tokens in stateless mode: user id, role and permission names, security version
+    private static final String USER_ID_CLAIM = "uid";
+    private static final String ROLES_CLAIM = "rol";
+    private static final String PERMISSIONS_CLAIM = "prm";
+    private static final String VERSION_CLAIM = "ver";
+
+    @Autowired
+    private SecurityVersions securityVersions;
+
+    @Autowired
+    private JwtKeyRegistry keyRegistry;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
 
     @Value("${spring.security.jwt.expiration}")
     private long jwtExpirationMs;
@@ -33,9 +69,67 @@ public class JwtUtils {
     @Value("${spring.security.jwt.password-reset-expiration:3600000}") // 1 hour default
     private long passwordResetExpirationMs;
 
-    private SecretKey getSigningKey() {
-        byte[] keyBytes = jwtSecret.getBytes(StandardCharsets.UTF_8);
-        return Keys.hmacShaKeyFor(keyBytes);
+    @Value("${spring.security.jwt.claims-cache.max-size:10000}")
+    private long claimsCacheMaxSize;
+
+    // Verified claims by token signature
+    private Cache<String, VerifiedToken> verifiedTokens;
+
+    @PostConstruct
+    public void init() {
+        verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(claimsCacheMaxSize)
+                .expireAfter(new Expiry<String, VerifiedToken>() {
+                    @Override
+                    public long expireAfterCreate(String signature, VerifiedToken token, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, token.expiresAt() - System.currentTimeMillis()));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String signature, VerifiedToken token, long currentTime, long currentDuration) {
+                        return expireAfterCreate(signature, token, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String signature, VerifiedToken token, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, CACHE_NAME);
+    }
+
+    private JwtBuilder signedBuilder() {
+        JwtKeyRegistry.SigningKey signingKey = keyRegistry.signingKey();
+        return Jwts.builder()
+            .header().keyId(signingKey.kid()).and()
+            .signWith(signingKey.key());
+    }
+
+    /**
+     * Verify the token, or find it among tokens verified before with a key still registered
+     */
+    private Claims parseClaims(String token) {
+        if (token == null) {
+            throw new IllegalArgumentException("JWT string cannot be null");
+        }
+        String signature = token.substring(token.lastIndexOf('.') + 1);
+        VerifiedToken cached = verifiedTokens.getIfPresent(signature);
+        // A key that was dropped or replaced no longer vouches for its tokens
+        if (cached != null && cached.token().equals(token) && cached.expiresAt() > System.currentTimeMillis()
+                && keyRegistry.find(cached.kid()) == cached.signingKey()) {
+            return cached.claims();
+        }
+
+        Jws<Claims> jws = keyRegistry.parser().parseSignedClaims(token);
+        Claims claims = jws.getPayload();
+        if (claims.getExpiration() != null) {
+            String kid = jws.getHeader().getKeyId();
+            verifiedTokens.put(signature, new VerifiedToken(token, claims, claims.getExpiration().getTime(),
+                    kid, keyRegistry.find(kid)));
+        }
+        return claims;
     }
 
     public String generateJwtToken(Authentication authentication) {
@@ -51,30 +145,22 @@ public class JwtUtils {
     public String generateTokenFromUserId(String userId, long expirationMs) {
         Date expiryDate = new Date(System.currentTimeMillis() + expirationMs);
 
-        return Jwts.builder()
+        return signedBuilder()
             .subject(userId)
             .issuedAt(new Date())
             .expiration(expiryDate)
-            .signWith(getSigningKey())
             .compact();
     }
 
     public String getUserIdFromJwtToken(String token) {
-        Claims claims = Jwts.parser()
-            .verifyWith(getSigningKey())
-            .build()
-            .parseSignedClaims(token)
-            .getPayload();
+        Claims claims = parseClaims(token);
 
         return claims.getSubject();
     }
 
     public boolean validateJwtToken(String authToken) {
         try {
-            Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(authToken);
+            parseClaims(authToken);
             return true;
         } catch (MalformedJwtException e) {
             logger.error("Invalid JWT token: {}", e.getMessage());
@@ -90,11 +176,7 @@ public class JwtUtils {
     }
 
     public Date getExpirationDateFromToken(String token) {
-        Claims claims = Jwts.parser()
-            .verifyWith(getSigningKey())
-            .build()
-            .parseSignedClaims(token)
-            .getPayload();
+        Claims claims = parseClaims(token);
 
         return claims.getExpiration();
     }
@@ -114,7 +196,33 @@ public class JwtUtils {
 
     // New methods for AuthService
     public String generateAccessToken(UserPrincipal userPrincipal) {
-        return generateTokenFromEmail(userPrincipal.getEmail(), jwtExpirationMs, JwtTokenType.ACCESS);
+        if (!securityVersions.isEnabled()) {
+            return generateTokenFromEmail(userPrincipal.getEmail(), jwtExpirationMs, JwtTokenType.ACCESS);
+        }
+
+        // Stateless mode: carry what the filter needs so requests don't load the user
+        List<String> roles = new ArrayList<>();
+        List<String> permissions = new ArrayList<>();
+        for (GrantedAuthority authority : userPrincipal.getAuthorities()) {
+            String name = authority.getAuthority();
+            if (name.startsWith(SecurityConstants.ROLE_PREFIX)) {
+                roles.add(name.substring(SecurityConstants.ROLE_PREFIX.length()));
+            } else if (name.startsWith(SecurityConstants.PERMISSION_PREFIX)) {
+                permissions.add(name.substring(SecurityConstants.PERMISSION_PREFIX.length()));
+            }
+        }
+        Date expiryDate = new Date(System.currentTimeMillis() + jwtExpirationMs);
+
+        return signedBuilder()
+            .subject(userPrincipal.getEmail())
+            .claim("type", JwtTokenType.ACCESS)
+            .claim(USER_ID_CLAIM, userPrincipal.getId().toString())
+            .claim(ROLES_CLAIM, roles)
+            .claim(PERMISSIONS_CLAIM, permissions)
+            .claim(VERSION_CLAIM, securityVersions.current(userPrincipal.getId()))
+            .issuedAt(new Date())
+            .expiration(expiryDate)
+            .compact();
     }
 
     public String generateRefreshToken(UserPrincipal userPrincipal) {
@@ -132,12 +240,11 @@ public class JwtUtils {
     private String generateTokenFromEmail(String email, long expirationMs, String tokenType) {
         Date expiryDate = new Date(System.currentTimeMillis() + expirationMs);
 
-        return Jwts.builder()
+        return signedBuilder()
             .subject(email)
             .claim("type", tokenType)
             .issuedAt(new Date())
             .expiration(expiryDate)
-            .signWith(getSigningKey())
             .compact();
     }
 
@@ -155,11 +262,7 @@ public class JwtUtils {
 
     private boolean validateTokenOfType(String token, String expectedType) {
         try {
-            Claims claims = Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+            Claims claims = parseClaims(token);
 
             String tokenType = claims.get("type", String.class);
             return expectedType.equals(tokenType);
@@ -182,11 +285,7 @@ public class JwtUtils {
     }
 
     private String getEmailFromTokenOfType(String token, String expectedType) {
-        Claims claims = Jwts.parser()
-            .verifyWith(getSigningKey())
-            .build()
-            .parseSignedClaims(token)
-            .getPayload();
+        Claims claims = parseClaims(token);
 
         String tokenType = claims.get("type", String.class);
         if (!expectedType.equals(tokenType)) {
@@ -204,7 +303,68 @@ public class JwtUtils {
         return validateTokenOfType(token, JwtTokenType.ACCESS);
     }
 
+    /**
+     * Verified claims of an access token, or null if it is invalid, expired or not an access token
+     */
+    public Claims getAccessTokenClaims(String token) {
+        try {
+            Claims claims = parseClaims(token);
+            String tokenType = claims.get("type", String.class);
+            if (JwtTokenType.ACCESS.equals(tokenType)) {
+                return claims;
+            }
+            logger.error("Invalid {} token: type is {}", JwtTokenType.ACCESS, tokenType);
+        } catch (Exception e) {
+            logger.error("Invalid {} token: {}", JwtTokenType.ACCESS, e.getMessage());
+        }
+        return null;
+    }
+
     public String getEmailFromAccessToken(String token) {
         return getEmailFromTokenOfType(token, JwtTokenType.ACCESS);
     }
-}
\ No newline at end of file
+
+    /**
+     * The principal carried by a stateless-mode access token, or null if the token carries none
+     * or stateless mode is off, in which case the user has to be loaded
+     *
+     * @throws CredentialsExpiredException if the user's security version moved past the token's
+     */
+    public UserPrincipal getPrincipalFromAccessToken(String token) {
+        if (!securityVersions.isEnabled()) {
+            return null;
+        }
+        return getPrincipalFromClaims(parseClaims(token));
+    }
+
+    /**
+     * Like {@link #getPrincipalFromAccessToken(String)}, for claims already verified
+     */
+    public UserPrincipal getPrincipalFromClaims(Claims claims) {
+        // Without loaded versions a revoked token looks current; the caller loads the user instead
+        if (!securityVersions.isEnabled() || !securityVersions.isSynced()) {
+            return null;
+        }
+        if (!JwtTokenType.ACCESS.equals(claims.get("type", String.class)) || claims.get(VERSION_CLAIM) == null) {
+            return null;
+        }
+
+        UUID userId = UUID.fromString(claims.get(USER_ID_CLAIM, String.class));
+        long version = claims.get(VERSION_CLAIM, Number.class).longValue();
+        if (version < securityVersions.current(userId)) {
+            throw new CredentialsExpiredException("Access token was revoked");
+        }
+
+        Set<GrantedAuthority> authorities = new HashSet<>();
+        for (Object role : claims.get(ROLES_CLAIM, List.class)) {
+            authorities.add(new SimpleGrantedAuthority(SecurityConstants.ROLE_PREFIX + role));
+        }
+        for (Object permission : claims.get(PERMISSIONS_CLAIM, List.class)) {
+            authorities.add(new SimpleGrantedAuthority(SecurityConstants.PERMISSION_PREFIX + permission));
+        }
+        return new UserPrincipal(userId, claims.getSubject(), null, true, true, true, true, authorities);
+    }
+
+    private record VerifiedToken(String token, Claims claims, long expiresAt, String kid,
+                                 JwtKeyRegistry.SigningKey signingKey) {}
+}
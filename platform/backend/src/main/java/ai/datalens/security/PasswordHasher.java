@@ -0,0 +1,191 @@
+package ai.datalens.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The application's password encoder: BCrypt on a dedicated, bounded pool.
+ *
+ * Hashes and checks run on app.auth.password-hashing.threads threads, half the cores by default,
+ * so a burst of sign-ins can't take every CPU from the request threads. Past queue-capacity
+ * waiting hashes, new ones are refused at once with {@link RejectedExecutionException}. Unless
+ * cost is set, the BCrypt cost is calibrated at startup to the one taking closest to
+ * target-time on this host, within min-cost and max-cost. Hashes of a lower cost are upgraded
+ * when their user signs in, while the pool isn't queueing.
+ */
+@Component
+public class PasswordHasher implements PasswordEncoder {
+
+    private static final Logger logger = LoggerFactory.getLogger(PasswordHasher.class);
+
+    private static final int CALIBRATION_ROUNDS = 3;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.auth.password-hashing.threads:0}")
+    private int threads;
+
+    @Value("${app.auth.password-hashing.queue-capacity:32}")
+    private int queueCapacity;
+
+    // Fixed BCrypt cost; 0 calibrates to target-time
+    @Value("${app.auth.password-hashing.cost:0}")
+    private int configuredCost;
+
+    @Value("${app.auth.password-hashing.target-time:250}")
+    private long targetTimeMs;
+
+    @Value("${app.auth.password-hashing.min-cost:10}")
+    private int minCost;
+
+    @Value("${app.auth.password-hashing.max-cost:14}")
+    private int maxCost;
+
+    private ThreadPoolExecutor executor;
+
+    private BCryptPasswordEncoder encoder;
+
+    private int cost;
+
+    private Timer encodeTimer;
+
+    private Timer matchTimer;
+
+    private Counter rejected;
+
+    @PostConstruct
+    public void init() {
+        cost = configuredCost > 0 ? configuredCost : calibrate();
+        encoder = new BCryptPasswordEncoder(cost);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        int size = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), runnable -> {
+                    Thread thread = new Thread(runnable, "password-hash-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+
+        encodeTimer = Timer.builder("auth.password.hashing")
+                .description("Time to hash a password, excluding time queued")
+                .tag("operation", "encode")
+                .register(meterRegistry);
+        matchTimer = Timer.builder("auth.password.hashing")
+                .description("Time to hash a password, excluding time queued")
+                .tag("operation", "matches")
+                .register(meterRegistry);
+        rejected = Counter.builder("auth.password.hashing.rejected")
+                .description("Hashes refused because the hashing queue was full")
+                .register(meterRegistry);
+        Gauge.builder("auth.password.hashing.queued", executor, pool -> pool.getQueue().size())
+                .description("Hashes waiting for a hashing thread")
+                .register(meterRegistry);
+        Gauge.builder("auth.password.hashing.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Hashes running")
+                .register(meterRegistry);
+        Gauge.builder("auth.password.hashing.cost", this, hasher -> hasher.cost)
+                .description("BCrypt cost of new hashes")
+                .register(meterRegistry);
+
+        logger.info("Hashing passwords with BCrypt cost {} on {} threads", cost, size);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @throws RejectedExecutionException if too many hashes are queued already
+     */
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return run(() -> encoder.encode(rawPassword), encodeTimer);
+    }
+
+    /**
+     * @throws RejectedExecutionException if too many hashes are queued already
+     */
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run(() -> encoder.matches(rawPassword, encodedPassword), matchTimer);
+    }
+
+    /**
+     * Whether a hash of lower cost should be replaced after its user signed in; not while hashes
+     * are queueing, so upgrades never take capacity from sign-ins. A later sign-in upgrades it.
+     */
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return executor.getQueue().isEmpty() && encoder.upgradeEncoding(encodedPassword);
+    }
+
+    int getCost() {
+        return cost;
+    }
+
+    /**
+     * The cost whose hash takes closest to, but not over, the target time; each step doubles it
+     */
+    int calibrate() {
+        BCryptPasswordEncoder probe = new BCryptPasswordEncoder(minCost);
+        long fastestNanos = Long.MAX_VALUE;
+        for (int i = 0; i < CALIBRATION_ROUNDS; i++) {
+            long start = System.nanoTime();
+            probe.encode("calibration");
+            fastestNanos = Math.min(fastestNanos, System.nanoTime() - start);
+        }
+        double headroom = (double) TimeUnit.MILLISECONDS.toNanos(targetTimeMs) / Math.max(1, fastestNanos);
+        int steps = (int) Math.floor(Math.log(headroom) / Math.log(2));
+        int calibrated = Math.max(minCost, Math.min(maxCost, minCost + steps));
+        logger.info("BCrypt cost {} took {} ms; calibrated cost {} for a target of {} ms",
+                minCost, TimeUnit.NANOSECONDS.toMillis(fastestNanos), calibrated, targetTimeMs);
+        return calibrated;
+    }
+
+    private <T> T run(Callable<T> hash, Timer timer) {
+        Future<T> future;
+        try {
+            future = executor.submit(() -> timer.recordCallable(hash));
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new RejectedExecutionException("Too many sign-ins in progress; try again later", e);
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while hashing password", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException("Password hashing failed", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package ai.datalens.security;
+
+import ai.datalens.entity.SecurityVersion;
+import ai.datalens.repository.SecurityVersionRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-user security versions for access tokens that carry their own authorities.
+ *
+ * A user's version is bumped when their roles or status change or they are deleted; tokens
+ * issued with an older version are refused. Versions are stored in the security_versions table
+ * and replicated into an in-memory map on every node, through a Redis pub/sub channel on each
+ * bump and a full reload every app.auth.stateless.resync-interval, so checking a token never
+ * leaves the process. Users whose version was never bumped are at version 0 and take no space.
+ * Until a node has loaded the versions once, it can't tell a revoked token from a current one:
+ * {@link #isSynced()} is false and tokens are checked against the user instead. Inactive unless
+ * app.auth.stateless.enabled is set.
+ */
+@Component
+public class SecurityVersions {
+
+    private static final Logger logger = LoggerFactory.getLogger(SecurityVersions.class);
+
+    @Autowired
+    private SecurityVersionRepository securityVersionRepository;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private RedisConnectionFactory redisConnectionFactory;
+
+    @Value("${app.auth.stateless.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.auth.stateless.channel:datalens:security-version-changes}")
+    private String channel;
+
+    private final Map<UUID, Long> versions = new ConcurrentHashMap<>();
+
+    private volatile boolean synced;
+
+    private RedisMessageListenerContainer listenerContainer;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(redisConnectionFactory);
+        listenerContainer.addMessageListener((message, pattern) ->
+                apply(new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic(channel));
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+        resync();
+    }
+
+    @PreDestroy
+    public void shutdown() throws Exception {
+        if (listenerContainer != null) {
+            listenerContainer.destroy();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Whether versions have been loaded, so that {@link #current(UUID)} can be trusted
+     */
+    public boolean isSynced() {
+        return synced;
+    }
+
+    /**
+     * The version a token of this user must carry to be accepted
+     */
+    public long current(UUID userId) {
+        return versions.getOrDefault(userId, 0L);
+    }
+
+    /**
+     * Revoke the user's access tokens on every node
+     */
+    @Transactional
+    public void bump(UUID userId) {
+        if (!enabled) {
+            return;
+        }
+        if (securityVersionRepository.increment(userId) == 0) {
+            securityVersionRepository.save(new SecurityVersion(userId, 1));
+        }
+        long next = securityVersionRepository.findById(userId).map(SecurityVersion::getVersion).orElse(1L);
+        versions.merge(userId, next, Math::max);
+        try {
+            redisTemplate.convertAndSend(channel, userId + ":" + next);
+        } catch (RuntimeException e) {
+            // Stored already; other nodes load it with their next resync
+            logger.warn("Could not publish security version of user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    /**
+     * Reload all versions, in case a change message was missed
+     */
+    @Scheduled(fixedDelayString = "${app.auth.stateless.resync-interval:60000}",
+               initialDelayString = "${app.auth.stateless.resync-interval:60000}")
+    public void resync() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            for (SecurityVersion version : securityVersionRepository.findAll()) {
+                versions.merge(version.getUserId(), version.getVersion(), Math::max);
+            }
+            synced = true;
+        } catch (RuntimeException e) {
+            logger.warn("Could not load security versions: {}", e.getMessage());
+        }
+    }
+
+    private void apply(String change) {
+        int separator = change.lastIndexOf(':');
+        try {
+            UUID userId = UUID.fromString(change.substring(0, separator));
+            long version = Long.parseLong(change.substring(separator + 1));
+            versions.merge(userId, version, Math::max);
+        } catch (RuntimeException e) {
+            logger.warn("Ignoring malformed security version change '{}'", change);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package ai.datalens.security;
+
+import ai.datalens.service.UserDetailsServiceImpl;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Principals of authenticated requests, so {@link JwtAuthenticationFilter} doesn't load the user
+ * with roles and permissions on every request.
+ *
+ * A Caffeine tier bounded by app.auth.principal-cache.local-max-size and local-ttl sits in front
+ * of a Redis tier shared by all nodes (redis-ttl); only on a miss in both is the user read from
+ * Postgres. Cached principals carry no password hash. {@link #invalidate} removes the user from
+ * Redis and publishes the email on the invalidation channel so every node drops its local entry.
+ * It also bumps the email's generation in Redis; a principal read from the database is written
+ * back only while the generation is the one seen before the read, so a load racing an
+ * invalidation on another node can't put the old principal back for redis-ttl.
+ * Redis failures fall back to the database and never fail a request.
+ */
+@Component
+public class UserPrincipalCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserPrincipalCache.class);
+
+    static final String CACHE_NAME = "auth.principals";
+
+    private static final String KEY_PREFIX = "datalens:principal:";
+
+    private static final String GENERATION_PREFIX = "datalens:principal-generation:";
+
+    // Caches the principal unless the generation moved on since the database read began
+    private static final RedisScript<Long> SET_IF_GENERATION = new DefaultRedisScript<>(
+            "if (redis.call('GET', KEYS[2]) or '') == ARGV[1] then "
+                    + "redis.call('SET', KEYS[1], ARGV[2], 'PX', ARGV[3]) return 1 end return 0",
+            Long.class);
+
+    @Autowired
+    private UserDetailsServiceImpl userDetailsService;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private RedisConnectionFactory redisConnectionFactory;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.auth.principal-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.auth.principal-cache.local-max-size:10000}")
+    private long localMaxSize;
+
+    @Value("${app.auth.principal-cache.local-ttl:30000}")
+    private long localTtlMs;
+
+    @Value("${app.auth.principal-cache.redis-enabled:true}")
+    private boolean redisEnabled;
+
+    @Value("${app.auth.principal-cache.redis-ttl:300000}")
+    private long redisTtlMs;
+
+    @Value("${app.auth.principal-cache.channel:datalens:principal-invalidations}")
+    private String channel;
+
+    private Cache<String, UserPrincipal> local;
+
+    private RedisMessageListenerContainer listenerContainer;
+
+    private Counter redisHits;
+
+    private Counter redisMisses;
+
+    private Counter redisErrors;
+
+    @PostConstruct
+    public void init() {
+        local = Caffeine.newBuilder()
+                .maximumSize(localMaxSize)
+                .expireAfterWrite(Duration.ofMillis(localTtlMs))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, local, CACHE_NAME);
+        redisHits = redisCounter("hit");
+        redisMisses = redisCounter("miss");
+        redisErrors = redisCounter("error");
+
+        if (enabled && redisEnabled) {
+            listenerContainer = new RedisMessageListenerContainer();
+            listenerContainer.setConnectionFactory(redisConnectionFactory);
+            listenerContainer.addMessageListener((message, pattern) ->
+                    local.invalidate(new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic(channel));
+            listenerContainer.afterPropertiesSet();
+            listenerContainer.start();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws Exception {
+        if (listenerContainer != null) {
+            listenerContainer.destroy();
+        }
+    }
+
+    /**
+     * The principal for the email in an access token
+     *
+     * @throws UsernameNotFoundException if there is no such user
+     */
+    public UserPrincipal get(String email) {
+        if (!enabled) {
+            return withoutPassword((UserPrincipal) userDetailsService.loadUserByUsername(email));
+        }
+        return local.get(email, this::loadShared);
+    }
+
+    /**
+     * Drop the users' cached principals on every node, after their roles, status or email changed
+     * or they were deleted
+     */
+    public void invalidate(String... emails) {
+        for (String email : emails) {
+            if (email == null) {
+                continue;
+            }
+            local.invalidate(email);
+            if (enabled && redisEnabled) {
+                try {
+                    // Before the delete, so a load that started earlier can no longer write back
+                    redisTemplate.opsForValue().increment(GENERATION_PREFIX + email);
+                    redisTemplate.expire(GENERATION_PREFIX + email, Duration.ofMillis(redisTtlMs));
+                    redisTemplate.delete(KEY_PREFIX + email);
+                    redisTemplate.convertAndSend(channel, email);
+                } catch (RuntimeException e) {
+                    // Other nodes still drop it when their local entry expires
+                    redisErrors.increment();
+                    logger.warn("Could not publish principal invalidation for {}: {}", email, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private UserPrincipal loadShared(String email) {
+        // Unknown unless read below; a write-back is then skipped
+        String generation = null;
+        if (redisEnabled) {
+            try {
+                List<String> values = redisTemplate.opsForValue()
+                        .multiGet(List.of(KEY_PREFIX + email, GENERATION_PREFIX + email));
+                String cached = values != null && values.size() == 2 ? values.get(0) : null;
+                generation = values != null && values.size() == 2 && values.get(1) != null ? values.get(1) : "";
+                if (cached != null) {
+                    redisHits.increment();
+                    return objectMapper.readValue(cached, CachedPrincipal.class).toPrincipal();
+                }
+                redisMisses.increment();
+            } catch (JsonProcessingException | RuntimeException e) {
+                redisErrors.increment();
+                logger.warn("Could not read cached principal for {}: {}", email, e.getMessage());
+            }
+        }
+
+        UserPrincipal principal = withoutPassword((UserPrincipal) userDetailsService.loadUserByUsername(email));
+        if (redisEnabled && generation != null) {
+            try {
+                redisTemplate.execute(SET_IF_GENERATION, List.of(KEY_PREFIX + email, GENERATION_PREFIX + email),
+                        generation, objectMapper.writeValueAsString(CachedPrincipal.of(principal)),
+                        String.valueOf(redisTtlMs));
+            } catch (JsonProcessingException | RuntimeException e) {
+                redisErrors.increment();
+                logger.warn("Could not cache principal for {}: {}", email, e.getMessage());
+            }
+        }
+        return principal;
+    }
+
+    private Counter redisCounter(String result) {
+        return Counter.builder("auth.principal-cache.redis")
+                .description("Principal lookups in the shared Redis tier")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static UserPrincipal withoutPassword(UserPrincipal principal) {
+        return new UserPrincipal(principal.getId(), principal.getEmail(), null, principal.isEnabled(),
+                principal.isAccountNonExpired(), principal.isAccountNonLocked(), principal.isCredentialsNonExpired(),
+                principal.getAuthorities());
+    }
+
+    /**
+     * Form of a principal kept in Redis
+     */
+    record CachedPrincipal(UUID id, String email, boolean enabled, List<String> authorities) {
+
+        static CachedPrincipal of(UserPrincipal principal) {
+            return new CachedPrincipal(principal.getId(), principal.getEmail(), principal.isEnabled(),
+                    principal.getAuthorities().stream().map(GrantedAuthority::getAuthority).sorted().toList());
+        }
+
+        UserPrincipal toPrincipal() {
+            Set<GrantedAuthority> granted = authorities.stream()
+                    .filter(Objects::nonNull)
+                    .map(SimpleGrantedAuthority::new)
+                    .collect(Collectors.toSet());
+            return new UserPrincipal(id, email, null, enabled, true, true, true, granted);
+        }
+    }
+}
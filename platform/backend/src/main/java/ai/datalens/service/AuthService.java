@@ -122,6 +122,9 @@ public class AuthService {
                 .orElseThrow(() -> new RuntimeException("User not found"));
 
         UserPrincipal userPrincipal = UserPrincipal.create(user);
+        if (!userPrincipal.isEnabled()) {
+            throw new RuntimeException("User account is not active");
+        }
 
         // Generate new tokens
         String newAccessToken = jwtUtils.generateAccessToken(userPrincipal);
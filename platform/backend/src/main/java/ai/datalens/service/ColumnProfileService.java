@@ -0,0 +1,459 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.request.ProfileRequest;
+import ai.datalens.dto.response.ColumnProfileResponse;
+import ai.datalens.dto.response.ColumnStatsResponse;
+import ai.datalens.dto.response.StageFileResponse;
+import ai.datalens.entity.ColumnProfile;
+import ai.datalens.repository.ColumnProfileRepository;
+import ai.datalens.repository.ProjectRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Profiles every column of a table or staged file in one streaming pass and stores the result
+ * per project in {@code column_profiles}.
+ *
+ * Rows are read once through the project's {@link WarehouseConnector} and sketched in parallel by
+ * {@link ColumnProfiler} workers, so a profile needs the same memory for a thousand rows as
+ * for a hundred million. While it reads, the pass holds a {@link WarehouseQueryScheduler} slot
+ * like any other query of the user's. A stored profile is returned instead of recomputing it unless the
+ * request asks for a refresh or, for staged files, the file's etag has changed.
+ */
+@Service
+public class ColumnProfileService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ColumnProfileService.class);
+
+    static final String SOURCE_TABLE = "TABLE";
+    static final String SOURCE_STAGE_FILE = "STAGE_FILE";
+
+    // Up to database.schema.table, each part a plain or double-quoted identifier
+    private static final String IDENTIFIER = "(\"[^\"]{1,255}\"|[A-Za-z_][A-Za-z0-9_$]{0,254})";
+    private static final Pattern TABLE_NAME = Pattern.compile(IDENTIFIER + "(\\." + IDENTIFIER + "){0,2}");
+
+    private static final TypeReference<List<ColumnStatsResponse>> COLUMNS_TYPE = new TypeReference<>() {};
+
+    @Autowired
+    private ProjectWarehouseConnectors projectConnectors;
+
+    @Autowired
+    private WarehouseQueryScheduler scheduler;
+
+    @Autowired
+    private StageFileService stageFileService;
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    @Autowired
+    private ColumnProfileRepository columnProfileRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${warehouse.profile.threads:4}")
+    private int threads;
+
+    @Value("${warehouse.profile.parallelism:4}")
+    private int parallelism;
+
+    @Value("${warehouse.profile.chunk-rows:4096}")
+    private int chunkRows;
+
+    // Rows sampled per profile; a profile never reads a whole table or file
+    @Value("${warehouse.profile.max-rows:1000000}")
+    private int maxRows;
+
+    @Value("${warehouse.profile.max-columns:256}")
+    private int maxColumns;
+
+    @Value("${warehouse.profile.hll-precision:12}")
+    private int hllPrecision;
+
+    @Value("${warehouse.profile.compression:100}")
+    private double compression;
+
+    private ThreadPoolExecutor executor;
+
+    private Counter rowsProfiled;
+
+    @PostConstruct
+    public void init() {
+        if (maxRows <= 0) {
+            throw new IllegalStateException("warehouse.profile.max-rows must be positive");
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        int size = Math.max(1, threads);
+        // Room for a few profiles' workers to queue; beyond that new profiles are rejected
+        executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(size * 4), runnable -> {
+                    Thread thread = new Thread(runnable, "column-profile-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+
+        rowsProfiled = Counter.builder("warehouse.profile.rows")
+                .description("Rows read by column profiles")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Profile a table or staged file for a project the user owns, or return its stored profile.
+     *
+     * @throws IllegalArgumentException if the request names neither or both sources, or a malformed one
+     * @throws RuntimeException if the project does not exist, or the staged file does not
+     * @throws RejectedExecutionException if too many profiles are already running
+     * @throws QueryThrottledException if the user or project has too many warehouse queries waiting
+     */
+    public ColumnProfileResponse profile(UUID userId, UUID projectId, ProfileRequest request)
+            throws SQLException, IOException {
+        requireProject(userId, projectId);
+
+        boolean table = request.getTable() != null && !request.getTable().isBlank();
+        boolean stageFile = request.getStage() != null && !request.getStage().isBlank();
+        if (table == stageFile) {
+            throw new IllegalArgumentException("Set either table, or stage and path");
+        }
+        boolean refresh = Boolean.TRUE.equals(request.getRefresh());
+        return table
+                ? profileTable(userId, projectId, request.getTable().trim(), refresh)
+                : profileStageFile(userId, projectId, request, refresh);
+    }
+
+    /**
+     * Stored profiles of a project, without their columns
+     */
+    public List<ColumnProfileResponse> listProfiles(UUID userId, UUID projectId) {
+        requireProject(userId, projectId);
+        return columnProfileRepository.findByProjectIdOrderByUpdatedAtDesc(projectId).stream()
+                .map(profile -> toResponse(profile, null, true))
+                .toList();
+    }
+
+    /**
+     * @throws RuntimeException if the project or profile does not exist
+     */
+    public ColumnProfileResponse getProfile(UUID userId, UUID projectId, UUID profileId) {
+        requireProject(userId, projectId);
+        ColumnProfile profile = columnProfileRepository.findByIdAndProjectId(profileId, projectId)
+                .orElseThrow(() -> new RuntimeException("Profile not found"));
+        return toResponse(profile, readColumns(profile), true);
+    }
+
+    private ColumnProfileResponse profileTable(UUID userId, UUID projectId, String table, boolean refresh)
+            throws SQLException, IOException {
+        if (!TABLE_NAME.matcher(table).matches()) {
+            throw new IllegalArgumentException("Invalid table name: " + table);
+        }
+        if (!refresh) {
+            ColumnProfileResponse stored = stored(projectId, SOURCE_TABLE, table, null);
+            if (stored != null) {
+                return stored;
+            }
+        }
+
+        long start = System.nanoTime();
+        ColumnProfiler profiler = newProfiler(false);
+        String outcome = "failure";
+        WarehouseConnector connector = projectConnectors.forProject(projectId);
+        try (WarehouseQueryScheduler.Slot slot = scheduler.acquire(userId, projectId, QueryControl.defaults())) {
+            connector.executeQuery("SELECT * FROM " + table + " LIMIT " + maxRows, maxRows, rs -> {
+                ResultSetMetaData metaData = rs.getMetaData();
+                int columnCount = Math.min(metaData.getColumnCount(), maxColumns);
+                boolean[] numeric = new boolean[columnCount];
+                for (int i = 1; i <= columnCount; i++) {
+                    profiler.addColumn(metaData.getColumnLabel(i), metaData.getColumnTypeName(i));
+                    numeric[i - 1] = isNumeric(metaData.getColumnType(i));
+                }
+                while (rs.next()) {
+                    Object[] row = new Object[columnCount];
+                    for (int i = 0; i < columnCount; i++) {
+                        if (numeric[i]) {
+                            double value = rs.getDouble(i + 1);
+                            row[i] = rs.wasNull() ? null : value;
+                        } else {
+                            row[i] = rs.getString(i + 1);
+                        }
+                    }
+                    add(profiler, row);
+                }
+                return null;
+            });
+            List<ColumnStatsResponse> columns = finish(profiler);
+            outcome = "success";
+            return save(projectId, SOURCE_TABLE, table, null, profiler.rowCount(), columns, start);
+        } finally {
+            profiler.abort();
+            record(SOURCE_TABLE, outcome, start, profiler.rowCount());
+        }
+    }
+
+    private ColumnProfileResponse profileStageFile(UUID userId, UUID projectId, ProfileRequest request,
+                                                   boolean refresh)
+            throws SQLException, IOException {
+        String stage = request.getStage().trim();
+        String path = request.getPath();
+        StagePreviewService.requireSafePath(path);
+        // Validates the stage name
+        StageFileService.stageLocation(stage, path);
+        String relative = path.replaceFirst("^/+", "");
+        StagePreviewService.Format format = StagePreviewService.Format.detect(request.getFormat(), relative);
+        String fileFormat = request.getFileFormat() != null && !request.getFileFormat().isEmpty()
+                ? StagePreviewService.requireFileFormatName(request.getFileFormat()) : null;
+        boolean header = format == StagePreviewService.Format.CSV && !Boolean.FALSE.equals(request.getHeader());
+
+        StageFileResponse file = stageFileService.statFile(userId, projectId, stage, relative);
+        String etag = file.getMd5() != null
+                ? file.getMd5()
+                : file.getSize() + "-" + (file.getLastModified() != null ? file.getLastModified().toEpochMilli() : 0);
+        String source = "@" + stage + "/" + relative;
+        if (!refresh) {
+            ColumnProfileResponse stored = stored(projectId, SOURCE_STAGE_FILE, source, etag);
+            if (stored != null) {
+                return stored;
+            }
+        }
+
+        long start = System.nanoTime();
+        boolean csv = format == StagePreviewService.Format.CSV;
+        ColumnProfiler profiler = newProfiler(csv);
+        String outcome = "failure";
+        WarehouseConnector connector = projectConnectors.forProject(projectId);
+        try (WarehouseQueryScheduler.Slot slot = scheduler.acquire(userId, projectId, QueryControl.defaults())) {
+            // Staged rows are untyped: CSV values are text, JSON and Parquet rows one JSON document
+            WarehouseConnector.StagedFileScan scan = new WarehouseConnector.StagedFileScan(stage, relative, format,
+                    maxColumns, maxRows, fileFormat);
+            Map<String, Integer> fields = new HashMap<>();
+            boolean[] first = {true};
+            try {
+                connector.scanStagedFile(scan, values -> {
+                    if (csv) {
+                        if (first[0]) {
+                            first[0] = false;
+                            for (int i = 0; i < values.length; i++) {
+                                String name = header && values[i] != null && !values[i].isBlank()
+                                        ? values[i].trim() : "$" + (i + 1);
+                                profiler.addColumn(name, null);
+                            }
+                            if (header) {
+                                return;
+                            }
+                        }
+                        add(profiler, values.clone());
+                    } else {
+                        add(profiler, jsonRow(values[0], fields, profiler));
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            List<ColumnStatsResponse> columns = finish(profiler);
+            if (csv) {
+                // Snowflake pads CSV rows to the scanned column count; drop the unnamed all-null tail
+                while (!columns.isEmpty() && columns.get(columns.size() - 1).getName().startsWith("$")
+                        && columns.get(columns.size() - 1).getNullCount() == profiler.rowCount()) {
+                    columns.remove(columns.size() - 1);
+                }
+            }
+            outcome = "success";
+            return save(projectId, SOURCE_STAGE_FILE, source, etag, profiler.rowCount(), columns, start);
+        } finally {
+            profiler.abort();
+            record(SOURCE_STAGE_FILE, outcome, start, profiler.rowCount());
+        }
+    }
+
+    /**
+     * Top-level fields of a JSON document as one row; nested values are kept as JSON text
+     */
+    private Object[] jsonRow(String document, Map<String, Integer> fields, ColumnProfiler profiler) {
+        if (document == null) {
+            return new Object[0];
+        }
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(document);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (!node.isObject()) {
+            Integer index = fields.computeIfAbsent("$1", name -> profiler.addColumn(name, null));
+            Object[] row = new Object[index + 1];
+            row[index] = jsonValue(node);
+            return row;
+        }
+
+        Object[] row = new Object[profiler.columnCount() + node.size()];
+        int width = 0;
+        for (Iterator<Map.Entry<String, JsonNode>> it = node.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = it.next();
+            Integer index = fields.get(field.getKey());
+            if (index == null) {
+                if (profiler.columnCount() >= maxColumns) {
+                    continue;
+                }
+                // The row has room: each new field adds one column
+                index = profiler.addColumn(field.getKey(), null);
+                fields.put(field.getKey(), index);
+            }
+            row[index] = jsonValue(field.getValue());
+            width = Math.max(width, index + 1);
+        }
+        return width == row.length ? row : Arrays.copyOf(row, width);
+    }
+
+    private static Object jsonValue(JsonNode node) {
+        if (node == null || node.isNull() || node.isMissingNode()) {
+            return null;
+        }
+        if (node.isNumber()) {
+            return node.doubleValue();
+        }
+        return node.isValueNode() ? node.asText() : node.toString();
+    }
+
+    private ColumnProfiler newProfiler(boolean inferNumbers) {
+        return new ColumnProfiler(executor, Math.max(1, Math.min(parallelism, Math.max(1, threads))),
+                Math.max(1, chunkRows), hllPrecision, compression, inferNumbers);
+    }
+
+    private static void add(ColumnProfiler profiler, Object[] row) throws SQLException {
+        try {
+            profiler.addRow(row);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Profile interrupted", e);
+        } catch (ExecutionException e) {
+            throw new SQLException("Profile worker failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static List<ColumnStatsResponse> finish(ColumnProfiler profiler) throws SQLException {
+        try {
+            return profiler.finish();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Profile interrupted", e);
+        } catch (ExecutionException e) {
+            throw new SQLException("Profile worker failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private ColumnProfileResponse stored(UUID projectId, String sourceType, String source, String version) {
+        return columnProfileRepository.findByProjectIdAndSourceTypeAndSourceName(projectId, sourceType, source)
+                .filter(profile -> version == null || version.equals(profile.getSourceVersion()))
+                .map(profile -> toResponse(profile, readColumns(profile), true))
+                .orElse(null);
+    }
+
+    private ColumnProfileResponse save(UUID projectId, String sourceType, String source, String version, long rows,
+                                       List<ColumnStatsResponse> columns, long startNanos) throws JsonProcessingException {
+        ColumnProfile profile = columnProfileRepository
+                .findByProjectIdAndSourceTypeAndSourceName(projectId, sourceType, source)
+                .orElseGet(ColumnProfile::new);
+        profile.setProjectId(projectId);
+        profile.setSourceType(sourceType);
+        profile.setSourceName(source);
+        profile.setSourceVersion(version);
+        profile.setRowCount(rows);
+        profile.setColumnCount(columns.size());
+        profile.setElapsedMs((System.nanoTime() - startNanos) / 1_000_000);
+        profile.setColumnsJson(objectMapper.writeValueAsString(columns));
+        ColumnProfile saved = columnProfileRepository.save(profile);
+
+        logger.info("Profiled {} rows x {} columns of {} for project {} in {} ms", rows, columns.size(), source,
+                projectId, saved.getElapsedMs());
+        return toResponse(saved, columns, false);
+    }
+
+    private void record(String sourceType, String outcome, long startNanos, long rows) {
+        rowsProfiled.increment(rows);
+        Timer.builder("warehouse.profile.duration")
+                .description("Column profile passes")
+                .tag("source", sourceType)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(Duration.ofNanos(System.nanoTime() - startNanos));
+    }
+
+    private List<ColumnStatsResponse> readColumns(ColumnProfile profile) {
+        try {
+            return objectMapper.readValue(profile.getColumnsJson(), COLUMNS_TYPE);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Stored profile " + profile.getId() + " is unreadable", e);
+        }
+    }
+
+    private void requireProject(UUID userId, UUID projectId) {
+        projectRepository.findByUserIdAndId(userId, projectId)
+                .orElseThrow(() -> new RuntimeException("Project not found"));
+    }
+
+    private static boolean isNumeric(int jdbcType) {
+        return switch (jdbcType) {
+            case Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT, Types.REAL, Types.FLOAT, Types.DOUBLE,
+                 Types.DECIMAL, Types.NUMERIC -> true;
+            default -> false;
+        };
+    }
+
+    private static ColumnProfileResponse toResponse(ColumnProfile profile, List<ColumnStatsResponse> columns,
+                                                    boolean stored) {
+        ColumnProfileResponse response = new ColumnProfileResponse();
+        response.setId(profile.getId());
+        response.setProjectId(profile.getProjectId());
+        response.setSourceType(profile.getSourceType());
+        response.setSource(profile.getSourceName());
+        response.setSourceVersion(profile.getSourceVersion());
+        response.setRowCount(profile.getRowCount());
+        response.setColumnCount(profile.getColumnCount());
+        response.setElapsedMs(profile.getElapsedMs());
+        response.setProfiledAt(profile.getUpdatedAt());
+        response.setStored(stored);
+        response.setColumns(columns);
+        return response;
+    }
+}
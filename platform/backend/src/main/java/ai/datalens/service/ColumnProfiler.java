@@ -0,0 +1,183 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.response.ColumnStatsResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One streaming profile pass: the reading thread adds rows, worker tasks sketch them.
+ *
+ * Rows are batched into chunks and handed to the workers over a bounded queue, so a slow
+ * profile backs up into the reader instead of buffering the dataset. Each worker keeps its
+ * own {@link ColumnSketch} per column; {@link #finish()} merges them. Memory is bounded by
+ * the queue of chunks plus one set of sketches per worker, whatever the row count.
+ */
+final class ColumnProfiler {
+
+    private static final Object[][] END = new Object[0][];
+
+    private final int chunkRows;
+    private final int hllPrecision;
+    private final double compression;
+    private final boolean inferNumbers;
+    private final BlockingQueue<Object[][]> queue;
+    private final List<Future<List<ColumnSketch>>> workers = new ArrayList<>();
+
+    // Columns can be discovered mid-stream (JSON fields), so workers look them up by index
+    private final List<String> columnNames = new CopyOnWriteArrayList<>();
+    private final List<String> columnTypes = new CopyOnWriteArrayList<>();
+
+    private Object[][] chunk;
+    private int chunkSize;
+    private long rowCount;
+
+    ColumnProfiler(ExecutorService executor, int parallelism, int chunkRows, int hllPrecision, double compression,
+                   boolean inferNumbers) {
+        this.chunkRows = chunkRows;
+        this.hllPrecision = hllPrecision;
+        this.compression = compression;
+        this.inferNumbers = inferNumbers;
+        this.queue = new ArrayBlockingQueue<>(parallelism * 2);
+        this.chunk = new Object[chunkRows][];
+        try {
+            for (int i = 0; i < parallelism; i++) {
+                workers.add(executor.submit(this::work));
+            }
+        } catch (RejectedExecutionException e) {
+            abort();
+            throw e;
+        }
+    }
+
+    /**
+     * Register a column and return its index
+     *
+     * @param type the source's type name, or null to infer it from the values
+     */
+    int addColumn(String name, String type) {
+        columnNames.add(name);
+        columnTypes.add(type);
+        return columnNames.size() - 1;
+    }
+
+    int columnCount() {
+        return columnNames.size();
+    }
+
+    long rowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Add one row of Number, String or null values, indexed like the registered columns.
+     * The array must not be reused by the caller.
+     */
+    void addRow(Object[] values) throws InterruptedException, ExecutionException {
+        chunk[chunkSize++] = values;
+        rowCount++;
+        if (chunkSize == chunkRows) {
+            hand(chunk);
+            chunk = new Object[chunkRows][];
+            chunkSize = 0;
+        }
+    }
+
+    /**
+     * Wait for the workers and merge their sketches into per-column stats
+     */
+    List<ColumnStatsResponse> finish() throws InterruptedException, ExecutionException {
+        if (chunkSize > 0) {
+            Object[][] last = new Object[chunkSize][];
+            System.arraycopy(chunk, 0, last, 0, chunkSize);
+            hand(last);
+            chunk = null;
+        }
+        for (int i = 0; i < workers.size(); i++) {
+            hand(END);
+        }
+
+        List<ColumnSketch> merged = new ArrayList<>();
+        for (Future<List<ColumnSketch>> worker : workers) {
+            List<ColumnSketch> sketches = worker.get();
+            for (int i = 0; i < sketches.size(); i++) {
+                ColumnSketch sketch = sketches.get(i);
+                if (sketch == null) {
+                    continue;
+                }
+                while (merged.size() <= i) {
+                    merged.add(null);
+                }
+                if (merged.get(i) == null) {
+                    merged.set(i, sketch);
+                } else {
+                    merged.get(i).merge(sketch);
+                }
+            }
+        }
+
+        List<ColumnStatsResponse> stats = new ArrayList<>(columnNames.size());
+        for (int i = 0; i < columnNames.size(); i++) {
+            ColumnSketch sketch = i < merged.size() && merged.get(i) != null ? merged.get(i) : newSketch(i);
+            stats.add(sketch.toStats(rowCount));
+        }
+        return stats;
+    }
+
+    /**
+     * Stop the workers after a failed read
+     */
+    void abort() {
+        workers.forEach(worker -> worker.cancel(true));
+    }
+
+    private void hand(Object[][] rows) throws InterruptedException, ExecutionException {
+        // A failed worker would leave the queue full forever, so check on them while waiting
+        while (!queue.offer(rows, 100, TimeUnit.MILLISECONDS)) {
+            for (Future<List<ColumnSketch>> worker : workers) {
+                if (worker.isDone()) {
+                    worker.get();
+                    throw new IllegalStateException("Profile worker stopped early");
+                }
+            }
+        }
+    }
+
+    private List<ColumnSketch> work() throws InterruptedException {
+        List<ColumnSketch> sketches = new ArrayList<>();
+        while (true) {
+            Object[][] rows = queue.take();
+            if (rows == END) {
+                return sketches;
+            }
+            for (Object[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    if (row[i] == null) {
+                        continue;
+                    }
+                    while (sketches.size() <= i) {
+                        sketches.add(null);
+                    }
+                    ColumnSketch sketch = sketches.get(i);
+                    if (sketch == null) {
+                        sketch = newSketch(i);
+                        sketches.set(i, sketch);
+                    }
+                    sketch.add(row[i]);
+                }
+            }
+        }
+    }
+
+    private ColumnSketch newSketch(int index) {
+        return new ColumnSketch(columnNames.get(index), columnTypes.get(index), inferNumbers, hllPrecision, compression);
+    }
+}
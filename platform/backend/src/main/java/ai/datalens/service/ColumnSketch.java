@@ -0,0 +1,167 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.response.ColumnStatsResponse;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Running statistics for one column over part of a dataset, in fixed memory.
+ *
+ * Tracks counts, min/max, mean and variance (Welford), a {@link HyperLogLog} for distinct
+ * values and a {@link TDigest} for quantiles. Sketches of the same column over different row
+ * chunks merge into the sketch of the whole column. Nulls are not counted here: they are the
+ * dataset's row count minus {@link #count()}, which also covers JSON rows missing the field.
+ */
+final class ColumnSketch {
+
+    static final double[] QUANTILES = {0.01, 0.05, 0.25, 0.5, 0.75, 0.95, 0.99};
+
+    private final String name;
+    private final String declaredType;
+    private final boolean inferNumbers;
+    private final HyperLogLog distinct;
+    private final TDigest digest;
+
+    private long numericCount;
+    private double mean;
+    private double m2;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    private long textCount;
+    private String minText;
+    private String maxText;
+
+    /**
+     * @param declaredType the source's type name, or null to infer NUMBER/TEXT from the values
+     * @param inferNumbers parse numeric-looking text as numbers, for untyped sources such as CSV
+     */
+    ColumnSketch(String name, String declaredType, boolean inferNumbers, int hllPrecision, double compression) {
+        this.name = name;
+        this.declaredType = declaredType;
+        this.inferNumbers = inferNumbers;
+        this.distinct = new HyperLogLog(hllPrecision);
+        this.digest = new TDigest(compression);
+    }
+
+    String name() {
+        return name;
+    }
+
+    long count() {
+        return numericCount + textCount;
+    }
+
+    void add(Object value) {
+        if (value == null) {
+            return;
+        }
+        if (value instanceof Number number) {
+            addNumber(number.doubleValue());
+        } else {
+            addText(value.toString());
+        }
+    }
+
+    void addNumber(double value) {
+        if (Double.isNaN(value)) {
+            addString("NaN");
+            return;
+        }
+        numericCount++;
+        double delta = value - mean;
+        mean += delta / numericCount;
+        m2 += delta * (value - mean);
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        distinct.add(HyperLogLog.hash(value));
+        digest.add(value);
+    }
+
+    void addText(String value) {
+        if (inferNumbers && looksNumeric(value)) {
+            try {
+                addNumber(Double.parseDouble(value));
+                return;
+            } catch (NumberFormatException e) {
+                // Counted as text below
+            }
+        }
+        addString(value);
+    }
+
+    void merge(ColumnSketch other) {
+        if (other.numericCount > 0) {
+            long total = numericCount + other.numericCount;
+            double delta = other.mean - mean;
+            // Chan et al.'s pairwise update of mean and sum of squared deviations
+            m2 += other.m2 + delta * delta * numericCount * other.numericCount / total;
+            mean += delta * other.numericCount / total;
+            numericCount = total;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            digest.merge(other.digest);
+        }
+        if (other.textCount > 0) {
+            textCount += other.textCount;
+            minText = minText == null || other.minText.compareTo(minText) < 0 ? other.minText : minText;
+            maxText = maxText == null || other.maxText.compareTo(maxText) > 0 ? other.maxText : maxText;
+        }
+        distinct.merge(other.distinct);
+    }
+
+    ColumnStatsResponse toStats(long rowCount) {
+        ColumnStatsResponse stats = new ColumnStatsResponse();
+        stats.setName(name);
+        stats.setRowCount(rowCount);
+        stats.setNullCount(rowCount - count());
+        // Never report more distinct values than values
+        stats.setDistinctCount(Math.min(distinct.estimate(), count()));
+
+        boolean numeric = numericCount > 0 && textCount == 0;
+        stats.setType(declaredType != null ? declaredType
+                : numeric ? "NUMBER" : numericCount > 0 ? "MIXED" : count() > 0 ? "TEXT" : "NULL");
+        if (numericCount > 0) {
+            stats.setMean(mean);
+            stats.setVariance(numericCount > 1 ? m2 / (numericCount - 1) : 0.0);
+            Map<String, Double> quantiles = new LinkedHashMap<>();
+            for (double q : QUANTILES) {
+                quantiles.put(String.format("p%02d", Math.round(q * 100)), digest.quantile(q));
+            }
+            stats.setQuantiles(quantiles);
+        }
+        if (numeric) {
+            stats.setMin(min);
+            stats.setMax(max);
+        } else if (textCount > 0) {
+            stats.setMin(minText);
+            stats.setMax(maxText);
+        }
+        if (numericCount > 0 && textCount > 0) {
+            stats.setNonNumericCount(textCount);
+        }
+        return stats;
+    }
+
+    private void addString(String value) {
+        textCount++;
+        if (minText == null || value.compareTo(minText) < 0) {
+            minText = value;
+        }
+        if (maxText == null || value.compareTo(maxText) > 0) {
+            maxText = value;
+        }
+        distinct.add(HyperLogLog.hash(value));
+    }
+
+    // Cheap pre-check so plain text doesn't pay for a NumberFormatException
+    private static boolean looksNumeric(String value) {
+        if (value.isEmpty() || value.length() > 40) {
+            return false;
+        }
+        char first = value.charAt(0);
+        char last = value.charAt(value.length() - 1);
+        return (Character.isDigit(first) || first == '-' || first == '+' || first == '.') && Character.isDigit(last);
+    }
+}
@@ -0,0 +1,154 @@
+package ai.datalens.service;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A query result in the datalens columnar transfer format (application/vnd.datalens.columnar).
+ *
+ * All numbers are big-endian. The stream is a header followed by one block per column:
+ * <pre>
+ * header:  "DLCR" | version u8 (2) | flags u8 (bit 0 = truncated, bit 1 = cached)
+ *          | fingerprint str | executedAt i64 epoch ms | elapsedMs i64
+ *          | rowCount i32 | columnCount i32
+ *          | per column: name str | type name str
+ *            | kind u8 (0 long, 1 double, 2 decimal, 3 boolean, 4 string, 5 scaled)
+ * column:  hasNulls u8 | null bitmap if hasNulls
+ *          | long, double: rowCount x 8 bytes (0 where null)
+ *          | scaled: scale u8 | rowCount x 8 bytes unscaled value (0 where null)
+ *          | boolean: bitmap
+ *          | decimal, string: dictionarySize i32 | entries as str | code width u8 (1, 2 or 4) | rowCount codes
+ * str:     length i32 | UTF-8 bytes
+ * bitmap:  ceil(rowCount / 8) bytes, row i at bit (i % 8) of byte (i / 8)
+ * </pre>
+ * Fixed-point decimals are scaled longs: value = unscaled / 10^scale. Decimals that don't fit
+ * one are dictionary entries in plain (non-scientific) notation.
+ */
+public final class ColumnarQueryResult {
+
+    public static final String MEDIA_TYPE = "application/vnd.datalens.columnar";
+
+    static final byte[] MAGIC = {'D', 'L', 'C', 'R'};
+    static final int VERSION = 2;
+
+    private final String fingerprint;
+    private final QueryResult result;
+    private final boolean cached;
+
+    ColumnarQueryResult(String fingerprint, QueryResult result, boolean cached) {
+        this.fingerprint = fingerprint;
+        this.result = result;
+        this.cached = cached;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public boolean isCached() {
+        return cached;
+    }
+
+    public int getRowCount() {
+        return result.rowCount();
+    }
+
+    QueryResult result() {
+        return result;
+    }
+
+    /**
+     * Write the encoded result; the caller owns the stream
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream, 64 * 1024));
+        int rows = result.rowCount();
+        List<QueryColumn> columns = result.columns();
+
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte((result.truncated() ? 1 : 0) | (cached ? 2 : 0));
+        writeString(out, fingerprint);
+        out.writeLong(result.executedAt().toEpochMilli());
+        out.writeLong(result.elapsedMs());
+        out.writeInt(rows);
+        out.writeInt(columns.size());
+        for (QueryColumn column : columns) {
+            writeString(out, column.name());
+            writeString(out, column.typeName());
+            out.writeByte(column.kind().ordinal());
+        }
+
+        for (QueryColumn column : columns) {
+            boolean hasNulls = !column.nulls().isEmpty();
+            out.writeByte(hasNulls ? 1 : 0);
+            if (hasNulls) {
+                writeBitmap(out, column.nulls(), rows);
+            }
+            switch (column.kind()) {
+                case LONG -> {
+                    for (int row = 0; row < rows; row++) {
+                        out.writeLong(column.longAt(row));
+                    }
+                }
+                case SCALED -> {
+                    out.writeByte(column.scale());
+                    for (int row = 0; row < rows; row++) {
+                        out.writeLong(column.longAt(row));
+                    }
+                }
+                case DOUBLE -> {
+                    for (int row = 0; row < rows; row++) {
+                        out.writeDouble(column.doubleAt(row));
+                    }
+                }
+                case BOOLEAN -> {
+                    BitSet values = new BitSet(rows);
+                    for (int row = 0; row < rows; row++) {
+                        values.set(row, column.booleanAt(row));
+                    }
+                    writeBitmap(out, values, rows);
+                }
+                case DECIMAL, STRING -> writeDictionary(out, column, rows);
+            }
+        }
+        out.flush();
+    }
+
+    private static void writeDictionary(DataOutputStream out, QueryColumn column, int rows) throws IOException {
+        List<String> dictionary = column.dictionary();
+        out.writeInt(dictionary.size());
+        for (String entry : dictionary) {
+            writeString(out, entry);
+        }
+        // Narrowest code that can address every entry; null rows carry code 0
+        int width = dictionary.size() <= 0xFF ? 1 : dictionary.size() <= 0xFFFF ? 2 : 4;
+        out.writeByte(width);
+        for (int row = 0; row < rows; row++) {
+            int code = column.isNull(row) ? 0 : column.codeAt(row);
+            switch (width) {
+                case 1 -> out.writeByte(code);
+                case 2 -> out.writeShort(code);
+                default -> out.writeInt(code);
+            }
+        }
+    }
+
+    private static void writeBitmap(DataOutputStream out, BitSet bits, int rows) throws IOException {
+        byte[] bytes = new byte[(rows + 7) / 8];
+        byte[] set = bits.toByteArray();
+        System.arraycopy(set, 0, bytes, 0, Math.min(set.length, bytes.length));
+        out.write(bytes);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
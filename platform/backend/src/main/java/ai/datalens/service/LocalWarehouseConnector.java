@@ -0,0 +1,428 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.response.SnowflakeStageResponse;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * {@link WarehouseConnector} that stands in for Snowflake without an account.
+ *
+ * Stages are directories laid out as {@code warehouse.local.stage-root/DATABASE/SCHEMA/STAGE/},
+ * and their files are the stage contents. Queries run against the JDBC database at
+ * warehouse.local.url (Postgres or H2). Enable with {@code warehouse.connector=local}.
+ */
+@Service
+@ConditionalOnProperty(name = "warehouse.connector", havingValue = "local")
+public class LocalWarehouseConnector implements WarehouseConnector {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalWarehouseConnector.class);
+
+    static final String ACCOUNT = "LOCAL";
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${warehouse.local.stage-root:}")
+    private String stageRoot;
+
+    @Value("${warehouse.local.database:LOCAL}")
+    private String database;
+
+    @Value("${warehouse.local.schema:PUBLIC}")
+    private String schema;
+
+    @Value("${warehouse.local.url:}")
+    private String url;
+
+    @Value("${warehouse.local.user:}")
+    private String user;
+
+    @Value("${warehouse.local.password:}")
+    private String password;
+
+    @Value("${warehouse.local.max-pool-size:10}")
+    private int maxPoolSize;
+
+    @Value("${snowflake.preview.max-row-chars:1048576}")
+    private int maxRowChars;
+
+    private volatile HikariDataSource dataSource;
+
+    @PreDestroy
+    public void shutdown() {
+        HikariDataSource ds = dataSource;
+        if (ds != null) {
+            ds.close();
+        }
+    }
+
+    @Override
+    public String name() {
+        return "local";
+    }
+
+    @Override
+    public boolean isConfigured() {
+        return stageRoot != null && !stageRoot.isEmpty();
+    }
+
+    @Override
+    public StageCatalogKey catalogKey() {
+        return new StageCatalogKey(ACCOUNT, database, schema);
+    }
+
+    @Override
+    public String role() {
+        return user;
+    }
+
+    @Override
+    public String warehouse() {
+        return ACCOUNT;
+    }
+
+    @Override
+    public int maxConcurrency() {
+        return Math.max(1, maxPoolSize);
+    }
+
+    @Override
+    public long streamStages(StageRowHandler handler) throws SQLException {
+        long count = 0;
+        for (SnowflakeStageResponse stage : fetchStagesInSchema(database, schema)) {
+            handler.handle(stage);
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public List<SnowflakeStageResponse> fetchStagesInSchema(String database, String schema) throws SQLException {
+        Path schemaDir = child(child(root(), database), schema);
+        List<SnowflakeStageResponse> stages = new ArrayList<>();
+        if (schemaDir == null) {
+            return stages;
+        }
+
+        for (Path stageDir : directories(schemaDir)) {
+            stages.add(toStage(stageDir, schemaDir.getFileName().toString(),
+                    schemaDir.getParent().getFileName().toString()));
+        }
+        return stages;
+    }
+
+    @Override
+    public List<SchemaRef> listSchemas() throws SQLException {
+        List<SchemaRef> schemas = new ArrayList<>();
+        for (Path databaseDir : directories(root())) {
+            for (Path schemaDir : directories(databaseDir)) {
+                schemas.add(new SchemaRef(databaseDir.getFileName().toString(), schemaDir.getFileName().toString()));
+            }
+        }
+        return schemas;
+    }
+
+    @Override
+    public long streamStageFiles(String stage, String prefix, StageFileRowHandler handler) throws SQLException {
+        Path stageDir = stageDir(stage);
+        String pathPrefix = prefix != null ? prefix.replaceFirst("^/+", "") : "";
+
+        long count = 0;
+        try (Stream<Path> files = Files.walk(stageDir)) {
+            Iterator<Path> iterator = files.filter(Files::isRegularFile).iterator();
+            while (iterator.hasNext()) {
+                Path file = iterator.next();
+                String relative = stageDir.relativize(file).toString().replace('\\', '/');
+                if (!relative.startsWith(pathPrefix)) {
+                    continue;
+                }
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                // No md5: hashing every file would dwarf the cost being benchmarked
+                handler.handle(relative, attributes.size(), null, DateTimeFormatter.RFC_1123_DATE_TIME
+                        .format(attributes.lastModifiedTime().toInstant().atOffset(ZoneOffset.UTC)));
+                count++;
+            }
+        } catch (IOException e) {
+            throw new SQLException("Could not list stage " + stage + ": " + e.getMessage(), e);
+        }
+        return count;
+    }
+
+    @Override
+    public long scanStagedFile(StagedFileScan scan, StagedRowHandler handler) throws SQLException {
+        if (scan.format() == StagePreviewService.Format.PARQUET) {
+            throw new IllegalArgumentException("Parquet files can only be read through Snowflake");
+        }
+
+        Path stageDir = stageDir(scan.stage());
+        Path file = stageDir.resolve(scan.path()).normalize();
+        if (!file.startsWith(stageDir) || !Files.isRegularFile(file)) {
+            throw new RuntimeException("File not found");
+        }
+
+        try (InputStream raw = Files.newInputStream(file);
+             InputStream in = scan.path().toLowerCase(Locale.ROOT).matches(".*\\.(gz|gzip)$") ? new GZIPInputStream(raw) : raw;
+             Reader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            return scan.format() == StagePreviewService.Format.CSV
+                    ? readCsv(reader, scan.maxRows(), handler)
+                    : readJson(reader, scan.maxRows(), handler);
+        } catch (IOException e) {
+            throw new SQLException("Could not read @" + scan.stage() + "/" + scan.path() + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public <T> T executeQuery(String sql, List<?> parameters, int maxRows, QueryControl control,
+                              QueryHandler<T> handler) throws SQLException {
+        try (Connection connection = getDataSource().getConnection()) {
+            // H2 takes read-only as a hint only, so anything written is rolled back as well; the pool
+            // resets both settings when the connection is returned
+            connection.setReadOnly(true);
+            connection.setAutoCommit(false);
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                for (int i = 0; i < parameters.size(); i++) {
+                    stmt.setObject(i + 1, parameters.get(i));
+                }
+                stmt.setMaxRows(maxRows);
+                // 0 means no limit
+                stmt.setQueryTimeout(control.timeoutSeconds(0));
+
+                control.attach(stmt);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return handler.handle(rs);
+                } catch (SQLException e) {
+                    throw control.translate(e);
+                } finally {
+                    control.detach();
+                }
+            } finally {
+                connection.rollback();
+            }
+        }
+    }
+
+    private long readCsv(Reader reader, int maxRows, StagedRowHandler handler) throws IOException, SQLException {
+        CsvRowReader rows = new CsvRowReader(reader, maxRowChars);
+        long count = 0;
+        String[] values;
+        while (count < maxRows && (values = rows.next()) != null) {
+            handler.handle(values);
+            count++;
+        }
+        return count;
+    }
+
+    private long readJson(Reader reader, int maxRows, StagedRowHandler handler) throws IOException, SQLException {
+        long count = 0;
+        try (JsonParser parser = objectMapper.getFactory().createParser(reader)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                // One JSON array: its elements are the rows
+                while (count < maxRows && parser.nextToken() != JsonToken.END_ARRAY && parser.currentToken() != null) {
+                    handler.handle(new String[] {parser.readValueAsTree().toString()});
+                    count++;
+                }
+            } else {
+                // NDJSON or concatenated documents
+                while (count < maxRows && token != null) {
+                    handler.handle(new String[] {parser.readValueAsTree().toString()});
+                    count++;
+                    token = parser.nextToken();
+                }
+            }
+        }
+        return count;
+    }
+
+    private HikariDataSource getDataSource() throws SQLException {
+        HikariDataSource ds = dataSource;
+        if (ds == null) {
+            if (url == null || url.isEmpty()) {
+                throw new SQLException("Local warehouse database is not configured (warehouse.local.url is empty)");
+            }
+            synchronized (this) {
+                ds = dataSource;
+                if (ds == null) {
+                    HikariConfig config = new HikariConfig();
+                    config.setPoolName("local-warehouse");
+                    config.setJdbcUrl(url);
+                    config.setUsername(user);
+                    config.setPassword(password);
+                    config.setMaximumPoolSize(maxConcurrency());
+                    logger.info("Starting local warehouse connection pool for {}", url);
+                    ds = new HikariDataSource(config);
+                    dataSource = ds;
+                }
+            }
+        }
+        return ds;
+    }
+
+    /**
+     * Resolve [database.][schema.]name against the current database/schema, like Snowflake does
+     */
+    private Path stageDir(String stage) throws SQLException {
+        String[] parts = stage.split("\\.");
+        String stageDatabase = parts.length == 3 ? parts[0] : database;
+        String stageSchema = parts.length >= 2 ? parts[parts.length - 2] : schema;
+
+        Path dir = child(child(child(root(), stageDatabase), stageSchema), parts[parts.length - 1]);
+        if (dir == null) {
+            throw new SQLException("Stage '" + stage + "' does not exist");
+        }
+        return dir;
+    }
+
+    private Path root() throws SQLException {
+        if (!isConfigured()) {
+            throw new SQLException("Local warehouse is not configured (warehouse.local.stage-root is empty)");
+        }
+        return Paths.get(stageRoot).toAbsolutePath().normalize();
+    }
+
+    /**
+     * The sub-directory with the given name, matched case-insensitively like an unquoted identifier
+     */
+    private static Path child(Path dir, String name) throws SQLException {
+        if (dir == null || name == null) {
+            return null;
+        }
+        Path exact = dir.resolve(name);
+        if (Files.isDirectory(exact) && exact.normalize().getParent().equals(dir.normalize())) {
+            return exact;
+        }
+        for (Path candidate : directories(dir)) {
+            if (candidate.getFileName().toString().equalsIgnoreCase(name)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static List<Path> directories(Path dir) throws SQLException {
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> children = Files.list(dir)) {
+            return children.filter(Files::isDirectory).sorted().toList();
+        } catch (IOException e) {
+            throw new SQLException("Could not read " + dir + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static SnowflakeStageResponse toStage(Path stageDir, String schema, String database) throws SQLException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(stageDir, BasicFileAttributes.class);
+            return new SnowflakeStageResponse(stageDir.getFileName().toString(), schema, database, "INTERNAL",
+                    stageDir.toUri().toString(), null, ACCOUNT, attributes.creationTime().toInstant().toString());
+        } catch (IOException e) {
+            throw new SQLException("Could not read " + stageDir + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Minimal RFC 4180 reader: quoted fields, doubled quotes and embedded newlines
+     */
+    static final class CsvRowReader {
+
+        private final Reader reader;
+        private final int maxRowChars;
+        private int pending = -2;
+
+        CsvRowReader(Reader reader, int maxRowChars) {
+            this.reader = reader;
+            this.maxRowChars = maxRowChars;
+        }
+
+        String[] next() throws IOException {
+            int c = read();
+            if (c == -1) {
+                return null;
+            }
+
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            int rowChars = 0;
+            while (c != -1) {
+                if (++rowChars > maxRowChars) {
+                    throw new IllegalArgumentException("Row exceeds " + maxRowChars + " characters");
+                }
+                if (quoted) {
+                    if (c == '"') {
+                        int nextChar = read();
+                        if (nextChar == '"') {
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                            c = nextChar;
+                            continue;
+                        }
+                    } else {
+                        field.append((char) c);
+                    }
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n' || c == '\r') {
+                    if (c == '\r') {
+                        int nextChar = read();
+                        if (nextChar != '\n') {
+                            pending = nextChar;
+                        }
+                    }
+                    break;
+                } else {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+            fields.add(field.toString());
+            return fields.toArray(new String[0]);
+        }
+
+        private int read() throws IOException {
+            if (pending != -2) {
+                int c = pending;
+                pending = -2;
+                return c;
+            }
+            return reader.read();
+        }
+    }
+}
@@ -0,0 +1,467 @@
+package ai.datalens.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Typeahead index over one project's object names: case-insensitive prefix and fuzzy
+ * matches on the leaf name (stage, table or column name).
+ *
+ * Each name is split into trigrams, padded at the start so the first one or two characters
+ * form their own trigrams, and each posting records the trigram's position as well as the
+ * name's id. A prefix query walks the shortest posting list of its trigrams at the position
+ * the query has them; a fuzzy query counts, per name, the query trigrams found within
+ * maxEdits positions of where the query has them and checks the survivors' prefix edit
+ * distance. Postings are packed ints in ascending id order and the per-name data used for
+ * ranking sits in dense arrays, so candidates that can't make the top results are dropped
+ * without touching their strings.
+ *
+ * Names are added and removed in groups (all stages, or one table with its columns) so a
+ * catalog change only touches what changed. Removed ids are tombstoned and the index is
+ * compacted once they outnumber the live ones.
+ */
+final class NameIndex {
+
+    enum Kind { TABLE, STAGE, COLUMN }
+
+    /**
+     * One name to index; parent is the qualified path it lives under, shared by its siblings
+     */
+    record Entry(Kind kind, String name, String parent) {}
+
+    /**
+     * A search hit; distance is 0 for prefix matches
+     */
+    record Match(Kind kind, String name, String path, int distance) {}
+
+    private static final char START = '\u0001';
+
+    // One machine word per column of the edit distance
+    private static final int MAX_QUERY_LENGTH = 64;
+
+    private static final int MAX_RANKED_LENGTH = (1 << 12) - 1;
+
+    // A posting is id << POSITION_BITS | position; later positions share the last value
+    private static final int POSITION_BITS = 6;
+    private static final int MAX_POSITION = (1 << POSITION_BITS) - 1;
+    private static final int MAX_IDS = 1 << (31 - POSITION_BITS);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Indexed by id; a removed name leaves a null until the next compaction
+    private String[] names = new String[1024];
+    private String[] parents = new String[1024];
+    private byte[] kinds = new byte[1024];
+    private short[] lengths = new short[1024];
+    private int idCount;
+    private int deadCount;
+
+    private final Map<Long, Postings> postings = new HashMap<>();
+    private final Map<String, int[]> groups = new HashMap<>();
+
+    /**
+     * Replace every name in the group
+     */
+    void replaceGroup(String group, List<Entry> entries) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(group);
+            int[] ids = new int[entries.size()];
+            for (int i = 0; i < ids.length; i++) {
+                Entry entry = entries.get(i);
+                ids[i] = addLocked(entry.kind().ordinal(), entry.name(), entry.parent());
+            }
+            groups.put(group, ids);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void removeGroup(String group) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(group);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Up to limit names starting with the query, shortest first; when fuzzy, names within one
+     * edit (two for queries of eight or more characters) of a prefix rank after them.
+     */
+    List<Match> search(String query, int limit, boolean fuzzy) {
+        String q = query == null ? "" : query.trim().toLowerCase(Locale.ROOT);
+        if (q.length() > MAX_QUERY_LENGTH) {
+            q = q.substring(0, MAX_QUERY_LENGTH);
+        }
+        if (q.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            TopScores top = new TopScores(limit);
+            collectPrefixMatches(q, top);
+            if (fuzzy && q.length() >= 3) {
+                collectFuzzyMatches(q, top);
+            }
+
+            List<Match> matches = new ArrayList<>(top.size);
+            for (int i = 0; i < top.size; i++) {
+                long score = top.scores[i];
+                int id = (int) score;
+                String parent = parents[id];
+                matches.add(new Match(Kind.values()[kinds[id]], names[id],
+                        parent.isEmpty() ? names[id] : parent + "." + names[id], (int) (score >>> 46)));
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return idCount - deadCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Approximate heap held by the index, in bytes
+     */
+    long estimatedBytes() {
+        lock.readLock().lock();
+        try {
+            // Two reference arrays, kinds and lengths
+            long bytes = 64L + names.length * (4L + 4L + 1L + 2L);
+            String previousParent = null;
+            for (int id = 0; id < idCount; id++) {
+                if (names[id] == null) {
+                    continue;
+                }
+                // Compact Latin-1 strings; siblings share their parent string
+                bytes += 40 + names[id].length();
+                if (parents[id] != previousParent) {
+                    bytes += 40 + parents[id].length();
+                    previousParent = parents[id];
+                }
+            }
+            for (Postings list : postings.values()) {
+                // HashMap node, boxed key, the Postings object and its int array
+                bytes += 32 + 24 + 24 + 16 + 4L * list.ids.length;
+            }
+            for (Map.Entry<String, int[]> group : groups.entrySet()) {
+                bytes += 32 + 40 + group.getKey().length() + 16 + 4L * group.getValue().length;
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void collectPrefixMatches(String q, TopScores top) {
+        List<Postings> lists = new ArrayList<>();
+        String padded = pad(q);
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            Postings list = postings.get(trigram(padded, i));
+            if (list == null) {
+                return;
+            }
+            lists.add(list);
+        }
+        int position = 0;
+        for (int i = 1; i < lists.size(); i++) {
+            if (lists.get(i).size < lists.get(position).size) {
+                position = i;
+            }
+        }
+        Postings shortest = lists.get(position);
+        int expected = Math.min(position, MAX_POSITION);
+
+        for (int i = 0; i < shortest.size; i++) {
+            int posting = shortest.ids[i];
+            if ((posting & MAX_POSITION) != expected) {
+                continue;
+            }
+            int id = posting >>> POSITION_BITS;
+            long score = score(0, id);
+            if (top.admits(score) && names[id] != null && names[id].regionMatches(true, 0, q, 0, q.length())) {
+                top.add(score);
+            }
+        }
+    }
+
+    private void collectFuzzyMatches(String q, TopScores top) {
+        // Every fuzzy match ranks below every prefix match
+        if (!top.admits(1L << 46)) {
+            return;
+        }
+        int maxEdits = q.length() >= 8 ? 2 : 1;
+        QueryMasks masks = new QueryMasks(q);
+        // Each edit breaks at most three of the query's trigrams
+        String padded = pad(q);
+        int trigrams = padded.length() - 2;
+        int minShared = Math.max(1, trigrams - 3 * maxEdits);
+
+        short[] shared = new short[idCount];
+        for (int i = 0; i < trigrams; i++) {
+            Postings list = postings.get(trigram(padded, i));
+            if (list == null) {
+                continue;
+            }
+            // Count each name once per query trigram, if the trigram sits where an alignment could use it
+            int lastId = -1;
+            for (int j = 0; j < list.size; j++) {
+                int posting = list.ids[j];
+                int id = posting >>> POSITION_BITS;
+                if (id != lastId && Math.abs((posting & MAX_POSITION) - Math.min(i, MAX_POSITION)) <= maxEdits) {
+                    shared[id]++;
+                    lastId = id;
+                }
+            }
+        }
+
+        // Visit the names sharing the most trigrams first: they are the likely best matches, and
+        // once they fill the results the rest are dropped on their distance lower bound alone
+        int[] bucketStart = new int[trigrams + 2];
+        for (int id = 0; id < idCount; id++) {
+            if (shared[id] >= minShared) {
+                bucketStart[trigrams - shared[id] + 1]++;
+            }
+        }
+        for (int b = 1; b < bucketStart.length; b++) {
+            bucketStart[b] += bucketStart[b - 1];
+        }
+        int[] candidates = new int[bucketStart[bucketStart.length - 1]];
+        int[] next = Arrays.copyOf(bucketStart, bucketStart.length);
+        for (int id = 0; id < idCount; id++) {
+            if (shared[id] >= minShared) {
+                candidates[next[trigrams - shared[id]]++] = id;
+            }
+        }
+
+        for (int id : candidates) {
+            // Prefix matches were ranked already, so a fuzzy match is at least one edit away
+            int lowerBound = Math.max(1, (trigrams - shared[id] + 2) / 3);
+            if (!top.admits(score(lowerBound, id)) || names[id] == null) {
+                continue;
+            }
+            int distance = prefixDistance(q, masks, names[id], maxEdits);
+            if (distance > 0 && distance <= maxEdits) {
+                top.add(score(distance, id));
+            }
+        }
+    }
+
+    /**
+     * Ranking key: edit distance, then name length, then kind, then id; lower is better
+     */
+    private long score(int distance, int id) {
+        return ((long) distance << 46) | ((long) lengths[id] << 34) | ((long) kinds[id] << 32) | id;
+    }
+
+    /**
+     * Edit distance between the lowercase query and the closest prefix of the key, compared
+     * case-insensitively
+     */
+    static int prefixDistance(String query, String key, int maxEdits) {
+        return prefixDistance(query, new QueryMasks(query), key, maxEdits);
+    }
+
+    /**
+     * Myers' bit-parallel edit distance, global in the query and open-ended in the key: one
+     * column of the edit matrix per key character in a handful of word operations. Only the
+     * first query-length-plus-maxEdits characters of the key can take part in a match.
+     */
+    private static int prefixDistance(String query, QueryMasks masks, String key, int maxEdits) {
+        int n = query.length();
+        long last = 1L << (n - 1);
+        long pv = -1L;
+        long mv = 0L;
+        int score = n;
+        int best = n;
+        int m = Math.min(key.length(), n + maxEdits);
+        for (int j = 0; j < m; j++) {
+            long eq = masks.of(Character.toLowerCase(key.charAt(j)));
+            long xv = eq | mv;
+            long xh = (((eq & pv) + pv) ^ pv) | eq;
+            long ph = mv | ~(xh | pv);
+            long mh = pv & xh;
+            if ((ph & last) != 0) {
+                score++;
+            } else if ((mh & last) != 0) {
+                score--;
+            }
+            // The empty query row grows by one per key character
+            ph = (ph << 1) | 1L;
+            mh = mh << 1;
+            pv = mh | ~(xv | ph);
+            mv = ph & xv;
+            best = Math.min(best, score);
+        }
+        return best;
+    }
+
+    private int addLocked(int kind, String name, String parent) {
+        if (idCount == MAX_IDS) {
+            throw new IllegalStateException("Name index is full");
+        }
+        if (idCount == names.length) {
+            int capacity = idCount * 2;
+            names = Arrays.copyOf(names, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        int id = idCount++;
+        names[id] = name;
+        parents[id] = parent != null ? parent : "";
+        kinds[id] = (byte) kind;
+        lengths[id] = (short) Math.min(name.length(), MAX_RANKED_LENGTH);
+
+        String padded = pad(name.toLowerCase(Locale.ROOT));
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            int posting = id << POSITION_BITS | Math.min(i, MAX_POSITION);
+            Postings list = postings.computeIfAbsent(trigram(padded, i), t -> new Postings());
+            if (list.size == 0 || list.ids[list.size - 1] != posting) {
+                list.add(posting);
+            }
+        }
+        return id;
+    }
+
+    private void removeLocked(String group) {
+        int[] ids = groups.remove(group);
+        if (ids == null) {
+            return;
+        }
+        for (int id : ids) {
+            names[id] = null;
+            parents[id] = null;
+        }
+        deadCount += ids.length;
+    }
+
+    private void compactIfNeeded() {
+        if (deadCount < 1024 || deadCount < idCount - deadCount) {
+            return;
+        }
+        String[] oldNames = names;
+        String[] oldParents = parents;
+        byte[] oldKinds = kinds;
+        Map<String, int[]> oldGroups = new HashMap<>(groups);
+
+        int capacity = Math.max(1024, Integer.highestOneBit(Math.max(1, idCount - deadCount)) * 2);
+        names = new String[capacity];
+        parents = new String[capacity];
+        kinds = new byte[capacity];
+        lengths = new short[capacity];
+        idCount = 0;
+        deadCount = 0;
+        postings.clear();
+        groups.clear();
+        for (Map.Entry<String, int[]> group : oldGroups.entrySet()) {
+            int[] ids = group.getValue();
+            int[] renumbered = new int[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                renumbered[i] = addLocked(oldKinds[ids[i]], oldNames[ids[i]], oldParents[ids[i]]);
+            }
+            groups.put(group.getKey(), renumbered);
+        }
+        postings.values().forEach(Postings::trim);
+    }
+
+    private static String pad(String key) {
+        return "" + START + START + key;
+    }
+
+    private static long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    private static final class Postings {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+            }
+            ids[size++] = id;
+        }
+
+        void trim() {
+            if (ids.length > size) {
+                ids = Arrays.copyOf(ids, size);
+            }
+        }
+    }
+
+    /**
+     * For each character, the bit set of query positions holding it
+     */
+    private static final class QueryMasks {
+        private final String query;
+        private final long[] ascii = new long[128];
+
+        QueryMasks(String query) {
+            this.query = query;
+            for (int i = 0; i < query.length(); i++) {
+                char c = query.charAt(i);
+                if (c < 128) {
+                    ascii[c] |= 1L << i;
+                }
+            }
+        }
+
+        long of(char c) {
+            if (c < 128) {
+                return ascii[c];
+            }
+            long mask = 0L;
+            for (int i = 0; i < query.length(); i++) {
+                if (query.charAt(i) == c) {
+                    mask |= 1L << i;
+                }
+            }
+            return mask;
+        }
+    }
+
+    /**
+     * The best scores seen so far, kept sorted; a full set rejects worse scores in one comparison
+     */
+    private static final class TopScores {
+        final long[] scores;
+        int size;
+
+        TopScores(int limit) {
+            scores = new long[limit];
+        }
+
+        boolean admits(long score) {
+            return size < scores.length || score < scores[size - 1];
+        }
+
+        void add(long score) {
+            int i = size < scores.length ? size++ : size - 1;
+            while (i > 0 && scores[i - 1] > score) {
+                scores[i] = scores[i - 1];
+                i--;
+            }
+            scores[i] = score;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.response.NameSearchResponse;
+import ai.datalens.entity.ProjectStage;
+import ai.datalens.repository.ProjectRepository;
+import ai.datalens.repository.ProjectStageRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Typeahead search over a project's stage, table and column names.
+ *
+ * Each project gets an in-memory {@link NameIndex}, built from the stored stage catalog and
+ * warehouse catalog on its first search. The catalog services call back here after a sync or
+ * crawl so only the changed stages and tables are re-indexed. Idle projects' indexes are
+ * evicted; their total size is published as {@code warehouse.search.index.memory}.
+ */
+@Service
+public class NameSearchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(NameSearchService.class);
+
+    private static final String STAGES_GROUP = "stages";
+
+    private static final String TABLE_NAMES_SQL =
+            "SELECT t.id, t.table_catalog, t.table_schema, t.table_name, c.column_name " +
+            "FROM project_tables t LEFT JOIN project_columns c ON c.table_id = t.id WHERE t.project_id = ?";
+
+    private static final int MAX_LIMIT = 100;
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    @Autowired
+    private ProjectStageRepository projectStageRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${warehouse.search.max-projects:50}")
+    private long maxProjects;
+
+    @Value("${warehouse.search.expire-after-access:21600000}")
+    private long expireAfterAccessMs;
+
+    @Value("${warehouse.search.batch-size:500}")
+    private int batchSize;
+
+    private Cache<UUID, NameIndex> indexes;
+
+    private Timer searchTimer;
+
+    @PostConstruct
+    public void init() {
+        indexes = Caffeine.newBuilder()
+                .maximumSize(maxProjects)
+                .expireAfterAccess(Duration.ofMillis(expireAfterAccessMs))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, indexes, "warehouse.search.index");
+
+        Gauge.builder("warehouse.search.index.memory", this, NameSearchService::estimatedBytes)
+                .description("Approximate heap held by in-memory name search indexes")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("warehouse.search.index.names", this, NameSearchService::indexedNames)
+                .description("Names held by in-memory name search indexes")
+                .register(meterRegistry);
+        searchTimer = Timer.builder("warehouse.search.query")
+                .description("Name search latency")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Stages, tables and columns whose names start with the query, best first, followed when
+     * fuzzy by names one or two typos away
+     *
+     * @throws RuntimeException if the project does not exist or belongs to someone else
+     */
+    public List<NameSearchResponse> search(UUID userId, UUID projectId, String query, int limit, boolean fuzzy) {
+        projectRepository.findByUserIdAndId(userId, projectId)
+                .orElseThrow(() -> new RuntimeException("Project not found"));
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("Query is required");
+        }
+
+        NameIndex index = indexes.get(projectId, this::build);
+        List<NameIndex.Match> matches = searchTimer.record(
+                () -> index.search(query, Math.min(Math.max(1, limit), MAX_LIMIT), fuzzy));
+        return matches.stream()
+                .map(match -> new NameSearchResponse(match.kind().name().toLowerCase(Locale.ROOT), match.name(),
+                        match.path(), match.distance()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Re-index a project's stage names after its stage catalog changed
+     */
+    public void stagesChanged(UUID projectId) {
+        NameIndex index = indexes.getIfPresent(projectId);
+        if (index != null) {
+            index.replaceGroup(STAGES_GROUP, loadStages(projectId));
+        }
+    }
+
+    /**
+     * Re-index the given tables, with their columns, and forget removed ones after a catalog crawl
+     */
+    public void tablesChanged(UUID projectId, Collection<UUID> changedTableIds, Collection<UUID> removedTableIds) {
+        NameIndex index = indexes.getIfPresent(projectId);
+        if (index == null) {
+            return;
+        }
+        removedTableIds.forEach(tableId -> index.removeGroup(tableGroup(tableId)));
+
+        List<UUID> changed = new ArrayList<>(changedTableIds);
+        for (int from = 0; from < changed.size(); from += Math.max(1, batchSize)) {
+            List<UUID> batch = changed.subList(from, Math.min(changed.size(), from + Math.max(1, batchSize)));
+            String sql = TABLE_NAMES_SQL + " AND t.id IN (" + String.join(", ", Collections.nCopies(batch.size(), "?"))
+                    + ") ORDER BY t.id, c.ordinal_position";
+            List<Object> parameters = new ArrayList<>(batch.size() + 1);
+            parameters.add(projectId);
+            parameters.addAll(batch);
+            TableGroupHandler handler = new TableGroupHandler(index);
+            jdbcTemplate.query(sql, handler, parameters.toArray());
+            handler.flush();
+        }
+    }
+
+    private NameIndex build(UUID projectId) {
+        long start = System.nanoTime();
+        NameIndex index = new NameIndex();
+        index.replaceGroup(STAGES_GROUP, loadStages(projectId));
+        TableGroupHandler handler = new TableGroupHandler(index);
+        jdbcTemplate.query(TABLE_NAMES_SQL + " ORDER BY t.id, c.ordinal_position", handler, projectId);
+        handler.flush();
+
+        logger.info("Built name index for project {}: {} names, ~{} KB in {} ms", projectId, index.size(),
+                index.estimatedBytes() / 1024, (System.nanoTime() - start) / 1_000_000);
+        return index;
+    }
+
+    private List<NameIndex.Entry> loadStages(UUID projectId) {
+        List<NameIndex.Entry> entries = new ArrayList<>();
+        for (ProjectStage stage : projectStageRepository.findByProjectIdOrderByStageNameAsc(projectId)) {
+            entries.add(new NameIndex.Entry(NameIndex.Kind.STAGE, stage.getStageName(),
+                    path(stage.getStageDatabase(), stage.getStageSchema())));
+        }
+        return entries;
+    }
+
+    private double estimatedBytes() {
+        return indexes.asMap().values().stream().mapToLong(NameIndex::estimatedBytes).sum();
+    }
+
+    private double indexedNames() {
+        return indexes.asMap().values().stream().mapToLong(NameIndex::size).sum();
+    }
+
+    private static String tableGroup(UUID tableId) {
+        return "table:" + tableId;
+    }
+
+    private static String path(String... parts) {
+        StringBuilder path = new StringBuilder();
+        for (String part : parts) {
+            if (part != null && !part.isEmpty()) {
+                path.append(path.length() > 0 ? "." : "").append(part);
+            }
+        }
+        return path.toString();
+    }
+
+    /**
+     * Collects rows ordered by table id into one index group per table
+     */
+    private static final class TableGroupHandler implements RowCallbackHandler {
+
+        private final NameIndex index;
+        private UUID tableId;
+        private String tablePath;
+        private final List<NameIndex.Entry> entries = new ArrayList<>();
+
+        TableGroupHandler(NameIndex index) {
+            this.index = index;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            UUID id = rs.getObject(1, UUID.class);
+            if (!id.equals(tableId)) {
+                flush();
+                tableId = id;
+                String schemaPath = path(rs.getString(2), rs.getString(3));
+                tablePath = path(schemaPath, rs.getString(4));
+                entries.add(new NameIndex.Entry(NameIndex.Kind.TABLE, rs.getString(4), schemaPath));
+            }
+            String column = rs.getString(5);
+            if (column != null) {
+                // Columns share their table's path string
+                entries.add(new NameIndex.Entry(NameIndex.Kind.COLUMN, column, tablePath));
+            }
+        }
+
+        void flush() {
+            if (tableId != null) {
+                index.replaceGroup(tableGroup(tableId), List.copyOf(entries));
+                entries.clear();
+                tableId = null;
+            }
+        }
+    }
+}
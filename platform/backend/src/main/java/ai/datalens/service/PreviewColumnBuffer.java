@@ -0,0 +1,210 @@
+package ai.datalens.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+/**
+ * One preview column stored in a primitive array, with its type inferred from the values seen.
+ *
+ * Values start out in the narrowest type that fits (boolean, long, double) and the column is
+ * widened in place when a value doesn't fit: long to double, anything else to string. Nulls
+ * are tracked in a bitset, so a numeric column never holds boxed values.
+ */
+final class PreviewColumnBuffer {
+
+    enum Type { NULL, BOOLEAN, LONG, DOUBLE, STRING }
+
+    private final String name;
+    private final int capacity;
+    private final BitSet nulls = new BitSet();
+    private Type type = Type.NULL;
+    private long[] longs;
+    private double[] doubles;
+    private String[] strings;
+    private int size;
+
+    PreviewColumnBuffer(String name, int capacity) {
+        this.name = name;
+        this.capacity = capacity;
+    }
+
+    String name() {
+        return name;
+    }
+
+    Type type() {
+        return type;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isNull(int row) {
+        return nulls.get(row);
+    }
+
+    /**
+     * Pad with nulls up to the given row count, for columns first seen part way through
+     */
+    void padTo(int rows) {
+        while (size < rows) {
+            appendNull();
+        }
+    }
+
+    void appendNull() {
+        nulls.set(size++);
+    }
+
+    /**
+     * Append a textual value, inferring boolean/long/double where the text allows it
+     */
+    void appendText(String text) {
+        if (text == null || text.isEmpty()) {
+            appendNull();
+        } else if (type != Type.STRING && ("true".equalsIgnoreCase(text) || "false".equalsIgnoreCase(text))) {
+            appendBoolean(Boolean.parseBoolean(text));
+        } else if (type != Type.STRING && isCanonicalLong(text)) {
+            appendLong(Long.parseLong(text));
+        } else if (type != Type.STRING && isDecimal(text)) {
+            appendDouble(Double.parseDouble(text));
+        } else {
+            appendString(text);
+        }
+    }
+
+    void appendBoolean(boolean value) {
+        if (type == Type.NULL) {
+            become(Type.BOOLEAN);
+        }
+        if (type == Type.BOOLEAN) {
+            longs[size++] = value ? 1 : 0;
+        } else {
+            appendString(Boolean.toString(value));
+        }
+    }
+
+    void appendLong(long value) {
+        if (type == Type.NULL) {
+            become(Type.LONG);
+        }
+        switch (type) {
+            case LONG -> longs[size++] = value;
+            case DOUBLE -> doubles[size++] = value;
+            default -> appendString(Long.toString(value));
+        }
+    }
+
+    void appendDouble(double value) {
+        if (type == Type.NULL) {
+            become(Type.DOUBLE);
+        } else if (type == Type.LONG) {
+            widenToDouble();
+        }
+        if (type == Type.DOUBLE) {
+            doubles[size++] = value;
+        } else {
+            appendString(Double.toString(value));
+        }
+    }
+
+    void appendString(String value) {
+        if (type != Type.STRING) {
+            widenToString();
+        }
+        strings[size++] = value;
+    }
+
+    void writeValue(JsonGenerator generator, int row) throws IOException {
+        if (nulls.get(row)) {
+            generator.writeNull();
+            return;
+        }
+        switch (type) {
+            case BOOLEAN -> generator.writeBoolean(longs[row] != 0);
+            case LONG -> generator.writeNumber(longs[row]);
+            case DOUBLE -> generator.writeNumber(doubles[row]);
+            case STRING -> generator.writeString(strings[row]);
+            default -> generator.writeNull();
+        }
+    }
+
+    private void become(Type newType) {
+        type = newType;
+        switch (newType) {
+            case BOOLEAN, LONG -> longs = new long[capacity];
+            case DOUBLE -> doubles = new double[capacity];
+            case STRING -> strings = new String[capacity];
+            default -> { }
+        }
+    }
+
+    private void widenToDouble() {
+        double[] widened = new double[capacity];
+        for (int i = 0; i < size; i++) {
+            widened[i] = longs[i];
+        }
+        longs = null;
+        doubles = widened;
+        type = Type.DOUBLE;
+    }
+
+    private void widenToString() {
+        String[] widened = new String[capacity];
+        for (int i = 0; i < size; i++) {
+            if (!nulls.get(i)) {
+                widened[i] = switch (type) {
+                    case BOOLEAN -> Boolean.toString(longs[i] != 0);
+                    case LONG -> Long.toString(longs[i]);
+                    case DOUBLE -> Double.toString(doubles[i]);
+                    default -> null;
+                };
+            }
+        }
+        longs = null;
+        doubles = null;
+        strings = widened;
+        type = Type.STRING;
+    }
+
+    // Only plain integers that round-trip, so "007" or "+5" stay strings
+    private static boolean isCanonicalLong(String text) {
+        int length = text.length();
+        int start = text.charAt(0) == '-' ? 1 : 0;
+        if (length == start || length - start > 18 || (text.charAt(start) == '0' && length - start > 1)) {
+            return false;
+        }
+        for (int i = start; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDecimal(String text) {
+        boolean digits = false;
+        boolean dot = false;
+        boolean exponent = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits = true;
+            } else if (c == '.' && !dot && !exponent) {
+                dot = true;
+            } else if ((c == 'e' || c == 'E') && digits && !exponent) {
+                exponent = true;
+                digits = false;
+            } else if ((c == '-' || c == '+') && (i == 0 || text.charAt(i - 1) == 'e' || text.charAt(i - 1) == 'E')) {
+                continue;
+            } else {
+                return false;
+            }
+        }
+        return digits;
+    }
+}
@@ -0,0 +1,175 @@
+package ai.datalens.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One project's Snowflake pool, opened with the credentials and session context of its
+ * connection profile.
+ *
+ * Calls are admitted up to max-pool-size running plus queue-depth waiting for a connection;
+ * past that they are refused at once instead of piling up on Hikari's borrow timeout, so a
+ * busy project backs off without holding request threads that other projects need.
+ */
+final class ProjectConnectionPool implements SnowflakeConnectionSource, SnowflakeCallGuard {
+
+    /**
+     * How to log in and what to pin each session to
+     */
+    record Settings(String url, String driverClassName, Properties properties, String account, String role,
+                    String warehouse, String database, String schema) {}
+
+    private final UUID projectId;
+    private final LocalDateTime version;
+    private final Settings settings;
+    private final int maxPoolSize;
+    private final int queueDepth;
+    private final Semaphore admitted;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Counter rejected;
+    private final HikariDataSource dataSource;
+
+    private volatile long lastUsedAt = System.currentTimeMillis();
+    private volatile long checkedAt = System.currentTimeMillis();
+
+    /**
+     * @param version the profile's updated_at; a newer profile replaces the pool
+     * @param dataSource Hikari pool over {@link #physicalConnections(Settings)}
+     */
+    ProjectConnectionPool(UUID projectId, LocalDateTime version, Settings settings, int maxPoolSize, int queueDepth,
+                          Counter rejected, HikariDataSource dataSource) {
+        this.projectId = projectId;
+        this.version = version;
+        this.settings = settings;
+        this.maxPoolSize = maxPoolSize;
+        this.queueDepth = queueDepth;
+        this.admitted = new Semaphore(maxPoolSize + queueDepth);
+        this.rejected = rejected;
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public <T> T execute(String operation, SnowflakeCircuitBreaker.SnowflakeCall<T> call) throws SQLException {
+        if (!admitted.tryAcquire()) {
+            rejected.increment();
+            throw new SnowflakeUnavailableException("Too many queries queued on this project's warehouse connection", 1);
+        }
+        inFlight.incrementAndGet();
+        lastUsedAt = System.currentTimeMillis();
+        try {
+            return call.call();
+        } finally {
+            lastUsedAt = System.currentTimeMillis();
+            inFlight.decrementAndGet();
+            admitted.release();
+        }
+    }
+
+    @Override
+    public boolean isConfigured() {
+        return true;
+    }
+
+    @Override
+    public StageCatalogKey catalogKey() {
+        return new StageCatalogKey(settings.account(), settings.database(), settings.schema());
+    }
+
+    @Override
+    public String getRole() {
+        return settings.role();
+    }
+
+    @Override
+    public String getWarehouse() {
+        return settings.warehouse();
+    }
+
+    @Override
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return dataSource.getConnection();
+    }
+
+    UUID projectId() {
+        return projectId;
+    }
+
+    LocalDateTime version() {
+        return version;
+    }
+
+    int queueDepth() {
+        return queueDepth;
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    HikariDataSource dataSource() {
+        return dataSource;
+    }
+
+    /**
+     * When the profile behind the pool was last confirmed current
+     */
+    long checkedAt() {
+        return checkedAt;
+    }
+
+    void markChecked() {
+        checkedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Nothing running or queued, and nothing has been since the cutoff
+     */
+    boolean isIdleSince(long cutoff) {
+        return inFlight.get() == 0 && lastUsedAt < cutoff;
+    }
+
+    void close() {
+        dataSource.close();
+    }
+
+    /**
+     * Opens the physical connections Hikari pools: login, then the profile's session context
+     */
+    static AbstractDataSource physicalConnections(Settings settings) {
+        return new AbstractDataSource() {
+            @Override
+            public Connection getConnection() throws SQLException {
+                SnowflakeConnectionManager.loadDriver(settings.driverClassName());
+                Connection connection = DriverManager.getConnection(settings.url(), settings.properties());
+                try {
+                    SnowflakeConnectionManager.setSessionParameters(connection, settings.role(), settings.warehouse(),
+                            settings.database(), settings.schema());
+                } catch (SQLException e) {
+                    connection.close();
+                    throw e;
+                }
+                return connection;
+            }
+
+            @Override
+            public Connection getConnection(String username, String password) throws SQLException {
+                throw new SQLException("Project connection credentials come from its connection profile");
+            }
+        };
+    }
+}
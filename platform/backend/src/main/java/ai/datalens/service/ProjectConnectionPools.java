@@ -0,0 +1,203 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.request.ConnectionProfileRequest;
+import ai.datalens.entity.ProjectConnectionProfile;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Open connection pools of projects with their own connection profile.
+ *
+ * A pool is opened on the project's first warehouse call, holds no connections until then
+ * (minimum idle is zero) and is closed once it has been idle for warehouse.profiles.idle-timeout,
+ * so profiles of dormant projects cost nothing. Each pool is published by Hikari under
+ * {@code pool=snowflake-<projectId>}; open pools as {@code warehouse.profiles.pools.open}.
+ */
+@Component
+public class ProjectConnectionPools {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProjectConnectionPools.class);
+
+    private static final Pattern ACCOUNT = Pattern.compile(ConnectionProfileRequest.ACCOUNT_PATTERN);
+
+    @Autowired
+    private SecretCipher secretCipher;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Account identifier in, JDBC URL out
+    @Value("${warehouse.profiles.url-template:jdbc:snowflake://%s.snowflakecomputing.com/}")
+    private String urlTemplate;
+
+    @Value("${snowflake.driver:net.snowflake.client.jdbc.SnowflakeDriver}")
+    private String driverClassName;
+
+    @Value("${warehouse.profiles.connection-timeout:30000}")
+    private long connectionTimeoutMs;
+
+    @Value("${warehouse.profiles.idle-timeout:600000}")
+    private long idleTimeoutMs;
+
+    @Value("${warehouse.profiles.max-lifetime:1800000}")
+    private long maxLifetimeMs;
+
+    // Other instances may have changed the profile; an open pool is checked against it this often
+    @Value("${warehouse.profiles.revalidate-interval:60000}")
+    private long revalidateIntervalMs;
+
+    @Value("${snowflake.network-timeout:300000}")
+    private long networkTimeoutMs;
+
+    @Value("${snowflake.login-timeout:60000}")
+    private long loginTimeoutMs;
+
+    @Value("${snowflake.fetch-size:1000}")
+    private int fetchSize;
+
+    @Value("${snowflake.query-timeout:300000}")
+    private long queryTimeoutMs;
+
+    private final Map<UUID, OpenPool> pools = new ConcurrentHashMap<>();
+
+    private Counter rejected;
+
+    private Counter evicted;
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("warehouse.profiles.pools.open", pools, Map::size)
+                .description("Connection pools open for projects with their own connection profile")
+                .register(meterRegistry);
+        rejected = Counter.builder("warehouse.profiles.calls.rejected")
+                .description("Project warehouse calls refused because the pool and its queue were full")
+                .register(meterRegistry);
+        evicted = Counter.builder("warehouse.profiles.pools.evicted")
+                .description("Project connection pools closed after sitting idle")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pools.keySet().forEach(this::close);
+    }
+
+    /**
+     * The connector over the project's open pool, or null if it has none or the profile behind
+     * it is due to be checked again
+     */
+    WarehouseConnector current(UUID projectId) {
+        OpenPool open = pools.get(projectId);
+        if (open == null || System.currentTimeMillis() - open.pool().checkedAt() > revalidateIntervalMs) {
+            return null;
+        }
+        return open.connector();
+    }
+
+    /**
+     * The connector over the profile's pool, opening it, or replacing one opened from an older
+     * version of the profile
+     */
+    WarehouseConnector open(ProjectConnectionProfile profile) {
+        UUID projectId = profile.getProjectId();
+        OpenPool open = pools.get(projectId);
+        if (open != null) {
+            if (Objects.equals(open.pool().version(), profile.getUpdatedAt())) {
+                open.pool().markChecked();
+                return open.connector();
+            }
+            logger.info("Connection profile of project {} changed, reopening its pool", projectId);
+            close(projectId);
+        }
+        return pools.computeIfAbsent(projectId, id -> create(profile)).connector();
+    }
+
+    /**
+     * Close the project's pool, if open; in-flight calls get a short grace period from Hikari
+     */
+    void close(UUID projectId) {
+        OpenPool open = pools.remove(projectId);
+        if (open != null) {
+            open.pool().close();
+        }
+    }
+
+    Optional<ProjectConnectionPool> pool(UUID projectId) {
+        return Optional.ofNullable(pools.get(projectId)).map(OpenPool::pool);
+    }
+
+    /**
+     * Close pools with nothing running or queued for the idle timeout
+     */
+    @Scheduled(fixedDelayString = "${warehouse.profiles.eviction-interval:60000}")
+    public void evictIdlePools() {
+        long cutoff = System.currentTimeMillis() - idleTimeoutMs;
+        for (OpenPool open : pools.values()) {
+            ProjectConnectionPool pool = open.pool();
+            if (pool.isIdleSince(cutoff) && pools.remove(pool.projectId(), open)) {
+                pool.close();
+                evicted.increment();
+                logger.info("Closed idle connection pool of project {}", pool.projectId());
+            }
+        }
+    }
+
+    private OpenPool create(ProjectConnectionProfile profile) {
+        // Checked again here for profiles stored before requests were validated
+        if (profile.getAccount() == null || !ACCOUNT.matcher(profile.getAccount()).matches()) {
+            throw new IllegalArgumentException("Connection profile of project " + profile.getProjectId()
+                    + " has an invalid account identifier");
+        }
+        String secret = secretCipher.decrypt(profile.getSecretCiphertext(), profile.getProjectId().toString());
+        Properties properties = SnowflakeConnectionManager.connectionProperties(profile.getUsername(), secret,
+                profile.getRole(), profile.getWarehouse(), profile.getDatabaseName(), profile.getSchemaName(),
+                networkTimeoutMs, loginTimeoutMs);
+        ProjectConnectionPool.Settings settings = new ProjectConnectionPool.Settings(
+                String.format(urlTemplate, profile.getAccount()), driverClassName, properties,
+                profile.getAccount().toUpperCase(Locale.ROOT), profile.getRole(), profile.getWarehouse(),
+                profile.getDatabaseName(), profile.getSchemaName());
+
+        int maximum = Math.max(1, profile.getMaxPoolSize());
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(SnowflakeConnectionManager.POOL_NAME + "-" + profile.getProjectId());
+        config.setDataSource(ProjectConnectionPool.physicalConnections(settings));
+        config.setMaximumPoolSize(maximum);
+        config.setMinimumIdle(0);
+        config.setConnectionTimeout(connectionTimeoutMs);
+        config.setValidationTimeout(Math.min(5000L, Math.max(250L, connectionTimeoutMs - 1)));
+        config.setIdleTimeout(idleTimeoutMs);
+        config.setMaxLifetime(maxLifetimeMs);
+        // Credentials are only tried on the first call, where a failure reaches the caller
+        config.setInitializationFailTimeout(-1);
+        config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+
+        logger.info("Opening connection pool for project {} (account={}, max={}, queue={})",
+                profile.getProjectId(), profile.getAccount(), maximum, Math.max(0, profile.getQueueDepth()));
+        ProjectConnectionPool pool = new ProjectConnectionPool(profile.getProjectId(), profile.getUpdatedAt(), settings,
+                maximum, Math.max(0, profile.getQueueDepth()), rejected, new HikariDataSource(config));
+        return new OpenPool(pool, new SnowflakeStageService(pool, pool, fetchSize, queryTimeoutMs));
+    }
+
+    private record OpenPool(ProjectConnectionPool pool, WarehouseConnector connector) {}
+}
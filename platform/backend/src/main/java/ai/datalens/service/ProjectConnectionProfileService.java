@@ -0,0 +1,163 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.request.ConnectionProfileRequest;
+import ai.datalens.dto.response.ConnectionProfileResponse;
+import ai.datalens.entity.ProjectConnectionProfile;
+import ai.datalens.repository.ProjectConnectionProfileRepository;
+import ai.datalens.repository.ProjectRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Per-project warehouse connection profiles: the login, session context and pool limits a
+ * project's warehouse calls use instead of the shared snowflake.* connection.
+ *
+ * The secret is stored encrypted by {@link SecretCipher}, bound to the project, and is never
+ * returned. Pool size and queue depth are capped by warehouse.profiles.max-pool-size and
+ * warehouse.profiles.max-queue-depth, so no single profile can claim an unbounded share of
+ * the warehouse or of the server's request threads.
+ */
+@Service
+public class ProjectConnectionProfileService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProjectConnectionProfileService.class);
+
+    @Autowired
+    private ProjectConnectionProfileRepository profileRepository;
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    @Autowired
+    private SecretCipher secretCipher;
+
+    @Autowired
+    private ProjectConnectionPools connectionPools;
+
+    @Autowired
+    private ProjectWarehouseConnectors projectConnectors;
+
+    @Value("${warehouse.profiles.default-pool-size:4}")
+    private int defaultPoolSize;
+
+    @Value("${warehouse.profiles.max-pool-size:16}")
+    private int maxPoolSize;
+
+    @Value("${warehouse.profiles.default-queue-depth:8}")
+    private int defaultQueueDepth;
+
+    @Value("${warehouse.profiles.max-queue-depth:64}")
+    private int maxQueueDepth;
+
+    /**
+     * The profile of a project the user owns, if it has one
+     *
+     * @throws RuntimeException if the project does not exist or belongs to someone else
+     */
+    public Optional<ConnectionProfileResponse> getProfile(UUID userId, UUID projectId) {
+        requireProject(userId, projectId);
+        return profileRepository.findByProjectId(projectId).map(this::toResponse);
+    }
+
+    /**
+     * Create or replace a project's profile. The project's open pool, if any, is closed so the
+     * next call logs in with the new settings.
+     *
+     * @throws IllegalArgumentException if a new profile has no password, or the pool limits are out of range
+     * @throws IllegalStateException if no encryption key is configured
+     * @throws RuntimeException if the project does not exist or belongs to someone else
+     */
+    public ConnectionProfileResponse saveProfile(UUID userId, UUID projectId, ConnectionProfileRequest request) {
+        requireProject(userId, projectId);
+
+        ProjectConnectionProfile profile = profileRepository.findByProjectId(projectId)
+                .orElseGet(ProjectConnectionProfile::new);
+        boolean hasPassword = request.getPassword() != null && !request.getPassword().isEmpty();
+        if (profile.getId() == null && !hasPassword) {
+            throw new IllegalArgumentException("Password is required");
+        }
+        if (!secretCipher.isConfigured()) {
+            throw new IllegalStateException("Connection profiles are disabled: warehouse.profiles.encryption-key is not configured");
+        }
+
+        int poolSize = request.getMaxPoolSize() != null ? request.getMaxPoolSize() : defaultPoolSize;
+        if (poolSize < 1 || poolSize > maxPoolSize) {
+            throw new IllegalArgumentException("Pool size must be between 1 and " + maxPoolSize);
+        }
+        int queueDepth = request.getQueueDepth() != null ? request.getQueueDepth() : defaultQueueDepth;
+        if (queueDepth < 0 || queueDepth > maxQueueDepth) {
+            throw new IllegalArgumentException("Queue depth must be between 0 and " + maxQueueDepth);
+        }
+
+        profile.setProjectId(projectId);
+        profile.setAccount(request.getAccount().trim());
+        profile.setUsername(request.getUsername().trim());
+        profile.setRole(blankToNull(request.getRole()));
+        profile.setWarehouse(blankToNull(request.getWarehouse()));
+        profile.setDatabaseName(blankToNull(request.getDatabase()));
+        profile.setSchemaName(blankToNull(request.getSchema()));
+        profile.setMaxPoolSize(poolSize);
+        profile.setQueueDepth(queueDepth);
+        if (hasPassword) {
+            profile.setSecretCiphertext(secretCipher.encrypt(request.getPassword(), projectId.toString()));
+        }
+
+        ProjectConnectionProfile saved = profileRepository.save(profile);
+        projectConnectors.profileChanged(projectId);
+        logger.info("Saved connection profile for project {} (account={}, max={}, queue={})",
+                projectId, saved.getAccount(), poolSize, queueDepth);
+        return toResponse(saved);
+    }
+
+    /**
+     * Remove a project's profile; its calls go back to the shared connection
+     *
+     * @return false if the project had no profile
+     * @throws RuntimeException if the project does not exist or belongs to someone else
+     */
+    public boolean deleteProfile(UUID userId, UUID projectId) {
+        requireProject(userId, projectId);
+
+        Optional<ProjectConnectionProfile> profile = profileRepository.findByProjectId(projectId);
+        profile.ifPresent(profileRepository::delete);
+        projectConnectors.profileChanged(projectId);
+        if (profile.isPresent()) {
+            logger.info("Removed connection profile of project {}", projectId);
+        }
+        return profile.isPresent();
+    }
+
+    private ConnectionProfileResponse toResponse(ProjectConnectionProfile profile) {
+        ConnectionProfileResponse response = new ConnectionProfileResponse();
+        response.setAccount(profile.getAccount());
+        response.setUsername(profile.getUsername());
+        response.setRole(profile.getRole());
+        response.setWarehouse(profile.getWarehouse());
+        response.setDatabase(profile.getDatabaseName());
+        response.setSchema(profile.getSchemaName());
+        response.setMaxPoolSize(profile.getMaxPoolSize());
+        response.setQueueDepth(profile.getQueueDepth());
+        connectionPools.pool(profile.getProjectId()).ifPresent(pool -> {
+            response.setPoolOpen(true);
+            response.setInFlight(pool.inFlight());
+        });
+        response.setCreatedAt(profile.getCreatedAt());
+        response.setUpdatedAt(profile.getUpdatedAt());
+        return response;
+    }
+
+    private void requireProject(UUID userId, UUID projectId) {
+        projectRepository.findByUserIdAndId(userId, projectId)
+                .orElseThrow(() -> new RuntimeException("Project not found"));
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+}
@@ -0,0 +1,320 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.response.SnowflakeStageResponse;
+import ai.datalens.entity.Project;
+import ai.datalens.entity.ProjectStage;
+import ai.datalens.entity.ProjectStageSync;
+import ai.datalens.repository.ProjectRepository;
+import ai.datalens.repository.ProjectStageRepository;
+import ai.datalens.repository.ProjectStageSyncRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Per-project stage catalog persisted in {@code project_stages}.
+ *
+ * Reads are served from Postgres. A sync diffs fresh SHOW STAGES output against the stored
+ * rows and writes only the inserted, changed and removed stages as JDBC batches.
+ */
+@Service
+public class ProjectStageCatalogService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProjectStageCatalogService.class);
+
+    private static final String INSERT_SQL =
+            "INSERT INTO project_stages (id, project_id, stage_database, stage_schema, stage_name, stage_type, " +
+            "stage_location, comment, owner, stage_created, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String UPDATE_SQL =
+            "UPDATE project_stages SET stage_type = ?, stage_location = ?, comment = ?, owner = ?, " +
+            "stage_created = ?, updated_at = ? WHERE id = ?";
+
+    private static final String DELETE_SQL = "DELETE FROM project_stages WHERE id = ?";
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    @Autowired
+    private ProjectStageRepository projectStageRepository;
+
+    @Autowired
+    private ProjectStageSyncRepository projectStageSyncRepository;
+
+    @Autowired
+    private StageCatalogCache stageCatalogCache;
+
+    @Autowired
+    private ProjectWarehouseConnectors projectConnectors;
+
+    @Autowired
+    private SnowflakeCircuitBreaker circuitBreaker;
+
+    @Autowired
+    private NameSearchService nameSearchService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${snowflake.catalog-sync.enabled:true}")
+    private boolean scheduledSyncEnabled;
+
+    @Value("${snowflake.catalog-sync.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * Get a project's stage catalog. The first read of a never-synced project syncs it inline.
+     *
+     * @throws SQLException if the project was never synced and Snowflake can't be reached
+     */
+    public List<SnowflakeStageResponse> getStages(UUID projectId) throws SQLException {
+        return getCatalog(projectId).stages();
+    }
+
+    /**
+     * {@link #getCatalog(UUID)} for one of the user's projects
+     *
+     * @throws RuntimeException if the user has no such project
+     */
+    public CatalogView getCatalog(UUID userId, UUID projectId) throws SQLException {
+        requireProject(userId, projectId);
+        return getCatalog(projectId);
+    }
+
+    /**
+     * A project's stage catalog with when it was last synced. It is flagged stale while the
+     * Snowflake circuit breaker is not closed, since the stored rows can't be kept current then.
+     */
+    public CatalogView getCatalog(UUID projectId) throws SQLException {
+        if (!projectStageSyncRepository.existsById(projectId)) {
+            try {
+                syncProject(projectId);
+            } catch (SQLException e) {
+                logger.error("Initial stage sync failed for project {}: {}", projectId, e.getMessage());
+                // Nothing stored yet; fall back to the last catalog read from Snowflake, if any
+                StageCatalogSnapshot snapshot = stageCatalogCache.getCatalog(projectId);
+                return new CatalogView(snapshot.stages(),
+                        LocalDateTime.ofInstant(snapshot.loadedAt(), ZoneId.systemDefault()), true);
+            }
+        }
+
+        List<SnowflakeStageResponse> stages = projectStageRepository.findByProjectIdOrderByStageNameAsc(projectId).stream()
+                .map(this::convertToStageResponse)
+                .collect(Collectors.toList());
+        LocalDateTime syncedAt = projectStageSyncRepository.findById(projectId)
+                .map(ProjectStageSync::getSyncedAt)
+                .orElse(null);
+        return new CatalogView(stages, syncedAt, circuitBreaker.isDegraded());
+    }
+
+    /**
+     * Count stages in one of the user's project catalogs
+     *
+     * @throws RuntimeException if the user has no such project
+     */
+    public long countStages(UUID userId, UUID projectId) throws SQLException {
+        requireProject(userId, projectId);
+        return countStages(projectId);
+    }
+
+    /**
+     * Count stages in a project's catalog
+     */
+    public long countStages(UUID projectId) throws SQLException {
+        if (projectStageSyncRepository.existsById(projectId)) {
+            return projectStageRepository.countByProjectId(projectId);
+        }
+        return getStages(projectId).size();
+    }
+
+    /**
+     * Drop the project's cached Snowflake catalog so the sync sees current SHOW STAGES output, then sync
+     */
+    public SyncResult resyncProject(UUID projectId) throws SQLException {
+        stageCatalogCache.invalidate(projectId);
+        return syncProject(projectId);
+    }
+
+    /**
+     * Diff the current Snowflake stage list against the stored catalog and apply the changes.
+     */
+    public SyncResult syncProject(UUID projectId) throws SQLException {
+        if (!projectRepository.existsById(projectId)) {
+            throw new RuntimeException("Project not found");
+        }
+
+        List<SnowflakeStageResponse> fresh = stageCatalogCache.getStagesOrThrow(projectId);
+        SyncResult result = transactionTemplate.execute(status -> applySync(projectId, fresh));
+        // Updates keep the stage's name, so only inserts and deletes touch the search index
+        if (result.inserted() > 0 || result.deleted() > 0) {
+            nameSearchService.stagesChanged(projectId);
+        }
+
+        logger.info("Synced stage catalog for project {}: {} stages ({} inserted, {} updated, {} deleted)",
+                projectId, result.total(), result.inserted(), result.updated(), result.deleted());
+        return result;
+    }
+
+    /**
+     * Periodically re-sync active projects
+     */
+    @Scheduled(fixedDelayString = "${snowflake.catalog-sync.interval:900000}",
+               initialDelayString = "${snowflake.catalog-sync.initial-delay:60000}")
+    public void syncActiveProjects() {
+        if (!scheduledSyncEnabled) {
+            return;
+        }
+        boolean sharedUsable = projectConnectors.shared().isConfigured();
+        if (sharedUsable && circuitBreaker.getState() == SnowflakeCircuitBreaker.State.OPEN) {
+            logger.info("Skipping scheduled stage sync on the shared connection while the Snowflake circuit is open");
+            sharedUsable = false;
+        }
+
+        List<Project> projects = projectRepository.findByIsActiveTrue();
+        logger.info("Scheduled stage sync for {} active projects", projects.size());
+        for (Project project : projects) {
+            try {
+                // Projects with their own connection profile are synced whatever the shared connection's state
+                WarehouseConnector connector = projectConnectors.forProject(project.getId());
+                boolean usable = connector == projectConnectors.shared() ? sharedUsable : connector.isConfigured();
+                if (!usable) {
+                    continue;
+                }
+                syncProject(project.getId());
+            } catch (Exception e) {
+                logger.warn("Scheduled stage sync failed for project {}: {}", project.getId(), e.getMessage());
+            }
+        }
+    }
+
+    private void requireProject(UUID userId, UUID projectId) {
+        projectRepository.findByUserIdAndId(userId, projectId)
+                .orElseThrow(() -> new RuntimeException("Project not found"));
+    }
+
+    SyncResult applySync(UUID projectId, List<SnowflakeStageResponse> fresh) {
+        Map<String, ProjectStage> existing = new LinkedHashMap<>();
+        for (ProjectStage stage : projectStageRepository.findByProjectIdOrderByStageNameAsc(projectId)) {
+            existing.put(naturalKey(stage.getStageDatabase(), stage.getStageSchema(), stage.getStageName()), stage);
+        }
+
+        Map<String, SnowflakeStageResponse> incoming = new LinkedHashMap<>();
+        for (SnowflakeStageResponse stage : fresh) {
+            if (stage.getStageName() != null) {
+                incoming.put(naturalKey(stage.getStageDatabase(), stage.getStageSchema(), stage.getStageName()), stage);
+            }
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> inserts = new ArrayList<>();
+        List<Object[]> updates = new ArrayList<>();
+
+        for (Map.Entry<String, SnowflakeStageResponse> entry : incoming.entrySet()) {
+            SnowflakeStageResponse stage = entry.getValue();
+            ProjectStage stored = existing.remove(entry.getKey());
+            if (stored == null) {
+                inserts.add(new Object[] {
+                        UUID.randomUUID(), projectId, nullToEmpty(stage.getStageDatabase()),
+                        nullToEmpty(stage.getStageSchema()), stage.getStageName(), stage.getStageType(),
+                        stage.getStageLocation(), stage.getComment(), stage.getOwner(), stage.getCreated(), now, now
+                });
+            } else if (isChanged(stored, stage)) {
+                updates.add(new Object[] {
+                        stage.getStageType(), stage.getStageLocation(), stage.getComment(), stage.getOwner(),
+                        stage.getCreated(), now, stored.getId()
+                });
+            }
+        }
+
+        // Whatever is left in the stored catalog no longer exists in Snowflake
+        List<Object[]> deletes = existing.values().stream()
+                .map(stage -> new Object[] {stage.getId()})
+                .collect(Collectors.toList());
+
+        executeBatch(INSERT_SQL, inserts);
+        executeBatch(UPDATE_SQL, updates);
+        executeBatch(DELETE_SQL, deletes);
+
+        ProjectStageSync sync = projectStageSyncRepository.findById(projectId)
+                .orElseGet(() -> new ProjectStageSync(projectId));
+        sync.setSyncedAt(now.toLocalDateTime());
+        sync.setStageCount(incoming.size());
+        sync.setInsertedCount(inserts.size());
+        sync.setUpdatedCount(updates.size());
+        sync.setDeletedCount(deletes.size());
+        projectStageSyncRepository.save(sync);
+
+        return new SyncResult(incoming.size(), inserts.size(), updates.size(), deletes.size());
+    }
+
+    private void executeBatch(String sql, List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(sql, rows, Math.max(1, batchSize), (ps, row) -> {
+            for (int i = 0; i < row.length; i++) {
+                ps.setObject(i + 1, row[i]);
+            }
+        });
+    }
+
+    private boolean isChanged(ProjectStage stored, SnowflakeStageResponse stage) {
+        return !Objects.equals(stored.getStageType(), stage.getStageType())
+                || !Objects.equals(stored.getStageLocation(), stage.getStageLocation())
+                || !Objects.equals(stored.getComment(), stage.getComment())
+                || !Objects.equals(stored.getOwner(), stage.getOwner())
+                || !Objects.equals(stored.getStageCreated(), stage.getCreated());
+    }
+
+    private static String naturalKey(String database, String schema, String name) {
+        return nullToEmpty(database) + '\u0000' + nullToEmpty(schema) + '\u0000' + name;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    private SnowflakeStageResponse convertToStageResponse(ProjectStage stage) {
+        return new SnowflakeStageResponse(
+                stage.getStageName(),
+                stage.getStageSchema(),
+                stage.getStageDatabase(),
+                stage.getStageType(),
+                stage.getStageLocation(),
+                stage.getComment(),
+                stage.getOwner(),
+                stage.getStageCreated()
+        );
+    }
+
+    /**
+     * Stages served to callers, with whether they may be out of date
+     */
+    public record CatalogView(List<SnowflakeStageResponse> stages, LocalDateTime syncedAt, boolean stale) {}
+
+    /**
+     * Outcome of one catalog sync
+     */
+    public record SyncResult(int total, int inserted, int updated, int deleted) {}
+}
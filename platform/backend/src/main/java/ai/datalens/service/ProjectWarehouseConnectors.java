@@ -0,0 +1,77 @@
+package ai.datalens.service;
+
+import ai.datalens.entity.ProjectConnectionProfile;
+import ai.datalens.repository.ProjectConnectionProfileRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Picks the {@link WarehouseConnector} a project's calls go to: its own pool when it has a
+ * connection profile, otherwise the shared connector configured under snowflake.*.
+ *
+ * Which of the two applies is remembered for warehouse.profiles.revalidate-interval, so the
+ * profile table is not read on every call.
+ */
+@Component
+public class ProjectWarehouseConnectors {
+
+    @Autowired
+    private WarehouseConnector warehouseConnector;
+
+    @Autowired
+    private ProjectConnectionProfileRepository profileRepository;
+
+    @Autowired
+    private ProjectConnectionPools connectionPools;
+
+    @Value("${warehouse.profiles.revalidate-interval:60000}")
+    private long revalidateIntervalMs;
+
+    // Projects last found without a profile, and when
+    private final Map<UUID, Long> shared = new ConcurrentHashMap<>();
+
+    /**
+     * The connector for the project's warehouse calls
+     */
+    public WarehouseConnector forProject(UUID projectId) {
+        WarehouseConnector own = connectionPools.current(projectId);
+        if (own != null) {
+            return own;
+        }
+        Long checkedAt = shared.get(projectId);
+        if (checkedAt != null && System.currentTimeMillis() - checkedAt <= revalidateIntervalMs) {
+            return warehouseConnector;
+        }
+
+        Optional<ProjectConnectionProfile> profile = profileRepository.findByProjectId(projectId);
+        if (profile.isEmpty()) {
+            // The profile may have been removed on another instance
+            connectionPools.close(projectId);
+            shared.put(projectId, System.currentTimeMillis());
+            return warehouseConnector;
+        }
+        shared.remove(projectId);
+        return connectionPools.open(profile.get());
+    }
+
+    /**
+     * The connector for projects without a profile of their own
+     */
+    public WarehouseConnector shared() {
+        return warehouseConnector;
+    }
+
+    /**
+     * Forget what is known about the project's profile, after it was saved or removed here
+     */
+    void profileChanged(UUID projectId) {
+        shared.remove(projectId);
+        connectionPools.close(projectId);
+    }
+}
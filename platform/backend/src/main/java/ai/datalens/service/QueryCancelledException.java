@@ -0,0 +1,24 @@
+package ai.datalens.service;
+
+import java.sql.SQLException;
+
+/**
+ * A query was stopped on purpose, by its owner or because it ran past its timeout, rather than
+ * failing in the warehouse.
+ */
+public class QueryCancelledException extends SQLException {
+
+    // SQLSTATE for "query canceled"
+    private static final String SQL_STATE = "57014";
+
+    private final boolean timedOut;
+
+    public QueryCancelledException(boolean timedOut, Throwable cause) {
+        super(timedOut ? "Query ran past its timeout and was cancelled" : "Query was cancelled", SQL_STATE, cause);
+        this.timedOut = timedOut;
+    }
+
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+}
@@ -0,0 +1,356 @@
+package ai.datalens.service;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One column of a query result, read straight from the ResultSet into a primitive vector.
+ *
+ * Integers go to a long[], floats to a double[], booleans to a bitset. Fixed-point decimals such
+ * as NUMBER(10,2) go to a long[] of unscaled values at the column's scale. Strings, and decimals
+ * whose unscaled value doesn't fit a long, are dictionary-encoded: each distinct value is stored
+ * once and rows hold an int code. Nulls are tracked in a bitset, so no cell is ever boxed.
+ */
+final class QueryColumn {
+
+    // Ordinals are the kind codes of the columnar format; only append
+    enum Kind { LONG, DOUBLE, DECIMAL, BOOLEAN, STRING, SCALED }
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Past this no unscaled value of a nonzero decimal fits a long
+    private static final int MAX_SCALE = 18;
+
+    private final String name;
+    private final String typeName;
+    private final int jdbcType;
+    private final int scale;
+    private final BitSet nulls = new BitSet();
+    private Kind kind;
+    private long[] longs;
+    private double[] doubles;
+    private BitSet booleans;
+    private int[] codes;
+    private List<String> dictionary;
+    // Only needed while rows are being appended
+    private Map<String, Integer> dictionaryIndex;
+    private long dictionaryChars;
+    private int size;
+
+    QueryColumn(String name, String typeName, int jdbcType, int scale) {
+        this.name = name;
+        this.typeName = typeName;
+        this.jdbcType = jdbcType;
+        this.scale = scale;
+        this.kind = switch (jdbcType) {
+            case Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT -> Kind.LONG;
+            case Types.REAL, Types.FLOAT, Types.DOUBLE -> Kind.DOUBLE;
+            // Snowflake reports integer columns as NUMBER(38,0); keep them as longs until one doesn't fit
+            case Types.DECIMAL, Types.NUMERIC -> scale == 0 ? Kind.LONG
+                    : scale > 0 && scale <= MAX_SCALE ? Kind.SCALED : Kind.DECIMAL;
+            case Types.BOOLEAN, Types.BIT -> Kind.BOOLEAN;
+            default -> Kind.STRING;
+        };
+        switch (kind) {
+            case LONG, SCALED -> longs = new long[INITIAL_CAPACITY];
+            case DOUBLE -> doubles = new double[INITIAL_CAPACITY];
+            case BOOLEAN -> booleans = new BitSet();
+            case DECIMAL, STRING -> startDictionary();
+        }
+    }
+
+    /**
+     * An empty column of the same name and type; columns widened to decimals stay decimal
+     */
+    QueryColumn like() {
+        QueryColumn column = new QueryColumn(name, typeName, jdbcType, scale);
+        if (kind == Kind.DECIMAL && column.kind != Kind.DECIMAL) {
+            column.widenToDecimal();
+        }
+        return column;
+    }
+
+    String name() {
+        return name;
+    }
+
+    String typeName() {
+        return typeName;
+    }
+
+    Kind kind() {
+        return kind;
+    }
+
+    /**
+     * Digits after the point of a {@link Kind#SCALED} column's values
+     */
+    int scale() {
+        return scale;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isNull(int row) {
+        return nulls.get(row);
+    }
+
+    BitSet nulls() {
+        return nulls;
+    }
+
+    long longAt(int row) {
+        return longs[row];
+    }
+
+    double doubleAt(int row) {
+        return doubles[row];
+    }
+
+    boolean booleanAt(int row) {
+        return booleans.get(row);
+    }
+
+    int codeAt(int row) {
+        return codes[row];
+    }
+
+    List<String> dictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Append the value in the current row of the result set
+     */
+    void read(ResultSet rs, int column) throws SQLException {
+        switch (kind) {
+            case LONG -> {
+                if (jdbcType == Types.DECIMAL || jdbcType == Types.NUMERIC) {
+                    BigDecimal value = rs.getBigDecimal(column);
+                    if (value == null) {
+                        appendNull();
+                    } else {
+                        try {
+                            appendLong(value.longValueExact());
+                        } catch (ArithmeticException e) {
+                            widenToDecimal();
+                            appendString(value.toPlainString());
+                        }
+                    }
+                } else {
+                    long value = rs.getLong(column);
+                    if (rs.wasNull()) {
+                        appendNull();
+                    } else {
+                        appendLong(value);
+                    }
+                }
+            }
+            case DOUBLE -> {
+                double value = rs.getDouble(column);
+                if (rs.wasNull()) {
+                    appendNull();
+                } else {
+                    ensureCapacity();
+                    doubles[size++] = value;
+                }
+            }
+            case BOOLEAN -> {
+                boolean value = rs.getBoolean(column);
+                if (rs.wasNull()) {
+                    appendNull();
+                } else {
+                    booleans.set(size++, value);
+                }
+            }
+            case SCALED -> {
+                BigDecimal value = rs.getBigDecimal(column);
+                if (value == null) {
+                    appendNull();
+                } else {
+                    appendScaled(value);
+                }
+            }
+            case DECIMAL -> {
+                BigDecimal value = rs.getBigDecimal(column);
+                if (value == null) {
+                    appendNull();
+                } else {
+                    appendString(value.toPlainString());
+                }
+            }
+            case STRING -> {
+                String value = rs.getString(column);
+                if (value == null) {
+                    appendNull();
+                } else {
+                    appendString(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Append a value as returned by {@link #value}, e.g. one read back from a spilled result
+     */
+    void append(Object value) {
+        if (value == null) {
+            appendNull();
+            return;
+        }
+        switch (kind) {
+            case LONG -> {
+                if (value instanceof BigDecimal decimal) {
+                    try {
+                        appendLong(decimal.longValueExact());
+                    } catch (ArithmeticException e) {
+                        widenToDecimal();
+                        appendString(decimal.toPlainString());
+                    }
+                } else {
+                    appendLong(((Number) value).longValue());
+                }
+            }
+            case DOUBLE -> {
+                ensureCapacity();
+                doubles[size++] = ((Number) value).doubleValue();
+            }
+            case BOOLEAN -> booleans.set(size++, (Boolean) value);
+            case SCALED -> appendScaled(value instanceof BigDecimal decimal
+                    ? decimal : new BigDecimal(value.toString()));
+            case DECIMAL -> appendString(value instanceof BigDecimal decimal
+                    ? decimal.toPlainString() : value.toString());
+            case STRING -> appendString(value.toString());
+        }
+    }
+
+    /**
+     * Trim the vectors to the row count once reading is done
+     */
+    void seal() {
+        if (longs != null) {
+            longs = Arrays.copyOf(longs, size);
+        }
+        if (doubles != null) {
+            doubles = Arrays.copyOf(doubles, size);
+        }
+        if (codes != null) {
+            codes = Arrays.copyOf(codes, size);
+            dictionary = List.copyOf(dictionary);
+        }
+        dictionaryIndex = null;
+    }
+
+    /**
+     * Boxed value of one cell, for JSON output
+     */
+    Object value(int row) {
+        if (nulls.get(row)) {
+            return null;
+        }
+        return switch (kind) {
+            case LONG -> longs[row];
+            case SCALED -> BigDecimal.valueOf(longs[row], scale);
+            case DOUBLE -> doubles[row];
+            case BOOLEAN -> booleans.get(row);
+            case DECIMAL -> new BigDecimal(dictionary.get(codes[row]));
+            case STRING -> dictionary.get(codes[row]);
+        };
+    }
+
+    long estimatedBytes() {
+        long bytes = 64 + name.length() + typeName.length() + nulls.size() / 8;
+        if (longs != null) {
+            bytes += 8L * longs.length;
+        }
+        if (doubles != null) {
+            bytes += 8L * doubles.length;
+        }
+        if (booleans != null) {
+            bytes += booleans.size() / 8;
+        }
+        if (codes != null) {
+            bytes += 4L * codes.length + 40L * dictionary.size() + dictionaryChars;
+        }
+        return bytes;
+    }
+
+    private void appendNull() {
+        ensureCapacity();
+        nulls.set(size++);
+    }
+
+    private void appendLong(long value) {
+        ensureCapacity();
+        longs[size++] = value;
+    }
+
+    private void appendScaled(BigDecimal value) {
+        try {
+            appendLong(value.setScale(scale).unscaledValue().longValueExact());
+        } catch (ArithmeticException e) {
+            // More digits than the column's scale, or too many to fit a long
+            widenToDecimal();
+            appendString(value.toPlainString());
+        }
+    }
+
+    private void appendString(String value) {
+        ensureCapacity();
+        Integer code = dictionaryIndex.get(value);
+        if (code == null) {
+            code = dictionary.size();
+            dictionary.add(value);
+            dictionaryIndex.put(value, code);
+            dictionaryChars += value.length();
+        }
+        codes[size++] = code;
+    }
+
+    private void startDictionary() {
+        codes = new int[INITIAL_CAPACITY];
+        dictionary = new ArrayList<>();
+        dictionaryIndex = new HashMap<>();
+    }
+
+    private void widenToDecimal() {
+        long[] previous = longs;
+        int rows = size;
+        boolean scaled = kind == Kind.SCALED;
+        longs = null;
+        kind = Kind.DECIMAL;
+        startDictionary();
+        codes = new int[Math.max(INITIAL_CAPACITY, previous.length)];
+        size = 0;
+        for (int row = 0; row < rows; row++) {
+            if (nulls.get(row)) {
+                size++;
+            } else {
+                appendString(scaled ? BigDecimal.valueOf(previous[row], scale).toPlainString()
+                        : Long.toString(previous[row]));
+            }
+        }
+    }
+
+    private void ensureCapacity() {
+        if (longs != null && size == longs.length) {
+            longs = Arrays.copyOf(longs, size + (size >> 1));
+        }
+        if (doubles != null && size == doubles.length) {
+            doubles = Arrays.copyOf(doubles, size + (size >> 1));
+        }
+        if (codes != null && size == codes.length) {
+            codes = Arrays.copyOf(codes, size + (size >> 1));
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package ai.datalens.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Handle on one running query: how long it may run, and a way for another thread to stop it.
+ *
+ * Connectors {@link #attach} the statement before executing it and {@link #detach} it once the
+ * result has been read. {@link #cancel} and {@link #timeOut} call {@link Statement#cancel()} on
+ * an attached statement; the blocked execute then fails, and the connector's try-with-resources
+ * hands the connection back to the pool straight away. A query stopped before it was attached
+ * is refused at {@link #attach}, so it never reaches the warehouse.
+ */
+public final class QueryControl {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryControl.class);
+
+    private enum Stop { CANCELLED, TIMED_OUT }
+
+    private final long timeoutMs;
+
+    private Statement statement;
+
+    private Stop stopped;
+
+    /**
+     * @param timeoutMs how long the statement may run; 0 keeps the connector's default
+     */
+    public QueryControl(long timeoutMs) {
+        this.timeoutMs = Math.max(0, timeoutMs);
+    }
+
+    /**
+     * A control nobody else holds, for queries that can't be cancelled
+     */
+    public static QueryControl defaults() {
+        return new QueryControl(0);
+    }
+
+    public long timeoutMs() {
+        return timeoutMs;
+    }
+
+    /**
+     * Value for {@link Statement#setQueryTimeout}: the control's timeout rounded up to whole
+     * seconds, or the connector's default
+     */
+    public int timeoutSeconds(int defaultSeconds) {
+        return timeoutMs > 0 ? (int) Math.min(Integer.MAX_VALUE, (timeoutMs + 999) / 1000) : defaultSeconds;
+    }
+
+    /**
+     * Register the statement about to execute
+     *
+     * @throws QueryCancelledException if the query was already stopped
+     */
+    public synchronized void attach(Statement statement) throws QueryCancelledException {
+        checkNotStopped();
+        this.statement = statement;
+    }
+
+    /**
+     * @throws QueryCancelledException if the query was stopped
+     */
+    public synchronized void checkNotStopped() throws QueryCancelledException {
+        if (stopped != null) {
+            throw new QueryCancelledException(stopped == Stop.TIMED_OUT, null);
+        }
+    }
+
+    public synchronized void detach() {
+        statement = null;
+    }
+
+    /**
+     * Stop the query at its owner's request
+     *
+     * @return false if it was already stopped
+     */
+    public boolean cancel() {
+        return stop(Stop.CANCELLED);
+    }
+
+    /**
+     * Stop the query because it ran past its deadline
+     *
+     * @return false if it was already stopped
+     */
+    public boolean timeOut() {
+        return stop(Stop.TIMED_OUT);
+    }
+
+    public synchronized boolean isStopped() {
+        return stopped != null;
+    }
+
+    /**
+     * The exception to surface for a failure of the attached statement: a
+     * {@link QueryCancelledException} if the query was stopped, since the driver's own error
+     * for a cancelled statement varies
+     */
+    public synchronized SQLException translate(SQLException e) {
+        if (stopped == null || e instanceof QueryCancelledException) {
+            return e;
+        }
+        return new QueryCancelledException(stopped == Stop.TIMED_OUT, e);
+    }
+
+    private boolean stop(Stop reason) {
+        Statement running;
+        synchronized (this) {
+            if (stopped != null) {
+                return false;
+            }
+            stopped = reason;
+            running = statement;
+        }
+        if (running != null) {
+            try {
+                running.cancel();
+            } catch (SQLException e) {
+                // The statement finished or was closed in the meantime
+                logger.debug("Could not cancel statement: {}", e.getMessage());
+            }
+        }
+        return true;
+    }
+}
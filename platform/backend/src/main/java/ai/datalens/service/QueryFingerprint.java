@@ -0,0 +1,217 @@
+package ai.datalens.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Normalized shape of a SQL statement.
+ *
+ * Comments and insignificant whitespace are dropped, unquoted words are upper-cased the way
+ * Snowflake resolves them, and string and numeric literals are replaced by {@code ?} and kept
+ * aside in order. Two statements that differ only in formatting share a fingerprint; the literals
+ * still have to match for them to share a result.
+ */
+final class QueryFingerprint {
+
+    private static final Set<String> READ_ONLY = Set.of("SELECT", "WITH", "SHOW", "DESC", "DESCRIBE", "EXPLAIN");
+
+    private static final Set<String> CACHEABLE = Set.of("SELECT", "WITH");
+
+    // Functions whose result changes between runs of the same statement
+    private static final Set<String> VOLATILE_FUNCTIONS = Set.of(
+            "CURRENT_TIMESTAMP", "CURRENT_TIME", "CURRENT_DATE", "LOCALTIMESTAMP", "LOCALTIME", "SYSDATE",
+            "GETDATE", "SYSTIMESTAMP", "RANDOM", "UNIFORM", "NORMAL", "RANDSTR", "UUID_STRING",
+            "SEQ1", "SEQ2", "SEQ4", "SEQ8");
+
+    private final String normalized;
+    private final List<String> literals;
+    private final String statementType;
+    private final boolean deterministic;
+
+    private QueryFingerprint(String normalized, List<String> literals, String statementType, boolean deterministic) {
+        this.normalized = normalized;
+        this.literals = literals;
+        this.statementType = statementType;
+        this.deterministic = deterministic;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the text is empty, holds more than one statement or has an unterminated literal
+     */
+    static QueryFingerprint of(String sql) {
+        StringBuilder out = new StringBuilder(sql.length());
+        List<String> literals = new ArrayList<>();
+        String statementType = null;
+        boolean deterministic = true;
+        boolean ended = false;
+
+        int i = 0;
+        int n = sql.length();
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '-' && i + 1 < n && sql.charAt(i + 1) == '-') {
+                while (i < n && sql.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < n && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unterminated comment");
+                }
+                i = end + 2;
+            } else if (ended) {
+                throw new IllegalArgumentException("Only one statement can be run at a time");
+            } else if (c == ';') {
+                ended = true;
+                i++;
+            } else if (c == '\'') {
+                int end = i + 1;
+                while (true) {
+                    if (end >= n) {
+                        throw new IllegalArgumentException("Unterminated string literal");
+                    }
+                    char d = sql.charAt(end);
+                    if (d == '\\') {
+                        end += 2;
+                    } else if (d == '\'' && end + 1 < n && sql.charAt(end + 1) == '\'') {
+                        end += 2;
+                    } else if (d == '\'') {
+                        break;
+                    } else {
+                        end++;
+                    }
+                }
+                literals.add(sql.substring(i, end + 1));
+                appendToken(out, "?");
+                i = end + 1;
+            } else if (c == '$' && i + 1 < n && sql.charAt(i + 1) == '$') {
+                int end = sql.indexOf("$$", i + 2);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unterminated string literal");
+                }
+                literals.add(sql.substring(i, end + 2));
+                appendToken(out, "?");
+                i = end + 2;
+            } else if (c == '"') {
+                int end = i + 1;
+                while (true) {
+                    if (end >= n) {
+                        throw new IllegalArgumentException("Unterminated quoted identifier");
+                    }
+                    if (sql.charAt(end) == '"') {
+                        if (end + 1 < n && sql.charAt(end + 1) == '"') {
+                            end += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    end++;
+                }
+                // Quoted identifiers are case-sensitive; keep them verbatim
+                appendToken(out, sql.substring(i, end + 1));
+                i = end + 1;
+            } else if (Character.isDigit(c) || (c == '.' && i + 1 < n && Character.isDigit(sql.charAt(i + 1)))) {
+                int end = i;
+                while (end < n && (Character.isDigit(sql.charAt(end)) || sql.charAt(end) == '.')) {
+                    end++;
+                }
+                if (end < n && (sql.charAt(end) == 'e' || sql.charAt(end) == 'E')) {
+                    int exponent = end + 1;
+                    if (exponent < n && (sql.charAt(exponent) == '+' || sql.charAt(exponent) == '-')) {
+                        exponent++;
+                    }
+                    if (exponent < n && Character.isDigit(sql.charAt(exponent))) {
+                        end = exponent;
+                        while (end < n && Character.isDigit(sql.charAt(end))) {
+                            end++;
+                        }
+                    }
+                }
+                literals.add(sql.substring(i, end));
+                appendToken(out, "?");
+                i = end;
+            } else if (isWordChar(c)) {
+                int end = i;
+                while (end < n && isWordChar(sql.charAt(end))) {
+                    end++;
+                }
+                String word = sql.substring(i, end).toUpperCase();
+                if (statementType == null) {
+                    statementType = word;
+                }
+                if (VOLATILE_FUNCTIONS.contains(word) || word.startsWith("SYSTEM$")) {
+                    deterministic = false;
+                }
+                appendToken(out, word);
+                i = end;
+            } else {
+                appendToken(out, String.valueOf(c));
+                i++;
+            }
+        }
+
+        if (out.length() == 0) {
+            throw new IllegalArgumentException("Query is empty");
+        }
+        return new QueryFingerprint(out.toString(), List.copyOf(literals), statementType != null ? statementType : "",
+                deterministic);
+    }
+
+    String normalized() {
+        return normalized;
+    }
+
+    List<String> literals() {
+        return literals;
+    }
+
+    String statementType() {
+        return statementType;
+    }
+
+    boolean isReadOnly() {
+        return READ_ONLY.contains(statementType);
+    }
+
+    /**
+     * Whether rerunning the statement with the same role and warehouse returns the same rows until the data changes
+     */
+    boolean isCacheable() {
+        return CACHEABLE.contains(statementType) && deterministic;
+    }
+
+    /**
+     * Short stable id of the normalized text, for logs and responses
+     */
+    String id() {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(normalized.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Whitespace is only kept where dropping it would merge two words
+    private static void appendToken(StringBuilder out, String token) {
+        if (out.length() > 0 && isWordEnd(out.charAt(out.length() - 1)) && isWordEnd(token.charAt(0))) {
+            out.append(' ');
+        }
+        out.append(token);
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    private static boolean isWordEnd(char c) {
+        return isWordChar(c) || c == '?' || c == '"';
+    }
+}
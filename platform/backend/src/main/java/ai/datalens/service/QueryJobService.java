@@ -0,0 +1,509 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.request.QueryRequest;
+import ai.datalens.dto.response.QueryJobResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs ad-hoc queries in the background: submitting returns a query id at once, and the client
+ * polls or subscribes for the status, fetches the result when it is done, or cancels it.
+ *
+ * Running queries are tracked with a {@link QueryControl}. Cancelling, or reaching the query's
+ * timeout, calls {@link java.sql.Statement#cancel()}; the execute fails straight away and the
+ * connection goes back to the pool rather than being held until the warehouse gives up. The
+ * driver is also given the timeout, so the warehouse stops the statement even if this server
+ * goes away. Queries nobody has polled for warehouse.query.jobs.abandon-after are cancelled the
+ * same way, so a client that navigates away stops paying for its query.
+ *
+ * Queries run on a bounded pool with a bounded queue; a full queue rejects new queries, and so
+ * does {@link WarehouseQueryScheduler} for a user or project that already has its fill of
+ * queries waiting for the warehouse.
+ *
+ * Results go to the {@link QueryResultStore} and are fetched a page at a time, so a background
+ * query may return up to warehouse.query.jobs.max-rows rows, far more than fit the heap. Finished
+ * queries are kept for warehouse.query.jobs.retention, bounded by the heap their results take;
+ * a query dropped from here has its stored result deleted with it.
+ */
+@Service
+public class QueryJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryJobService.class);
+
+    public enum Status { QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED, TIMED_OUT }
+
+    @Autowired
+    private WarehouseQueryService warehouseQueryService;
+
+    @Autowired
+    private WarehouseQueryScheduler scheduler;
+
+    @Autowired
+    private QueryResultStore resultStore;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${warehouse.query.jobs.default-max-rows:100000}")
+    private int defaultMaxRows;
+
+    @Value("${warehouse.query.jobs.max-rows:10000000}")
+    private int maxRows;
+
+    @Value("${warehouse.query.jobs.threads:8}")
+    private int threads;
+
+    @Value("${warehouse.query.jobs.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${warehouse.query.jobs.retention:600000}")
+    private long retentionMs;
+
+    @Value("${warehouse.query.jobs.max-result-bytes:268435456}")
+    private long maxResultBytes;
+
+    @Value("${warehouse.query.jobs.abandon-after:120000}")
+    private long abandonAfterMs;
+
+    @Value("${warehouse.query.jobs.sse-timeout:330000}")
+    private long sseTimeoutMs;
+
+    private ThreadPoolExecutor executor;
+
+    // Fires the timeout of running queries
+    private ScheduledThreadPoolExecutor watchdog;
+
+    // Queued and running queries; they stay here however long they take
+    private final Map<UUID, QueryJob> activeJobs = new ConcurrentHashMap<>();
+
+    private Cache<UUID, QueryJob> finishedJobs;
+
+    private Counter abandoned;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), runnable -> {
+                    Thread thread = new Thread(runnable, "warehouse-query-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+
+        watchdog = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "warehouse-query-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watchdog.setRemoveOnCancelPolicy(true);
+
+        finishedJobs = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis(retentionMs))
+                .maximumWeight(maxResultBytes)
+                .weigher((UUID id, QueryJob job) -> job.weight())
+                .removalListener((UUID id, QueryJob job, RemovalCause cause) -> {
+                    StoredQueryResult result = job != null ? job.storedResult() : null;
+                    if (result != null) {
+                        resultStore.discard(result);
+                    }
+                })
+                .build();
+
+        abandoned = Counter.builder("warehouse.query.jobs.abandoned")
+                .description("Background queries cancelled because nobody polled for them")
+                .register(meterRegistry);
+        Gauge.builder("warehouse.query.jobs.active", activeJobs, Map::size)
+                .description("Background queries queued or running")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        activeJobs.values().forEach(job -> job.control.cancel());
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        if (watchdog != null) {
+            watchdog.shutdownNow();
+        }
+    }
+
+    /**
+     * Queue a query for a project the user owns. A query the result cache can answer finishes
+     * right away.
+     *
+     * @throws IllegalArgumentException if the SQL is empty, holds several statements or is not read-only
+     * @throws RuntimeException if the project does not exist or belongs to someone else
+     * @throws RejectedExecutionException if the query queue is full
+     * @throws QueryThrottledException if the user or project has too many queries waiting
+     */
+    public QueryJobResponse submit(UUID userId, UUID projectId, QueryRequest request) throws QueryThrottledException {
+        WarehouseQueryService.PreparedQuery query = warehouseQueryService.prepare(userId, projectId, request,
+                defaultMaxRows, maxRows);
+        QueryJob job = new QueryJob(UUID.randomUUID(), userId, query);
+
+        ColumnarQueryResult cached = warehouseQueryService.cached(query);
+        if (cached != null) {
+            job.start();
+            job.cached = true;
+            job.finish(Status.SUCCEEDED, StoredQueryResult.inMemory(cached.result()), null);
+            finished(job);
+            return job.toResponse();
+        }
+
+        scheduler.checkAdmission(userId, projectId);
+        activeJobs.put(job.id, job);
+        try {
+            job.future = executor.submit(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            activeJobs.remove(job.id);
+            throw e;
+        }
+        logger.info("Queued query {} ({}) for project {}", job.id, query.fingerprint().id(), projectId);
+        return job.toResponse();
+    }
+
+    /**
+     * Current state of a query, or null if it is unknown, expired or someone else's
+     */
+    public QueryJobResponse getJob(UUID userId, UUID projectId, UUID queryId) {
+        QueryJob job = find(userId, projectId, queryId);
+        return job != null ? job.toResponse() : null;
+    }
+
+    /**
+     * A page of the result of a query that finished successfully. Any offset is served from the
+     * stored result without running the query again.
+     *
+     * @param limit rows in the page; null for the store's default page size
+     * @throws RuntimeException if the query is unknown
+     * @throws IllegalArgumentException if offset is negative or limit not positive
+     * @throws IllegalStateException if it has not finished, did not succeed, or its result has expired
+     */
+    public ResultPage getResult(UUID userId, UUID projectId, UUID queryId, long offset, Integer limit) {
+        QueryJob job = find(userId, projectId, queryId);
+        if (job == null) {
+            throw new RuntimeException("Query not found");
+        }
+        StoredQueryResult result = job.result();
+        QueryResult page = resultStore.page(result, offset, limit);
+        return new ResultPage(new ColumnarQueryResult(job.query.fingerprint().id(), page, job.cached), offset,
+                result.rowCount());
+    }
+
+    /**
+     * Stop a query. A queued query never starts; a running one has its statement cancelled
+     * and its connection released. Queries already finished are left as they are.
+     *
+     * @return the query's state after cancelling, or null if it is unknown
+     */
+    public QueryJobResponse cancel(UUID userId, UUID projectId, UUID queryId) {
+        QueryJob job = find(userId, projectId, queryId);
+        if (job == null) {
+            return null;
+        }
+        if (stop(job, Status.CANCELLED, null)) {
+            logger.info("Cancelled query {} for project {}", job.id, projectId);
+        }
+        return job.toResponse();
+    }
+
+    /**
+     * Push status changes over SSE; the stream completes when the query finishes
+     *
+     * @throws RuntimeException if the query is unknown
+     */
+    public SseEmitter subscribe(UUID userId, UUID projectId, UUID queryId) {
+        QueryJob job = find(userId, projectId, queryId);
+        if (job == null) {
+            throw new RuntimeException("Query not found");
+        }
+
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+        job.emitters.add(emitter);
+        emitter.onCompletion(() -> job.emitters.remove(emitter));
+        emitter.onTimeout(() -> job.emitters.remove(emitter));
+        emitter.onError(error -> job.emitters.remove(emitter));
+
+        // Send the current state right away; a query that already finished closes the stream
+        publish(job, emitter);
+        return emitter;
+    }
+
+    /**
+     * Cancel queries that nobody has polled or subscribed to for the abandon-after period
+     */
+    @Scheduled(fixedDelayString = "${warehouse.query.jobs.sweep-interval:30000}")
+    public void cancelAbandoned() {
+        long cutoff = System.currentTimeMillis() - abandonAfterMs;
+        for (QueryJob job : activeJobs.values()) {
+            if (job.emitters.isEmpty() && job.lastSeenAt < cutoff
+                    && stop(job, Status.CANCELLED, "Cancelled: not polled for " + abandonAfterMs / 1000 + " s")) {
+                abandoned.increment();
+                logger.info("Cancelled abandoned query {} for project {}", job.id, job.query.projectId());
+            }
+        }
+    }
+
+    private QueryJob find(UUID userId, UUID projectId, UUID queryId) {
+        QueryJob job = activeJobs.get(queryId);
+        if (job == null) {
+            job = finishedJobs.getIfPresent(queryId);
+        }
+        if (job == null || !job.userId.equals(userId) || !job.query.projectId().equals(projectId)) {
+            return null;
+        }
+        job.lastSeenAt = System.currentTimeMillis();
+        return job;
+    }
+
+    private void run(QueryJob job) {
+        if (!job.start()) {
+            // Cancelled while queued
+            return;
+        }
+        notifyListeners(job);
+
+        ScheduledFuture<?> deadline = watchdog.schedule(() -> {
+            if (stop(job, Status.TIMED_OUT, null)) {
+                logger.warn("Query {} for project {} ran past its {} ms timeout, cancelled", job.id,
+                        job.query.projectId(), job.query.timeoutMs());
+            }
+        }, job.query.timeoutMs(), TimeUnit.MILLISECONDS);
+
+        try {
+            StoredQueryResult result = warehouseQueryService.runStored(job.query, job.control);
+            if (!job.finish(Status.SUCCEEDED, result, null)) {
+                resultStore.discard(result);
+            }
+        } catch (QueryCancelledException e) {
+            job.finish(e.isTimedOut() ? Status.TIMED_OUT : Status.CANCELLED, null, e.getMessage());
+        } catch (SQLTimeoutException e) {
+            // The driver's own timeout fired before the watchdog
+            job.finish(Status.TIMED_OUT, null, e.getMessage());
+        } catch (SQLException | RuntimeException e) {
+            job.finish(Status.FAILED, null, e.getMessage());
+            logger.warn("Query {} for project {} failed: {}", job.id, job.query.projectId(), e.getMessage());
+        } finally {
+            deadline.cancel(false);
+            finished(job);
+        }
+    }
+
+    /**
+     * Stop a queued or running query
+     *
+     * @return false if it had already finished or been stopped
+     */
+    private boolean stop(QueryJob job, Status status, String error) {
+        Status stoppedIn = job.stop(status, error);
+        if (stoppedIn == null) {
+            return false;
+        }
+        // A running query finishes on its worker once the cancelled statement returns
+        if (stoppedIn == Status.QUEUED) {
+            Future<?> future = job.future;
+            if (future != null) {
+                future.cancel(false);
+                executor.remove((Runnable) future);
+            }
+            finished(job);
+        }
+        return true;
+    }
+
+    private void finished(QueryJob job) {
+        activeJobs.remove(job.id);
+        finishedJobs.put(job.id, job);
+        Counter.builder("warehouse.query.jobs.finished")
+                .description("Background queries by how they ended")
+                .tag("status", job.status().name().toLowerCase(Locale.ROOT))
+                .register(meterRegistry)
+                .increment();
+        notifyListeners(job);
+    }
+
+    private void notifyListeners(QueryJob job) {
+        for (SseEmitter emitter : job.emitters) {
+            publish(job, emitter);
+        }
+    }
+
+    private void publish(QueryJob job, SseEmitter emitter) {
+        QueryJobResponse response = job.toResponse();
+        try {
+            emitter.send(SseEmitter.event().name("status").data(response));
+            if (job.isDone()) {
+                emitter.complete();
+            }
+        } catch (IOException | IllegalStateException e) {
+            // Client disconnected or the emitter already completed
+            job.emitters.remove(emitter);
+        }
+    }
+
+    /**
+     * One page of a query's result
+     *
+     * @param totalRows rows in the whole result
+     */
+    public record ResultPage(ColumnarQueryResult result, long offset, long totalRows) {}
+
+    private static final class QueryJob {
+
+        private final UUID id;
+        private final UUID userId;
+        private final WarehouseQueryService.PreparedQuery query;
+        private final QueryControl control;
+        private final LocalDateTime submittedAt = LocalDateTime.now();
+        private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+        private volatile Future<?> future;
+        private volatile long lastSeenAt = System.currentTimeMillis();
+        private volatile boolean cached;
+        private Status status = Status.QUEUED;
+        private LocalDateTime startedAt;
+        private LocalDateTime finishedAt;
+        private StoredQueryResult result;
+        private String error;
+
+        private QueryJob(UUID id, UUID userId, WarehouseQueryService.PreparedQuery query) {
+            this.id = id;
+            this.userId = userId;
+            this.query = query;
+            this.control = new QueryControl(query.timeoutMs());
+        }
+
+        /**
+         * Move from queued to running; false if the query was stopped first
+         */
+        synchronized boolean start() {
+            if (status != Status.QUEUED) {
+                return false;
+            }
+            status = Status.RUNNING;
+            startedAt = LocalDateTime.now();
+            return true;
+        }
+
+        /**
+         * @return false if the query had already finished
+         */
+        synchronized boolean finish(Status newStatus, StoredQueryResult newResult, String newError) {
+            if (isDone()) {
+                return false;
+            }
+            status = newStatus;
+            finishedAt = LocalDateTime.now();
+            result = newResult;
+            if (newStatus == Status.SUCCEEDED) {
+                // The statement completed before a cancel could stop it
+                error = null;
+            } else if (error == null) {
+                error = newError;
+            }
+            return true;
+        }
+
+        /**
+         * Stop a queued or running query through its control; a queued one finishes right away.
+         * Under the job's lock, so the worker can't finish it in between.
+         *
+         * @return the status it was stopped in, or null if it had already finished or been stopped
+         */
+        synchronized Status stop(Status newStatus, String newError) {
+            if (isDone()) {
+                return null;
+            }
+            boolean stopped = newStatus == Status.TIMED_OUT ? control.timeOut() : control.cancel();
+            if (!stopped) {
+                return null;
+            }
+            Status previous = status;
+            if (newError != null) {
+                error = newError;
+            }
+            if (previous == Status.QUEUED) {
+                finish(newStatus, null, null);
+            }
+            return previous;
+        }
+
+        synchronized Status status() {
+            return status;
+        }
+
+        synchronized boolean isDone() {
+            return status != Status.QUEUED && status != Status.RUNNING;
+        }
+
+        synchronized StoredQueryResult storedResult() {
+            return result;
+        }
+
+        synchronized StoredQueryResult result() {
+            if (!isDone()) {
+                throw new IllegalStateException("Query has not finished yet");
+            }
+            if (status != Status.SUCCEEDED) {
+                throw new IllegalStateException("Query did not succeed: " + status.name());
+            }
+            return result;
+        }
+
+        synchronized int weight() {
+            return result != null ? (int) Math.min(Integer.MAX_VALUE, result.heapBytes()) : 1;
+        }
+
+        synchronized QueryJobResponse toResponse() {
+            QueryJobResponse response = new QueryJobResponse();
+            response.setQueryId(id);
+            response.setProjectId(query.projectId());
+            response.setStatus(status.name());
+            response.setFingerprint(query.fingerprint().id());
+            response.setTimeoutMs(query.timeoutMs());
+            response.setSubmittedAt(submittedAt);
+            response.setStartedAt(startedAt);
+            response.setFinishedAt(finishedAt);
+            if (result != null) {
+                response.setRowCount((int) result.rowCount());
+                response.setTruncated(result.truncated());
+                response.setCached(cached);
+            }
+            response.setError(error);
+            return response;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package ai.datalens.service;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of one query execution, held column by column in {@link QueryColumn} vectors.
+ *
+ * The columnar layout keeps cached results compact and is what the binary transfer format
+ * writes out; {@link #rows()} is a row view over it for JSON responses.
+ */
+final class QueryResult {
+
+    private final List<QueryColumn> columns;
+    private final int rowCount;
+    private final boolean truncated;
+    private final long estimatedBytes;
+    private final Instant executedAt;
+    private final long elapsedMs;
+
+    private QueryResult(List<QueryColumn> columns, int rowCount, boolean truncated, Instant executedAt, long elapsedMs) {
+        this.columns = columns;
+        this.rowCount = rowCount;
+        this.truncated = truncated;
+        this.estimatedBytes = 64 + columns.stream().mapToLong(QueryColumn::estimatedBytes).sum();
+        this.executedAt = executedAt;
+        this.elapsedMs = elapsedMs;
+    }
+
+    /**
+     * Read up to maxRows rows; one more row being available marks the result as truncated
+     */
+    static QueryResult read(ResultSet rs, int maxRows, long startNanos) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        List<QueryColumn> columns = new ArrayList<>(columnCount);
+        for (int i = 1; i <= columnCount; i++) {
+            columns.add(new QueryColumn(metaData.getColumnLabel(i), metaData.getColumnTypeName(i),
+                    metaData.getColumnType(i), metaData.getScale(i)));
+        }
+
+        int rowCount = 0;
+        boolean truncated = false;
+        while (rs.next()) {
+            if (rowCount == maxRows) {
+                truncated = true;
+                break;
+            }
+            for (int i = 0; i < columnCount; i++) {
+                columns.get(i).read(rs, i + 1);
+            }
+            rowCount++;
+        }
+        columns.forEach(QueryColumn::seal);
+
+        return new QueryResult(List.copyOf(columns), rowCount, truncated, Instant.now(),
+                (System.nanoTime() - startNanos) / 1_000_000);
+    }
+
+    /**
+     * A result over columns already filled and sealed by the caller
+     */
+    static QueryResult of(List<QueryColumn> columns, int rowCount, boolean truncated, Instant executedAt,
+                          long elapsedMs) {
+        return new QueryResult(List.copyOf(columns), rowCount, truncated, executedAt, elapsedMs);
+    }
+
+    List<QueryColumn> columns() {
+        return columns;
+    }
+
+    List<String> columnNames() {
+        return columns.stream().map(QueryColumn::name).toList();
+    }
+
+    List<String> columnTypes() {
+        return columns.stream().map(QueryColumn::typeName).toList();
+    }
+
+    int rowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Rows boxed on access; nothing is materialized up front
+     */
+    List<Object[]> rows() {
+        return new AbstractList<>() {
+            @Override
+            public Object[] get(int index) {
+                if (index < 0 || index >= rowCount) {
+                    throw new IndexOutOfBoundsException(index);
+                }
+                Object[] row = new Object[columns.size()];
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = columns.get(i).value(index);
+                }
+                return row;
+            }
+
+            @Override
+            public int size() {
+                return rowCount;
+            }
+        };
+    }
+
+    boolean truncated() {
+        return truncated;
+    }
+
+    long estimatedBytes() {
+        return estimatedBytes;
+    }
+
+    Instant executedAt() {
+        return executedAt;
+    }
+
+    long elapsedMs() {
+        return elapsedMs;
+    }
+}
@@ -0,0 +1,180 @@
+package ai.datalens.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Holds large query results for paging without keeping them on the heap.
+ *
+ * The first warehouse.query.store.head-rows rows of a result stay in memory; the rest are
+ * spilled to memory-mapped segment files under warehouse.query.store.directory (see
+ * {@link StoredQueryResult}), so any page is served by random access and never by running the
+ * query again. Spilled results are deleted after warehouse.query.store.ttl, or earlier once
+ * together they exceed max-disk-bytes, rarely used ones first. A single result is cut off at
+ * max-disk-bytes and marked truncated.
+ */
+@Service
+public class QueryResultStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryResultStore.class);
+
+    private static final String RESULT_PREFIX = "result-";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${warehouse.query.store.directory:${java.io.tmpdir}/datalens-results}")
+    private String directory;
+
+    @Value("${warehouse.query.store.head-rows:1000}")
+    private int headRows;
+
+    @Value("${warehouse.query.store.chunk-rows:1000}")
+    private int chunkRows;
+
+    @Value("${warehouse.query.store.segment-bytes:268435456}")
+    private long segmentBytes;
+
+    @Value("${warehouse.query.store.max-disk-bytes:10737418240}")
+    private long maxDiskBytes;
+
+    @Value("${warehouse.query.store.ttl:1800000}")
+    private long ttlMs;
+
+    @Value("${warehouse.query.store.default-page-rows:1000}")
+    private int defaultPageRows;
+
+    @Value("${warehouse.query.store.max-page-rows:10000}")
+    private int maxPageRows;
+
+    private Path root;
+
+    private StoredQueryResult.SpillSettings settings;
+
+    // Spilled results only, weighed by their size on disk in KiB
+    private Cache<UUID, StoredQueryResult> spilled;
+
+    @PostConstruct
+    public void init() throws IOException {
+        root = Path.of(directory);
+        Files.createDirectories(root);
+        // Segments left behind by a previous run are unreachable now
+        try (Stream<Path> leftovers = Files.list(root)) {
+            leftovers.filter(path -> path.getFileName().toString().startsWith(RESULT_PREFIX))
+                    .forEach(StoredQueryResult::deleteDirectory);
+        } catch (UncheckedIOException e) {
+            logger.warn("Could not clear old query results in {}: {}", root, e.getMessage());
+        }
+
+        // One result may take the whole budget; weighed in KiB rounded up, it still fits
+        long budgetKiB = Math.max(1, maxDiskBytes / 1024);
+        settings = new StoredQueryResult.SpillSettings(Math.max(1, headRows), Math.max(1, chunkRows),
+                segmentBytes, budgetKiB * 1024);
+        spilled = Caffeine.newBuilder()
+                .maximumWeight(budgetKiB)
+                .weigher((UUID id, StoredQueryResult result) -> weightKiB(result.diskBytes()))
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .removalListener((UUID id, StoredQueryResult result, RemovalCause cause) -> {
+                    if (result != null) {
+                        result.delete();
+                        logger.debug("Deleted spilled query result {} ({})", id, cause);
+                    }
+                })
+                .build();
+
+        Gauge.builder("warehouse.query.store.disk-bytes", this, QueryResultStore::diskBytes)
+                .description("Bytes of query results spilled to disk")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("warehouse.query.store.results", this, store -> store.spilled.estimatedSize())
+                .description("Query results spilled to disk")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (spilled != null) {
+            spilled.invalidateAll();
+            spilled.cleanUp();
+        }
+    }
+
+    /**
+     * Read up to maxRows rows of the result set, spilling what does not fit the head to disk
+     */
+    StoredQueryResult write(ResultSet rs, int maxRows, long startNanos) throws SQLException {
+        UUID id = UUID.randomUUID();
+        StoredQueryResult result = StoredQueryResult.write(id, rs, maxRows, startNanos,
+                root.resolve(RESULT_PREFIX + id), settings);
+        if (result.isSpilled()) {
+            spilled.put(id, result);
+        }
+        return result;
+    }
+
+    /**
+     * Delete a result that is no longer needed
+     */
+    void discard(StoredQueryResult result) {
+        if (result.isSpilled()) {
+            spilled.invalidate(result.id());
+        }
+    }
+
+    /**
+     * Rows of the result from offset; limit defaults to default-page-rows and is capped at max-page-rows
+     *
+     * @throws IllegalArgumentException if offset is negative or limit not positive
+     * @throws IllegalStateException if the result has expired
+     */
+    QueryResult page(StoredQueryResult result, long offset, Integer limit) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset must not be negative");
+        }
+        if (limit != null && limit < 1) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        if (result.isSpilled()) {
+            // Counts as a use for size eviction
+            spilled.getIfPresent(result.id());
+        }
+        return result.page(offset, Math.min(limit != null ? limit : defaultPageRows, maxPageRows));
+    }
+
+    /**
+     * Drop spilled results past their TTL even when nothing else touches the store
+     */
+    @Scheduled(fixedDelayString = "${warehouse.query.store.sweep-interval:60000}")
+    public void expire() {
+        spilled.cleanUp();
+    }
+
+    static int weightKiB(long diskBytes) {
+        return (int) Math.min(Integer.MAX_VALUE, (diskBytes + 1023) / 1024);
+    }
+
+    private long diskBytes() {
+        return spilled.asMap().values().stream().mapToLong(StoredQueryResult::diskBytes).sum();
+    }
+}
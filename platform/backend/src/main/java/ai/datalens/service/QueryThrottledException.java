@@ -0,0 +1,21 @@
+package ai.datalens.service;
+
+import java.sql.SQLException;
+
+/**
+ * A query was refused without being queued, because its user or project already has as many
+ * queries waiting as {@link WarehouseQueryScheduler} allows.
+ */
+public class QueryThrottledException extends SQLException {
+
+    private final long retryAfterSeconds;
+
+    public QueryThrottledException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,122 @@
+package ai.datalens.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Encrypts secrets stored in the database with AES-GCM under warehouse.profiles.encryption-key
+ * (base64, 16, 24 or 32 bytes). Other stores can create their own instance under another key.
+ *
+ * Ciphertexts are "v1:" + base64(iv || ciphertext || tag). The caller passes associated data,
+ * such as the owning row's key, so a ciphertext copied to another row does not decrypt.
+ */
+@Component
+public class SecretCipher {
+
+    private static final String PREFIX = "v1:";
+    private static final int IV_BYTES = 12;
+    private static final int TAG_BITS = 128;
+
+    private final SecureRandom random = new SecureRandom();
+
+    private static final String DEFAULT_PROPERTY = "warehouse.profiles.encryption-key";
+
+    // Named in errors about the key
+    private final String property;
+
+    @Value("${warehouse.profiles.encryption-key:}")
+    private String encryptionKey;
+
+    public SecretCipher() {
+        this.property = DEFAULT_PROPERTY;
+    }
+
+    /**
+     * A cipher under a key configured elsewhere
+     *
+     * @throws IllegalStateException if the key is missing or malformed
+     */
+    public SecretCipher(String property, String encryptionKey) {
+        this.property = property;
+        this.encryptionKey = encryptionKey;
+        key();
+    }
+
+    public boolean isConfigured() {
+        return encryptionKey != null && !encryptionKey.isBlank();
+    }
+
+    /**
+     * @throws IllegalStateException if no encryption key is configured
+     */
+    public String encrypt(String plaintext, String associatedData) {
+        try {
+            byte[] iv = new byte[IV_BYTES];
+            random.nextBytes(iv);
+            Cipher cipher = cipher(Cipher.ENCRYPT_MODE, iv, associatedData);
+            byte[] sealed = cipher.doFinal(plaintext.getBytes(StandardCharsets.UTF_8));
+
+            byte[] out = new byte[IV_BYTES + sealed.length];
+            System.arraycopy(iv, 0, out, 0, IV_BYTES);
+            System.arraycopy(sealed, 0, out, IV_BYTES, sealed.length);
+            return PREFIX + Base64.getEncoder().encodeToString(out);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not encrypt secret", e);
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if no encryption key is configured, or the ciphertext was
+     *         tampered with, encrypted under another key or for other associated data
+     */
+    public String decrypt(String ciphertext, String associatedData) {
+        if (ciphertext == null || !ciphertext.startsWith(PREFIX)) {
+            throw new IllegalStateException("Unsupported secret format");
+        }
+        try {
+            byte[] in = Base64.getDecoder().decode(ciphertext.substring(PREFIX.length()));
+            if (in.length <= IV_BYTES) {
+                throw new IllegalStateException("Unsupported secret format");
+            }
+            byte[] iv = new byte[IV_BYTES];
+            System.arraycopy(in, 0, iv, 0, IV_BYTES);
+            Cipher cipher = cipher(Cipher.DECRYPT_MODE, iv, associatedData);
+            return new String(cipher.doFinal(in, IV_BYTES, in.length - IV_BYTES), StandardCharsets.UTF_8);
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            throw new IllegalStateException("Could not decrypt secret", e);
+        }
+    }
+
+    private Cipher cipher(int mode, byte[] iv, String associatedData) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(mode, key(), new GCMParameterSpec(TAG_BITS, iv));
+        if (associatedData != null) {
+            cipher.updateAAD(associatedData.getBytes(StandardCharsets.UTF_8));
+        }
+        return cipher;
+    }
+
+    private SecretKeySpec key() {
+        if (!isConfigured()) {
+            throw new IllegalStateException(property + " is not configured");
+        }
+        byte[] key;
+        try {
+            key = Base64.getDecoder().decode(encryptionKey.trim());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException(property + " is not valid base64", e);
+        }
+        if (key.length != 16 && key.length != 24 && key.length != 32) {
+            throw new IllegalStateException(property + " must be 16, 24 or 32 bytes");
+        }
+        return new SecretKeySpec(key, "AES");
+    }
+}
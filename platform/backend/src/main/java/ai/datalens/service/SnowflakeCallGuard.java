@@ -0,0 +1,14 @@
+package ai.datalens.service;
+
+import java.sql.SQLException;
+
+/**
+ * Admission control every {@link SnowflakeStageService} call runs through
+ */
+interface SnowflakeCallGuard {
+
+    /**
+     * @throws SnowflakeUnavailableException if the call was refused without being attempted
+     */
+    <T> T execute(String operation, SnowflakeCircuitBreaker.SnowflakeCall<T> call) throws SQLException;
+}
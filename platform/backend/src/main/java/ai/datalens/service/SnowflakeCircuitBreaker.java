@@ -0,0 +1,307 @@
+package ai.datalens.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker and bulkhead shared by every Snowflake call.
+ *
+ * The breaker keeps the outcomes of the last snowflake.circuit.sliding-window calls. Once at
+ * least minimum-calls are recorded and the failure rate reaches the threshold it opens, and
+ * calls fail immediately with {@link SnowflakeUnavailableException} for open-duration. After
+ * that a few probe calls are let through (half-open): if they all succeed the breaker closes,
+ * if one fails it opens again. Independently, a semaphore caps in-flight calls so a slow
+ * Snowflake can't tie up every request thread.
+ *
+ * Only transient or connectivity failures count: {@link SQLTransientException}s (timeouts
+ * among them), {@link SQLRecoverableException}s, SQLState class 08 and I/O errors underneath.
+ * Other SQL errors (syntax, unknown objects, missing privileges) are the caller's, as are runtime
+ * exceptions, e.g. a client hanging up mid-stream, and queries stopped on purpose
+ * ({@link QueryCancelledException}); they say nothing about Snowflake's health and are not
+ * recorded, so one user's bad input can't open the breaker for everyone.
+ */
+@Component
+public class SnowflakeCircuitBreaker implements SnowflakeCallGuard {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnowflakeCircuitBreaker.class);
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${snowflake.circuit.failure-rate-threshold:50}")
+    private int failureRateThreshold;
+
+    @Value("${snowflake.circuit.sliding-window:20}")
+    private int slidingWindow;
+
+    @Value("${snowflake.circuit.minimum-calls:10}")
+    private int minimumCalls;
+
+    @Value("${snowflake.circuit.open-duration:30000}")
+    private long openDurationMs;
+
+    @Value("${snowflake.circuit.half-open-calls:3}")
+    private int halfOpenCalls;
+
+    @Value("${snowflake.bulkhead.max-concurrent:10}")
+    private int maxConcurrent;
+
+    @Value("${snowflake.bulkhead.max-wait:10000}")
+    private long maxWaitMs;
+
+    private Semaphore bulkhead;
+
+    // All state below is guarded by this
+    private State state = State.CLOSED;
+    private boolean[] outcomes;
+    private int recorded;
+    private int next;
+    private int failures;
+    private long openedAt;
+    private int probesInFlight;
+    private int probeSuccesses;
+    // Bumped on every transition so calls that started in an earlier state don't skew the new one
+    private long generation;
+
+    private Counter rejectedOpen;
+    private Counter rejectedBulkhead;
+
+    @PostConstruct
+    public void init() {
+        outcomes = new boolean[Math.max(1, slidingWindow)];
+        bulkhead = new Semaphore(Math.max(1, maxConcurrent), true);
+
+        Gauge.builder("snowflake.circuit.state", this, breaker -> breaker.getState().ordinal())
+                .description("Snowflake circuit breaker state: 0 closed, 1 open, 2 half-open")
+                .register(meterRegistry);
+        Gauge.builder("snowflake.bulkhead.available", bulkhead, Semaphore::availablePermits)
+                .description("Snowflake calls that can start without waiting")
+                .register(meterRegistry);
+        rejectedOpen = rejectedCounter("circuit_open");
+        rejectedBulkhead = rejectedCounter("bulkhead_full");
+    }
+
+    /**
+     * Run a Snowflake call through the breaker and bulkhead.
+     *
+     * @throws SnowflakeUnavailableException if the call was refused without being attempted
+     */
+    @Override
+    public <T> T execute(String operation, SnowflakeCall<T> call) throws SQLException {
+        long permit = acquirePermission(operation);
+
+        boolean acquired;
+        try {
+            acquired = bulkhead.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            release(permit);
+            throw new SQLException("Interrupted waiting for a Snowflake call slot", e);
+        }
+        if (!acquired) {
+            release(permit);
+            rejectedBulkhead.increment();
+            logger.warn("Snowflake bulkhead full, rejecting {}", operation);
+            throw new SnowflakeUnavailableException("Too many concurrent Snowflake calls", 1);
+        }
+
+        try {
+            T result = call.call();
+            onSuccess(permit);
+            return result;
+        } catch (QueryCancelledException e) {
+            release(permit);
+            throw e;
+        } catch (SQLException e) {
+            if (isTransient(e)) {
+                onFailure(permit, operation, e);
+            } else {
+                release(permit);
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            release(permit);
+            throw e;
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && openElapsed()) {
+            // Report what the next call would see
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * True while Snowflake is considered unhealthy, i.e. data derived from it may be out of date
+     */
+    public boolean isDegraded() {
+        return getState() != State.CLOSED;
+    }
+
+    /**
+     * Seconds until the breaker lets a probe through, 0 when it is not open
+     */
+    public synchronized long retryAfterSeconds() {
+        if (state != State.OPEN) {
+            return 0;
+        }
+        long remainingMs = openDurationMs - (System.currentTimeMillis() - openedAt);
+        return Math.max(1, TimeUnit.MILLISECONDS.toSeconds(remainingMs + 999));
+    }
+
+    /**
+     * Whether the failure is Snowflake's or the network's rather than the statement's
+     */
+    static boolean isTransient(SQLException e) {
+        if (e instanceof SQLTransientException || e instanceof SQLRecoverableException) {
+            return true;
+        }
+        String sqlState = e.getSQLState();
+        if (sqlState != null && sqlState.startsWith("08")) {
+            return true;
+        }
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+            if (cause instanceof SQLException nested && nested != e && isTransient(nested)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized long acquirePermission(String operation) throws SnowflakeUnavailableException {
+        if (state == State.OPEN) {
+            if (!openElapsed()) {
+                rejectedOpen.increment();
+                throw new SnowflakeUnavailableException("Snowflake is unavailable (circuit open), not attempting " + operation,
+                        retryAfterSeconds());
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesInFlight >= halfOpenCalls) {
+                rejectedOpen.increment();
+                throw new SnowflakeUnavailableException("Snowflake is recovering (circuit half-open), not attempting " + operation, 1);
+            }
+            probesInFlight++;
+        }
+        return generation;
+    }
+
+    private synchronized void onSuccess(long permit) {
+        if (permit != generation) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            probesInFlight--;
+            if (++probeSuccesses >= halfOpenCalls) {
+                transitionTo(State.CLOSED);
+            }
+        } else {
+            record(true);
+        }
+    }
+
+    private synchronized void onFailure(long permit, String operation, SQLException e) {
+        if (permit != generation) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            logger.warn("Snowflake probe {} failed: {}", operation, e.getMessage());
+            transitionTo(State.OPEN);
+            return;
+        }
+        record(false);
+        if (recorded >= minimumCalls && failures * 100 >= failureRateThreshold * recorded) {
+            logger.warn("Snowflake failure rate {}/{} reached {}%, opening circuit: {}",
+                    failures, recorded, failureRateThreshold, e.getMessage());
+            transitionTo(State.OPEN);
+        }
+    }
+
+    // Give back a half-open probe slot for a call that ended without a verdict
+    private synchronized void release(long permit) {
+        if (permit == generation && state == State.HALF_OPEN) {
+            probesInFlight--;
+        }
+    }
+
+    private void record(boolean success) {
+        if (recorded == outcomes.length) {
+            // Overwrite the oldest outcome
+            if (!outcomes[next]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        outcomes[next] = success;
+        if (!success) {
+            failures++;
+        }
+        next = (next + 1) % outcomes.length;
+    }
+
+    private boolean openElapsed() {
+        return System.currentTimeMillis() - openedAt >= openDurationMs;
+    }
+
+    private void transitionTo(State newState) {
+        State previous = state;
+        state = newState;
+        generation++;
+        recorded = 0;
+        next = 0;
+        failures = 0;
+        probesInFlight = 0;
+        probeSuccesses = 0;
+        if (newState == State.OPEN) {
+            openedAt = System.currentTimeMillis();
+        }
+
+        logger.info("Snowflake circuit {} -> {}", previous, newState);
+        Counter.builder("snowflake.circuit.transitions")
+                .description("Snowflake circuit breaker state transitions")
+                .tag("from", previous.name())
+                .tag("to", newState.name())
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private Counter rejectedCounter(String reason) {
+        return Counter.builder("snowflake.circuit.rejected")
+                .description("Snowflake calls refused without being attempted")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    /**
+     * A unit of Snowflake work
+     */
+    @FunctionalInterface
+    public interface SnowflakeCall<T> {
+        T call() throws SQLException;
+    }
+}
@@ -0,0 +1,369 @@
+package ai.datalens.service;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pooled Snowflake connections.
+ *
+ * Physical connections are opened (login + session context) once and then reused;
+ * borrow wait time and borrow count are published by Hikari as
+ * {@code hikaricp.connections.acquire{pool=snowflake}}, connection age as
+ * {@code snowflake.pool.connections.age.max}.
+ */
+@Component
+public class SnowflakeConnectionManager implements SnowflakeConnectionSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnowflakeConnectionManager.class);
+
+    static final String POOL_NAME = "snowflake";
+
+    @Value("${snowflake.url:}")
+    private String snowflakeUrl;
+
+    @Value("${snowflake.user:}")
+    private String snowflakeUser;
+
+    @Value("${snowflake.password:}")
+    private String snowflakePassword;
+
+    @Value("${snowflake.database:}")
+    private String snowflakeDatabase;
+
+    @Value("${snowflake.schema:}")
+    private String snowflakeSchema;
+
+    @Value("${snowflake.warehouse:}")
+    private String snowflakeWarehouse;
+
+    @Value("${snowflake.role:}")
+    private String snowflakeRole;
+
+    @Value("${snowflake.driver:net.snowflake.client.jdbc.SnowflakeDriver}")
+    private String driverClassName;
+
+    @Value("${snowflake.max-pool-size:10}")
+    private int maxPoolSize;
+
+    @Value("${snowflake.min-pool-size:2}")
+    private int minPoolSize;
+
+    @Value("${snowflake.initial-pool-size:2}")
+    private int initialPoolSize;
+
+    @Value("${snowflake.connection-timeout:60000}")
+    private long connectionTimeoutMs;
+
+    @Value("${snowflake.network-timeout:300000}")
+    private long networkTimeoutMs;
+
+    @Value("${snowflake.login-timeout:60000}")
+    private long loginTimeoutMs;
+
+    @Value("${snowflake.idle-timeout:600000}")
+    private long idleTimeoutMs;
+
+    @Value("${snowflake.max-lifetime:1800000}")
+    private long maxLifetimeMs;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Physical connections currently owned by the pool, with their creation time
+    private final Map<Connection, Long> physicalConnections = new ConcurrentHashMap<>();
+
+    private volatile HikariDataSource dataSource;
+
+    private Counter connectionsCreated;
+
+    @PostConstruct
+    public void init() {
+        connectionsCreated = Counter.builder("snowflake.pool.connections.created")
+                .description("Physical Snowflake connections opened (login + session setup)")
+                .register(meterRegistry);
+        Gauge.builder("snowflake.pool.connections.age.max", this, SnowflakeConnectionManager::maxConnectionAgeSeconds)
+                .description("Age in seconds of the oldest physical Snowflake connection")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+
+        if (isConfigured()) {
+            getDataSource();
+        } else {
+            logger.info("snowflake.url is not set; Snowflake connection pool will not be started");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        HikariDataSource ds = dataSource;
+        if (ds != null) {
+            ds.close();
+        }
+    }
+
+    @Override
+    public boolean isConfigured() {
+        return snowflakeUrl != null && !snowflakeUrl.isEmpty();
+    }
+
+    @Override
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    @Override
+    public String getRole() {
+        return snowflakeRole;
+    }
+
+    @Override
+    public String getWarehouse() {
+        return snowflakeWarehouse;
+    }
+
+    /**
+     * Account/database/schema that unqualified SHOW commands on pooled connections resolve against.
+     */
+    @Override
+    public StageCatalogKey catalogKey() {
+        return new StageCatalogKey(accountFromUrl(snowflakeUrl), snowflakeDatabase, snowflakeSchema);
+    }
+
+    /**
+     * Borrow a connection with session context already applied. Closing it returns it to the pool.
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!isConfigured()) {
+            throw new SQLException("Snowflake connection is not configured (snowflake.url is empty)");
+        }
+        return getDataSource().getConnection();
+    }
+
+    private HikariDataSource getDataSource() {
+        HikariDataSource ds = dataSource;
+        if (ds == null) {
+            synchronized (this) {
+                ds = dataSource;
+                if (ds == null) {
+                    ds = createDataSource();
+                    dataSource = ds;
+                    prefill(ds);
+                }
+            }
+        }
+        return ds;
+    }
+
+    private HikariDataSource createDataSource() {
+        int maximum = Math.max(1, maxPoolSize);
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(POOL_NAME);
+        config.setDataSource(new SessionPinningDataSource());
+        config.setMaximumPoolSize(maximum);
+        config.setMinimumIdle(Math.min(Math.max(0, minPoolSize), maximum));
+        config.setConnectionTimeout(connectionTimeoutMs);
+        // Borrow-time validation uses Connection.isValid and is skipped for recently used connections
+        config.setValidationTimeout(Math.min(5000L, Math.max(250L, connectionTimeoutMs - 1)));
+        config.setIdleTimeout(idleTimeoutMs);
+        config.setMaxLifetime(maxLifetimeMs);
+        // Don't block startup (or fail it) when Snowflake is unreachable
+        config.setInitializationFailTimeout(-1);
+        config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+
+        logger.info("Starting Snowflake connection pool (min={}, max={}, initial={})",
+                config.getMinimumIdle(), maximum, initialPoolSize);
+        return new HikariDataSource(config);
+    }
+
+    /**
+     * Open initial-pool-size connections up front; Hikari only keeps min-pool-size warm,
+     * the rest are retired after the idle timeout.
+     */
+    private void prefill(HikariDataSource ds) {
+        int target = Math.min(initialPoolSize, ds.getMaximumPoolSize());
+        if (target <= ds.getMinimumIdle()) {
+            return;
+        }
+        CompletableFuture.runAsync(() -> {
+            List<Connection> borrowed = new ArrayList<>(target);
+            try {
+                for (int i = 0; i < target; i++) {
+                    borrowed.add(ds.getConnection());
+                }
+            } catch (SQLException e) {
+                logger.warn("Could not prefill Snowflake connection pool: {}", e.getMessage());
+            } finally {
+                for (Connection connection : borrowed) {
+                    closeQuietly(connection);
+                }
+            }
+        });
+    }
+
+    double maxConnectionAgeSeconds() {
+        long now = System.currentTimeMillis();
+        long oldest = now;
+        for (Map.Entry<Connection, Long> entry : physicalConnections.entrySet()) {
+            if (isClosed(entry.getKey())) {
+                physicalConnections.remove(entry.getKey());
+            } else {
+                oldest = Math.min(oldest, entry.getValue());
+            }
+        }
+        return (now - oldest) / 1000.0;
+    }
+
+    Properties buildConnectionProperties() {
+        return connectionProperties(snowflakeUser, snowflakePassword, snowflakeRole, snowflakeWarehouse,
+                snowflakeDatabase, snowflakeSchema, networkTimeoutMs, loginTimeoutMs);
+    }
+
+    /**
+     * Driver properties for a login with the given credentials and session context; blank values are left out
+     */
+    static Properties connectionProperties(String user, String password, String role, String warehouse,
+                                           String database, String schema, long networkTimeoutMs, long loginTimeoutMs) {
+        Properties props = new Properties();
+
+        if (user != null && !user.isEmpty()) {
+            props.put("user", user);
+        }
+        if (password != null && !password.isEmpty()) {
+            props.put("password", password);
+        }
+        if (warehouse != null && !warehouse.isEmpty()) {
+            props.put("warehouse", warehouse);
+        }
+        if (database != null && !database.isEmpty()) {
+            props.put("db", database);
+        }
+        if (schema != null && !schema.isEmpty()) {
+            props.put("schema", schema);
+        }
+        if (role != null && !role.isEmpty()) {
+            props.put("role", role);
+        }
+        props.put("networkTimeout", String.valueOf(networkTimeoutMs));
+        props.put("loginTimeout", String.valueOf(Math.max(1, loginTimeoutMs / 1000)));
+        // One statement per execute, whatever the account default is
+        props.put("MULTI_STATEMENT_COUNT", "1");
+
+        return props;
+    }
+
+    /**
+     * Pin a freshly opened connection to its role, warehouse, database and schema
+     */
+    static void setSessionParameters(Connection connection, String role, String warehouse, String database,
+                                     String schema) throws SQLException {
+        useObject(connection, "USE ROLE ?", role);
+        useObject(connection, "USE WAREHOUSE ?", warehouse);
+        useObject(connection, "USE DATABASE ?", database);
+        useObject(connection, "USE SCHEMA ?", schema);
+    }
+
+    private static void useObject(Connection connection, String sql, String name) throws SQLException {
+        if (name != null && !name.isEmpty()) {
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                stmt.setString(1, name);
+                stmt.execute();
+            }
+        }
+    }
+
+    static void loadDriver(String driverClassName) throws SQLException {
+        if (driverClassName == null || driverClassName.isEmpty()) {
+            return;
+        }
+        try {
+            Class.forName(driverClassName);
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("Snowflake JDBC driver not found on classpath: " + driverClassName, e);
+        }
+    }
+
+    static String accountFromUrl(String url) {
+        if (url == null || url.isEmpty()) {
+            return "";
+        }
+        String host = url.replaceFirst("^jdbc:snowflake://", "");
+        int end = host.length();
+        for (char separator : new char[] {'/', '?', ':'}) {
+            int index = host.indexOf(separator);
+            if (index >= 0) {
+                end = Math.min(end, index);
+            }
+        }
+        host = host.substring(0, end);
+        return host.replaceFirst("\\.snowflakecomputing\\.com$", "").toUpperCase();
+    }
+
+    private static boolean isClosed(Connection connection) {
+        try {
+            return connection.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.debug("Error returning Snowflake connection to pool: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Opens physical connections for the pool. Each connection logs in and gets its
+     * session context exactly once, no matter how many times it is borrowed.
+     */
+    private class SessionPinningDataSource extends AbstractDataSource {
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            loadDriver(driverClassName);
+            Connection connection = DriverManager.getConnection(snowflakeUrl, buildConnectionProperties());
+            try {
+                setSessionParameters(connection, snowflakeRole, snowflakeWarehouse, snowflakeDatabase, snowflakeSchema);
+            } catch (SQLException e) {
+                connection.close();
+                throw e;
+            }
+            physicalConnections.put(connection, System.currentTimeMillis());
+            connectionsCreated.increment();
+            SnowflakeConnectionManager.logger.debug("Opened physical Snowflake connection ({} live)", physicalConnections.size());
+            return connection;
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            throw new SQLException("Snowflake credentials come from configuration");
+        }
+    }
+}
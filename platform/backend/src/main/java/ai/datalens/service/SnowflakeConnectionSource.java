@@ -0,0 +1,26 @@
+package ai.datalens.service;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Where {@link SnowflakeStageService} borrows its connections: the shared pool configured under
+ * snowflake.*, or a project's own pool built from its connection profile.
+ */
+interface SnowflakeConnectionSource {
+
+    boolean isConfigured();
+
+    StageCatalogKey catalogKey();
+
+    String getRole();
+
+    String getWarehouse();
+
+    int getMaxPoolSize();
+
+    /**
+     * Borrow a connection with session context already applied. Closing it returns it to the pool.
+     */
+    Connection getConnection() throws SQLException;
+}
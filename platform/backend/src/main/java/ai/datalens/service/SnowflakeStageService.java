@@ -3,196 +3,285 @@ package ai.datalens.service;
 import ai.datalens.dto.response.SnowflakeStageResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Properties;
 
+/**
+ * {@link WarehouseConnector} backed by Snowflake. The bean uses the shared pool and every call goes
+ * through {@link SnowflakeCircuitBreaker}; projects with a connection profile get their own
+ * instance over their own pool (see {@link ProjectConnectionPools}).
+ */
 @Service
-public class SnowflakeStageService {
+@ConditionalOnProperty(name = "warehouse.connector", havingValue = "snowflake", matchIfMissing = true)
+public class SnowflakeStageService implements WarehouseConnector {
     
     private static final Logger logger = LoggerFactory.getLogger(SnowflakeStageService.class);
     
-    @Value("${snowflake.url:}")
-    private String snowflakeUrl;
+    @Autowired
+    private SnowflakeConnectionSource connectionManager;
     
-    @Value("${snowflake.user:}")
-    private String snowflakeUser;
+    @Autowired
+    private SnowflakeCallGuard circuitBreaker;
     
-    @Value("${snowflake.password:}")
-    private String snowflakePassword;
+    @Value("${snowflake.fetch-size:1000}")
+    private int fetchSize;
     
-    @Value("${snowflake.database:}")
-    private String snowflakeDatabase;
+    @Value("${snowflake.query-timeout:300000}")
+    private long queryTimeoutMs;
     
-    @Value("${snowflake.schema:}")
-    private String snowflakeSchema;
+    public SnowflakeStageService() {}
     
-    @Value("${snowflake.warehouse:}")
-    private String snowflakeWarehouse;
+    /**
+     * A connector over another pool, outside the Spring context
+     */
+    SnowflakeStageService(SnowflakeConnectionSource connections, SnowflakeCallGuard guard, int fetchSize,
+                          long queryTimeoutMs) {
+        this.connectionManager = connections;
+        this.circuitBreaker = guard;
+        this.fetchSize = fetchSize;
+        this.queryTimeoutMs = queryTimeoutMs;
+    }
+    
+    @Override
+    public String name() {
+        return "snowflake";
+    }
+    
+    @Override
+    public boolean isConfigured() {
+        return connectionManager.isConfigured();
+    }
+    
+    @Override
+    public StageCatalogKey catalogKey() {
+        return connectionManager.catalogKey();
+    }
+    
+    @Override
+    public String role() {
+        return connectionManager.getRole();
+    }
+    
+    @Override
+    public String warehouse() {
+        return connectionManager.getWarehouse();
+    }
+    
+    @Override
+    public int maxConcurrency() {
+        return connectionManager.getMaxPoolSize();
+    }
     
-    @Value("${snowflake.role:}")
-    private String snowflakeRole;
+    /**
+     * Run SHOW STAGES and hand each row to the handler as it is read, without buffering the result.
+     * Rows are fetched from Snowflake in chunks of snowflake.fetch-size; a slow handler slows the fetch.
+     */
+    @Override
+    public long streamStages(StageRowHandler handler) throws SQLException {
+        logger.info("Connecting to Snowflake to fetch stages");
+        return streamQuery("SHOW STAGES", handler);
+    }
     
-    public List<SnowflakeStageResponse> getStagesFromSnowflake() {
+    /**
+     * Run SHOW STAGES scoped to one schema, independent of the session's current database/schema
+     */
+    @Override
+    public List<SnowflakeStageResponse> fetchStagesInSchema(String database, String schema) throws SQLException {
         List<SnowflakeStageResponse> stages = new ArrayList<>();
-        
-        try {
-            logger.info("Connecting to Snowflake to fetch stages");
-            
-            // Build connection properties
-            Properties props = buildConnectionProperties();
-            String connectionUrl = buildConnectionUrl();
+        streamQuery("SHOW STAGES IN SCHEMA " + quoteIdentifier(database) + "." + quoteIdentifier(schema), stages::add);
+        return stages;
+    }
+    
+    /**
+     * List every database/schema pair visible to the connection's role
+     */
+    @Override
+    public List<SchemaRef> listSchemas() throws SQLException {
+        return circuitBreaker.execute("SHOW SCHEMAS", () -> {
+            List<SchemaRef> schemas = new ArrayList<>();
             
-            try (Connection connection = DriverManager.getConnection(connectionUrl, props)) {
+            try (Connection connection = connectionManager.getConnection();
+                 Statement stmt = connection.createStatement()) {
+                stmt.setFetchSize(fetchSize);
                 
-                // Set session parameters
-                setSessionParameters(connection);
-                
-                // Query to get stages from Snowflake
-                String query = "SHOW STAGES";
-                try (Statement stmt = connection.createStatement();
-                     ResultSet rs = stmt.executeQuery(query)) {
-                    
+                try (ResultSet rs = stmt.executeQuery("SHOW SCHEMAS IN ACCOUNT")) {
                     while (rs.next()) {
-                        SnowflakeStageResponse stage = new SnowflakeStageResponse();
-                        stage.setStageName(rs.getString("name"));
-                        stage.setStageSchema(rs.getString("schema_name"));
-                        stage.setStageDatabase(rs.getString("database_name"));
-                        stage.setStageType(rs.getString("type"));
-                        stage.setStageLocation(rs.getString("url"));
-                        stage.setComment(rs.getString("comment"));
-                        stage.setOwner(rs.getString("owner"));
-                        stage.setCreated(rs.getString("created_on"));
-                        
-                        stages.add(stage);
+                        schemas.add(new SchemaRef(rs.getString("database_name"), rs.getString("name")));
                     }
                 }
-                
             }
             
-            logger.info("Successfully fetched {} stages from Snowflake", stages.size());
+            return schemas;
+        });
+    }
+    
+    /**
+     * Run LIST on a stage location and hand each file row to the handler
+     */
+    @Override
+    public long streamStageFiles(String stage, String prefix, StageFileRowHandler handler) throws SQLException {
+        String location = StageFileService.stageLocation(stage, prefix);
+        return circuitBreaker.execute("LIST", () -> {
+            long count = 0;
             
-        } catch (Exception e) {
-            logger.error("Error connecting to Snowflake: {}", e.getMessage(), e);
+            try (Connection connection = connectionManager.getConnection();
+                 Statement stmt = connection.createStatement()) {
+                stmt.setFetchSize(fetchSize);
+                
+                try (ResultSet rs = stmt.executeQuery("LIST " + location)) {
+                    while (rs.next()) {
+                        handler.handle(rs.getString("name"), rs.getLong("size"), rs.getString("md5"),
+                                rs.getString("last_modified"));
+                        count++;
+                    }
+                }
+            }
             
-            // Return mock data for development/testing
-            stages = createMockStages();
-            logger.info("Returning mock stages for development");
-        }
-        
-        return stages;
+            return count;
+        });
     }
     
-    private String buildConnectionUrl() {
-        if (snowflakeUrl != null && !snowflakeUrl.isEmpty()) {
-            return snowflakeUrl;
-        } else {
-            return "jdbc:snowflake://account.snowflakecomputing.com";
-        }
-    }
-    
-    private Properties buildConnectionProperties() {
-        Properties props = new Properties();
-        
-        if (snowflakeUser != null && !snowflakeUser.isEmpty()) {
-            props.put("user", snowflakeUser);
-        }
-        if (snowflakePassword != null && !snowflakePassword.isEmpty()) {
-            props.put("password", snowflakePassword);
-        }
-        if (snowflakeWarehouse != null && !snowflakeWarehouse.isEmpty()) {
-            props.put("warehouse", snowflakeWarehouse);
-        }
-        if (snowflakeDatabase != null && !snowflakeDatabase.isEmpty()) {
-            props.put("db", snowflakeDatabase);
-        }
-        if (snowflakeSchema != null && !snowflakeSchema.isEmpty()) {
-            props.put("schema", snowflakeSchema);
-        }
-        if (snowflakeRole != null && !snowflakeRole.isEmpty()) {
-            props.put("role", snowflakeRole);
-        }
-        
-        return props;
-    }
-    
-    private void setSessionParameters(Connection connection) throws SQLException {
-        if (snowflakeRole != null && !snowflakeRole.isEmpty()) {
-            try (PreparedStatement stmt = connection.prepareStatement("USE ROLE ?")) {
-                stmt.setString(1, snowflakeRole);
-                stmt.execute();
-            }
-        }
-        
-        if (snowflakeWarehouse != null && !snowflakeWarehouse.isEmpty()) {
-            try (PreparedStatement stmt = connection.prepareStatement("USE WAREHOUSE ?")) {
-                stmt.setString(1, snowflakeWarehouse);
-                stmt.execute();
+    /**
+     * {@code SELECT $1.. FROM @stage/path LIMIT n} with max-rows set on the statement, so reading
+     * stops after n rows whatever the file size
+     */
+    @Override
+    public long scanStagedFile(StagedFileScan scan, StagedRowHandler handler) throws SQLException {
+        return circuitBreaker.execute("SELECT FROM @" + scan.stage(), () -> {
+            long count = 0;
+            
+            try (Connection connection = connectionManager.getConnection();
+                 Statement stmt = connection.createStatement()) {
+                String fileFormat = scan.fileFormat() != null ? scan.fileFormat() : ensurePreviewFileFormat(stmt, scan.format());
+                
+                String columns;
+                if (scan.format() == StagePreviewService.Format.CSV) {
+                    StringBuilder select = new StringBuilder();
+                    for (int i = 1; i <= scan.maxColumns(); i++) {
+                        select.append(i > 1 ? ", $" : "$").append(i);
+                    }
+                    columns = select.toString();
+                } else {
+                    columns = "$1";
+                }
+                
+                String query = "SELECT " + columns + " FROM @" + scan.stage() + "/" + scan.path()
+                        + " (FILE_FORMAT => '" + fileFormat + "') LIMIT " + scan.maxRows();
+                stmt.setMaxRows(scan.maxRows());
+                stmt.setFetchSize(Math.min(scan.maxRows(), 1000));
+                stmt.setQueryTimeout(queryTimeoutSeconds());
+                
+                try (ResultSet rs = stmt.executeQuery(query)) {
+                    int columnCount = rs.getMetaData().getColumnCount();
+                    while (rs.next()) {
+                        String[] values = new String[columnCount];
+                        for (int i = 0; i < columnCount; i++) {
+                            values[i] = rs.getString(i + 1);
+                        }
+                        handler.handle(values);
+                        count++;
+                    }
+                }
             }
-        }
-        
-        if (snowflakeDatabase != null && !snowflakeDatabase.isEmpty()) {
-            try (PreparedStatement stmt = connection.prepareStatement("USE DATABASE ?")) {
-                stmt.setString(1, snowflakeDatabase);
-                stmt.execute();
+            
+            return count;
+        });
+    }
+    
+    @Override
+    public <T> T executeQuery(String sql, List<?> parameters, int maxRows, QueryControl control,
+                              QueryHandler<T> handler) throws SQLException {
+        return circuitBreaker.execute("QUERY", () -> {
+            try (Connection connection = connectionManager.getConnection()) {
+                // The pool resets this when the connection is returned
+                connection.setReadOnly(true);
+                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    for (int i = 0; i < parameters.size(); i++) {
+                        stmt.setObject(i + 1, parameters.get(i));
+                    }
+                    stmt.setMaxRows(maxRows);
+                    // 0 means no row limit
+                    stmt.setFetchSize(maxRows > 0 ? Math.min(maxRows, fetchSize) : fetchSize);
+                    stmt.setQueryTimeout(control.timeoutSeconds(queryTimeoutSeconds()));
+
+                    control.attach(stmt);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        return handler.handle(rs);
+                    } catch (SQLException e) {
+                        throw control.translate(e);
+                    } finally {
+                        control.detach();
+                    }
+                }
             }
-        }
-        
-        if (snowflakeSchema != null && !snowflakeSchema.isEmpty()) {
-            try (PreparedStatement stmt = connection.prepareStatement("USE SCHEMA ?")) {
-                stmt.setString(1, snowflakeSchema);
-                stmt.execute();
+        });
+    }
+    
+    private long streamQuery(String query, StageRowHandler handler) throws SQLException {
+        return circuitBreaker.execute("SHOW STAGES", () -> {
+            long count = 0;
+            
+            // Session context is applied once per pooled physical connection
+            try (Connection connection = connectionManager.getConnection()) {
+                
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.setFetchSize(fetchSize);
+                    
+                    try (ResultSet rs = stmt.executeQuery(query)) {
+                        while (rs.next()) {
+                            handler.handle(mapStage(rs));
+                            count++;
+                        }
+                    }
+                }
+                
             }
-        }
-    }
-    
-    private List<SnowflakeStageResponse> createMockStages() {
-        List<SnowflakeStageResponse> mockStages = new ArrayList<>();
-        
-        String[] stageNames = {
-            "RAW_DATA_STAGE",
-            "PROCESSED_DATA_STAGE", 
-            "ANALYTICS_STAGE",
-            "EXPORT_STAGE",
-            "BACKUP_STAGE",
-            "TEMP_STAGE"
-        };
-        
-        String[] stageTypes = {"Internal", "External", "Internal", "External", "Internal", "Internal"};
-        String[] locations = {
-            "@~/raw_data/",
-            "s3://my-bucket/processed/",
-            "@~/analytics/",
-            "s3://export-bucket/",
-            "@~/backups/",
-            "@~/temp/"
-        };
-        
-        for (int i = 0; i < stageNames.length; i++) {
-            SnowflakeStageResponse stage = new SnowflakeStageResponse();
-            stage.setStageName(stageNames[i]);
-            stage.setStageSchema(snowflakeSchema != null ? snowflakeSchema : "PUBLIC");
-            stage.setStageDatabase(snowflakeDatabase != null ? snowflakeDatabase : "SALES");
-            stage.setStageType(stageTypes[i]);
-            stage.setStageLocation(locations[i]);
-            stage.setComment("Mock stage for development - " + stageNames[i]);
-            stage.setOwner("SYSTEM");
-            stage.setCreated("2024-01-" + String.format("%02d", i + 1) + " 10:00:00");
             
-            mockStages.add(stage);
-        }
-        
-        return mockStages;
+            return count;
+        });
+    }
+    
+    /**
+     * Session-scoped file format for the given type; created once per pooled connection
+     */
+    private String ensurePreviewFileFormat(Statement stmt, StagePreviewService.Format format) throws SQLException {
+        String name = "DATALENS_PREVIEW_" + format.name();
+        String options = switch (format) {
+            case CSV -> "TYPE = CSV FIELD_OPTIONALLY_ENCLOSED_BY = '\"'";
+            case JSON -> "TYPE = JSON";
+            case PARQUET -> "TYPE = PARQUET";
+        };
+        stmt.execute("CREATE TEMPORARY FILE FORMAT IF NOT EXISTS " + name + " " + options);
+        return name;
+    }
+    
+    private int queryTimeoutSeconds() {
+        return (int) Math.max(1, queryTimeoutMs / 1000);
+    }
+    
+    /**
+     * Double-quote a Snowflake identifier so names with mixed case or special characters resolve exactly
+     */
+    static String quoteIdentifier(String identifier) {
+        return '"' + identifier.replace("\"", "\"\"") + '"';
     }
     
-    public List<SnowflakeStageResponse> refreshStagesFromSnowflake() {
-        logger.info("Refreshing stages from Snowflake");
-        
-        // Get fresh data from Snowflake
-        return getStagesFromSnowflake();
+    private SnowflakeStageResponse mapStage(ResultSet rs) throws SQLException {
+        SnowflakeStageResponse stage = new SnowflakeStageResponse();
+        stage.setStageName(rs.getString("name"));
+        stage.setStageSchema(rs.getString("schema_name"));
+        stage.setStageDatabase(rs.getString("database_name"));
+        stage.setStageType(rs.getString("type"));
+        stage.setStageLocation(rs.getString("url"));
+        stage.setComment(rs.getString("comment"));
+        stage.setOwner(rs.getString("owner"));
+        stage.setCreated(rs.getString("created_on"));
+        return stage;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,21 @@
+package ai.datalens.service;
+
+import java.sql.SQLException;
+
+/**
+ * A Snowflake call was refused without being attempted, because the circuit breaker is open
+ * or the bulkhead is full.
+ */
+public class SnowflakeUnavailableException extends SQLException {
+
+    private final long retryAfterSeconds;
+
+    public SnowflakeUnavailableException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
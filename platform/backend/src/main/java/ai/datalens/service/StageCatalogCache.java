@@ -0,0 +1,238 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.response.SnowflakeStageResponse;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Stage catalogs cached per account/database/schema in front of each project's {@link WarehouseConnector}.
+ *
+ * Projects on the same warehouse share one entry, keyed by their connector's {@link StageCatalogKey}.
+ * Concurrent misses for the same key share one SHOW STAGES query. Entries older than the
+ * refresh interval are still served while a background reload runs; entries older than
+ * max-stale are dropped, though the last good catalog is still served, flagged stale, while
+ * Snowflake is unreachable. Hit/miss/load counters are published as {@code cache.*{cache=snowflake.stages}}.
+ * With snowflake.discovery.enabled the catalog covers every visible schema instead of the configured one.
+ */
+@Component
+public class StageCatalogCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(StageCatalogCache.class);
+
+    static final String CACHE_NAME = "snowflake.stages";
+
+    @Autowired
+    private ProjectWarehouseConnectors projectConnectors;
+
+    @Autowired
+    private StageDiscoveryService stageDiscoveryService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${snowflake.discovery.enabled:false}")
+    private boolean discoveryEnabled;
+
+    @Value("${snowflake.stage-cache.refresh-after:60000}")
+    private long refreshAfterMs;
+
+    @Value("${snowflake.stage-cache.max-stale:600000}")
+    private long maxStaleMs;
+
+    @Value("${snowflake.stage-cache.max-stages:100000}")
+    private long maxStages;
+
+    @Value("${snowflake.stage-cache.refresh-threads:2}")
+    private int refreshThreads;
+
+    private ExecutorService refreshExecutor;
+
+    private LoadingCache<StageCatalogKey, List<SnowflakeStageResponse>> cache;
+
+    // Most recent successful load per key, kept past cache expiry to answer during outages
+    private final Map<StageCatalogKey, StageCatalogSnapshot> lastGood = new ConcurrentHashMap<>();
+
+    // Connector last seen for each key, used by loads and background reloads
+    private final Map<StageCatalogKey, WarehouseConnector> connectors = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        refreshExecutor = Executors.newFixedThreadPool(Math.max(1, refreshThreads), runnable -> {
+            Thread thread = new Thread(runnable, "stage-cache-refresh-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        cache = Caffeine.newBuilder()
+                .refreshAfterWrite(Duration.ofMillis(refreshAfterMs))
+                .expireAfterWrite(Duration.ofMillis(Math.max(maxStaleMs, refreshAfterMs)))
+                // Weigh by stage count so a few huge schemas can't blow the heap
+                .maximumWeight(maxStages)
+                .weigher((StageCatalogKey key, List<SnowflakeStageResponse> stages) -> Math.max(1, stages.size()))
+                .executor(refreshExecutor)
+                .recordStats()
+                .build(new CacheLoader<>() {
+                    @Override
+                    public List<SnowflakeStageResponse> load(StageCatalogKey key) throws Exception {
+                        return StageCatalogCache.this.load(key, List.of());
+                    }
+
+                    @Override
+                    public List<SnowflakeStageResponse> reload(StageCatalogKey key, List<SnowflakeStageResponse> oldValue) throws Exception {
+                        return StageCatalogCache.this.load(key, oldValue);
+                    }
+                });
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Stages for the project's account/database/schema, served from cache when possible.
+     */
+    public List<SnowflakeStageResponse> getStages(UUID projectId) throws SQLException {
+        return getCatalog(projectId).stages();
+    }
+
+    /**
+     * The current catalog, or when Snowflake can't be reached the last one loaded, flagged stale.
+     *
+     * @throws SQLException if loading fails and no catalog was ever loaded for this key
+     */
+    public StageCatalogSnapshot getCatalog(UUID projectId) throws SQLException {
+        StageCatalogKey key = keyFor(projectConnectors.forProject(projectId));
+        try {
+            List<SnowflakeStageResponse> stages = get(key);
+            StageCatalogSnapshot snapshot = lastGood.get(key);
+            return snapshot != null && snapshot.stages() == stages
+                    ? snapshot
+                    : new StageCatalogSnapshot(stages, Instant.now(), false);
+        } catch (SQLException | RuntimeException e) {
+            StageCatalogSnapshot snapshot = lastGood.get(key);
+            if (snapshot == null) {
+                throw e;
+            }
+            // Failures are not cached; serve the last good catalog and say so
+            logger.warn("Stage catalog for {} unavailable ({}); serving catalog loaded at {}",
+                    key, e.getMessage(), snapshot.loadedAt());
+            return snapshot.asStale();
+        }
+    }
+
+    /**
+     * Like {@link #getStages(UUID)} but load failures are always propagated, never answered with a stale catalog.
+     */
+    public List<SnowflakeStageResponse> getStagesOrThrow(UUID projectId) throws SQLException {
+        return get(keyFor(projectConnectors.forProject(projectId)));
+    }
+
+    /**
+     * Drop the cached catalog and load it again. Callers arriving during the reload wait for it.
+     */
+    public List<SnowflakeStageResponse> refresh(UUID projectId) throws SQLException {
+        invalidate(projectId);
+        return getStages(projectId);
+    }
+
+    /**
+     * Drop the cached catalog of the project's warehouse, which other projects on it share
+     */
+    public void invalidate(UUID projectId) {
+        StageCatalogKey key = projectConnectors.forProject(projectId).catalogKey();
+        logger.info("Invalidating stage catalog for {}", key);
+        cache.invalidate(key);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private StageCatalogKey keyFor(WarehouseConnector connector) {
+        StageCatalogKey key = connector.catalogKey();
+        connectors.put(key, connector);
+        return key;
+    }
+
+    private List<SnowflakeStageResponse> get(StageCatalogKey key) throws SQLException {
+        try {
+            return cache.get(key);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            throw e;
+        }
+    }
+
+    private List<SnowflakeStageResponse> load(StageCatalogKey key, List<SnowflakeStageResponse> previous) throws Exception {
+        WarehouseConnector connector = connectors.get(key);
+        if (connector == null) {
+            throw new SQLException("No warehouse connection for " + key);
+        }
+        long start = System.nanoTime();
+        List<SnowflakeStageResponse> stages = discoveryEnabled
+                ? discover(connector, previous)
+                : List.copyOf(connector.fetchStages());
+        logger.debug("Loaded {} stages for {} in {} ms", stages.size(), key, (System.nanoTime() - start) / 1_000_000);
+        lastGood.put(key, new StageCatalogSnapshot(stages, Instant.now(), false));
+        return stages;
+    }
+
+    /**
+     * Account-wide catalog from discovery. Schemas that failed keep their stages from the
+     * previous load so one bad schema doesn't make its stages disappear.
+     */
+    private List<SnowflakeStageResponse> discover(WarehouseConnector connector, List<SnowflakeStageResponse> previous)
+            throws SQLException {
+        StageDiscoveryService.DiscoveryResult result = stageDiscoveryService.discover(connector);
+        if (!result.isPartial()) {
+            return List.copyOf(result.stages());
+        }
+        if (result.failures().size() == result.schemasScanned()) {
+            throw new SQLException("Stage discovery failed for all " + result.schemasScanned() + " schemas: "
+                    + result.failures().get(0).error());
+        }
+
+        Set<String> failedSchemas = result.failures().stream()
+                .map(failure -> failure.database() + '.' + failure.schema())
+                .collect(Collectors.toSet());
+        List<SnowflakeStageResponse> merged = new ArrayList<>(result.stages());
+        previous.stream()
+                .filter(stage -> failedSchemas.contains(stage.getStageDatabase() + '.' + stage.getStageSchema()))
+                .forEach(merged::add);
+        merged.sort(StageDiscoveryService.STAGE_ORDER);
+        return List.copyOf(merged);
+    }
+}
@@ -0,0 +1,13 @@
+package ai.datalens.service;
+
+/**
+ * Identifies one stage catalog: the stages visible in a single Snowflake account/database/schema.
+ */
+public record StageCatalogKey(String account, String database, String schema) {
+
+    public StageCatalogKey {
+        account = account != null ? account : "";
+        database = database != null ? database : "";
+        schema = schema != null ? schema : "";
+    }
+}
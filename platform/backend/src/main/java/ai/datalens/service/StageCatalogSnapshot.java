@@ -0,0 +1,17 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.response.SnowflakeStageResponse;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * A stage catalog and when it was read from Snowflake. Stale means it is the last good
+ * catalog served because the current load failed.
+ */
+public record StageCatalogSnapshot(List<SnowflakeStageResponse> stages, Instant loadedAt, boolean stale) {
+
+    StageCatalogSnapshot asStale() {
+        return new StageCatalogSnapshot(stages, loadedAt, true);
+    }
+}
@@ -0,0 +1,267 @@
+package ai.datalens.service;
+
+import ai.datalens.repository.ProjectRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads the stage catalogs of recently active projects before users ask for them.
+ *
+ * A round runs once the application has started and then every snowflake.warmup.interval. It
+ * takes up to max-projects active projects updated within active-within, most recently updated
+ * first, and reads each one's catalog on at most parallelism threads, which syncs projects
+ * that were never synced and loads the SHOW STAGES catalog of their warehouse. Projects whose
+ * connection is not configured, or is the shared one while its circuit is open, are left out. As a health indicator it
+ * reports OUT_OF_SERVICE until ready-fraction of the first round's projects have loaded, or
+ * max-startup-wait has passed, so it can hold the instance back in the readiness group.
+ */
+@Component
+public class StageCatalogWarmup implements HealthIndicator {
+
+    private static final Logger logger = LoggerFactory.getLogger(StageCatalogWarmup.class);
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    @Autowired
+    private ProjectStageCatalogService projectStageCatalogService;
+
+    @Autowired
+    private ProjectWarehouseConnectors projectConnectors;
+
+    @Autowired
+    private SnowflakeCircuitBreaker circuitBreaker;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${snowflake.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${snowflake.warmup.max-projects:200}")
+    private int maxProjects;
+
+    @Value("${snowflake.warmup.active-within:604800000}")
+    private long activeWithinMs;
+
+    @Value("${snowflake.warmup.parallelism:4}")
+    private int parallelism;
+
+    @Value("${snowflake.warmup.ready-fraction:0.8}")
+    private double readyFraction;
+
+    @Value("${snowflake.warmup.max-startup-wait:300000}")
+    private long maxStartupWaitMs;
+
+    private ExecutorService executor;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    // Stays true once reached; later rounds only keep catalogs warm
+    private volatile boolean ready;
+
+    private volatile long startedAt;
+
+    private volatile Round current;
+
+    private Counter warmedCounter;
+
+    private Counter failedCounter;
+
+    private Timer roundTimer;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(1, parallelism), runnable -> {
+            Thread thread = new Thread(runnable, "stage-catalog-warmup-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        warmedCounter = Counter.builder("snowflake.warmup.projects")
+                .description("Project stage catalogs loaded ahead of use")
+                .tag("outcome", "warmed")
+                .register(meterRegistry);
+        failedCounter = Counter.builder("snowflake.warmup.projects")
+                .description("Project stage catalogs loaded ahead of use")
+                .tag("outcome", "failed")
+                .register(meterRegistry);
+        roundTimer = Timer.builder("snowflake.warmup.duration")
+                .description("Time to warm the stage catalogs of recently active projects")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmOnStartup() {
+        startedAt = System.currentTimeMillis();
+        if (!enabled) {
+            ready = true;
+            return;
+        }
+        try {
+            warm(projectConnectors.shared().isConfigured());
+        } catch (RuntimeException e) {
+            // Readiness then waits for a later round or max-startup-wait
+            logger.warn("Could not start stage catalog warm-up: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Keep the catalogs of active projects loaded, and pick up projects that became active
+     */
+    @Scheduled(fixedDelayString = "${snowflake.warmup.interval:600000}",
+               initialDelayString = "${snowflake.warmup.interval:600000}")
+    public void rewarm() {
+        if (!enabled) {
+            return;
+        }
+        boolean sharedUsable = projectConnectors.shared().isConfigured();
+        if (sharedUsable && circuitBreaker.getState() == SnowflakeCircuitBreaker.State.OPEN) {
+            logger.info("Skipping stage catalog warm-up on the shared connection while the Snowflake circuit is open");
+            sharedUsable = false;
+        }
+        warm(sharedUsable);
+    }
+
+    /**
+     * Start a round unless one is still running; projects are warmed in the background
+     *
+     * @param sharedUsable whether projects on the shared connection are warmed
+     * @return false if a round was already running
+     */
+    boolean warm(boolean sharedUsable) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        List<UUID> projectIds;
+        try {
+            projectIds = projectRepository.findActiveProjectIdsUpdatedSince(
+                    LocalDateTime.now().minus(Duration.ofMillis(activeWithinMs)),
+                    PageRequest.of(0, Math.max(1, maxProjects))).stream()
+                    .filter(projectId -> {
+                        WarehouseConnector connector = projectConnectors.forProject(projectId);
+                        return connector == projectConnectors.shared() ? sharedUsable : connector.isConfigured();
+                    })
+                    .toList();
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+
+        Round round = new Round(projectIds.size());
+        current = round;
+        logger.info("Warming stage catalogs of {} recently active projects", projectIds.size());
+        if (projectIds.isEmpty()) {
+            finish(round);
+            return true;
+        }
+        for (UUID projectId : projectIds) {
+            executor.execute(() -> warmProject(round, projectId));
+        }
+        return true;
+    }
+
+    boolean isReady() {
+        if (ready) {
+            return true;
+        }
+        Round round = current;
+        if (round != null && round.warmed.get() >= Math.ceil(round.target * Math.min(1.0, Math.max(0.0, readyFraction)))) {
+            ready = true;
+            logger.info("Stage catalogs warm for {} of {} projects; ready", round.warmed.get(), round.target);
+        } else if (startedAt > 0 && System.currentTimeMillis() - startedAt >= maxStartupWaitMs) {
+            ready = true;
+            logger.warn("Stage catalog warm-up did not reach {} within {} ms; reporting ready anyway",
+                    readyFraction, maxStartupWaitMs);
+        }
+        return ready;
+    }
+
+    @Override
+    public Health health() {
+        Round round = current;
+        Health.Builder builder = isReady() ? Health.up() : Health.outOfService();
+        builder.withDetail("readyFraction", readyFraction);
+        if (round != null) {
+            builder.withDetail("projects", round.target)
+                    .withDetail("warmed", round.warmed.get())
+                    .withDetail("failed", round.failed.get());
+        }
+        return builder.build();
+    }
+
+    private void warmProject(Round round, UUID projectId) {
+        try {
+            // Falls back to an unsynced, stale catalog when Snowflake can't be reached
+            if (projectStageCatalogService.getCatalog(projectId).stale()) {
+                round.failed.incrementAndGet();
+                failedCounter.increment();
+            } else {
+                round.warmed.incrementAndGet();
+                warmedCounter.increment();
+            }
+        } catch (Exception e) {
+            round.failed.incrementAndGet();
+            failedCounter.increment();
+            logger.warn("Stage catalog warm-up failed for project {}: {}", projectId, e.getMessage());
+        } finally {
+            isReady();
+            if (round.remaining.decrementAndGet() == 0) {
+                finish(round);
+            }
+        }
+    }
+
+    private void finish(Round round) {
+        long elapsedNanos = System.nanoTime() - round.startNanos;
+        isReady();
+        running.set(false);
+        roundTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        logger.info("Stage catalog warm-up finished in {} ms: {} warmed, {} failed",
+                elapsedNanos / 1_000_000, round.warmed.get(), round.failed.get());
+    }
+
+    private static final class Round {
+        final int target;
+        final long startNanos = System.nanoTime();
+        final AtomicInteger remaining;
+        final AtomicInteger warmed = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+
+        Round(int target) {
+            this.target = target;
+            this.remaining = new AtomicInteger(target);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.response.SnowflakeStageResponse;
+import ai.datalens.repository.ProjectRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Discovers stages in every database/schema a project's Snowflake role can see.
+ *
+ * One SHOW STAGES IN SCHEMA per schema is run on a bounded pool, so at most
+ * snowflake.discovery.parallelism pooled connections, and never more than the project's
+ * connector hands out, are in use at once for one discovery. A schema that fails
+ * or times out is reported in the result and does not fail the others.
+ */
+@Service
+public class StageDiscoveryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StageDiscoveryService.class);
+
+    static final Comparator<SnowflakeStageResponse> STAGE_ORDER = Comparator
+            .comparing(SnowflakeStageResponse::getStageDatabase, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(SnowflakeStageResponse::getStageSchema, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(SnowflakeStageResponse::getStageName, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    @Autowired
+    private ProjectWarehouseConnectors projectConnectors;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${snowflake.discovery.parallelism:8}")
+    private int parallelism;
+
+    @Value("${snowflake.discovery.timeout:120000}")
+    private long timeoutMs;
+
+    @Value("${snowflake.discovery.exclude-databases:SNOWFLAKE,SNOWFLAKE_SAMPLE_DATA}")
+    private Set<String> excludedDatabases;
+
+    private ThreadPoolExecutor executor;
+
+    private Timer schemaSuccessTimer;
+
+    private Timer schemaFailureTimer;
+
+    @PostConstruct
+    public void init() {
+        int threads = Math.max(1, parallelism);
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "stage-discovery-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+
+        schemaSuccessTimer = schemaTimer("success");
+        schemaFailureTimer = schemaTimer("failure");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Enumerate all schemas visible on the connection of one of the user's projects and list
+     * their stages in parallel.
+     *
+     * @throws SQLException if the schema list itself can't be read
+     * @throws RuntimeException if the user has no such project
+     */
+    public DiscoveryResult discover(UUID userId, UUID projectId) throws SQLException {
+        projectRepository.findByUserIdAndId(userId, projectId)
+                .orElseThrow(() -> new RuntimeException("Project not found"));
+        return discover(projectConnectors.forProject(projectId));
+    }
+
+    DiscoveryResult discover(WarehouseConnector connector) throws SQLException {
+        long start = System.nanoTime();
+
+        List<WarehouseConnector.SchemaRef> schemas = connector.listSchemas().stream()
+                .filter(this::isIncluded)
+                .collect(Collectors.toList());
+        // Never ask for more connections than the connector can hand out
+        int permits = Math.max(1, Math.min(executor.getMaximumPoolSize(), connector.maxConcurrency()));
+        Semaphore inFlight = new Semaphore(permits);
+        logger.info("Discovering stages in {} schemas with parallelism {}", schemas.size(), permits);
+
+        List<Future<List<SnowflakeStageResponse>>> futures = new ArrayList<>(schemas.size());
+        for (WarehouseConnector.SchemaRef schema : schemas) {
+            futures.add(executor.submit(() -> {
+                inFlight.acquire();
+                try {
+                    return scanSchema(connector, schema);
+                } finally {
+                    inFlight.release();
+                }
+            }));
+        }
+
+        // Every schema shares one deadline; whatever hasn't finished by then is cancelled
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        List<SnowflakeStageResponse> stages = new ArrayList<>();
+        List<SchemaFailure> failures = new ArrayList<>();
+        for (int i = 0; i < schemas.size(); i++) {
+            WarehouseConnector.SchemaRef schema = schemas.get(i);
+            Future<List<SnowflakeStageResponse>> future = futures.get(i);
+            try {
+                stages.addAll(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException | CancellationException e) {
+                future.cancel(true);
+                failures.add(new SchemaFailure(schema.database(), schema.schema(), "Timed out after " + timeoutMs + " ms"));
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                failures.add(new SchemaFailure(schema.database(), schema.schema(), cause.getMessage()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                throw new SQLException("Stage discovery interrupted", e);
+            }
+        }
+
+        stages.sort(STAGE_ORDER);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (failures.isEmpty()) {
+            logger.info("Discovered {} stages in {} schemas in {} ms", stages.size(), schemas.size(), elapsedMs);
+        } else {
+            logger.warn("Discovered {} stages in {} schemas in {} ms; {} schemas failed",
+                    stages.size(), schemas.size(), elapsedMs, failures.size());
+        }
+        return new DiscoveryResult(stages, schemas.size(), failures, elapsedMs);
+    }
+
+    private List<SnowflakeStageResponse> scanSchema(WarehouseConnector connector, WarehouseConnector.SchemaRef schema)
+            throws SQLException {
+        long start = System.nanoTime();
+        try {
+            List<SnowflakeStageResponse> stages = connector.fetchStagesInSchema(schema.database(), schema.schema());
+            schemaSuccessTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            logger.debug("Found {} stages in {}.{} in {} ms", stages.size(), schema.database(), schema.schema(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return stages;
+        } catch (SQLException | RuntimeException e) {
+            schemaFailureTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            logger.warn("Stage discovery failed for {}.{}: {}", schema.database(), schema.schema(), e.getMessage());
+            throw e;
+        }
+    }
+
+    private boolean isIncluded(WarehouseConnector.SchemaRef schema) {
+        return schema.database() != null && schema.schema() != null
+                && !"INFORMATION_SCHEMA".equalsIgnoreCase(schema.schema())
+                && excludedDatabases.stream().noneMatch(db -> db.trim().equalsIgnoreCase(schema.database()));
+    }
+
+    private Timer schemaTimer(String outcome) {
+        return Timer.builder("snowflake.discovery.schema")
+                .description("Time to list the stages of one schema during discovery")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * A schema whose stages could not be listed
+     */
+    public record SchemaFailure(String database, String schema, String error) {}
+
+    /**
+     * Merged, sorted discovery output plus the schemas that failed
+     */
+    public record DiscoveryResult(List<SnowflakeStageResponse> stages, int schemasScanned,
+                                  List<SchemaFailure> failures, long elapsedMs) {
+
+        public boolean isPartial() {
+            return !failures.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.response.StageFileResponse;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Parsed LIST @stage output held as parallel arrays sorted by path.
+ *
+ * A manifest for millions of files costs roughly the path strings plus two longs per file,
+ * instead of one response object per row. Pages are cut by binary search on the path, so a
+ * cursor stays valid across reloads of the manifest.
+ */
+final class StageFileManifest {
+
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    private final String[] paths;
+    private final long[] sizes;
+    private final String[] md5s;
+    private final long[] lastModified;
+
+    private StageFileManifest(String[] paths, long[] sizes, String[] md5s, long[] lastModified) {
+        this.paths = paths;
+        this.sizes = sizes;
+        this.md5s = md5s;
+        this.lastModified = lastModified;
+    }
+
+    int size() {
+        return paths.length;
+    }
+
+    /**
+     * Index of the first file whose path sorts after the cursor, or 0 when there is no cursor
+     */
+    int indexAfter(String cursor) {
+        if (cursor == null) {
+            return 0;
+        }
+        int index = Arrays.binarySearch(paths, cursor);
+        return index >= 0 ? index + 1 : -(index + 1);
+    }
+
+    String path(int index) {
+        return paths[index];
+    }
+
+    StageFileResponse file(int index) {
+        long modified = lastModified[index];
+        return new StageFileResponse(paths[index], sizes[index], md5s[index],
+                modified == NO_TIMESTAMP ? null : Instant.ofEpochMilli(modified));
+    }
+
+    /**
+     * Accumulates rows in growable arrays; LIST normally returns paths in order, so sorting is skipped when it does
+     */
+    static final class Builder {
+
+        private String[] paths = new String[256];
+        private long[] sizes = new long[256];
+        private String[] md5s = new String[256];
+        private long[] lastModified = new long[256];
+        private int count;
+        private boolean sorted = true;
+
+        void add(String path, long size, String md5, String lastModifiedText) {
+            if (count == paths.length) {
+                int capacity = count + (count >> 1);
+                paths = Arrays.copyOf(paths, capacity);
+                sizes = Arrays.copyOf(sizes, capacity);
+                md5s = Arrays.copyOf(md5s, capacity);
+                lastModified = Arrays.copyOf(lastModified, capacity);
+            }
+            if (count > 0 && sorted && paths[count - 1].compareTo(path) > 0) {
+                sorted = false;
+            }
+            paths[count] = path;
+            sizes[count] = size;
+            md5s[count] = md5;
+            lastModified[count] = parseTimestamp(lastModifiedText);
+            count++;
+        }
+
+        StageFileManifest build() {
+            if (sorted) {
+                return new StageFileManifest(Arrays.copyOf(paths, count), Arrays.copyOf(sizes, count),
+                        Arrays.copyOf(md5s, count), Arrays.copyOf(lastModified, count));
+            }
+
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparing(i -> paths[i]));
+
+            String[] sortedPaths = new String[count];
+            long[] sortedSizes = new long[count];
+            String[] sortedMd5s = new String[count];
+            long[] sortedModified = new long[count];
+            for (int i = 0; i < count; i++) {
+                int from = order[i];
+                sortedPaths[i] = paths[from];
+                sortedSizes[i] = sizes[from];
+                sortedMd5s[i] = md5s[from];
+                sortedModified[i] = lastModified[from];
+            }
+            return new StageFileManifest(sortedPaths, sortedSizes, sortedMd5s, sortedModified);
+        }
+
+        private static long parseTimestamp(String text) {
+            if (text == null || text.isEmpty()) {
+                return NO_TIMESTAMP;
+            }
+            try {
+                // LIST reports e.g. "Tue, 5 Mar 2024 10:00:00 GMT"
+                return ZonedDateTime.parse(text, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            } catch (DateTimeParseException e) {
+                return NO_TIMESTAMP;
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.response.StageFilePageResponse;
+import ai.datalens.dto.response.StageFileResponse;
+import ai.datalens.repository.ProjectRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.regex.Pattern;
+
+/**
+ * Lists the files inside a stage with cursor pagination.
+ *
+ * The LIST output for each stage/prefix is parsed once into a compact {@link StageFileManifest}
+ * and cached until it is older than snowflake.stage-files.max-age; pages are then cut from the
+ * cached manifest. Cursors are opaque and encode the last path returned. Each LIST that does
+ * reach the warehouse takes a {@link WarehouseQueryScheduler} slot of the requesting user's and
+ * runs on the project's connector, whose catalog key is part of the cache key.
+ */
+@Service
+public class StageFileService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StageFileService.class);
+
+    static final String CACHE_NAME = "snowflake.stage-files";
+
+    // [database.][schema.]name, unquoted identifiers only so the reference can't carry SQL
+    private static final Pattern STAGE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_$]*(\\.[A-Za-z_][A-Za-z0-9_$]*){0,2}");
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    @Autowired
+    private ProjectWarehouseConnectors projectConnectors;
+
+    @Autowired
+    private WarehouseQueryScheduler scheduler;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${snowflake.stage-files.max-age:300000}")
+    private long maxAgeMs;
+
+    @Value("${snowflake.stage-files.cache-max-files:2000000}")
+    private long cacheMaxFiles;
+
+    @Value("${snowflake.stage-files.default-page-size:100}")
+    private int defaultPageSize;
+
+    @Value("${snowflake.stage-files.max-page-size:1000}")
+    private int maxPageSize;
+
+    private Cache<ManifestKey, StageFileManifest> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis(maxAgeMs))
+                // Weigh by file count so one huge stage evicts others instead of exhausting the heap
+                .maximumWeight(cacheMaxFiles)
+                .weigher((ManifestKey key, StageFileManifest manifest) -> Math.max(1, manifest.size()))
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * One page of files in a stage.
+     *
+     * @param stage  stage name, optionally qualified as schema.name or database.schema.name
+     * @param prefix optional path prefix inside the stage
+     * @param cursor next_cursor from the previous page, or null for the first page
+     * @param limit  page size; defaults to snowflake.stage-files.default-page-size
+     * @param refresh drop the stage's cached manifests first so LIST runs again
+     * @throws IllegalArgumentException if the stage, prefix or cursor is malformed
+     * @throws RuntimeException if the user has no such project
+     * @throws QueryThrottledException if the manifest isn't cached and the user has too many queries queued
+     */
+    public StageFilePageResponse listFiles(UUID userId, UUID projectId, String stage, String prefix, String cursor,
+                                           Integer limit, boolean refresh) throws SQLException {
+        // Validates the stage name and prefix
+        stageLocation(stage, prefix);
+        String after = decodeCursor(cursor);
+        int pageSize = Math.min(Math.max(1, limit != null ? limit : defaultPageSize), maxPageSize);
+        requireProject(userId, projectId);
+
+        WarehouseConnector connector = projectConnectors.forProject(projectId);
+        if (refresh) {
+            invalidate(connector.catalogKey(), stage);
+        }
+        StageFileManifest manifest = getManifest(new ManifestKey(connector.catalogKey(), stage, normalizePrefix(prefix)),
+                connector, userId, projectId);
+
+        int from = manifest.indexAfter(after);
+        int to = Math.min(from + pageSize, manifest.size());
+        List<StageFileResponse> files = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            files.add(manifest.file(i));
+        }
+
+        String nextCursor = to < manifest.size() ? encodeCursor(manifest.path(to - 1)) : null;
+        return new StageFilePageResponse(files, nextCursor, manifest.size());
+    }
+
+    /**
+     * Current LIST entry for one file, bypassing the manifest cache so the md5 is fresh.
+     * Callers check that the project is the user's.
+     *
+     * @throws RuntimeException if the file does not exist
+     */
+    public StageFileResponse statFile(UUID userId, UUID projectId, String stage, String path) throws SQLException {
+        // Validates the stage name and prefix
+        stageLocation(stage, path);
+        String relative = normalizePrefix(path);
+
+        // LIST treats the path as a prefix; keep only the exact file
+        WarehouseConnector connector = projectConnectors.forProject(projectId);
+        StageFileResponse[] match = new StageFileResponse[1];
+        try (WarehouseQueryScheduler.Slot slot = scheduler.acquire(userId, projectId, QueryControl.defaults())) {
+            connector.streamStageFiles(stage, relative, (name, size, md5, lastModified) -> {
+                if (match[0] == null && (name.equals(relative) || name.endsWith("/" + relative))) {
+                    StageFileManifest.Builder builder = new StageFileManifest.Builder();
+                    builder.add(name, size, md5, lastModified);
+                    match[0] = builder.build().file(0);
+                }
+            });
+        }
+
+        if (match[0] == null) {
+            throw new RuntimeException("File not found");
+        }
+        return match[0];
+    }
+
+    /**
+     * Drop every cached manifest of a stage in one warehouse so the next listing runs LIST again
+     */
+    private void invalidate(StageCatalogKey catalog, String stage) {
+        cache.asMap().keySet().removeIf(key -> key.catalog().equals(catalog) && key.stage().equals(stage));
+    }
+
+    private StageFileManifest getManifest(ManifestKey key, WarehouseConnector connector, UUID userId, UUID projectId)
+            throws SQLException {
+        try {
+            // Concurrent requests for the same stage share one LIST
+            return cache.get(key, k -> loadManifest(k, connector, userId, projectId));
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            throw e;
+        }
+    }
+
+    private StageFileManifest loadManifest(ManifestKey key, WarehouseConnector connector, UUID userId, UUID projectId) {
+        long start = System.nanoTime();
+        StageFileManifest.Builder builder = new StageFileManifest.Builder();
+        try (WarehouseQueryScheduler.Slot slot = scheduler.acquire(userId, projectId, QueryControl.defaults())) {
+            connector.streamStageFiles(key.stage(), key.prefix(), builder::add);
+        } catch (SQLException e) {
+            throw new CompletionException(e);
+        }
+
+        StageFileManifest manifest = builder.build();
+        logger.info("Listed {} files in @{}/{} in {} ms", manifest.size(), key.stage(), key.prefix(),
+                (System.nanoTime() - start) / 1_000_000);
+        return manifest;
+    }
+
+    private void requireProject(UUID userId, UUID projectId) {
+        projectRepository.findByUserIdAndId(userId, projectId)
+                .orElseThrow(() -> new RuntimeException("Project not found"));
+    }
+
+    static String stageLocation(String stage, String prefix) {
+        if (stage == null || !STAGE_NAME.matcher(stage).matches()) {
+            throw new IllegalArgumentException("Invalid stage name: " + stage);
+        }
+
+        String path = normalizePrefix(prefix);
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '\'' || c == '\\' || Character.isISOControl(c)) {
+                throw new IllegalArgumentException("Invalid prefix: " + prefix);
+            }
+        }
+
+        // Quoted so prefixes with spaces or other punctuation stay a single location
+        return "'@" + stage + "/" + path + "'";
+    }
+
+    private static String normalizePrefix(String prefix) {
+        return prefix != null ? prefix.replaceFirst("^/+", "") : "";
+    }
+
+    private static String encodeCursor(String path) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(path.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    record ManifestKey(StageCatalogKey catalog, String stage, String prefix) {}
+}
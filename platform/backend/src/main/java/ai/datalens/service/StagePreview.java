@@ -0,0 +1,213 @@
+package ai.datalens.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * First rows of a staged file plus the inferred column types.
+ *
+ * Rows live in {@link PreviewColumnBuffer}s and are written straight from those buffers to
+ * JSON, so a cached preview never holds a boxed object per cell.
+ */
+@JsonSerialize(using = StagePreview.Serializer.class)
+public final class StagePreview {
+
+    private final String stage;
+    private final String path;
+    private final String etag;
+    private final String format;
+    private final String source;
+    private final List<PreviewColumnBuffer> columns;
+    private final int rowCount;
+
+    private StagePreview(String stage, String path, String etag, String format, String source,
+                         List<PreviewColumnBuffer> columns, int rowCount) {
+        this.stage = stage;
+        this.path = path;
+        this.etag = etag;
+        this.format = format;
+        this.source = source;
+        this.columns = columns;
+        this.rowCount = rowCount;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public List<String> getColumnNames() {
+        return columns.stream().map(PreviewColumnBuffer::name).toList();
+    }
+
+    public List<String> getColumnTypes() {
+        return columns.stream().map(column -> column.type().name()).toList();
+    }
+
+    /**
+     * Cells held, used to weigh cache entries
+     */
+    int cellCount() {
+        return Math.max(1, rowCount * Math.max(1, columns.size()));
+    }
+
+    /**
+     * Collects rows into column buffers sized for the requested row count
+     */
+    static final class Builder {
+
+        private final int capacity;
+        private final Map<String, PreviewColumnBuffer> columns = new LinkedHashMap<>();
+        private String[] header;
+        private int rows;
+
+        Builder(int capacity) {
+            this.capacity = capacity;
+        }
+
+        int rows() {
+            return rows;
+        }
+
+        boolean isFull() {
+            return rows >= capacity;
+        }
+
+        void header(String[] names) {
+            // Repeated header names would otherwise share one column
+            String[] unique = new String[names.length];
+            Set<String> seen = new HashSet<>();
+            for (int i = 0; i < names.length; i++) {
+                String name = names[i] != null && !names[i].isEmpty() ? names[i] : "$" + (i + 1);
+                String candidate = name;
+                for (int n = 2; !seen.add(candidate); n++) {
+                    candidate = name + "_" + n;
+                }
+                unique[i] = candidate;
+            }
+            this.header = unique;
+        }
+
+        /**
+         * Add a delimited row; values beyond the header get positional names
+         */
+        void addTextRow(String[] values) {
+            for (int i = 0; i < values.length; i++) {
+                column(header != null && i < header.length ? header[i] : "$" + (i + 1)).appendText(values[i]);
+            }
+            endRow();
+        }
+
+        /**
+         * Add a JSON row; top-level fields become columns, anything else goes in a single $1 column
+         */
+        void addJsonRow(JsonNode node) {
+            if (node != null && node.isObject()) {
+                Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    appendJson(column(field.getKey()), field.getValue());
+                }
+            } else {
+                appendJson(column("$1"), node);
+            }
+            endRow();
+        }
+
+        StagePreview build(String stage, String path, String etag, String format, String source) {
+            List<PreviewColumnBuffer> result = new ArrayList<>();
+            for (PreviewColumnBuffer column : columns.values()) {
+                column.padTo(rows);
+                // Positional columns past the end of the data (e.g. unused $n in SELECT $1..$n) carry nothing
+                if (column.type() != PreviewColumnBuffer.Type.NULL || !column.name().startsWith("$")) {
+                    result.add(column);
+                }
+            }
+            return new StagePreview(stage, path, etag, format, source, List.copyOf(result), rows);
+        }
+
+        private PreviewColumnBuffer column(String name) {
+            PreviewColumnBuffer column = columns.get(name);
+            if (column == null) {
+                column = new PreviewColumnBuffer(name, capacity);
+                column.padTo(rows);
+                columns.put(name, column);
+            }
+            return column;
+        }
+
+        private void endRow() {
+            rows++;
+            for (PreviewColumnBuffer column : columns.values()) {
+                column.padTo(rows);
+            }
+        }
+
+        private static void appendJson(PreviewColumnBuffer column, JsonNode value) {
+            if (value == null || value.isNull() || value.isMissingNode()) {
+                column.appendNull();
+            } else if (value.isBoolean()) {
+                column.appendBoolean(value.booleanValue());
+            } else if (value.isIntegralNumber() && value.canConvertToLong()) {
+                column.appendLong(value.longValue());
+            } else if (value.isNumber()) {
+                column.appendDouble(value.doubleValue());
+            } else if (value.isTextual()) {
+                column.appendString(value.textValue());
+            } else {
+                // Nested objects and arrays are shown as JSON text
+                column.appendString(value.toString());
+            }
+        }
+    }
+
+    public static final class Serializer extends JsonSerializer<StagePreview> {
+
+        @Override
+        public void serialize(StagePreview preview, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("stage", preview.stage);
+            generator.writeStringField("path", preview.path);
+            generator.writeStringField("etag", preview.etag);
+            generator.writeStringField("format", preview.format);
+            generator.writeStringField("source", preview.source);
+            generator.writeNumberField("row_count", preview.rowCount);
+
+            generator.writeArrayFieldStart("columns");
+            for (PreviewColumnBuffer column : preview.columns) {
+                generator.writeStartObject();
+                generator.writeStringField("name", column.name());
+                generator.writeStringField("type", column.type().name());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+
+            generator.writeArrayFieldStart("rows");
+            for (int row = 0; row < preview.rowCount; row++) {
+                generator.writeStartArray();
+                for (PreviewColumnBuffer column : preview.columns) {
+                    column.writeValue(generator, row);
+                }
+                generator.writeEndArray();
+            }
+            generator.writeEndArray();
+
+            generator.writeEndObject();
+        }
+    }
+}
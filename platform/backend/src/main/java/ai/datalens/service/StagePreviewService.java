@@ -0,0 +1,234 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.response.StageFileResponse;
+import ai.datalens.repository.ProjectRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Previews the first rows of a staged CSV, JSON or Parquet file with inferred column types.
+ *
+ * Files are read through {@link WarehouseConnector#scanStagedFile}, which stops after n rows, so
+ * the file size doesn't matter. Previews are cached by the project's warehouse, stage, path and
+ * the file's md5/etag, so a changed file is read again. The file lookup and each uncached read take a
+ * {@link WarehouseQueryScheduler} slot of the requesting user's.
+ */
+@Service
+public class StagePreviewService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StagePreviewService.class);
+
+    static final String CACHE_NAME = "snowflake.stage-previews";
+
+    // Paths end up unquoted in the FROM clause, so only plain path characters are accepted
+    private static final Pattern SAFE_PATH = Pattern.compile("[A-Za-z0-9_\\-.=/]+");
+
+    private static final Pattern FILE_FORMAT_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_$]*(\\.[A-Za-z_][A-Za-z0-9_$]*){0,2}");
+
+    public enum Format {
+        CSV, JSON, PARQUET;
+
+        static Format detect(String requested, String path) {
+            if (requested != null && !requested.isEmpty()) {
+                try {
+                    return valueOf(requested.toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Unsupported preview format: " + requested);
+                }
+            }
+
+            String name = path.toLowerCase(Locale.ROOT).replaceFirst("\\.(gz|gzip)$", "");
+            if (name.endsWith(".csv") || name.endsWith(".txt")) {
+                return CSV;
+            }
+            if (name.endsWith(".json") || name.endsWith(".ndjson") || name.endsWith(".jsonl")) {
+                return JSON;
+            }
+            if (name.endsWith(".parquet")) {
+                return PARQUET;
+            }
+            throw new IllegalArgumentException("Can't tell the format of " + path + "; pass format=csv|json|parquet");
+        }
+    }
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    @Autowired
+    private StageFileService stageFileService;
+
+    @Autowired
+    private ProjectWarehouseConnectors projectConnectors;
+
+    @Autowired
+    private WarehouseQueryScheduler scheduler;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${snowflake.preview.default-rows:100}")
+    private int defaultRows;
+
+    @Value("${snowflake.preview.max-rows:10000}")
+    private int maxRows;
+
+    @Value("${snowflake.preview.max-columns:64}")
+    private int maxColumns;
+
+    @Value("${snowflake.preview.cache-max-cells:5000000}")
+    private long cacheMaxCells;
+
+    @Value("${snowflake.preview.cache-ttl:1800000}")
+    private long cacheTtlMs;
+
+    private Cache<PreviewKey, StagePreview> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofMillis(cacheTtlMs))
+                .maximumWeight(cacheMaxCells)
+                .weigher((PreviewKey key, StagePreview preview) -> preview.cellCount())
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Preview a staged file.
+     *
+     * @param rows       rows to return; capped at snowflake.preview.max-rows
+     * @param header     for CSV, whether the first line holds column names
+     * @param fileFormat optional named Snowflake file format to read the file with
+     * @throws IllegalArgumentException if the stage, path, format or file format is malformed
+     * @throws RuntimeException if the user has no such project or the file does not exist
+     * @throws QueryThrottledException if the user has too many queries queued
+     */
+    public StagePreview preview(UUID userId, UUID projectId, String stage, String path, String format, Integer rows,
+                                boolean header, String fileFormat) throws SQLException, IOException {
+        requireSafePath(path);
+        if (fileFormat != null && !fileFormat.isEmpty()) {
+            requireFileFormatName(fileFormat);
+        }
+        // Validates the stage name
+        StageFileService.stageLocation(stage, path);
+
+        String relative = path.replaceFirst("^/+", "");
+        Format previewFormat = Format.detect(format, relative);
+        int limit = Math.min(Math.max(1, rows != null ? rows : defaultRows), maxRows);
+        boolean csvHeader = header && previewFormat == Format.CSV;
+        projectRepository.findByUserIdAndId(userId, projectId)
+                .orElseThrow(() -> new RuntimeException("Project not found"));
+
+        StageFileResponse file = stageFileService.statFile(userId, projectId, stage, relative);
+        String etag = file.getMd5() != null
+                ? file.getMd5()
+                : file.getSize() + "-" + (file.getLastModified() != null ? file.getLastModified().toEpochMilli() : 0);
+        String namedFormat = fileFormat != null && !fileFormat.isEmpty() ? fileFormat : null;
+        WarehouseConnector connector = projectConnectors.forProject(projectId);
+        PreviewKey key = new PreviewKey(connector.catalogKey(), stage, relative, etag,
+                previewFormat, limit, csvHeader, namedFormat);
+        return cached(key, () -> {
+            try (WarehouseQueryScheduler.Slot slot = scheduler.acquire(userId, projectId, QueryControl.defaults())) {
+                return read(connector, stage, relative, etag, previewFormat, limit, csvHeader, namedFormat);
+            }
+        });
+    }
+
+    /**
+     * @throws IllegalArgumentException unless the path is made of plain path characters only
+     */
+    static void requireSafePath(String path) {
+        if (path == null || !SAFE_PATH.matcher(path).matches() || path.contains("..")) {
+            throw new IllegalArgumentException("Invalid file path: " + path);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException unless the name is a plain, optionally qualified, identifier
+     */
+    static String requireFileFormatName(String fileFormat) {
+        if (!FILE_FORMAT_NAME.matcher(fileFormat).matches()) {
+            throw new IllegalArgumentException("Invalid file format name: " + fileFormat);
+        }
+        return fileFormat;
+    }
+
+    private StagePreview cached(PreviewKey key, PreviewLoader loader) throws SQLException, IOException {
+        StagePreview preview = cache.getIfPresent(key);
+        if (preview != null) {
+            return preview;
+        }
+
+        long start = System.nanoTime();
+        preview = loader.load();
+        logger.info("Previewed {} rows x {} columns of @{}/{} in {} ms", preview.getRowCount(),
+                preview.getColumnNames().size(), key.stage(), key.path(), (System.nanoTime() - start) / 1_000_000);
+        cache.put(key, preview);
+        return preview;
+    }
+
+    private StagePreview read(WarehouseConnector connector, String stage, String path, String etag, Format format,
+                              int limit, boolean header, String namedFormat) throws SQLException, IOException {
+        StagePreview.Builder builder = new StagePreview.Builder(limit);
+        boolean[] first = {true};
+        WarehouseConnector.StagedFileScan scan = new WarehouseConnector.StagedFileScan(stage, path, format, maxColumns,
+                header ? limit + 1 : limit, namedFormat);
+
+        try {
+            connector.scanStagedFile(scan, values -> {
+                if (builder.isFull()) {
+                    return;
+                }
+                if (format == Format.CSV) {
+                    if (first[0] && header) {
+                        builder.header(values);
+                    } else {
+                        builder.addTextRow(values);
+                    }
+                } else {
+                    try {
+                        builder.addJsonRow(values[0] != null ? objectMapper.readTree(values[0]) : null);
+                    } catch (IOException e) {
+                        // Bad data, not a warehouse failure; kept out of the breaker's failure count
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                first[0] = false;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        return builder.build(stage, path, etag, format.name(), connector.name());
+    }
+
+    @FunctionalInterface
+    private interface PreviewLoader {
+        StagePreview load() throws SQLException, IOException;
+    }
+
+    record PreviewKey(StageCatalogKey catalog, String stage, String path, String etag, Format format, int rows,
+                      boolean header, String fileFormat) {}
+}
@@ -0,0 +1,269 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.response.StageRefreshJobResponse;
+import ai.datalens.repository.ProjectRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs stage refreshes as background jobs so no request thread waits on Snowflake.
+ *
+ * Jobs run on a bounded pool with a bounded queue; a full queue rejects new jobs instead of
+ * piling them up. A refresh requested while one is queued or running for the same project joins
+ * that job. Finished jobs can be polled until snowflake.refresh-jobs.retention has passed.
+ */
+@Service
+public class StageRefreshJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StageRefreshJobService.class);
+
+    public enum Status { QUEUED, RUNNING, SUCCEEDED, FAILED }
+
+    @Autowired
+    private ProjectStageCatalogService projectStageCatalogService;
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${snowflake.refresh-jobs.threads:2}")
+    private int threads;
+
+    @Value("${snowflake.refresh-jobs.queue-capacity:50}")
+    private int queueCapacity;
+
+    @Value("${snowflake.refresh-jobs.retention:600000}")
+    private long retentionMs;
+
+    @Value("${snowflake.refresh-jobs.sse-timeout:330000}")
+    private long sseTimeoutMs;
+
+    private ThreadPoolExecutor executor;
+
+    // The queued or running job per project, used to join duplicate requests
+    private final Map<UUID, RefreshJob> activeJobs = new ConcurrentHashMap<>();
+
+    private Cache<UUID, RefreshJob> jobs;
+
+    private Counter deduplicated;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), runnable -> {
+                    Thread thread = new Thread(runnable, "stage-refresh-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+
+        jobs = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis(retentionMs))
+                .build();
+
+        deduplicated = Counter.builder("snowflake.refresh.jobs.deduplicated")
+                .description("Refresh requests joined to a job already queued or running")
+                .register(meterRegistry);
+        Gauge.builder("snowflake.refresh.jobs.active", activeJobs, Map::size)
+                .description("Stage refresh jobs queued or running")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Queue a refresh for one of the user's projects, or return the one already queued or running.
+     *
+     * @throws RuntimeException if the user has no such project
+     * @throws RejectedExecutionException if the job queue is full
+     */
+    public StageRefreshJobResponse submit(UUID userId, UUID projectId) {
+        requireProject(userId, projectId);
+
+        boolean[] created = {false};
+        RefreshJob job = activeJobs.compute(projectId, (id, existing) -> {
+            if (existing != null) {
+                return existing;
+            }
+            RefreshJob fresh = new RefreshJob(UUID.randomUUID(), projectId);
+            // Throws RejectedExecutionException when full, leaving no active job behind
+            executor.execute(() -> run(fresh));
+            created[0] = true;
+            return fresh;
+        });
+
+        if (created[0]) {
+            jobs.put(job.id, job);
+            logger.info("Queued stage refresh job {} for project {}", job.id, projectId);
+        } else {
+            deduplicated.increment();
+            logger.info("Stage refresh for project {} joined running job {}", projectId, job.id);
+        }
+        return job.toResponse();
+    }
+
+    /**
+     * Current state of a job, or null if it is unknown, expired or belongs to another project
+     *
+     * @throws RuntimeException if the user has no such project
+     */
+    public StageRefreshJobResponse getJob(UUID userId, UUID projectId, UUID jobId) {
+        requireProject(userId, projectId);
+        RefreshJob job = find(projectId, jobId);
+        return job != null ? job.toResponse() : null;
+    }
+
+    /**
+     * Push job status changes over SSE; the stream completes when the job finishes
+     *
+     * @throws RuntimeException if the user has no such project, or the job is unknown
+     */
+    public SseEmitter subscribe(UUID userId, UUID projectId, UUID jobId) {
+        requireProject(userId, projectId);
+        RefreshJob job = find(projectId, jobId);
+        if (job == null) {
+            throw new RuntimeException("Job not found");
+        }
+
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+        job.emitters.add(emitter);
+        emitter.onCompletion(() -> job.emitters.remove(emitter));
+        emitter.onTimeout(() -> job.emitters.remove(emitter));
+        emitter.onError(error -> job.emitters.remove(emitter));
+
+        // Send the current state right away; a job that already finished closes the stream
+        publish(job, emitter);
+        return emitter;
+    }
+
+    private void requireProject(UUID userId, UUID projectId) {
+        projectRepository.findByUserIdAndId(userId, projectId)
+                .orElseThrow(() -> new RuntimeException("Project not found"));
+    }
+
+    private RefreshJob find(UUID projectId, UUID jobId) {
+        RefreshJob job = jobs.getIfPresent(jobId);
+        return job != null && job.projectId.equals(projectId) ? job : null;
+    }
+
+    private void run(RefreshJob job) {
+        job.update(Status.RUNNING, null, null);
+        notifyListeners(job);
+
+        try {
+            ProjectStageCatalogService.SyncResult result = projectStageCatalogService.resyncProject(job.projectId);
+            job.update(Status.SUCCEEDED, result, null);
+            logger.info("Stage refresh job {} for project {} finished: {} stages", job.id, job.projectId, result.total());
+        } catch (Exception e) {
+            job.update(Status.FAILED, null, e.getMessage());
+            logger.error("Stage refresh job {} for project {} failed: {}", job.id, job.projectId, e.getMessage(), e);
+        } finally {
+            activeJobs.remove(job.projectId, job);
+            // Keep the finished job pollable for the full retention period
+            jobs.put(job.id, job);
+            notifyListeners(job);
+        }
+    }
+
+    private void notifyListeners(RefreshJob job) {
+        for (SseEmitter emitter : job.emitters) {
+            publish(job, emitter);
+        }
+    }
+
+    private void publish(RefreshJob job, SseEmitter emitter) {
+        StageRefreshJobResponse response = job.toResponse();
+        try {
+            emitter.send(SseEmitter.event().name("status").data(response));
+            if (job.isDone()) {
+                emitter.complete();
+            }
+        } catch (IOException | IllegalStateException e) {
+            // Client disconnected or the emitter already completed
+            job.emitters.remove(emitter);
+        }
+    }
+
+    private static final class RefreshJob {
+
+        private final UUID id;
+        private final UUID projectId;
+        private final LocalDateTime submittedAt = LocalDateTime.now();
+        private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+        private Status status = Status.QUEUED;
+        private LocalDateTime startedAt;
+        private LocalDateTime finishedAt;
+        private ProjectStageCatalogService.SyncResult result;
+        private String error;
+
+        private RefreshJob(UUID id, UUID projectId) {
+            this.id = id;
+            this.projectId = projectId;
+        }
+
+        synchronized void update(Status newStatus, ProjectStageCatalogService.SyncResult newResult, String newError) {
+            status = newStatus;
+            if (newStatus == Status.RUNNING) {
+                startedAt = LocalDateTime.now();
+            } else {
+                finishedAt = LocalDateTime.now();
+                result = newResult;
+                error = newError;
+            }
+        }
+
+        synchronized boolean isDone() {
+            return status == Status.SUCCEEDED || status == Status.FAILED;
+        }
+
+        synchronized StageRefreshJobResponse toResponse() {
+            StageRefreshJobResponse response = new StageRefreshJobResponse();
+            response.setJobId(id);
+            response.setProjectId(projectId);
+            response.setStatus(status.name());
+            response.setSubmittedAt(submittedAt);
+            response.setStartedAt(startedAt);
+            response.setFinishedAt(finishedAt);
+            if (result != null) {
+                response.setStageCount(result.total());
+                response.setInsertedCount(result.inserted());
+                response.setUpdatedCount(result.updated());
+                response.setDeletedCount(result.deleted());
+            }
+            response.setError(error);
+            return response;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.response.SnowflakeStageResponse;
+import ai.datalens.repository.ProjectRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Writes SHOW STAGES rows straight to an output stream as NDJSON or a JSON array.
+ * A listing that fails midway ends NDJSON with an error line, and a JSON array not at all.
+ * The listing runs on the project's connector and holds a {@link WarehouseQueryScheduler} slot
+ * of the requesting user's while it runs.
+ *
+ * Only one row is held at a time. Writes block when the client reads slowly, which in turn
+ * pauses the JDBC fetch, so heap use does not grow with the number of stages.
+ */
+@Component
+public class StageStreamWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(StageStreamWriter.class);
+
+    public static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    @Autowired
+    private ProjectWarehouseConnectors projectConnectors;
+
+    @Autowired
+    private WarehouseQueryScheduler scheduler;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${snowflake.stream.flush-every:500}")
+    private int flushEvery;
+
+    public enum Format {
+        NDJSON, JSON;
+
+        public static Format from(String value) {
+            return "json".equalsIgnoreCase(value) ? JSON : NDJSON;
+        }
+    }
+
+    /**
+     * Checked before the response starts, since {@link #write} runs once the status is sent
+     *
+     * @throws RuntimeException if the user has no such project
+     */
+    public void requireProject(UUID userId, UUID projectId) {
+        projectRepository.findByUserIdAndId(userId, projectId)
+                .orElseThrow(() -> new RuntimeException("Project not found"));
+    }
+
+    /**
+     * @throws IOException if the client went away, or a JSON listing failed midway
+     */
+    public void write(UUID userId, UUID projectId, OutputStream out, Format format) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        // The servlet owns the stream; don't let Jackson close it
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        if (format == Format.NDJSON) {
+            generator.setRootValueSeparator(null);
+        } else {
+            generator.writeStartArray();
+        }
+
+        WarehouseConnector connector = projectConnectors.forProject(projectId);
+        long[] written = {0};
+        try (WarehouseQueryScheduler.Slot slot = scheduler.acquire(userId, projectId, QueryControl.defaults())) {
+            connector.streamStages(stage -> writeRow(generator, format, stage, ++written[0]));
+        } catch (UncheckedIOException e) {
+            // Client went away; nothing left to write to
+            logger.info("Stage stream aborted by client after {} rows: {}", written[0], e.getCause().getMessage());
+            throw e.getCause();
+        } catch (SQLException e) {
+            logger.error("Stage stream failed after {} rows: {}", written[0], e.getMessage(), e);
+            if (format == Format.JSON) {
+                // Status is already committed; failing the body resets the connection, so the client
+                // can't take the rows so far for a complete, well-formed array
+                throw new IOException("Stage listing failed: " + e.getMessage(), e);
+            }
+            // Report the failure in-band as the last line
+            writeRow(generator, format, Map.of("error", "Stage listing failed: " + e.getMessage()), 0);
+        }
+
+        if (format == Format.JSON) {
+            generator.writeEndArray();
+        }
+        generator.flush();
+        logger.info("Streamed {} stages as {}", written[0], format);
+    }
+
+    private void writeRow(JsonGenerator generator, Format format, Object row, long rowNumber) {
+        try {
+            generator.writeObject(row);
+            if (format == Format.NDJSON) {
+                generator.writeRaw('\n');
+            }
+            if (flushEvery > 0 && rowNumber % flushEvery == 0) {
+                generator.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
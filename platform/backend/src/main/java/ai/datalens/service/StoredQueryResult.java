@@ -0,0 +1,470 @@
+package ai.datalens.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * A query result that may be larger than the heap allows: the first rows are held as a
+ * {@link QueryResult}, the rest are spilled to segment files in chunks of a fixed number of rows
+ * and read back through memory-mapped buffers.
+ *
+ * The segment and offset of every chunk are kept in memory, so the page at any offset is found
+ * by division: at most one chunk is decoded up to the first row of the page, however far in it
+ * starts. Spilled cells are a tag byte followed by the value:
+ * <pre>
+ * 0 null | 1 long: i64 | 2 double: f64 | 3 true | 4 false | 5 decimal: str | 6 string: str
+ * str: length i32 | UTF-8 bytes
+ * </pre>
+ * Decimals are in plain (non-scientific) notation, as in {@link ColumnarQueryResult}.
+ */
+final class StoredQueryResult {
+
+    private static final Logger logger = LoggerFactory.getLogger(StoredQueryResult.class);
+
+    private static final byte NULL = 0;
+    private static final byte LONG = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte TRUE = 3;
+    private static final byte FALSE = 4;
+    private static final byte DECIMAL = 5;
+    private static final byte STRING = 6;
+
+    /**
+     * How a result is split between the heap and disk
+     *
+     * @param headRows rows kept in memory
+     * @param chunkRows rows per spilled chunk
+     * @param segmentBytes size at which a new segment file is started; at most 2 GB, the limit of one mapping
+     * @param maxBytes spilled bytes after which the result is cut off as truncated
+     */
+    record SpillSettings(int headRows, int chunkRows, long segmentBytes, long maxBytes) {}
+
+    private final UUID id;
+    private final QueryResult head;
+    private final Path directory;
+    private final int chunkRows;
+    private final List<MappedByteBuffer> segments;
+    private final int[] chunkSegments;
+    private final int[] chunkOffsets;
+    private final long rowCount;
+    private final boolean truncated;
+    private final long diskBytes;
+    private volatile boolean deleted;
+
+    private StoredQueryResult(UUID id, QueryResult head, Path directory, int chunkRows, List<MappedByteBuffer> segments,
+                              int[] chunkSegments, int[] chunkOffsets, long rowCount, boolean truncated, long diskBytes) {
+        this.id = id;
+        this.head = head;
+        this.directory = directory;
+        this.chunkRows = chunkRows;
+        this.segments = segments;
+        this.chunkSegments = chunkSegments;
+        this.chunkOffsets = chunkOffsets;
+        this.rowCount = rowCount;
+        this.truncated = truncated;
+        this.diskBytes = diskBytes;
+    }
+
+    /**
+     * A result that is held on the heap entirely, e.g. one from the query cache
+     */
+    static StoredQueryResult inMemory(QueryResult result) {
+        return new StoredQueryResult(UUID.randomUUID(), result, null, 1, List.of(), new int[0], new int[0],
+                result.rowCount(), result.truncated(), 0);
+    }
+
+    /**
+     * Read up to maxRows rows, spilling those past the head to segment files under directory.
+     * One more row being available, or the spill reaching its byte limit, marks the result as truncated.
+     */
+    static StoredQueryResult write(UUID id, ResultSet rs, int maxRows, long startNanos, Path directory,
+                                   SpillSettings settings) throws SQLException {
+        QueryResult head = QueryResult.read(rs, Math.min(maxRows, settings.headRows()), startNanos);
+        if (!head.truncated() || maxRows <= head.rowCount()) {
+            return new StoredQueryResult(id, head, null, 1, List.of(), new int[0], new int[0],
+                    head.rowCount(), head.truncated(), 0);
+        }
+
+        // The result set is on the first row past the head, not yet read
+        ResultSetMetaData metaData = rs.getMetaData();
+        int[] types = new int[metaData.getColumnCount()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = metaData.getColumnType(i + 1);
+        }
+
+        SpillWriter writer = new SpillWriter(directory, settings);
+        try {
+            long rows = head.rowCount();
+            boolean truncated = false;
+            do {
+                if (rows == maxRows || !writer.add(rs, types)) {
+                    truncated = true;
+                    break;
+                }
+                rows++;
+            } while (rs.next());
+            writer.finish();
+
+            logger.debug("Spilled {} rows, {} bytes in {} segments to {}", rows - head.rowCount(), writer.bytes,
+                    writer.segmentPaths.size(), directory);
+            return new StoredQueryResult(id, head, directory, settings.chunkRows(), writer.mapSegments(),
+                    Arrays.copyOf(writer.chunkSegments, writer.chunks), Arrays.copyOf(writer.chunkOffsets, writer.chunks),
+                    rows, truncated, writer.bytes);
+        } catch (IOException e) {
+            writer.abort();
+            throw new SQLException("Could not spill query result to disk: " + e.getMessage(), e);
+        } catch (SQLException | RuntimeException e) {
+            writer.abort();
+            throw e;
+        }
+    }
+
+    UUID id() {
+        return id;
+    }
+
+    long rowCount() {
+        return rowCount;
+    }
+
+    boolean truncated() {
+        return truncated;
+    }
+
+    boolean isSpilled() {
+        return directory != null;
+    }
+
+    long diskBytes() {
+        return diskBytes;
+    }
+
+    long heapBytes() {
+        return head.estimatedBytes() + 8L * chunkSegments.length + 64;
+    }
+
+    /**
+     * Rows offset to offset + limit. The page is marked truncated if rows follow it, or the
+     * query's result was cut off.
+     *
+     * @throws IllegalStateException if the result has been deleted
+     */
+    QueryResult page(long offset, int limit) {
+        if (deleted) {
+            throw new IllegalStateException("Query result has expired");
+        }
+        long start = Math.min(Math.max(0, offset), rowCount);
+        long end = Math.min(rowCount, start + Math.max(0, limit));
+        List<QueryColumn> source = head.columns();
+        List<QueryColumn> columns = source.stream().map(QueryColumn::like).toList();
+
+        long row = start;
+        for (; row < end && row < head.rowCount(); row++) {
+            for (int i = 0; i < columns.size(); i++) {
+                columns.get(i).append(source.get(i).value((int) row));
+            }
+        }
+        if (row < end) {
+            long spilled = row - head.rowCount();
+            int chunk = (int) (spilled / chunkRows);
+            int inChunk = (int) (spilled % chunkRows);
+            ByteBuffer buffer = chunk(chunk);
+            for (int skipped = 0; skipped < inChunk; skipped++) {
+                for (int i = 0; i < columns.size(); i++) {
+                    skipCell(buffer);
+                }
+            }
+            for (; row < end; row++, inChunk++) {
+                if (inChunk == chunkRows) {
+                    buffer = chunk(++chunk);
+                    inChunk = 0;
+                }
+                for (QueryColumn column : columns) {
+                    column.append(readCell(buffer));
+                }
+            }
+        }
+        columns.forEach(QueryColumn::seal);
+        return QueryResult.of(columns, (int) (end - start), end < rowCount || truncated, head.executedAt(),
+                head.elapsedMs());
+    }
+
+    /**
+     * Delete the spilled segments; pages can't be read afterwards
+     */
+    void delete() {
+        deleted = true;
+        if (directory != null) {
+            deleteDirectory(directory);
+        }
+    }
+
+    private ByteBuffer chunk(int chunk) {
+        ByteBuffer buffer = segments.get(chunkSegments[chunk]).duplicate();
+        buffer.position(chunkOffsets[chunk]);
+        return buffer;
+    }
+
+    private static Object readCell(ByteBuffer buffer) {
+        byte tag = buffer.get();
+        return switch (tag) {
+            case NULL -> null;
+            case LONG -> buffer.getLong();
+            case DOUBLE -> buffer.getDouble();
+            case TRUE -> Boolean.TRUE;
+            case FALSE -> Boolean.FALSE;
+            case DECIMAL -> new BigDecimal(readString(buffer));
+            case STRING -> readString(buffer);
+            default -> throw new IllegalStateException("Corrupt spilled result: cell tag " + tag);
+        };
+    }
+
+    private static void skipCell(ByteBuffer buffer) {
+        byte tag = buffer.get();
+        switch (tag) {
+            case LONG, DOUBLE -> buffer.position(buffer.position() + 8);
+            case DECIMAL, STRING -> {
+                int length = buffer.getInt();
+                buffer.position(buffer.position() + length);
+            }
+            default -> {
+                // No payload
+            }
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void deleteDirectory(Path directory) {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    logger.warn("Could not delete {}: {}", path, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("Could not delete {}: {}", directory, e.getMessage());
+        }
+    }
+
+    /**
+     * Encodes rows into the current chunk and appends full chunks to segment files
+     */
+    private static final class SpillWriter {
+
+        private final Path directory;
+        private final int chunkRows;
+        private final long segmentBytes;
+        private final long maxBytes;
+        private final ChunkBuffer chunk = new ChunkBuffer(64 * 1024);
+        private final DataOutputStream out = new DataOutputStream(chunk);
+        private final List<Path> segmentPaths = new ArrayList<>();
+        private FileChannel segment;
+        private long segmentSize;
+        private int rowsInChunk;
+        private int[] chunkSegments = new int[64];
+        private int[] chunkOffsets = new int[64];
+        private int chunks;
+        private long bytes;
+
+        private SpillWriter(Path directory, SpillSettings settings) {
+            this.directory = directory;
+            this.chunkRows = Math.max(1, settings.chunkRows());
+            this.segmentBytes = Math.min(Math.max(1, settings.segmentBytes()), Integer.MAX_VALUE);
+            this.maxBytes = settings.maxBytes();
+        }
+
+        /**
+         * Append the current row of the result set
+         *
+         * @return false, without appending, if the row would take the spill past its byte limit
+         */
+        boolean add(ResultSet rs, int[] types) throws SQLException, IOException {
+            int mark = chunk.size();
+            for (int i = 0; i < types.length; i++) {
+                writeCell(rs, i + 1, types[i]);
+            }
+            if (bytes + chunk.size() > maxBytes) {
+                chunk.truncate(mark);
+                return false;
+            }
+            if (++rowsInChunk == chunkRows) {
+                flushChunk();
+            }
+            return true;
+        }
+
+        void finish() throws IOException {
+            if (rowsInChunk > 0) {
+                flushChunk();
+            }
+            closeSegment();
+        }
+
+        List<MappedByteBuffer> mapSegments() throws IOException {
+            List<MappedByteBuffer> mapped = new ArrayList<>(segmentPaths.size());
+            for (Path path : segmentPaths) {
+                // The mapping stays valid after the channel is closed
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    mapped.add(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+                }
+            }
+            return List.copyOf(mapped);
+        }
+
+        void abort() {
+            try {
+                closeSegment();
+            } catch (IOException e) {
+                logger.debug("Could not close segment of aborted spill: {}", e.getMessage());
+            }
+            deleteDirectory(directory);
+        }
+
+        private void writeCell(ResultSet rs, int column, int jdbcType) throws SQLException, IOException {
+            switch (jdbcType) {
+                case Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT -> {
+                    long value = rs.getLong(column);
+                    if (rs.wasNull()) {
+                        out.writeByte(NULL);
+                    } else {
+                        out.writeByte(LONG);
+                        out.writeLong(value);
+                    }
+                }
+                case Types.REAL, Types.FLOAT, Types.DOUBLE -> {
+                    double value = rs.getDouble(column);
+                    if (rs.wasNull()) {
+                        out.writeByte(NULL);
+                    } else {
+                        out.writeByte(DOUBLE);
+                        out.writeDouble(value);
+                    }
+                }
+                case Types.DECIMAL, Types.NUMERIC -> {
+                    BigDecimal value = rs.getBigDecimal(column);
+                    if (value == null) {
+                        out.writeByte(NULL);
+                    } else if (value.scale() <= 0 && fitsLong(value)) {
+                        out.writeByte(LONG);
+                        out.writeLong(value.longValue());
+                    } else {
+                        out.writeByte(DECIMAL);
+                        writeString(value.toPlainString());
+                    }
+                }
+                case Types.BOOLEAN, Types.BIT -> {
+                    boolean value = rs.getBoolean(column);
+                    out.writeByte(rs.wasNull() ? NULL : value ? TRUE : FALSE);
+                }
+                default -> {
+                    String value = rs.getString(column);
+                    if (value == null) {
+                        out.writeByte(NULL);
+                    } else {
+                        out.writeByte(STRING);
+                        writeString(value);
+                    }
+                }
+            }
+        }
+
+        private static boolean fitsLong(BigDecimal value) {
+            try {
+                value.longValueExact();
+                return true;
+            } catch (ArithmeticException e) {
+                return false;
+            }
+        }
+
+        private void writeString(String value) throws IOException {
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(encoded.length);
+            out.write(encoded);
+        }
+
+        private void flushChunk() throws IOException {
+            if (segment == null || (segmentSize > 0 && segmentSize + chunk.size() > segmentBytes)) {
+                openSegment();
+            }
+            if (chunks == chunkSegments.length) {
+                chunkSegments = Arrays.copyOf(chunkSegments, chunks * 2);
+                chunkOffsets = Arrays.copyOf(chunkOffsets, chunks * 2);
+            }
+            chunkSegments[chunks] = segmentPaths.size() - 1;
+            chunkOffsets[chunks] = (int) segmentSize;
+            chunks++;
+
+            ByteBuffer buffer = ByteBuffer.wrap(chunk.toByteArray());
+            while (buffer.hasRemaining()) {
+                segment.write(buffer);
+            }
+            segmentSize += chunk.size();
+            bytes += chunk.size();
+            chunk.reset();
+            rowsInChunk = 0;
+        }
+
+        private void openSegment() throws IOException {
+            closeSegment();
+            Files.createDirectories(directory);
+            Path path = directory.resolve("segment-" + segmentPaths.size() + ".bin");
+            segment = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            segmentPaths.add(path);
+            segmentSize = 0;
+        }
+
+        private void closeSegment() throws IOException {
+            if (segment != null) {
+                segment.close();
+                segment = null;
+            }
+        }
+    }
+
+    /**
+     * Chunk bytes that can drop a row written past the spill's byte limit
+     */
+    private static final class ChunkBuffer extends ByteArrayOutputStream {
+
+        private ChunkBuffer(int size) {
+            super(size);
+        }
+
+        void truncate(int size) {
+            count = size;
+        }
+    }
+}
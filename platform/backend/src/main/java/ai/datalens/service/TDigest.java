@@ -0,0 +1,185 @@
+package ai.datalens.service;
+
+import java.util.Arrays;
+
+/**
+ * Merging t-digest for approximate quantiles.
+ *
+ * Values are buffered and periodically folded into at most about {@code compression} centroids,
+ * small near the tails and large in the middle (the k1 scale function), so extreme quantiles
+ * stay accurate. Memory is fixed by the compression, not by the number of values. Digests
+ * merge by folding one's centroids into the other.
+ */
+final class TDigest {
+
+    private final double compression;
+    private final double[] means;
+    private final double[] weights;
+    private int centroidCount;
+
+    private final double[] bufferMeans;
+    private final double[] bufferWeights;
+    private int bufferCount;
+
+    private double totalWeight;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    TDigest(double compression) {
+        this.compression = compression;
+        int capacity = (int) Math.ceil(compression) + 8;
+        this.means = new double[capacity];
+        this.weights = new double[capacity];
+        this.bufferMeans = new double[(int) Math.ceil(compression) * 5];
+        this.bufferWeights = new double[bufferMeans.length];
+    }
+
+    void add(double value) {
+        add(value, 1);
+    }
+
+    void merge(TDigest other) {
+        other.compress();
+        for (int i = 0; i < other.centroidCount; i++) {
+            add(other.means[i], other.weights[i]);
+        }
+        // Centroid means lie inside the other digest's range, so carry its true extremes over
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    double size() {
+        return totalWeight;
+    }
+
+    /**
+     * Approximate value at quantile q (0..1); NaN when nothing was added
+     */
+    double quantile(double q) {
+        compress();
+        if (centroidCount == 0) {
+            return Double.NaN;
+        }
+        if (q <= 0) {
+            return min;
+        }
+        if (q >= 1) {
+            return max;
+        }
+        if (centroidCount == 1) {
+            return means[0];
+        }
+
+        double index = q * totalWeight;
+        // Interpolate between the min and the first centroid's center
+        if (index < weights[0] / 2) {
+            return min + (means[0] - min) * index / (weights[0] / 2);
+        }
+        double cumulative = 0;
+        for (int i = 0; i < centroidCount - 1; i++) {
+            double center = cumulative + weights[i] / 2;
+            double nextCenter = cumulative + weights[i] + weights[i + 1] / 2;
+            if (index < nextCenter) {
+                double fraction = (index - center) / (nextCenter - center);
+                return means[i] + (means[i + 1] - means[i]) * fraction;
+            }
+            cumulative += weights[i];
+        }
+        // Between the last centroid's center and the max
+        int last = centroidCount - 1;
+        double lastCenter = totalWeight - weights[last] / 2;
+        return means[last] + (max - means[last]) * Math.min(1, (index - lastCenter) / (weights[last] / 2));
+    }
+
+    private void add(double value, double weight) {
+        if (bufferCount == bufferMeans.length) {
+            compress();
+        }
+        bufferMeans[bufferCount] = value;
+        bufferWeights[bufferCount] = weight;
+        bufferCount++;
+        totalWeight += weight;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Fold the buffer into the centroids, merging neighbours while the merged centroid
+     * spans at most one unit of the scale function
+     */
+    private void compress() {
+        if (bufferCount == 0) {
+            return;
+        }
+        int n = centroidCount + bufferCount;
+        double[] allMeans = Arrays.copyOf(means, n);
+        double[] allWeights = Arrays.copyOf(weights, n);
+        System.arraycopy(bufferMeans, 0, allMeans, centroidCount, bufferCount);
+        System.arraycopy(bufferWeights, 0, allWeights, centroidCount, bufferCount);
+        sort(allMeans, allWeights, 0, n - 1);
+        bufferCount = 0;
+
+        int out = 0;
+        double currentMean = allMeans[0];
+        double currentWeight = allWeights[0];
+        double weightBefore = 0;
+        double kLeft = scale(0);
+        for (int i = 1; i < n; i++) {
+            double proposed = currentWeight + allWeights[i];
+            if (scale((weightBefore + proposed) / totalWeight) - kLeft <= 1) {
+                currentMean += (allMeans[i] - currentMean) * allWeights[i] / proposed;
+                currentWeight = proposed;
+            } else {
+                means[out] = currentMean;
+                weights[out] = currentWeight;
+                out++;
+                weightBefore += currentWeight;
+                kLeft = scale(weightBefore / totalWeight);
+                currentMean = allMeans[i];
+                currentWeight = allWeights[i];
+            }
+        }
+        means[out] = currentMean;
+        weights[out] = currentWeight;
+        centroidCount = out + 1;
+    }
+
+    private double scale(double q) {
+        return compression / (2 * Math.PI) * Math.asin(2 * Math.min(1, Math.max(0, q)) - 1);
+    }
+
+    // Quicksort of the means, moving the weights along
+    private static void sort(double[] keys, double[] values, int low, int high) {
+        while (low < high) {
+            double pivot = keys[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    double key = keys[i];
+                    keys[i] = keys[j];
+                    keys[j] = key;
+                    double value = values[i];
+                    values[i] = values[j];
+                    values[j] = value;
+                    i++;
+                    j--;
+                }
+            }
+            // Recurse into the smaller half to bound the stack depth
+            if (j - low < high - i) {
+                sort(keys, values, low, j);
+                low = i;
+            } else {
+                sort(keys, values, i, high);
+                high = j;
+            }
+        }
+    }
+}
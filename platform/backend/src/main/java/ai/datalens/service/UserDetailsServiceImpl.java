@@ -5,13 +5,14 @@ import ai.datalens.repository.UserRepository;
 import ai.datalens.security.UserPrincipal;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 @Service
-public class UserDetailsServiceImpl implements UserDetailsService {
+public class UserDetailsServiceImpl implements UserDetailsService, UserDetailsPasswordService {
 
     @Autowired
     private UserRepository userRepository;
@@ -32,4 +33,18 @@ public class UserDetailsServiceImpl implements UserDetailsService {
 
         return UserPrincipal.create(user);
     }
+
+    /**
+     * Store a rehash of the user's password, made after they signed in with it
+     */
+    @Override
+    @Transactional
+    public UserDetails updatePassword(UserDetails userDetails, String newPasswordHash) {
+        User user = userRepository.findByEmailWithRolesAndPermissions(userDetails.getUsername())
+                .orElseThrow(() -> new UsernameNotFoundException("User not found with email: " + userDetails.getUsername()));
+        user.setPasswordHash(newPasswordHash);
+        userRepository.save(user);
+
+        return UserPrincipal.create(user);
+    }
 }
\ No newline at end of file
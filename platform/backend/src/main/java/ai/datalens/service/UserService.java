@@ -5,6 +5,8 @@ import ai.datalens.entity.Role;
 import ai.datalens.entity.User;
 import ai.datalens.repository.UserRepository;
 import ai.datalens.repository.RoleRepository;
+import ai.datalens.security.SecurityVersions;
+import ai.datalens.security.UserPrincipalCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -23,6 +25,12 @@ public class UserService {
     @Autowired
     private RoleRepository roleRepository;
 
+    @Autowired
+    private UserPrincipalCache principalCache;
+
+    @Autowired
+    private SecurityVersions securityVersions;
+
     public UserResponse getCurrentUser(UUID userId) {
         User user = userRepository.findByIdWithRolesAndPermissions(userId)
                 .orElseThrow(() -> new RuntimeException("User not found"));
@@ -44,6 +52,8 @@ public class UserService {
         
         user.setStatus(status);
         userRepository.save(user);
+        principalCache.invalidate(user.getEmail());
+        securityVersions.bump(user.getId());
     }
 
     public void updateUserLocale(UUID userId, String locale) {
@@ -92,6 +102,7 @@ public class UserService {
         UUID userUuid = UUID.fromString(userId);
         User user = userRepository.findByIdWithRoles(userUuid)
                 .orElseThrow(() -> new RuntimeException("User not found"));
+        String previousEmail = user.getEmail();
         
         if (updates.containsKey("email")) {
             String email = (String) updates.get("email");
@@ -135,6 +146,8 @@ public class UserService {
         }
         
         userRepository.save(user);
+        principalCache.invalidate(previousEmail, user.getEmail());
+        securityVersions.bump(user.getId());
     }
 
     public void deleteUser(String userId) {
@@ -148,6 +161,8 @@ public class UserService {
         }
         
         userRepository.delete(user);
+        principalCache.invalidate(user.getEmail());
+        securityVersions.bump(user.getId());
     }
 
     private UserResponse convertToUserResponse(User user) {
@@ -0,0 +1,605 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.response.CatalogColumnResponse;
+import ai.datalens.dto.response.CatalogTableResponse;
+import ai.datalens.entity.Project;
+import ai.datalens.entity.ProjectCatalogCrawl;
+import ai.datalens.entity.ProjectColumn;
+import ai.datalens.entity.ProjectTable;
+import ai.datalens.repository.ProjectCatalogCrawlRepository;
+import ai.datalens.repository.ProjectColumnRepository;
+import ai.datalens.repository.ProjectRepository;
+import ai.datalens.repository.ProjectTableRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Per-project catalog of the warehouse's tables and columns, crawled from INFORMATION_SCHEMA
+ * into {@code project_tables} and {@code project_columns}.
+ *
+ * The first crawl reads everything in keyset-paginated pages. Later crawls only ask for tables
+ * whose LAST_ALTERED is past the stored watermark (minus a small overlap for clock skew and
+ * late commits), re-read the columns of just those tables, and list table names to notice
+ * drops. A periodic full crawl (warehouse.catalog.full-crawl-interval) catches anything the
+ * watermark missed. Reads are always served from Postgres.
+ */
+@Service
+public class WarehouseCatalogService {
+
+    private static final Logger logger = LoggerFactory.getLogger(WarehouseCatalogService.class);
+
+    private static final String TABLES_SQL =
+            "SELECT TABLE_CATALOG, TABLE_SCHEMA, TABLE_NAME, TABLE_TYPE, ROW_COUNT, BYTES, COMMENT, LAST_ALTERED " +
+            "FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA <> 'INFORMATION_SCHEMA'";
+
+    private static final String TABLE_KEYS_SQL =
+            "SELECT TABLE_CATALOG, TABLE_SCHEMA, TABLE_NAME " +
+            "FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA <> 'INFORMATION_SCHEMA'";
+
+    private static final String TABLES_AFTER = " AND (TABLE_SCHEMA > ? OR (TABLE_SCHEMA = ? AND TABLE_NAME > ?))";
+
+    private static final String COLUMNS_SQL =
+            "SELECT TABLE_CATALOG, TABLE_SCHEMA, TABLE_NAME, COLUMN_NAME, ORDINAL_POSITION, DATA_TYPE, " +
+            "CHARACTER_MAXIMUM_LENGTH, NUMERIC_PRECISION, NUMERIC_SCALE, IS_NULLABLE, COMMENT " +
+            "FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA <> 'INFORMATION_SCHEMA'";
+
+    private static final String COLUMNS_AFTER = " AND (TABLE_SCHEMA > ? OR (TABLE_SCHEMA = ? AND (TABLE_NAME > ? " +
+            "OR (TABLE_NAME = ? AND ORDINAL_POSITION > ?))))";
+
+    private static final String SELECT_STORED_SQL =
+            "SELECT id, table_catalog, table_schema, table_name, last_altered FROM project_tables WHERE project_id = ?";
+
+    // last_altered is written last, so a crawl that dies half-way leaves the table marked for rewriting
+    private static final String INSERT_TABLE_SQL =
+            "INSERT INTO project_tables (id, project_id, table_catalog, table_schema, table_name, table_type, " +
+            "row_count, bytes, comment, last_altered, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, NULL, ?, ?)";
+
+    private static final String UPDATE_TABLE_SQL =
+            "UPDATE project_tables SET table_type = ?, row_count = ?, bytes = ?, comment = ?, last_altered = NULL, " +
+            "updated_at = ? WHERE id = ?";
+
+    private static final String MARK_ALTERED_SQL = "UPDATE project_tables SET last_altered = ? WHERE id = ?";
+
+    private static final String DELETE_TABLE_SQL = "DELETE FROM project_tables WHERE id = ?";
+
+    private static final String DELETE_COLUMNS_SQL = "DELETE FROM project_columns WHERE table_id = ?";
+
+    private static final String INSERT_COLUMN_SQL =
+            "INSERT INTO project_columns (id, table_id, column_name, ordinal_position, data_type, " +
+            "character_maximum_length, numeric_precision, numeric_scale, is_nullable, comment) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String COUNT_COLUMNS_SQL =
+            "SELECT COUNT(*) FROM project_columns c JOIN project_tables t ON c.table_id = t.id WHERE t.project_id = ?";
+
+    @Autowired
+    private ProjectWarehouseConnectors projectConnectors;
+
+    @Autowired
+    private SnowflakeCircuitBreaker circuitBreaker;
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    @Autowired
+    private ProjectTableRepository projectTableRepository;
+
+    @Autowired
+    private ProjectColumnRepository projectColumnRepository;
+
+    @Autowired
+    private ProjectCatalogCrawlRepository projectCatalogCrawlRepository;
+
+    @Autowired
+    private NameSearchService nameSearchService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${warehouse.catalog.enabled:true}")
+    private boolean scheduledCrawlEnabled;
+
+    @Value("${warehouse.catalog.page-size:5000}")
+    private int pageSize;
+
+    @Value("${warehouse.catalog.tables-per-query:100}")
+    private int tablesPerQuery;
+
+    @Value("${warehouse.catalog.column-scan-threshold:1000}")
+    private int columnScanThreshold;
+
+    @Value("${warehouse.catalog.watermark-overlap:300000}")
+    private long watermarkOverlapMs;
+
+    @Value("${warehouse.catalog.full-crawl-interval:86400000}")
+    private long fullCrawlIntervalMs;
+
+    @Value("${warehouse.catalog.batch-size:500}")
+    private int batchSize;
+
+    // Projects with a crawl in progress; a second crawl would only redo the same work
+    private final Set<UUID> crawling = ConcurrentHashMap.newKeySet();
+
+    /**
+     * A page of a project's catalogued tables, optionally in one schema. A project that was
+     * never crawled is crawled first.
+     *
+     * @throws RuntimeException if the project does not exist or belongs to someone else
+     */
+    public Page<CatalogTableResponse> listTables(UUID userId, UUID projectId, String schema, int page, int size)
+            throws SQLException {
+        requireProject(userId, projectId);
+        ensureCrawled(projectId);
+
+        PageRequest pageable = PageRequest.of(Math.max(0, page), Math.min(Math.max(1, size), 1000));
+        Page<ProjectTable> tables = schema != null && !schema.isEmpty()
+                ? projectTableRepository.findByProjectIdAndTableSchemaOrderByTableNameAsc(projectId, schema, pageable)
+                : projectTableRepository.findByProjectIdOrderByTableSchemaAscTableNameAsc(projectId, pageable);
+        return tables.map(table -> toResponse(table, null));
+    }
+
+    /**
+     * One catalogued table with its columns
+     *
+     * @throws RuntimeException if the project or table does not exist
+     */
+    public CatalogTableResponse getTable(UUID userId, UUID projectId, String schema, String table) throws SQLException {
+        requireProject(userId, projectId);
+        ensureCrawled(projectId);
+
+        ProjectTable stored = projectTableRepository.findFirstByProjectIdAndTableSchemaAndTableName(projectId, schema, table)
+                .orElseThrow(() -> new RuntimeException("Table not found"));
+        List<CatalogColumnResponse> columns = projectColumnRepository.findByTableIdOrderByOrdinalPositionAsc(stored.getId())
+                .stream()
+                .map(WarehouseCatalogService::toResponse)
+                .toList();
+        return toResponse(stored, columns);
+    }
+
+    /**
+     * Crawl for a project the user owns
+     *
+     * @throws IllegalStateException if a crawl for the project is already running
+     */
+    public CrawlResult crawl(UUID userId, UUID projectId, boolean full) throws SQLException {
+        requireProject(userId, projectId);
+        return crawlProject(projectId, full);
+    }
+
+    /**
+     * Bring a project's stored catalog up to date: incrementally from the watermark, or in full
+     * when asked, on the first crawl, or when the last full crawl is older than the interval.
+     *
+     * @throws IllegalStateException if a crawl for the project is already running
+     */
+    public CrawlResult crawlProject(UUID projectId, boolean forceFull) throws SQLException {
+        if (!crawling.add(projectId)) {
+            throw new IllegalStateException("A catalog crawl is already running for this project");
+        }
+        long start = System.nanoTime();
+        String outcome = "failure";
+        boolean full = forceFull;
+        try {
+            ProjectCatalogCrawl state = projectCatalogCrawlRepository.findById(projectId)
+                    .orElseGet(() -> new ProjectCatalogCrawl(projectId));
+            LocalDateTime now = LocalDateTime.now();
+            full = forceFull || state.getWatermark() == null || state.getFullCrawledAt() == null
+                    || state.getFullCrawledAt().isBefore(now.minus(Duration.ofMillis(fullCrawlIntervalMs)));
+
+            CrawlResult result = crawl(projectConnectors.forProject(projectId), projectId, state, full, now, start);
+            full = result.full();
+            outcome = "success";
+            logger.info("{} catalog crawl for project {}: {} tables, {} columns, {} changed, {} dropped in {} ms",
+                    full ? "Full" : "Incremental", projectId, result.tableCount(), result.columnCount(),
+                    result.changedCount(), result.deletedCount(), result.elapsedMs());
+            return result;
+        } finally {
+            crawling.remove(projectId);
+            Timer.builder("warehouse.catalog.crawl")
+                    .description("INFORMATION_SCHEMA catalog crawls")
+                    .tag("mode", full ? "full" : "incremental")
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .record(Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Periodically crawl active projects; incremental crawls make this cheap
+     */
+    @Scheduled(fixedDelayString = "${warehouse.catalog.interval:900000}",
+               initialDelayString = "${warehouse.catalog.initial-delay:120000}")
+    public void crawlActiveProjects() {
+        if (!scheduledCrawlEnabled) {
+            return;
+        }
+        boolean sharedUsable = projectConnectors.shared().isConfigured();
+        if (sharedUsable && circuitBreaker.getState() == SnowflakeCircuitBreaker.State.OPEN) {
+            logger.info("Skipping scheduled catalog crawl on the shared connection while the Snowflake circuit is open");
+            sharedUsable = false;
+        }
+
+        for (Project project : projectRepository.findByIsActiveTrue()) {
+            try {
+                // Projects with their own connection profile are crawled whatever the shared connection's state
+                WarehouseConnector connector = projectConnectors.forProject(project.getId());
+                boolean usable = connector == projectConnectors.shared() ? sharedUsable : connector.isConfigured();
+                if (!usable) {
+                    continue;
+                }
+                crawlProject(project.getId(), false);
+            } catch (Exception e) {
+                logger.warn("Scheduled catalog crawl failed for project {}: {}", project.getId(), e.getMessage());
+            }
+        }
+    }
+
+    private CrawlResult crawl(WarehouseConnector connector, UUID projectId, ProjectCatalogCrawl state, boolean full,
+                              LocalDateTime now, long startNanos) throws SQLException {
+        Map<TableKey, StoredTable> stored = loadStoredTables(projectId);
+        // A crawl that died half-way leaves tables without last_altered; only a full pass finds them all
+        if (!full && stored.values().stream().anyMatch(table -> table.lastAltered() == null)) {
+            logger.info("Previous catalog crawl for project {} did not finish, crawling in full", projectId);
+            full = true;
+        }
+        Timestamp since = full ? null : Timestamp.valueOf(state.getWatermark().minus(Duration.ofMillis(watermarkOverlapMs)));
+
+        // Tables altered since the watermark, or every table on a full crawl
+        List<TableRow> fetched = new ArrayList<>();
+        fetchTables(connector, TABLES_SQL, since, fetched::add);
+        LocalDateTime watermark = state.getWatermark();
+        for (TableRow table : fetched) {
+            if (table.lastAltered() != null && (watermark == null || table.lastAltered().isAfter(watermark))) {
+                watermark = table.lastAltered();
+            }
+        }
+
+        // The overlap window hands back tables already stored at that version; leave those alone
+        List<TableRow> changed = fetched.stream()
+                .filter(table -> {
+                    StoredTable current = stored.get(table.key());
+                    return current == null || current.lastAltered() == null
+                            || !Objects.equals(current.lastAltered(), table.lastAltered());
+                })
+                .toList();
+
+        Set<TableKey> live = new HashSet<>();
+        if (full) {
+            fetched.forEach(table -> live.add(table.key()));
+        } else {
+            // Drops don't show up as altered tables, so list what still exists
+            fetchTables(connector, TABLE_KEYS_SQL, null, table -> live.add(table.key()));
+        }
+
+        Map<TableKey, UUID> tableIds = writeTables(projectId, changed, stored, now);
+        writeColumns(connector, changed, tableIds);
+
+        List<UUID> dropped = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+        for (Map.Entry<TableKey, StoredTable> entry : stored.entrySet()) {
+            if (!live.contains(entry.getKey())) {
+                dropped.add(entry.getValue().id());
+                deletes.add(new Object[] {entry.getValue().id()});
+            }
+        }
+        List<Object[]> altered = changed.stream()
+                .map(table -> new Object[] {
+                        table.lastAltered() != null ? Timestamp.valueOf(table.lastAltered()) : Timestamp.valueOf(now),
+                        tableIds.get(table.key())
+                })
+                .toList();
+
+        LocalDateTime newWatermark = watermark;
+        boolean fullCrawl = full;
+        CrawlResult result = transactionTemplate.execute(status -> {
+            executeBatch(MARK_ALTERED_SQL, altered);
+            executeBatch(DELETE_TABLE_SQL, deletes);
+
+            Long columnCount = jdbcTemplate.queryForObject(COUNT_COLUMNS_SQL, Long.class, projectId);
+            state.setWatermark(newWatermark != null ? newWatermark : now);
+            state.setCrawledAt(now);
+            if (fullCrawl) {
+                state.setFullCrawledAt(now);
+            }
+            state.setTableCount(live.size());
+            state.setColumnCount(columnCount != null ? columnCount.intValue() : 0);
+            state.setChangedCount(changed.size());
+            state.setDeletedCount(deletes.size());
+            state.setElapsedMs((System.nanoTime() - startNanos) / 1_000_000);
+            projectCatalogCrawlRepository.save(state);
+
+            return new CrawlResult(fullCrawl, live.size(), state.getColumnCount(), changed.size(), deletes.size(),
+                    state.getWatermark(), now, state.getElapsedMs());
+        });
+
+        if (!changed.isEmpty() || !dropped.isEmpty()) {
+            nameSearchService.tablesChanged(projectId, tableIds.values(), dropped);
+        }
+        return result;
+    }
+
+    /**
+     * Insert new tables and update changed ones, returning the id of every changed table
+     */
+    private Map<TableKey, UUID> writeTables(UUID projectId, List<TableRow> changed, Map<TableKey, StoredTable> stored,
+                                            LocalDateTime now) {
+        Map<TableKey, UUID> ids = new HashMap<>();
+        List<Object[]> inserts = new ArrayList<>();
+        List<Object[]> updates = new ArrayList<>();
+        List<Object[]> clears = new ArrayList<>();
+        Timestamp timestamp = Timestamp.valueOf(now);
+
+        for (TableRow table : changed) {
+            StoredTable current = stored.get(table.key());
+            if (current == null) {
+                UUID id = UUID.randomUUID();
+                ids.put(table.key(), id);
+                inserts.add(new Object[] {
+                        id, projectId, table.catalog(), table.schema(), table.name(), table.type(),
+                        table.rowCount(), table.bytes(), table.comment(), timestamp, timestamp
+                });
+            } else {
+                ids.put(table.key(), current.id());
+                updates.add(new Object[] {
+                        table.type(), table.rowCount(), table.bytes(), table.comment(), timestamp, current.id()
+                });
+                clears.add(new Object[] {current.id()});
+            }
+        }
+
+        transactionTemplate.execute(status -> {
+            executeBatch(INSERT_TABLE_SQL, inserts);
+            executeBatch(UPDATE_TABLE_SQL, updates);
+            executeBatch(DELETE_COLUMNS_SQL, clears);
+            return null;
+        });
+        return ids;
+    }
+
+    /**
+     * Read the columns of the changed tables and store them a page at a time. Many changed
+     * tables (the first crawl) are read with one paginated scan; a few with batched lookups.
+     */
+    private void writeColumns(WarehouseConnector connector, List<TableRow> changed, Map<TableKey, UUID> tableIds)
+            throws SQLException {
+        if (changed.isEmpty()) {
+            return;
+        }
+        if (changed.size() > columnScanThreshold) {
+            Object[] after = null;
+            while (true) {
+                List<Object> parameters = new ArrayList<>();
+                String sql = COLUMNS_SQL;
+                if (after != null) {
+                    sql += COLUMNS_AFTER;
+                    parameters.add(after[0]);
+                    parameters.add(after[0]);
+                    parameters.add(after[1]);
+                    parameters.add(after[1]);
+                    parameters.add(after[2]);
+                }
+                sql += " ORDER BY TABLE_SCHEMA, TABLE_NAME, ORDINAL_POSITION LIMIT " + pageSize;
+                List<ColumnRow> page = connector.executeQuery(sql, parameters, pageSize, this::readColumns);
+                insertColumns(page, tableIds);
+                if (page.size() < pageSize) {
+                    return;
+                }
+                ColumnRow last = page.get(page.size() - 1);
+                after = new Object[] {last.table().schema(), last.table().name(), last.position()};
+            }
+        }
+
+        for (int from = 0; from < changed.size(); from += Math.max(1, tablesPerQuery)) {
+            List<TableRow> batch = changed.subList(from, Math.min(changed.size(), from + Math.max(1, tablesPerQuery)));
+            StringBuilder sql = new StringBuilder(COLUMNS_SQL).append(" AND (");
+            List<Object> parameters = new ArrayList<>();
+            for (int i = 0; i < batch.size(); i++) {
+                sql.append(i > 0 ? " OR " : "").append("(TABLE_SCHEMA = ? AND TABLE_NAME = ?)");
+                parameters.add(batch.get(i).schema());
+                parameters.add(batch.get(i).name());
+            }
+            sql.append(") ORDER BY TABLE_SCHEMA, TABLE_NAME, ORDINAL_POSITION");
+            insertColumns(connector.executeQuery(sql.toString(), parameters, 0, this::readColumns), tableIds);
+        }
+    }
+
+    private void insertColumns(List<ColumnRow> columns, Map<TableKey, UUID> tableIds) {
+        List<Object[]> inserts = new ArrayList<>();
+        for (ColumnRow column : columns) {
+            // Columns of unchanged tables come along on a full scan; they are already stored
+            UUID tableId = tableIds.get(column.table());
+            if (tableId != null) {
+                inserts.add(new Object[] {
+                        UUID.randomUUID(), tableId, column.name(), column.position(), column.dataType(),
+                        column.maxLength(), column.precision(), column.scale(), column.nullable(), column.comment()
+                });
+            }
+        }
+        transactionTemplate.execute(status -> {
+            executeBatch(INSERT_COLUMN_SQL, inserts);
+            return null;
+        });
+    }
+
+    /**
+     * Page through INFORMATION_SCHEMA.TABLES in (schema, name) order
+     */
+    private void fetchTables(WarehouseConnector connector, String select, Timestamp since, Consumer<TableRow> sink)
+            throws SQLException {
+        boolean keysOnly = select.equals(TABLE_KEYS_SQL);
+        TableRow last = null;
+        while (true) {
+            List<Object> parameters = new ArrayList<>();
+            StringBuilder sql = new StringBuilder(select);
+            if (since != null) {
+                sql.append(" AND LAST_ALTERED > ?");
+                parameters.add(since);
+            }
+            if (last != null) {
+                sql.append(TABLES_AFTER);
+                parameters.add(last.schema());
+                parameters.add(last.schema());
+                parameters.add(last.name());
+            }
+            sql.append(" ORDER BY TABLE_SCHEMA, TABLE_NAME LIMIT ").append(pageSize);
+
+            List<TableRow> page = connector.executeQuery(sql.toString(), parameters, pageSize,
+                    rs -> readTables(rs, keysOnly));
+            page.forEach(sink);
+            if (page.size() < pageSize) {
+                return;
+            }
+            last = page.get(page.size() - 1);
+        }
+    }
+
+    private List<TableRow> readTables(ResultSet rs, boolean keysOnly) throws SQLException {
+        List<TableRow> tables = new ArrayList<>();
+        while (rs.next()) {
+            if (keysOnly) {
+                tables.add(new TableRow(nullToEmpty(rs.getString(1)), rs.getString(2), rs.getString(3),
+                        null, null, null, null, null));
+                continue;
+            }
+            Timestamp lastAltered = rs.getTimestamp(8);
+            tables.add(new TableRow(nullToEmpty(rs.getString(1)), rs.getString(2), rs.getString(3), rs.getString(4),
+                    getLong(rs, 5), getLong(rs, 6), rs.getString(7),
+                    lastAltered != null ? lastAltered.toLocalDateTime() : null));
+        }
+        return tables;
+    }
+
+    private List<ColumnRow> readColumns(ResultSet rs) throws SQLException {
+        List<ColumnRow> columns = new ArrayList<>();
+        while (rs.next()) {
+            Long precision = getLong(rs, 8);
+            Long scale = getLong(rs, 9);
+            columns.add(new ColumnRow(new TableKey(nullToEmpty(rs.getString(1)), rs.getString(2), rs.getString(3)),
+                    rs.getString(4), rs.getInt(5), rs.getString(6), getLong(rs, 7),
+                    precision != null ? precision.intValue() : null, scale != null ? scale.intValue() : null,
+                    !"NO".equalsIgnoreCase(rs.getString(10)), rs.getString(11)));
+        }
+        return columns;
+    }
+
+    private Map<TableKey, StoredTable> loadStoredTables(UUID projectId) {
+        Map<TableKey, StoredTable> stored = new HashMap<>();
+        jdbcTemplate.query(SELECT_STORED_SQL, rs -> {
+            Timestamp lastAltered = rs.getTimestamp("last_altered");
+            stored.put(new TableKey(rs.getString("table_catalog"), rs.getString("table_schema"), rs.getString("table_name")),
+                    new StoredTable(rs.getObject("id", UUID.class),
+                            lastAltered != null ? lastAltered.toLocalDateTime() : null));
+        }, projectId);
+        return stored;
+    }
+
+    private void ensureCrawled(UUID projectId) throws SQLException {
+        if (!projectCatalogCrawlRepository.existsById(projectId)) {
+            crawlProject(projectId, true);
+        }
+    }
+
+    private void requireProject(UUID userId, UUID projectId) {
+        projectRepository.findByUserIdAndId(userId, projectId)
+                .orElseThrow(() -> new RuntimeException("Project not found"));
+    }
+
+    private void executeBatch(String sql, List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(sql, rows, Math.max(1, batchSize), (ps, row) -> {
+            for (int i = 0; i < row.length; i++) {
+                ps.setObject(i + 1, row[i]);
+            }
+        });
+    }
+
+    private static Long getLong(ResultSet rs, int column) throws SQLException {
+        long value = rs.getLong(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    private static CatalogTableResponse toResponse(ProjectTable table, List<CatalogColumnResponse> columns) {
+        CatalogTableResponse response = new CatalogTableResponse();
+        response.setDatabase(table.getTableCatalog());
+        response.setSchema(table.getTableSchema());
+        response.setName(table.getTableName());
+        response.setType(table.getTableType());
+        response.setRowCount(table.getRowCount());
+        response.setBytes(table.getBytes());
+        response.setComment(table.getComment());
+        response.setLastAltered(table.getLastAltered());
+        response.setColumns(columns);
+        return response;
+    }
+
+    private static CatalogColumnResponse toResponse(ProjectColumn column) {
+        CatalogColumnResponse response = new CatalogColumnResponse();
+        response.setName(column.getColumnName());
+        response.setPosition(column.getOrdinalPosition());
+        response.setDataType(column.getDataType());
+        response.setMaxLength(column.getCharacterMaximumLength());
+        response.setPrecision(column.getNumericPrecision());
+        response.setScale(column.getNumericScale());
+        response.setNullable(column.isNullable());
+        response.setComment(column.getComment());
+        return response;
+    }
+
+    record TableKey(String catalog, String schema, String name) {}
+
+    private record StoredTable(UUID id, LocalDateTime lastAltered) {}
+
+    private record TableRow(String catalog, String schema, String name, String type, Long rowCount, Long bytes,
+                            String comment, LocalDateTime lastAltered) {
+        TableKey key() {
+            return new TableKey(catalog, schema, name);
+        }
+    }
+
+    private record ColumnRow(TableKey table, String name, int position, String dataType, Long maxLength,
+                             Integer precision, Integer scale, boolean nullable, String comment) {}
+
+    /**
+     * Outcome of one catalog crawl
+     */
+    public record CrawlResult(boolean full, int tableCount, int columnCount, int changedCount, int deletedCount,
+                              LocalDateTime watermark, LocalDateTime crawledAt, long elapsedMs) {}
+}
@@ -0,0 +1,149 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.response.SnowflakeStageResponse;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Source of stage metadata, stage files and query results.
+ *
+ * {@link SnowflakeStageService} is the production provider. {@link LocalWarehouseConnector} answers
+ * the same calls from a local directory and a JDBC database, so the stage pipeline can be
+ * benchmarked and integration-tested without a Snowflake account. The provider is chosen with
+ * warehouse.connector.
+ */
+public interface WarehouseConnector {
+
+    /**
+     * Short provider name, e.g. "snowflake"; reported as the source of previews
+     */
+    String name();
+
+    boolean isConfigured();
+
+    /**
+     * Account/database/schema that unqualified stage names resolve against
+     */
+    StageCatalogKey catalogKey();
+
+    /**
+     * Role queries run as; together with the warehouse it decides what a query can see
+     */
+    String role();
+
+    /**
+     * Compute that queries run on
+     */
+    String warehouse();
+
+    /**
+     * How many calls the provider can serve in parallel
+     */
+    int maxConcurrency();
+
+    /**
+     * Stages in the current schema. Failures are propagated.
+     */
+    default List<SnowflakeStageResponse> fetchStages() throws SQLException {
+        List<SnowflakeStageResponse> stages = new ArrayList<>();
+        streamStages(stages::add);
+        return stages;
+    }
+
+    /**
+     * Hand each stage in the current schema to the handler as it is read, without buffering the result
+     */
+    long streamStages(StageRowHandler handler) throws SQLException;
+
+    /**
+     * Stages in one schema, independent of the current database/schema
+     */
+    List<SnowflakeStageResponse> fetchStagesInSchema(String database, String schema) throws SQLException;
+
+    /**
+     * Every database/schema pair visible to the provider
+     */
+    List<SchemaRef> listSchemas() throws SQLException;
+
+    /**
+     * Hand each file under a stage prefix to the handler. The stage and prefix are already validated.
+     */
+    long streamStageFiles(String stage, String prefix, StageFileRowHandler handler) throws SQLException;
+
+    /**
+     * Read the first rows of a staged file. CSV rows arrive as one value per column, JSON and
+     * Parquet rows as a single JSON document.
+     */
+    long scanStagedFile(StagedFileScan scan, StagedRowHandler handler) throws SQLException;
+
+    /**
+     * Run a query and hand its result set to the handler
+     */
+    default <T> T executeQuery(String sql, int maxRows, QueryHandler<T> handler) throws SQLException {
+        return executeQuery(sql, List.of(), maxRows, handler);
+    }
+
+    /**
+     * Run a query with ? placeholders bound to the parameters, in order
+     */
+    default <T> T executeQuery(String sql, List<?> parameters, int maxRows, QueryHandler<T> handler) throws SQLException {
+        return executeQuery(sql, parameters, maxRows, QueryControl.defaults(), handler);
+    }
+
+    /**
+     * Run a query under the control's timeout, attaching its statement to the control so another
+     * thread can cancel it.
+     *
+     * @throws QueryCancelledException if the query was cancelled or timed out through the control
+     */
+    <T> T executeQuery(String sql, List<?> parameters, int maxRows, QueryControl control, QueryHandler<T> handler)
+            throws SQLException;
+
+    /**
+     * A database/schema pair
+     */
+    record SchemaRef(String database, String schema) {}
+
+    /**
+     * A bounded read of one staged file
+     *
+     * @param fileFormat optional named file format; providers without named formats ignore it
+     */
+    record StagedFileScan(String stage, String path, StagePreviewService.Format format, int maxColumns, int maxRows,
+                          String fileFormat) {}
+
+    /**
+     * Receives stage rows one at a time while the result set is being read
+     */
+    @FunctionalInterface
+    interface StageRowHandler {
+        void handle(SnowflakeStageResponse stage) throws SQLException;
+    }
+
+    /**
+     * Receives stage file rows one at a time while the listing is being read
+     */
+    @FunctionalInterface
+    interface StageFileRowHandler {
+        void handle(String name, long size, String md5, String lastModified) throws SQLException;
+    }
+
+    /**
+     * Receives the rows of a staged file one at a time
+     */
+    @FunctionalInterface
+    interface StagedRowHandler {
+        void handle(String[] values) throws SQLException;
+    }
+
+    /**
+     * Consumes a query's result set before its connection is returned
+     */
+    @FunctionalInterface
+    interface QueryHandler<T> {
+        T handle(ResultSet rs) throws SQLException;
+    }
+}
@@ -0,0 +1,406 @@
+package ai.datalens.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control for warehouse queries, shared fairly between projects and their users.
+ *
+ * A query takes a {@link Slot} before it reaches the warehouse. At most
+ * warehouse.scheduler.max-concurrent slots are out at once, at most max-running-per-project for
+ * one project and max-running-per-user for one user of a project. Queries beyond that wait in a
+ * queue per project and, inside it, per user. A freed slot goes to the project that has had the
+ * least weighted service so far (stride scheduling), and within that project to the user who has
+ * had the least, so a project given weight 2 in project-weights gets twice the slots of a weight 1
+ * project while both have queries waiting. A queue that was empty starts level with the busiest
+ * one, so idle time does not bank credit.
+ *
+ * A user or project that already has max-queued-per-user or max-queued-per-project queries
+ * waiting is refused at once with {@link QueryThrottledException}: one client refreshing in a
+ * loop gets 429s instead of pushing up everyone's latency. A query still waiting after max-wait
+ * is refused with {@link SnowflakeUnavailableException}, since then the warehouse is busy for
+ * everyone. A waiting query whose {@link QueryControl} is stopped leaves the queue.
+ */
+@Component
+public class WarehouseQueryScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(WarehouseQueryScheduler.class);
+
+    // How often a waiting query checks whether it was cancelled or waited too long
+    private static final long POLL_MS = 100;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${warehouse.scheduler.max-concurrent:16}")
+    private int maxConcurrent;
+
+    @Value("${warehouse.scheduler.max-running-per-project:8}")
+    private int maxRunningPerProject;
+
+    @Value("${warehouse.scheduler.max-running-per-user:4}")
+    private int maxRunningPerUser;
+
+    @Value("${warehouse.scheduler.max-queued-per-project:32}")
+    private int maxQueuedPerProject;
+
+    @Value("${warehouse.scheduler.max-queued-per-user:8}")
+    private int maxQueuedPerUser;
+
+    @Value("${warehouse.scheduler.max-wait:30000}")
+    private long maxWaitMs;
+
+    // projectId=weight pairs, comma separated; projects not listed have weight 1
+    @Value("${warehouse.scheduler.project-weights:}")
+    private String projectWeights;
+
+    private final Map<UUID, Double> weights = new HashMap<>();
+
+    // All state below is guarded by this
+    private final Map<UUID, ProjectQueue> projects = new LinkedHashMap<>();
+    private int running;
+    private int queued;
+    // Pass of the last project served; queues that were empty start here
+    private double virtualTime;
+    // Moving average of how long a slot is held, for Retry-After
+    private double averageHoldMs = 1000;
+
+    private Counter rejectedUser;
+    private Counter rejectedProject;
+    private Counter rejectedWait;
+
+    @PostConstruct
+    public void init() {
+        weights.clear();
+        if (projectWeights != null) {
+            for (String entry : projectWeights.split(",")) {
+                if (entry.isBlank()) {
+                    continue;
+                }
+                String[] parts = entry.split("=", 2);
+                double weight = parts.length == 2 ? Double.parseDouble(parts[1].trim()) : Double.NaN;
+                if (!(weight > 0)) {
+                    throw new IllegalArgumentException("Invalid warehouse.scheduler.project-weights entry: " + entry);
+                }
+                weights.put(UUID.fromString(parts[0].trim()), weight);
+            }
+        }
+
+        rejectedUser = rejectedCounter("user");
+        rejectedProject = rejectedCounter("project");
+        rejectedWait = rejectedCounter("wait");
+        Gauge.builder("warehouse.scheduler.running", this, WarehouseQueryScheduler::running)
+                .description("Warehouse queries holding a slot")
+                .register(meterRegistry);
+        Gauge.builder("warehouse.scheduler.queued", this, WarehouseQueryScheduler::queued)
+                .description("Warehouse queries waiting for a slot")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Wait for a slot to run a query of the user's in the project. Close the slot once the
+     * query is done.
+     *
+     * @throws QueryThrottledException if the user or project has too many queries waiting already
+     * @throws SnowflakeUnavailableException if no slot came free within max-wait
+     * @throws QueryCancelledException if the control was stopped while waiting
+     */
+    public Slot acquire(UUID userId, UUID projectId, QueryControl control) throws SQLException {
+        control.checkNotStopped();
+        long start = System.nanoTime();
+        Slot slot;
+        boolean granted;
+        synchronized (this) {
+            ProjectQueue project = projects.computeIfAbsent(projectId,
+                    id -> new ProjectQueue(weights.getOrDefault(id, 1.0)));
+            UserQueue user = project.users.computeIfAbsent(userId, id -> new UserQueue());
+            slot = new Slot(projectId, userId, project, user);
+            enqueue(slot);
+            dispatch();
+
+            granted = slot.granted;
+            if (!granted) {
+                // Only queries that would actually wait count against the queue limits
+                if (user.waiting.size() > maxQueuedPerUser) {
+                    dequeue(slot);
+                    rejectedUser.increment();
+                    throw new QueryThrottledException("Too many queries queued for this user; try again later",
+                            retryAfterSeconds(user.waiting.size(), Math.min(maxRunningPerUser, maxConcurrent)));
+                }
+                if (project.waiting > maxQueuedPerProject) {
+                    dequeue(slot);
+                    rejectedProject.increment();
+                    throw new QueryThrottledException("Too many queries queued for this project; try again later",
+                            retryAfterSeconds(project.waiting, Math.min(maxRunningPerProject, maxConcurrent)));
+                }
+            }
+        }
+
+        if (!granted) {
+            await(slot, control, start);
+        }
+        recordQueueTime("admitted", start);
+        return slot;
+    }
+
+    /**
+     * Refuse early if the user or project has as many queries waiting as it may; for callers
+     * that queue work of their own before acquiring a slot
+     *
+     * @throws QueryThrottledException if so
+     */
+    public synchronized void checkAdmission(UUID userId, UUID projectId) throws QueryThrottledException {
+        ProjectQueue project = projects.get(projectId);
+        if (project == null) {
+            return;
+        }
+        UserQueue user = project.users.get(userId);
+        if (user != null && user.waiting.size() >= maxQueuedPerUser) {
+            rejectedUser.increment();
+            throw new QueryThrottledException("Too many queries queued for this user; try again later",
+                    retryAfterSeconds(user.waiting.size(), Math.min(maxRunningPerUser, maxConcurrent)));
+        }
+        if (project.waiting >= maxQueuedPerProject) {
+            rejectedProject.increment();
+            throw new QueryThrottledException("Too many queries queued for this project; try again later",
+                    retryAfterSeconds(project.waiting, Math.min(maxRunningPerProject, maxConcurrent)));
+        }
+    }
+
+    public synchronized int running() {
+        return running;
+    }
+
+    public synchronized int queued() {
+        return queued;
+    }
+
+    private void await(Slot slot, QueryControl control, long start) throws SQLException {
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        try {
+            while (!slot.latch.await(POLL_MS, TimeUnit.MILLISECONDS)) {
+                if (control.isStopped()) {
+                    abandon(slot);
+                    recordQueueTime("cancelled", start);
+                    control.checkNotStopped();
+                }
+                if (System.nanoTime() - deadline >= 0) {
+                    long retryAfter = abandon(slot);
+                    recordQueueTime("timeout", start);
+                    rejectedWait.increment();
+                    logger.warn("Query for project {} waited {} ms without a warehouse slot", slot.projectId, maxWaitMs);
+                    throw new SnowflakeUnavailableException("Warehouse is busy; no query slot came free within "
+                            + maxWaitMs / 1000 + " s", retryAfter);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandon(slot);
+            recordQueueTime("cancelled", start);
+            throw new SQLException("Interrupted waiting for a warehouse slot", e);
+        }
+    }
+
+    /**
+     * Take a slot that gave up waiting out of its queue, or hand it back if it was granted meanwhile
+     *
+     * @return seconds until a slot is likely to be free
+     */
+    private synchronized long abandon(Slot slot) {
+        if (slot.granted) {
+            slot.close();
+        } else {
+            dequeue(slot);
+        }
+        return retryAfterSeconds(queued, maxConcurrent);
+    }
+
+    private void enqueue(Slot slot) {
+        ProjectQueue project = slot.project;
+        UserQueue user = slot.user;
+        if (project.waiting == 0) {
+            project.pass = Math.max(project.pass, virtualTime);
+        }
+        if (user.waiting.isEmpty()) {
+            user.pass = Math.max(user.pass, project.virtualTime);
+        }
+        user.waiting.add(slot);
+        project.waiting++;
+        queued++;
+    }
+
+    private void dequeue(Slot slot) {
+        if (slot.user.waiting.remove(slot)) {
+            slot.project.waiting--;
+            queued--;
+        }
+        forgetIfIdle(slot);
+    }
+
+    /**
+     * Hand out free slots, the project with the lowest pass first, and within it the user
+     * with the lowest pass. Linear in the number of active projects, which stays small.
+     */
+    private void dispatch() {
+        while (running < maxConcurrent) {
+            ProjectQueue project = null;
+            UserQueue user = null;
+            for (ProjectQueue candidate : projects.values()) {
+                if (candidate.waiting == 0 || candidate.running >= maxRunningPerProject
+                        || (project != null && candidate.pass >= project.pass)) {
+                    continue;
+                }
+                UserQueue next = candidate.nextUser(maxRunningPerUser);
+                if (next != null) {
+                    project = candidate;
+                    user = next;
+                }
+            }
+            if (project == null) {
+                return;
+            }
+
+            Slot slot = user.waiting.poll();
+            virtualTime = Math.max(virtualTime, project.pass);
+            project.virtualTime = Math.max(project.virtualTime, user.pass);
+            project.pass += 1.0 / project.weight;
+            user.pass += 1.0;
+            project.waiting--;
+            queued--;
+            project.running++;
+            user.running++;
+            running++;
+            slot.grant();
+        }
+    }
+
+    private synchronized void release(Slot slot) {
+        slot.project.running--;
+        slot.user.running--;
+        running--;
+        double heldMs = (System.nanoTime() - slot.grantedAt) / 1_000_000.0;
+        averageHoldMs = averageHoldMs * 0.9 + heldMs * 0.1;
+        forgetIfIdle(slot);
+        dispatch();
+    }
+
+    private void forgetIfIdle(Slot slot) {
+        if (slot.user.running == 0 && slot.user.waiting.isEmpty()) {
+            slot.project.users.remove(slot.userId, slot.user);
+        }
+        if (slot.project.running == 0 && slot.project.waiting == 0) {
+            projects.remove(slot.projectId, slot.project);
+        }
+    }
+
+    private long retryAfterSeconds(int ahead, int slots) {
+        double ms = averageHoldMs * (ahead + 1) / Math.max(1, slots);
+        return Math.max(1, (long) Math.ceil(ms / 1000));
+    }
+
+    private void recordQueueTime(String outcome, long start) {
+        Timer.builder("warehouse.scheduler.queue-time")
+                .description("Time warehouse queries waited for a slot")
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private Counter rejectedCounter(String reason) {
+        return Counter.builder("warehouse.scheduler.rejected")
+                .description("Warehouse queries refused a slot")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Permission to run one query; close it when the query is done
+     */
+    public final class Slot implements AutoCloseable {
+
+        private final UUID projectId;
+        private final UUID userId;
+        private final ProjectQueue project;
+        private final UserQueue user;
+        private final CountDownLatch latch = new CountDownLatch(1);
+        // Guarded by the scheduler
+        private boolean granted;
+        private boolean closed;
+        private long grantedAt;
+
+        private Slot(UUID projectId, UUID userId, ProjectQueue project, UserQueue user) {
+            this.projectId = projectId;
+            this.userId = userId;
+            this.project = project;
+            this.user = user;
+        }
+
+        private void grant() {
+            granted = true;
+            grantedAt = System.nanoTime();
+            latch.countDown();
+        }
+
+        @Override
+        public void close() {
+            synchronized (WarehouseQueryScheduler.this) {
+                if (!granted || closed) {
+                    return;
+                }
+                closed = true;
+                release(this);
+            }
+        }
+    }
+
+    private static final class ProjectQueue {
+
+        private final double weight;
+        private final Map<UUID, UserQueue> users = new LinkedHashMap<>();
+        private double pass;
+        // Pass of the last user served in this project
+        private double virtualTime;
+        private int running;
+        private int waiting;
+
+        private ProjectQueue(double weight) {
+            this.weight = weight;
+        }
+
+        UserQueue nextUser(int maxRunningPerUser) {
+            UserQueue next = null;
+            for (UserQueue user : users.values()) {
+                if (!user.waiting.isEmpty() && user.running < maxRunningPerUser
+                        && (next == null || user.pass < next.pass)) {
+                    next = user;
+                }
+            }
+            return next;
+        }
+    }
+
+    private static final class UserQueue {
+
+        private final ArrayDeque<Slot> waiting = new ArrayDeque<>();
+        private double pass;
+        private int running;
+    }
+}
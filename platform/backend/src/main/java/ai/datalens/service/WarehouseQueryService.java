@@ -0,0 +1,261 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.request.QueryRequest;
+import ai.datalens.dto.response.QueryResultResponse;
+import ai.datalens.repository.ProjectRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Runs ad-hoc read-only SQL against a project's warehouse: its own connection profile if it
+ * has one, otherwise the shared connection (see {@link ProjectWarehouseConnectors}).
+ *
+ * Results of deterministic SELECTs are cached by {@link QueryFingerprint} together with the
+ * statement's literals, the role, warehouse and default database/schema, and the row limit,
+ * so a dashboard re-issuing the same query is answered without touching the warehouse. The
+ * cache is bounded by the estimated heap size of the results (warehouse.query.cache.max-bytes)
+ * and entries expire after warehouse.query.cache.ttl. Results are held columnar, so the same
+ * cached entry backs both JSON responses and the binary {@link ColumnarQueryResult} stream.
+ *
+ * Every statement runs under a timeout: warehouse.query.timeout, or what the request asks for
+ * up to warehouse.query.max-timeout. {@link QueryJobService} runs the same statements in the
+ * background where they can be cancelled, keeping results in the {@link QueryResultStore} for
+ * paging. Either way a statement waits for a slot from
+ * {@link WarehouseQueryScheduler} before it reaches the warehouse, so no one user or project can
+ * take all of it.
+ */
+@Service
+public class WarehouseQueryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(WarehouseQueryService.class);
+
+    static final String CACHE_NAME = "warehouse.query-results";
+
+    @Autowired
+    private ProjectWarehouseConnectors projectConnectors;
+
+    @Autowired
+    private WarehouseQueryScheduler scheduler;
+
+    @Autowired
+    private QueryResultStore resultStore;
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${warehouse.query.default-max-rows:1000}")
+    private int defaultMaxRows;
+
+    @Value("${warehouse.query.max-rows:10000}")
+    private int maxRows;
+
+    @Value("${warehouse.query.timeout:300000}")
+    private long timeoutMs;
+
+    @Value("${warehouse.query.max-timeout:3600000}")
+    private long maxTimeoutMs;
+
+    @Value("${warehouse.query.cache.max-bytes:268435456}")
+    private long cacheMaxBytes;
+
+    @Value("${warehouse.query.cache.max-entry-bytes:16777216}")
+    private long cacheMaxEntryBytes;
+
+    @Value("${warehouse.query.cache.ttl:300000}")
+    private long cacheTtlMs;
+
+    private Cache<QueryCacheKey, QueryResult> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumWeight(cacheMaxBytes)
+                .weigher((QueryCacheKey key, QueryResult result) -> (int) Math.min(Integer.MAX_VALUE,
+                        result.estimatedBytes() + key.normalizedSql().length()))
+                .expireAfterWrite(Duration.ofMillis(cacheTtlMs))
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Run a statement for a project the user owns.
+     *
+     * @throws IllegalArgumentException if the SQL is empty, holds several statements or is not read-only
+     * @throws RuntimeException if the project does not exist or belongs to someone else
+     */
+    public QueryResultResponse execute(UUID userId, UUID projectId, QueryRequest request) throws SQLException {
+        return toResponse(executeColumnar(userId, projectId, request));
+    }
+
+    /**
+     * Same as {@link #execute}, but returns the result for streaming in the columnar transfer format
+     */
+    public ColumnarQueryResult executeColumnar(UUID userId, UUID projectId, QueryRequest request) throws SQLException {
+        PreparedQuery query = prepare(userId, projectId, request);
+        ColumnarQueryResult cached = cached(query);
+        return cached != null ? cached : run(query, new QueryControl(query.timeoutMs()));
+    }
+
+    /**
+     * Check access and the statement, and work out its row limit, timeout and cache key
+     *
+     * @throws IllegalArgumentException if the SQL is empty, holds several statements or is not read-only
+     * @throws RuntimeException if the project does not exist or belongs to someone else
+     */
+    PreparedQuery prepare(UUID userId, UUID projectId, QueryRequest request) {
+        return prepare(userId, projectId, request, defaultMaxRows, maxRows);
+    }
+
+    /**
+     * Same as {@link #prepare(UUID, UUID, QueryRequest)}, with the row limit defaulting to
+     * defaultRows and capped at rowCap
+     */
+    PreparedQuery prepare(UUID userId, UUID projectId, QueryRequest request, int defaultRows, int rowCap) {
+        projectRepository.findByUserIdAndId(userId, projectId)
+                .orElseThrow(() -> new RuntimeException("Project not found"));
+
+        if (request.getSql() == null || request.getSql().isBlank()) {
+            throw new IllegalArgumentException("SQL is required");
+        }
+        QueryFingerprint fingerprint = QueryFingerprint.of(request.getSql());
+        if (!fingerprint.isReadOnly()) {
+            throw new IllegalArgumentException("Only SELECT, WITH, SHOW, DESCRIBE and EXPLAIN statements can be run");
+        }
+
+        WarehouseConnector connector = projectConnectors.forProject(projectId);
+        int limit = Math.min(Math.max(1, request.getMaxRows() != null ? request.getMaxRows() : defaultRows), rowCap);
+        long timeout = request.getTimeoutMs() != null ? Math.min(Math.max(1, request.getTimeoutMs()), maxTimeoutMs) : timeoutMs;
+        QueryCacheKey key = fingerprint.isCacheable() ? cacheKey(connector, fingerprint, limit) : null;
+        return new PreparedQuery(userId, projectId, connector, request.getSql(), fingerprint, limit, timeout, key,
+                !Boolean.FALSE.equals(request.getUseCache()));
+    }
+
+    /**
+     * The cached result of the query, if it may be answered from the cache and is there
+     */
+    ColumnarQueryResult cached(PreparedQuery query) {
+        if (query.cacheKey() == null || !query.useCache()) {
+            return null;
+        }
+        QueryResult cached = cache.getIfPresent(query.cacheKey());
+        if (cached == null) {
+            return null;
+        }
+        logger.debug("Query {} for project {} served from cache", query.fingerprint().id(), query.projectId());
+        return new ColumnarQueryResult(query.fingerprint().id(), cached, true);
+    }
+
+    /**
+     * Run the query against the warehouse, once the scheduler gives it a slot, and cache its result
+     *
+     * @throws QueryCancelledException if the control stopped it
+     * @throws QueryThrottledException if the user or project has too many queries waiting
+     */
+    ColumnarQueryResult run(PreparedQuery query, QueryControl control) throws SQLException {
+        int limit = query.limit();
+        QueryResult result = runOnWarehouse(query, control, (rs, start) -> QueryResult.read(rs, limit, start));
+        logger.info("Query {} for project {} returned {} rows in {} ms", query.fingerprint().id(), query.projectId(),
+                result.rowCount(), result.elapsedMs());
+
+        // Oversized results would evict many smaller ones for a single reuse
+        if (query.cacheKey() != null && result.estimatedBytes() <= cacheMaxEntryBytes) {
+            cache.put(query.cacheKey(), result);
+        }
+        return new ColumnarQueryResult(query.fingerprint().id(), result, false);
+    }
+
+    /**
+     * Run the query like {@link #run}, but keep its result in the {@link QueryResultStore}, so
+     * results too large for the heap can be paged through. Not cached.
+     */
+    StoredQueryResult runStored(PreparedQuery query, QueryControl control) throws SQLException {
+        StoredQueryResult result = runOnWarehouse(query, control,
+                (rs, start) -> resultStore.write(rs, query.limit(), start));
+        logger.info("Query {} for project {} stored {} rows{}", query.fingerprint().id(), query.projectId(),
+                result.rowCount(), result.isSpilled() ? ", " + result.diskBytes() + " bytes on disk" : "");
+        return result;
+    }
+
+    private <T> T runOnWarehouse(PreparedQuery query, QueryControl control, ResultReader<T> reader)
+            throws SQLException {
+        try (WarehouseQueryScheduler.Slot slot = scheduler.acquire(query.userId(), query.projectId(), control)) {
+            long start = System.nanoTime();
+            String outcome = "failure";
+            try {
+                // One extra row tells whether the result was cut off
+                T result = query.connector().executeQuery(query.sql(), List.of(), query.limit() + 1, control,
+                        rs -> reader.read(rs, start));
+                outcome = "success";
+                return result;
+            } catch (QueryCancelledException e) {
+                outcome = e.isTimedOut() ? "timeout" : "cancelled";
+                throw e;
+            } finally {
+                Timer.builder("warehouse.query.execution")
+                        .description("Ad-hoc queries run against the warehouse")
+                        .tag("statement", query.fingerprint().statementType())
+                        .tag("outcome", outcome)
+                        .register(meterRegistry)
+                        .record(Duration.ofNanos(System.nanoTime() - start));
+            }
+        }
+    }
+
+    private QueryCacheKey cacheKey(WarehouseConnector connector, QueryFingerprint fingerprint, int limit) {
+        StageCatalogKey scope = connector.catalogKey();
+        return new QueryCacheKey(scope.account(), connector.role(), connector.warehouse(),
+                scope.database(), scope.schema(), fingerprint.normalized(), fingerprint.literals(), limit);
+    }
+
+    /**
+     * JSON form of a result
+     */
+    public static QueryResultResponse toResponse(ColumnarQueryResult columnar) {
+        QueryResult result = columnar.result();
+        QueryResultResponse response = new QueryResultResponse();
+        response.setFingerprint(columnar.getFingerprint());
+        response.setColumns(result.columnNames());
+        response.setColumnTypes(result.columnTypes());
+        response.setRows(result.rows());
+        response.setRowCount(result.rowCount());
+        response.setTruncated(result.truncated());
+        response.setCached(columnar.isCached());
+        response.setExecutedAt(result.executedAt());
+        response.setElapsedMs(result.elapsedMs());
+        return response;
+    }
+
+    /**
+     * A statement that passed validation, bound to the project's connector
+     */
+    record PreparedQuery(UUID userId, UUID projectId, WarehouseConnector connector, String sql,
+                         QueryFingerprint fingerprint, int limit, long timeoutMs, QueryCacheKey cacheKey, boolean useCache) {}
+
+    @FunctionalInterface
+    private interface ResultReader<T> {
+        T read(ResultSet rs, long startNanos) throws SQLException;
+    }
+
+    record QueryCacheKey(String account, String role, String warehouse, String database, String schema,
+                         String normalizedSql, List<String> literals, int maxRows) {}
+}
@@ -0,0 +1,21 @@
+-- Add persisted column profiles
+-- Version: 0.1.3
+-- Description: Create column_profiles table holding the latest profile of each table or staged file per project
+
+CREATE TABLE column_profiles (
+    id UUID PRIMARY KEY DEFAULT uuid_generate_v4(),
+    project_id UUID NOT NULL REFERENCES projects(id) ON DELETE CASCADE,
+    source_type VARCHAR(20) NOT NULL,
+    source_name VARCHAR(1300) NOT NULL,
+    source_version VARCHAR(255),
+    row_count BIGINT NOT NULL DEFAULT 0,
+    column_count INTEGER NOT NULL DEFAULT 0,
+    elapsed_ms BIGINT NOT NULL DEFAULT 0,
+    -- JSON array of per-column stats
+    columns_json TEXT NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT uk_column_profile_source UNIQUE (project_id, source_type, source_name)
+);
+
+CREATE INDEX idx_column_profile_project ON column_profiles(project_id);
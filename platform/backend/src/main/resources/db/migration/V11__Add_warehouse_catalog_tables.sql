@@ -0,0 +1,52 @@
+-- Add persistent per-project warehouse catalog
+-- Version: 0.1.4
+-- Description: Create project_tables and project_columns mirroring INFORMATION_SCHEMA, and project_catalog_crawls tracking each project's crawl watermark
+
+-- Create project_tables table
+CREATE TABLE project_tables (
+    id UUID PRIMARY KEY DEFAULT uuid_generate_v4(),
+    project_id UUID NOT NULL REFERENCES projects(id) ON DELETE CASCADE,
+    table_catalog VARCHAR(255) NOT NULL DEFAULT '',
+    table_schema VARCHAR(255) NOT NULL,
+    table_name VARCHAR(255) NOT NULL,
+    table_type VARCHAR(50),
+    row_count BIGINT,
+    bytes BIGINT,
+    comment VARCHAR(2000),
+    last_altered TIMESTAMP,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT uk_project_table UNIQUE (project_id, table_catalog, table_schema, table_name)
+);
+
+CREATE INDEX idx_project_table_project ON project_tables(project_id);
+
+-- Create project_columns table; a table's columns go with it
+CREATE TABLE project_columns (
+    id UUID PRIMARY KEY DEFAULT uuid_generate_v4(),
+    table_id UUID NOT NULL REFERENCES project_tables(id) ON DELETE CASCADE,
+    column_name VARCHAR(255) NOT NULL,
+    ordinal_position INTEGER NOT NULL,
+    data_type VARCHAR(255),
+    character_maximum_length BIGINT,
+    numeric_precision INTEGER,
+    numeric_scale INTEGER,
+    is_nullable BOOLEAN NOT NULL DEFAULT TRUE,
+    comment VARCHAR(2000),
+    CONSTRAINT uk_project_column UNIQUE (table_id, column_name)
+);
+
+CREATE INDEX idx_project_column_table ON project_columns(table_id);
+
+-- Track each project's last crawl; the watermark is the newest LAST_ALTERED stored
+CREATE TABLE project_catalog_crawls (
+    project_id UUID PRIMARY KEY REFERENCES projects(id) ON DELETE CASCADE,
+    watermark TIMESTAMP,
+    crawled_at TIMESTAMP NOT NULL,
+    full_crawled_at TIMESTAMP,
+    table_count INTEGER NOT NULL DEFAULT 0,
+    column_count INTEGER NOT NULL DEFAULT 0,
+    changed_count INTEGER NOT NULL DEFAULT 0,
+    deleted_count INTEGER NOT NULL DEFAULT 0,
+    elapsed_ms BIGINT NOT NULL DEFAULT 0
+);
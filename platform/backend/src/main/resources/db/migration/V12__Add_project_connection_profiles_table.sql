@@ -0,0 +1,21 @@
+-- Add per-project warehouse connection profiles
+-- Version: 0.1.5
+-- Description: Create project_connection_profiles holding each project's own Snowflake login, session context and pool limits
+
+CREATE TABLE project_connection_profiles (
+    id UUID PRIMARY KEY DEFAULT uuid_generate_v4(),
+    project_id UUID NOT NULL REFERENCES projects(id) ON DELETE CASCADE,
+    account VARCHAR(255) NOT NULL,
+    username VARCHAR(255) NOT NULL,
+    role VARCHAR(255),
+    warehouse VARCHAR(255),
+    database_name VARCHAR(255),
+    schema_name VARCHAR(255),
+    -- AES-GCM encrypted with warehouse.profiles.encryption-key, never returned by the API
+    secret_ciphertext TEXT NOT NULL,
+    max_pool_size INTEGER NOT NULL,
+    queue_depth INTEGER NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT uk_project_connection_profile UNIQUE (project_id)
+);
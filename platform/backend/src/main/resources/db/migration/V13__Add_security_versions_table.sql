@@ -0,0 +1,8 @@
+-- Add per-user security versions of stateless access tokens
+-- Version: 0.1.6
+-- Description: Create security_versions; no foreign key, so a deleted user's tokens stay revoked
+
+CREATE TABLE security_versions (
+    user_id UUID PRIMARY KEY,
+    version BIGINT NOT NULL
+);
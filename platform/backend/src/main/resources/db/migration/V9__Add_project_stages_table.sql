@@ -0,0 +1,33 @@
+-- Add persistent per-project Snowflake stage catalog
+-- Version: 0.1.2
+-- Description: Create project_stages table holding each project's stage catalog and project_stage_syncs tracking the last sync
+
+-- Create project_stages table
+CREATE TABLE project_stages (
+    id UUID PRIMARY KEY DEFAULT uuid_generate_v4(),
+    project_id UUID NOT NULL REFERENCES projects(id) ON DELETE CASCADE,
+    stage_database VARCHAR(255) NOT NULL DEFAULT '',
+    stage_schema VARCHAR(255) NOT NULL DEFAULT '',
+    stage_name VARCHAR(255) NOT NULL,
+    stage_type VARCHAR(50),
+    stage_location VARCHAR(2000),
+    comment VARCHAR(2000),
+    owner VARCHAR(255),
+    stage_created VARCHAR(64),
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT uk_project_stage UNIQUE (project_id, stage_database, stage_schema, stage_name)
+);
+
+-- Create indexes for better performance
+CREATE INDEX idx_project_stage_project ON project_stages(project_id);
+
+-- Track when each project's catalog was last synced (kept off projects so syncs don't bump update_date)
+CREATE TABLE project_stage_syncs (
+    project_id UUID PRIMARY KEY REFERENCES projects(id) ON DELETE CASCADE,
+    synced_at TIMESTAMP NOT NULL,
+    stage_count INTEGER NOT NULL DEFAULT 0,
+    inserted_count INTEGER NOT NULL DEFAULT 0,
+    updated_count INTEGER NOT NULL DEFAULT 0,
+    deleted_count INTEGER NOT NULL DEFAULT 0
+);
@@ -0,0 +1,243 @@
+package ai.datalens.security;
+
+import ai.datalens.service.SecretCipher;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class JwtKeyRegistryTest {
+
+    private static final String SECRET = "test-secret-key-that-is-long-enough-for-hs256";
+
+    private static final String KEYS_KEY = "datalens:jwt-keys";
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private HashOperations<String, Object, Object> hashOperations;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @InjectMocks
+    private JwtKeyRegistry keyRegistry;
+
+    private SecretCipher secretCipher;
+
+    private MockEnvironment environment;
+
+    // Stands in for the Redis hash of rotated keys
+    private final Map<Object, Object> storedKeys = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        String encryptionKey = Base64.getEncoder().encodeToString(new byte[32]);
+        secretCipher = new SecretCipher(JwtKeyRegistry.ENCRYPTION_KEY_PROPERTY, encryptionKey);
+        ReflectionTestUtils.setField(keyRegistry, "rotationEncryptionKey", encryptionKey);
+        environment = new MockEnvironment().withProperty("spring.security.jwt.secret-key", SECRET);
+        ReflectionTestUtils.setField(keyRegistry, "environment", environment);
+        ReflectionTestUtils.setField(keyRegistry, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(keyRegistry, "refreshExpirationMs", 120000L);
+        ReflectionTestUtils.setField(keyRegistry, "rotationEnabled", true);
+        ReflectionTestUtils.setField(keyRegistry, "rotationIntervalMs", 604800000L);
+        ReflectionTestUtils.setField(keyRegistry, "activationDelayMs", 0L);
+        ReflectionTestUtils.setField(keyRegistry, "unknownKidReloadIntervalMs", 0L);
+
+        lenient().when(redisTemplate.<Object, Object>opsForHash()).thenReturn(hashOperations);
+        lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        lenient().when(hashOperations.entries(KEYS_KEY)).thenAnswer(invocation -> new HashMap<>(storedKeys));
+        lenient().doAnswer(invocation -> storedKeys.put(invocation.getArgument(1), invocation.getArgument(2)))
+                .when(hashOperations).put(eq(KEYS_KEY), any(), any());
+        lenient().doAnswer(invocation -> storedKeys.remove(invocation.getArgument(1)) != null ? 1L : 0L)
+                .when(hashOperations).delete(eq(KEYS_KEY), any());
+        lenient().when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+    }
+
+    @Test
+    void init_NoStoredKeys_AddsEncryptedKeyAndSignsWithIt() {
+        // When
+        keyRegistry.init();
+
+        // Then
+        JwtKeyRegistry.SigningKey signingKey = keyRegistry.signingKey();
+        assertThat(signingKey.kid()).doesNotStartWith(JwtKeyRegistry.STATIC_KID);
+        assertThat(storedKeys).containsOnlyKeys(signingKey.kid());
+        assertThat(storedKeys.get(signingKey.kid()).toString()).contains(":v1:");
+        assertThat(keyRegistry.find(signingKey.kid())).isSameAs(signingKey);
+    }
+
+    @Test
+    void parser_TokenWithoutKid_VerifiedWithStaticKey() {
+        // Given a token issued before keys had ids
+        keyRegistry.init();
+        String token = Jwts.builder().subject("test@example.com")
+                .signWith(keyRegistry.find(JwtKeyRegistry.STATIC_KID).key()).compact();
+
+        // When / Then
+        assertThat(keyRegistry.parser().parseSignedClaims(token).getPayload().getSubject())
+                .isEqualTo("test@example.com");
+    }
+
+    @Test
+    void parser_KeyAddedOnAnotherNode_ReloadsOnUnknownKid() {
+        // Given
+        keyRegistry.init();
+        byte[] secret = new byte[32];
+        store("other", secret, System.currentTimeMillis());
+        String token = Jwts.builder().header().keyId("other").and()
+                .subject("test@example.com").signWith(Keys.hmacShaKeyFor(secret)).compact();
+
+        // When / Then
+        assertThat(keyRegistry.parser().parseSignedClaims(token).getPayload().getSubject())
+                .isEqualTo("test@example.com");
+        assertThat(keyRegistry.find("other")).isNotNull();
+    }
+
+    @Test
+    void parser_UnknownKid_Rejected() {
+        // Given
+        keyRegistry.init();
+        String token = Jwts.builder().header().keyId("missing").and()
+                .subject("test@example.com").signWith(keyRegistry.signingKey().key()).compact();
+
+        // When / Then
+        assertThatThrownBy(() -> keyRegistry.parser().parseSignedClaims(token))
+                .isInstanceOf(JwtException.class);
+    }
+
+    @Test
+    void rotateIfDue_NewKeyActive_OldTokensStillVerify() {
+        // Given a key older than the rotation interval
+        ReflectionTestUtils.setField(keyRegistry, "rotationIntervalMs", 1800000L);
+        byte[] secret = new byte[32];
+        store("previous", secret, System.currentTimeMillis() - 3600000);
+        String token = Jwts.builder().header().keyId("previous").and()
+                .subject("test@example.com").signWith(Keys.hmacShaKeyFor(secret)).compact();
+
+        // When
+        keyRegistry.init();
+
+        // Then
+        assertThat(storedKeys).hasSize(2);
+        assertThat(keyRegistry.signingKey().kid()).isNotEqualTo("previous");
+        assertThat(keyRegistry.parser().parseSignedClaims(token).getPayload().getSubject())
+                .isEqualTo("test@example.com");
+        verify(hashOperations, never()).delete(anyString(), any());
+    }
+
+    @Test
+    void rotateIfDue_SuccessorActiveLongerThanRefreshLifetime_DropsKey() {
+        // Given
+        ReflectionTestUtils.setField(keyRegistry, "rotationIntervalMs", 1800000L);
+        long now = System.currentTimeMillis();
+        store("oldest", new byte[32], now - 7200000);
+        store("previous", new byte[32], now - 3600000);
+
+        // When
+        keyRegistry.init();
+
+        // Then
+        verify(hashOperations).delete(KEYS_KEY, "oldest");
+        verify(hashOperations, never()).delete(KEYS_KEY, "previous");
+    }
+
+    @Test
+    void init_RotationWithoutEncryptionKey_FailsStartup() {
+        // Given
+        ReflectionTestUtils.setField(keyRegistry, "rotationEncryptionKey", "");
+
+        // When / Then
+        assertThatThrownBy(() -> keyRegistry.init())
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining(JwtKeyRegistry.ENCRYPTION_KEY_PROPERTY);
+        verifyNoInteractions(redisTemplate);
+    }
+
+    @Test
+    void init_RotationDisabled_StaticKeyOnly() {
+        // Given
+        ReflectionTestUtils.setField(keyRegistry, "rotationEnabled", false);
+        ReflectionTestUtils.setField(keyRegistry, "rotationEncryptionKey", "");
+
+        // When
+        keyRegistry.init();
+
+        // Then
+        assertThat(keyRegistry.signingKey().kid()).isEqualTo(JwtKeyRegistry.staticKid(SECRET));
+        assertThat(keyRegistry.find(JwtKeyRegistry.STATIC_KID)).isSameAs(keyRegistry.signingKey());
+        verifyNoInteractions(redisTemplate);
+    }
+
+    @Test
+    void refresh_SecretChanged_PreviousStaticKeyVerifiesUntilRefreshLifetimePassed() {
+        // Given a token signed with the static key
+        ReflectionTestUtils.setField(keyRegistry, "rotationEnabled", false);
+        keyRegistry.init();
+        JwtKeyRegistry.SigningKey previous = keyRegistry.signingKey();
+        String token = Jwts.builder().header().keyId(previous.kid()).and()
+                .subject("test@example.com").signWith(previous.key()).compact();
+
+        // When
+        environment.setProperty("spring.security.jwt.secret-key", SECRET + "-rotated");
+        keyRegistry.refresh();
+
+        // Then
+        assertThat(keyRegistry.signingKey().kid()).isEqualTo(JwtKeyRegistry.staticKid(SECRET + "-rotated"));
+        assertThat(keyRegistry.parser().parseSignedClaims(token).getPayload().getSubject())
+                .isEqualTo("test@example.com");
+
+        // And once the refresh lifetime has passed
+        ReflectionTestUtils.setField(keyRegistry, "refreshExpirationMs", 0L);
+        keyRegistry.refresh();
+        assertThat(keyRegistry.find(previous.kid())).isNull();
+        assertThatThrownBy(() -> keyRegistry.parser().parseSignedClaims(token))
+                .isInstanceOf(JwtException.class);
+    }
+
+    @Test
+    void reload_KeyGoneFromRedis_StopsSigningButVerifiesUntilRetired() {
+        // Given a token signed with a rotated key
+        keyRegistry.init();
+        JwtKeyRegistry.SigningKey rotated = keyRegistry.signingKey();
+        String token = Jwts.builder().header().keyId(rotated.kid()).and()
+                .subject("test@example.com").signWith(rotated.key()).compact();
+
+        // When the hash is lost
+        storedKeys.clear();
+        keyRegistry.refresh();
+
+        // Then
+        assertThat(keyRegistry.signingKey().kid()).isNotEqualTo(rotated.kid());
+        assertThat(keyRegistry.parser().parseSignedClaims(token).getPayload().getSubject())
+                .isEqualTo("test@example.com");
+    }
+
+    private void store(String kid, byte[] secret, long createdAt) {
+        storedKeys.put(kid, createdAt + ":" + secretCipher.encrypt(Base64.getEncoder().encodeToString(secret), kid));
+    }
+}
@@ -0,0 +1,184 @@
+package ai.datalens.security;
+
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.security.authentication.CredentialsExpiredException;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class JwtUtilsTest {
+
+    private static final String SECRET = "test-secret-key-that-is-long-enough-for-hs256";
+
+    @Mock
+    private SecurityVersions securityVersions;
+
+    @InjectMocks
+    private JwtUtils jwtUtils;
+
+    private UserPrincipal principal;
+    private MockEnvironment environment;
+    private JwtKeyRegistry keyRegistry;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        environment = new MockEnvironment().withProperty("spring.security.jwt.secret-key", SECRET);
+        meterRegistry = new SimpleMeterRegistry();
+        keyRegistry = new JwtKeyRegistry();
+        ReflectionTestUtils.setField(keyRegistry, "environment", environment);
+        ReflectionTestUtils.setField(keyRegistry, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(keyRegistry, "refreshExpirationMs", 120000L);
+        keyRegistry.init();
+        ReflectionTestUtils.setField(jwtUtils, "keyRegistry", keyRegistry);
+        ReflectionTestUtils.setField(jwtUtils, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(jwtUtils, "jwtExpirationMs", 60000L);
+        ReflectionTestUtils.setField(jwtUtils, "refreshExpirationMs", 120000L);
+        ReflectionTestUtils.setField(jwtUtils, "claimsCacheMaxSize", 100L);
+        jwtUtils.init();
+        principal = new UserPrincipal(UUID.randomUUID(), "test@example.com", "hashedPassword", true, true, true, true,
+                Set.of(new SimpleGrantedAuthority("ROLE_ADMIN"), new SimpleGrantedAuthority("PERMISSION_users:write")));
+    }
+
+    @Test
+    void getPrincipalFromAccessToken_StatelessToken_CarriesAuthorities() {
+        // Given
+        when(securityVersions.isEnabled()).thenReturn(true);
+        when(securityVersions.isSynced()).thenReturn(true);
+        when(securityVersions.current(principal.getId())).thenReturn(3L);
+        String token = jwtUtils.generateAccessToken(principal);
+
+        // When
+        UserPrincipal fromToken = jwtUtils.getPrincipalFromAccessToken(token);
+
+        // Then
+        assertThat(jwtUtils.validateAccessToken(token)).isTrue();
+        assertThat(fromToken.getId()).isEqualTo(principal.getId());
+        assertThat(fromToken.getEmail()).isEqualTo("test@example.com");
+        assertThat(fromToken.getPassword()).isNull();
+        assertThat(fromToken.getAuthorities()).extracting(GrantedAuthority::getAuthority)
+                .containsExactlyInAnyOrder("ROLE_ADMIN", "PERMISSION_users:write");
+    }
+
+    @Test
+    void getPrincipalFromAccessToken_VersionBumped_Revoked() {
+        // Given
+        when(securityVersions.isEnabled()).thenReturn(true);
+        when(securityVersions.isSynced()).thenReturn(true);
+        when(securityVersions.current(principal.getId())).thenReturn(0L);
+        String token = jwtUtils.generateAccessToken(principal);
+
+        // When
+        when(securityVersions.current(principal.getId())).thenReturn(1L);
+
+        // Then
+        assertThatThrownBy(() -> jwtUtils.getPrincipalFromAccessToken(token))
+                .isInstanceOf(CredentialsExpiredException.class);
+    }
+
+    @Test
+    void getPrincipalFromAccessToken_VersionsNotLoaded_LoadsUser() {
+        // Given versions could not be loaded yet
+        when(securityVersions.isEnabled()).thenReturn(true);
+        when(securityVersions.current(principal.getId())).thenReturn(0L);
+        String token = jwtUtils.generateAccessToken(principal);
+        when(securityVersions.isSynced()).thenReturn(false);
+
+        // When / Then
+        assertThat(jwtUtils.getPrincipalFromAccessToken(token)).isNull();
+    }
+
+    @Test
+    void getPrincipalFromAccessToken_TokenWithoutAuthorities_LoadsUser() {
+        // Given a token issued before stateless mode was turned on
+        when(securityVersions.isEnabled()).thenReturn(false);
+        String token = jwtUtils.generateAccessToken(principal);
+        when(securityVersions.isEnabled()).thenReturn(true);
+        when(securityVersions.isSynced()).thenReturn(true);
+
+        // When / Then
+        assertThat(jwtUtils.getPrincipalFromAccessToken(token)).isNull();
+        assertThat(jwtUtils.getEmailFromAccessToken(token)).isEqualTo("test@example.com");
+    }
+
+    @Test
+    void getPrincipalFromAccessToken_StatelessModeOff_Null() {
+        // Given
+        when(securityVersions.isEnabled()).thenReturn(false);
+        String token = jwtUtils.generateAccessToken(principal);
+
+        // When / Then
+        assertThat(jwtUtils.getPrincipalFromAccessToken(token)).isNull();
+        verify(securityVersions, never()).current(any());
+    }
+
+    @Test
+    void getAccessTokenClaims_RepeatedToken_VerifiedOnce() {
+        // Given
+        when(securityVersions.isEnabled()).thenReturn(false);
+        String token = jwtUtils.generateAccessToken(principal);
+
+        // When
+        Claims first = jwtUtils.getAccessTokenClaims(token);
+        Claims second = jwtUtils.getAccessTokenClaims(token);
+
+        // Then
+        assertThat(first.getSubject()).isEqualTo("test@example.com");
+        assertThat(second).isSameAs(first);
+        assertThat(jwtUtils.getEmailFromAccessToken(token)).isEqualTo("test@example.com");
+        assertThat(meterRegistry.get("cache.gets").tag("cache", JwtUtils.CACHE_NAME).tag("result", "hit")
+                .functionCounter().count()).isEqualTo(2.0);
+    }
+
+    @Test
+    void getAccessTokenClaims_PayloadSwappedUnderCachedSignature_Rejected() {
+        // Given a verified token, and another payload presented with its signature
+        when(securityVersions.isEnabled()).thenReturn(false);
+        String token = jwtUtils.generateAccessToken(principal);
+        jwtUtils.getAccessTokenClaims(token);
+        String other = jwtUtils.generateRefreshToken(principal);
+        String[] parts = token.split("\\.");
+        String forged = other.substring(0, other.lastIndexOf('.') + 1) + parts[2];
+
+        // When / Then
+        assertThat(jwtUtils.getAccessTokenClaims(forged)).isNull();
+        assertThat(jwtUtils.validateRefreshToken(forged)).isFalse();
+    }
+
+    @Test
+    void refresh_StaticSecretChanged_OldTokensValidUntilRefreshLifetimePassed() {
+        // Given
+        when(securityVersions.isEnabled()).thenReturn(false);
+        String token = jwtUtils.generateAccessToken(principal);
+        assertThat(jwtUtils.getAccessTokenClaims(token)).isNotNull();
+
+        // When
+        environment.setProperty("spring.security.jwt.secret-key", "another-secret-key-that-is-long-enough-for-hs256");
+        keyRegistry.refresh();
+
+        // Then
+        assertThat(jwtUtils.getAccessTokenClaims(token)).isNotNull();
+        assertThat(jwtUtils.getAccessTokenClaims(jwtUtils.generateAccessToken(principal))).isNotNull();
+
+        // And once the previous key retires
+        ReflectionTestUtils.setField(keyRegistry, "refreshExpirationMs", 0L);
+        keyRegistry.refresh();
+        assertThat(jwtUtils.getAccessTokenClaims(token)).isNull();
+    }
+}
@@ -0,0 +1,104 @@
+package ai.datalens.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PasswordHasherTest {
+
+    private PasswordHasher passwordHasher;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        passwordHasher = new PasswordHasher();
+        ReflectionTestUtils.setField(passwordHasher, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(passwordHasher, "threads", 1);
+        ReflectionTestUtils.setField(passwordHasher, "queueCapacity", 1);
+        ReflectionTestUtils.setField(passwordHasher, "configuredCost", 5);
+        ReflectionTestUtils.setField(passwordHasher, "targetTimeMs", 250L);
+        ReflectionTestUtils.setField(passwordHasher, "minCost", 4);
+        ReflectionTestUtils.setField(passwordHasher, "maxCost", 14);
+        passwordHasher.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        passwordHasher.shutdown();
+    }
+
+    @Test
+    void encode_HashesOnPoolAndRecordsLatency() {
+        // When
+        String hash = passwordHasher.encode("password123");
+
+        // Then
+        assertThat(hash).startsWith("$2a$05$");
+        assertThat(passwordHasher.matches("password123", hash)).isTrue();
+        assertThat(passwordHasher.matches("wrong", hash)).isFalse();
+        assertThat(meterRegistry.get("auth.password.hashing").tag("operation", "encode").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("auth.password.hashing").tag("operation", "matches").timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    void encode_QueueFull_RejectedAtOnce() throws Exception {
+        // Given the only thread busy and the queue full
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) ReflectionTestUtils.getField(passwordHasher, "executor");
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit(() -> {
+            release.await();
+            return null;
+        });
+        executor.submit(() -> null);
+
+        try {
+            // When / Then
+            assertThatThrownBy(() -> passwordHasher.encode("password123"))
+                    .isInstanceOf(RejectedExecutionException.class);
+            assertThat(meterRegistry.get("auth.password.hashing.rejected").counter().count()).isEqualTo(1.0);
+            assertThat(meterRegistry.get("auth.password.hashing.queued").gauge().value()).isEqualTo(1.0);
+            // Upgrades wait until nothing is queued
+            assertThat(passwordHasher.upgradeEncoding(new BCryptPasswordEncoder(4).encode("password123"))).isFalse();
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void upgradeEncoding_LowerCostHash_Upgraded() {
+        // Given
+        String weaker = new BCryptPasswordEncoder(4).encode("password123");
+        String current = passwordHasher.encode("password123");
+
+        // When / Then
+        assertThat(passwordHasher.upgradeEncoding(weaker)).isTrue();
+        assertThat(passwordHasher.upgradeEncoding(current)).isFalse();
+    }
+
+    @Test
+    void calibrate_StaysWithinBounds() {
+        // Given a target no hash can meet
+        ReflectionTestUtils.setField(passwordHasher, "targetTimeMs", 0L);
+
+        // When / Then
+        assertThat(passwordHasher.calibrate()).isEqualTo(4);
+
+        // Given a target every cost meets
+        ReflectionTestUtils.setField(passwordHasher, "targetTimeMs", 1_000_000L);
+        ReflectionTestUtils.setField(passwordHasher, "maxCost", 6);
+
+        // When / Then
+        assertThat(passwordHasher.calibrate()).isEqualTo(6);
+    }
+}
@@ -0,0 +1,100 @@
+package ai.datalens.security;
+
+import ai.datalens.entity.SecurityVersion;
+import ai.datalens.repository.SecurityVersionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SecurityVersionsTest {
+
+    @Mock
+    private SecurityVersionRepository securityVersionRepository;
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @InjectMocks
+    private SecurityVersions securityVersions;
+
+    private UUID userId;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(securityVersions, "enabled", true);
+        ReflectionTestUtils.setField(securityVersions, "channel", "security-version-changes");
+        userId = UUID.randomUUID();
+    }
+
+    @Test
+    void resync_DatabaseDown_StaysUnsynced() {
+        // Given
+        when(securityVersionRepository.findAll()).thenThrow(new DataAccessResourceFailureException("connection refused"));
+
+        // When
+        securityVersions.resync();
+
+        // Then
+        assertThat(securityVersions.isSynced()).isFalse();
+    }
+
+    @Test
+    void resync_LoadsStoredVersions() {
+        // Given
+        when(securityVersionRepository.findAll()).thenReturn(List.of(new SecurityVersion(userId, 4)));
+
+        // When
+        securityVersions.resync();
+
+        // Then
+        assertThat(securityVersions.isSynced()).isTrue();
+        assertThat(securityVersions.current(userId)).isEqualTo(4);
+    }
+
+    @Test
+    void bump_FirstRevocation_StoredAndPublished() {
+        // Given
+        when(securityVersionRepository.increment(userId)).thenReturn(0);
+        when(securityVersionRepository.findById(userId)).thenReturn(Optional.of(new SecurityVersion(userId, 1)));
+
+        // When
+        securityVersions.bump(userId);
+
+        // Then
+        verify(securityVersionRepository).save(any(SecurityVersion.class));
+        verify(redisTemplate).convertAndSend("security-version-changes", userId + ":1");
+        assertThat(securityVersions.current(userId)).isEqualTo(1);
+    }
+
+    @Test
+    void bump_RedisDown_StillStoredAndRevokedHere() {
+        // Given
+        when(securityVersionRepository.increment(userId)).thenReturn(1);
+        when(securityVersionRepository.findById(userId)).thenReturn(Optional.of(new SecurityVersion(userId, 3)));
+        doThrow(new RedisConnectionFailureException("connection refused"))
+                .when(redisTemplate).convertAndSend(anyString(), anyString());
+
+        // When
+        securityVersions.bump(userId);
+
+        // Then
+        verify(securityVersionRepository, never()).save(any(SecurityVersion.class));
+        assertThat(securityVersions.current(userId)).isEqualTo(3);
+    }
+}
@@ -0,0 +1,161 @@
+package ai.datalens.security;
+
+import ai.datalens.service.UserDetailsServiceImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserPrincipalCacheTest {
+
+    private static final String EMAIL = "test@example.com";
+
+    private static final String KEY = "datalens:principal:" + EMAIL;
+
+    private static final String GENERATION_KEY = "datalens:principal-generation:" + EMAIL;
+
+    @Mock
+    private UserDetailsServiceImpl userDetailsService;
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @InjectMocks
+    private UserPrincipalCache principalCache;
+
+    private UserPrincipal principal;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(principalCache, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(principalCache, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(principalCache, "enabled", true);
+        ReflectionTestUtils.setField(principalCache, "localMaxSize", 100L);
+        ReflectionTestUtils.setField(principalCache, "localTtlMs", 60000L);
+        ReflectionTestUtils.setField(principalCache, "redisTtlMs", 300000L);
+        ReflectionTestUtils.setField(principalCache, "channel", "principal-invalidations");
+        // No listener container without a Redis server; the Redis tier itself is mocked
+        ReflectionTestUtils.setField(principalCache, "redisEnabled", false);
+        principalCache.init();
+        ReflectionTestUtils.setField(principalCache, "redisEnabled", true);
+        lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+
+        principal = new UserPrincipal(UUID.randomUUID(), EMAIL, "hashedPassword", true, true, true, true,
+                Set.of(new SimpleGrantedAuthority("ROLE_USER"), new SimpleGrantedAuthority("PERMISSION_read")));
+    }
+
+    @Test
+    void get_MissInBothTiers_LoadsOnceAndSharesWithoutPassword() {
+        // Given
+        when(valueOperations.multiGet(List.of(KEY, GENERATION_KEY))).thenReturn(Arrays.asList(null, null));
+        when(userDetailsService.loadUserByUsername(EMAIL)).thenReturn(principal);
+
+        // When
+        UserPrincipal first = principalCache.get(EMAIL);
+        UserPrincipal second = principalCache.get(EMAIL);
+
+        // Then
+        assertThat(first).isSameAs(second);
+        assertThat(first.getId()).isEqualTo(principal.getId());
+        assertThat(first.getPassword()).isNull();
+        assertThat(first.getAuthorities()).isEqualTo(principal.getAuthorities());
+        verify(userDetailsService, times(1)).loadUserByUsername(EMAIL);
+
+        ArgumentCaptor<String> shared = ArgumentCaptor.forClass(String.class);
+        verify(redisTemplate).execute(any(RedisScript.class), eq(List.of(KEY, GENERATION_KEY)),
+                eq(""), shared.capture(), eq("300000"));
+        assertThat(shared.getValue()).doesNotContain("hashedPassword").contains("PERMISSION_read");
+    }
+
+    @Test
+    void get_SharedHit_SkipsDatabase() throws Exception {
+        // Given another node cached the principal
+        String json = new ObjectMapper().writeValueAsString(UserPrincipalCache.CachedPrincipal.of(principal));
+        when(valueOperations.multiGet(List.of(KEY, GENERATION_KEY))).thenReturn(Arrays.asList(json, "2"));
+
+        // When
+        UserPrincipal cached = principalCache.get(EMAIL);
+
+        // Then
+        assertThat(cached.getId()).isEqualTo(principal.getId());
+        assertThat(cached.isEnabled()).isTrue();
+        assertThat(cached.getAuthorities()).isEqualTo(principal.getAuthorities());
+        verifyNoInteractions(userDetailsService);
+    }
+
+    @Test
+    void get_RedisDown_FallsBackToDatabase() {
+        // Given
+        when(valueOperations.multiGet(anyList())).thenThrow(new RedisConnectionFailureException("connection refused"));
+        when(userDetailsService.loadUserByUsername(EMAIL)).thenReturn(principal);
+
+        // When
+        UserPrincipal loaded = principalCache.get(EMAIL);
+
+        // Then the generation is unknown, so nothing is written back
+        assertThat(loaded.getId()).isEqualTo(principal.getId());
+        verify(redisTemplate, never()).execute(any(RedisScript.class), anyList(), any(), any(), any());
+    }
+
+    @Test
+    void get_MissInBothTiers_WritesBackOnlyAtGenerationSeenBeforeLoad() {
+        // Given
+        when(valueOperations.multiGet(List.of(KEY, GENERATION_KEY))).thenReturn(Arrays.asList(null, "4"));
+        when(userDetailsService.loadUserByUsername(EMAIL)).thenReturn(principal);
+
+        // When
+        principalCache.get(EMAIL);
+
+        // Then an invalidation elsewhere during the load bumps the generation and the write-back is skipped
+        verify(redisTemplate).execute(any(RedisScript.class), eq(List.of(KEY, GENERATION_KEY)),
+                eq("4"), anyString(), eq("300000"));
+        verify(valueOperations, never()).set(anyString(), anyString(), any(Duration.class));
+    }
+
+    @Test
+    void invalidate_DropsBothTiersAndPublishes() {
+        // Given
+        when(userDetailsService.loadUserByUsername(EMAIL)).thenReturn(principal);
+        principalCache.get(EMAIL);
+
+        // When
+        principalCache.invalidate(EMAIL, null);
+        principalCache.get(EMAIL);
+
+        // Then the generation moves on before the entry goes, so no earlier load can write back
+        InOrder order = inOrder(valueOperations, redisTemplate);
+        order.verify(valueOperations).increment(GENERATION_KEY);
+        order.verify(redisTemplate).delete(KEY);
+        verify(redisTemplate).convertAndSend("principal-invalidations", EMAIL);
+        verify(userDetailsService, times(2)).loadUserByUsername(EMAIL);
+    }
+}
@@ -5,6 +5,8 @@ import ai.datalens.entity.Role;
 import ai.datalens.entity.User;
 import ai.datalens.repository.RoleRepository;
 import ai.datalens.repository.UserRepository;
+import ai.datalens.security.SecurityVersions;
+import ai.datalens.security.UserPrincipalCache;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -32,6 +34,12 @@ class AdminUserServiceTest {
     @Mock
     private RoleRepository roleRepository;
 
+    @Mock
+    private UserPrincipalCache principalCache;
+
+    @Mock
+    private SecurityVersions securityVersions;
+
     @InjectMocks
     private UserService userService;
 
@@ -205,6 +213,8 @@ class AdminUserServiceTest {
         // Then
         verify(userRepository).findById(testUserId);
         verify(userRepository).save(argThat(user -> "INACTIVE".equals(user.getStatus())));
+        verify(principalCache).invalidate("testuser@example.com");
+        verify(securityVersions).bump(testUserId);
     }
 
     @Test
@@ -226,6 +236,7 @@ class AdminUserServiceTest {
         verify(userRepository).findByIdWithRoles(testUserId);
         verify(userRepository).existsByEmailIgnoreCase("newemail@example.com");
         verify(userRepository).save(argThat(user -> "newemail@example.com".equals(user.getEmail())));
+        verify(principalCache).invalidate("testuser@example.com", "newemail@example.com");
     }
 
     @Test
@@ -331,6 +342,8 @@ class AdminUserServiceTest {
         // Then
         verify(userRepository).findById(testUserId);
         verify(userRepository).delete(testUser);
+        verify(principalCache).invalidate("testuser@example.com");
+        verify(securityVersions).bump(testUserId);
     }
 
     @Test
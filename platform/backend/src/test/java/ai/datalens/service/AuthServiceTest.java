@@ -252,6 +252,23 @@ class AuthServiceTest {
         verify(jwtUtils, never()).getEmailFromRefreshToken(anyString());
     }
 
+    @Test
+    void refreshToken_InactiveUser_Refused() {
+        // Given
+        String refreshToken = "valid-refresh-token";
+        testUser.setStatus(UserStatus.INACTIVE);
+        when(jwtUtils.validateRefreshToken(refreshToken)).thenReturn(true);
+        when(jwtUtils.getEmailFromRefreshToken(refreshToken)).thenReturn("test@example.com");
+        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
+
+        // When & Then
+        assertThatThrownBy(() -> authService.refreshToken(refreshToken))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("User account is not active");
+
+        verify(jwtUtils, never()).generateAccessToken(any(UserPrincipal.class));
+    }
+
     @Test
     void requestPasswordReset_Success() {
         // Given
@@ -0,0 +1,299 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.request.ProfileRequest;
+import ai.datalens.dto.response.ColumnProfileResponse;
+import ai.datalens.dto.response.ColumnStatsResponse;
+import ai.datalens.dto.response.StageFileResponse;
+import ai.datalens.entity.ColumnProfile;
+import ai.datalens.entity.Project;
+import ai.datalens.repository.ColumnProfileRepository;
+import ai.datalens.repository.ProjectRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ColumnProfileServiceTest {
+
+    private static final String H2_URL = "jdbc:h2:mem:column_profile;DB_CLOSE_DELAY=-1";
+
+    @Mock
+    private WarehouseConnector warehouseConnector;
+
+    @Mock
+    private ProjectWarehouseConnectors projectConnectors;
+
+    @Mock
+    private WarehouseQueryScheduler scheduler;
+
+    @Mock
+    private StageFileService stageFileService;
+
+    @Mock
+    private ProjectRepository projectRepository;
+
+    @Mock
+    private ColumnProfileRepository columnProfileRepository;
+
+    @InjectMocks
+    private ColumnProfileService profileService;
+
+    private Connection h2;
+    private UUID userId;
+    private UUID projectId;
+    private final List<ColumnProfile> savedProfiles = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        userId = UUID.randomUUID();
+        projectId = UUID.randomUUID();
+        ReflectionTestUtils.setField(profileService, "objectMapper", new ObjectMapper().findAndRegisterModules());
+        ReflectionTestUtils.setField(profileService, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(profileService, "threads", 4);
+        ReflectionTestUtils.setField(profileService, "parallelism", 4);
+        // Small chunks so every worker gets rows to merge
+        ReflectionTestUtils.setField(profileService, "chunkRows", 250);
+        ReflectionTestUtils.setField(profileService, "maxRows", 100000);
+        ReflectionTestUtils.setField(profileService, "maxColumns", 64);
+        ReflectionTestUtils.setField(profileService, "hllPrecision", 12);
+        ReflectionTestUtils.setField(profileService, "compression", 100.0);
+        profileService.init();
+
+        h2 = DriverManager.getConnection(H2_URL, "sa", "");
+        try (Statement stmt = h2.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS measurements (id BIGINT, reading DOUBLE, site VARCHAR(20))");
+            stmt.execute("DELETE FROM measurements");
+            // reading = id for ids 1..20000, null for every tenth row; 50 sites
+            stmt.execute("INSERT INTO measurements SELECT x, CASE WHEN MOD(x, 10) = 0 THEN NULL ELSE x END, "
+                    + "'site-' || MOD(x, 50) FROM SYSTEM_RANGE(1, 20000)");
+        }
+
+        lenient().when(projectRepository.findByUserIdAndId(userId, projectId)).thenReturn(Optional.of(new Project()));
+        lenient().when(projectConnectors.forProject(projectId)).thenReturn(warehouseConnector);
+        lenient().when(warehouseConnector.executeQuery(anyString(), anyInt(), any())).thenAnswer(invocation -> {
+            WarehouseConnector.QueryHandler<?> handler = invocation.getArgument(2);
+            try (Statement stmt = h2.createStatement();
+                 ResultSet rs = stmt.executeQuery(invocation.getArgument(0))) {
+                return handler.handle(rs);
+            }
+        });
+        lenient().when(columnProfileRepository.save(any(ColumnProfile.class))).thenAnswer(invocation -> {
+            ColumnProfile profile = invocation.getArgument(0);
+            if (profile.getId() == null) {
+                profile.setId(UUID.randomUUID());
+                savedProfiles.add(profile);
+            }
+            profile.setUpdatedAt(LocalDateTime.now());
+            return profile;
+        });
+        lenient().when(columnProfileRepository.findByProjectIdAndSourceTypeAndSourceName(eq(projectId), anyString(), anyString()))
+                .thenAnswer(invocation -> savedProfiles.stream()
+                        .filter(profile -> profile.getSourceType().equals(invocation.getArgument(1))
+                                && profile.getSourceName().equals(invocation.getArgument(2)))
+                        .findFirst());
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        profileService.shutdown();
+        h2.close();
+    }
+
+    @Test
+    void profile_Table_ComputesStatsAcrossParallelChunks() throws Exception {
+        // When
+        ColumnProfileResponse profile = profileService.profile(userId, projectId, tableRequest("measurements"));
+
+        // Then
+        assertThat(profile.isStored()).isFalse();
+        assertThat(profile.getRowCount()).isEqualTo(20000);
+        assertThat(profile.getColumns()).extracting(ColumnStatsResponse::getName).containsExactly("ID", "READING", "SITE");
+
+        ColumnStatsResponse id = profile.getColumns().get(0);
+        assertThat(id.getNullCount()).isZero();
+        assertThat(id.getMin()).isEqualTo(1.0);
+        assertThat(id.getMax()).isEqualTo(20000.0);
+        assertThat(id.getMean()).isCloseTo(10000.5, within(1e-6));
+        // Variance of 1..n is n(n+1)/12
+        assertThat(id.getVariance()).isCloseTo(20000.0 * 20001 / 12, within(1.0));
+        assertThat(id.getDistinctCount()).isCloseTo(20000L, within(800L));
+        assertThat(id.getQuantiles().get("p50")).isCloseTo(10000.0, within(200.0));
+        assertThat(id.getQuantiles().get("p99")).isCloseTo(19800.0, within(100.0));
+
+        ColumnStatsResponse reading = profile.getColumns().get(1);
+        assertThat(reading.getNullCount()).isEqualTo(2000);
+
+        ColumnStatsResponse site = profile.getColumns().get(2);
+        assertThat(site.getType()).isEqualTo("CHARACTER VARYING");
+        assertThat(site.getDistinctCount()).isEqualTo(50);
+        assertThat(site.getMin()).isEqualTo("site-0");
+        assertThat(site.getMean()).isNull();
+    }
+
+    @Test
+    void profile_SecondRequest_ServedFromStoredProfile() throws Exception {
+        // Given
+        profileService.profile(userId, projectId, tableRequest("measurements"));
+
+        // When
+        ColumnProfileResponse stored = profileService.profile(userId, projectId, tableRequest("measurements"));
+        ProfileRequest refresh = tableRequest("measurements");
+        refresh.setRefresh(true);
+        ColumnProfileResponse recomputed = profileService.profile(userId, projectId, refresh);
+
+        // Then
+        assertThat(stored.isStored()).isTrue();
+        assertThat(stored.getColumns()).hasSize(3);
+        assertThat(stored.getColumns().get(2).getDistinctCount()).isEqualTo(50);
+        assertThat(recomputed.isStored()).isFalse();
+        assertThat(recomputed.getId()).isEqualTo(stored.getId());
+        verify(warehouseConnector, times(2)).executeQuery(anyString(), anyInt(), any());
+    }
+
+    @Test
+    void profile_Table_SamplesAtMostMaxRows() throws Exception {
+        // Given
+        ReflectionTestUtils.setField(profileService, "maxRows", 500);
+
+        // When
+        ColumnProfileResponse profile = profileService.profile(userId, projectId, tableRequest("measurements"));
+
+        // Then
+        assertThat(profile.getRowCount()).isEqualTo(500);
+        verify(warehouseConnector).executeQuery(eq("SELECT * FROM measurements LIMIT 500"), eq(500), any());
+    }
+
+    @Test
+    void init_UnboundedMaxRows_FailsStartup() {
+        // Given
+        ColumnProfileService unbounded = new ColumnProfileService();
+        ReflectionTestUtils.setField(unbounded, "maxRows", 0);
+
+        // When & Then
+        assertThatThrownBy(unbounded::init)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("warehouse.profile.max-rows");
+    }
+
+    @Test
+    void profile_CsvStageFile_InfersNumbersAndReprofilesChangedFile() throws Exception {
+        // Given
+        StageFileResponse file = new StageFileResponse("data/people.csv", 120L, "md5-a", Instant.now());
+        when(stageFileService.statFile(userId, projectId, "RAW_STAGE", "data/people.csv")).thenReturn(file);
+        when(warehouseConnector.scanStagedFile(any(), any())).thenAnswer(invocation -> {
+            WarehouseConnector.StagedRowHandler handler = invocation.getArgument(1);
+            handler.handle(new String[]{"name", "age", null});
+            handler.handle(new String[]{"ann", "31", null});
+            handler.handle(new String[]{"bob", "n/a", null});
+            handler.handle(new String[]{"cy", "45", null});
+            handler.handle(new String[]{null, "52", null});
+            return 5L;
+        });
+        ProfileRequest request = new ProfileRequest();
+        request.setStage("RAW_STAGE");
+        request.setPath("data/people.csv");
+
+        // When
+        ColumnProfileResponse first = profileService.profile(userId, projectId, request);
+        ColumnProfileResponse again = profileService.profile(userId, projectId, request);
+        when(stageFileService.statFile(userId, projectId, "RAW_STAGE", "data/people.csv"))
+                .thenReturn(new StageFileResponse("data/people.csv", 140L, "md5-b", Instant.now()));
+        ColumnProfileResponse changed = profileService.profile(userId, projectId, request);
+
+        // Then
+        assertThat(first.getSource()).isEqualTo("@RAW_STAGE/data/people.csv");
+        assertThat(first.getRowCount()).isEqualTo(4);
+        // The padding column past the header is dropped
+        assertThat(first.getColumns()).extracting(ColumnStatsResponse::getName).containsExactly("name", "age");
+        ColumnStatsResponse age = first.getColumns().get(1);
+        assertThat(age.getType()).isEqualTo("MIXED");
+        assertThat(age.getNonNumericCount()).isEqualTo(1);
+        assertThat(age.getMean()).isCloseTo(42.666, within(0.01));
+        assertThat(first.getColumns().get(0).getNullCount()).isEqualTo(1);
+        assertThat(again.isStored()).isTrue();
+        assertThat(changed.isStored()).isFalse();
+        assertThat(changed.getSourceVersion()).isEqualTo("md5-b");
+        verify(warehouseConnector, times(2)).scanStagedFile(any(), any());
+    }
+
+    @Test
+    void profile_RejectsAmbiguousOrUnsafeSources() {
+        ProfileRequest both = tableRequest("measurements");
+        both.setStage("RAW_STAGE");
+        assertThatThrownBy(() -> profileService.profile(userId, projectId, both))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> profileService.profile(userId, projectId, tableRequest("t; DROP TABLE x")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> profileService.profile(UUID.randomUUID(), projectId, tableRequest("measurements")))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("Project not found");
+    }
+
+    @Test
+    void sketches_MergedFromChunks_MatchSinglePass() {
+        // Given
+        Random random = new Random(42);
+        ColumnSketch whole = new ColumnSketch("v", null, false, 12, 100);
+        List<ColumnSketch> parts = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            parts.add(new ColumnSketch("v", null, false, 12, 100));
+        }
+        double[] values = new double[100_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextGaussian() * 10 + 100;
+            whole.addNumber(values[i]);
+            parts.get(i % parts.size()).addNumber(values[i]);
+        }
+
+        // When
+        ColumnSketch merged = parts.get(0);
+        for (ColumnSketch part : parts.subList(1, parts.size())) {
+            merged.merge(part);
+        }
+        ColumnStatsResponse expected = whole.toStats(values.length);
+        ColumnStatsResponse actual = merged.toStats(values.length);
+
+        // Then
+        assertThat(actual.getMean()).isCloseTo(expected.getMean(), within(1e-9));
+        assertThat(actual.getVariance()).isCloseTo(expected.getVariance(), within(1e-6));
+        assertThat(actual.getDistinctCount()).isCloseTo(100_000L, within(5_000L));
+        // Normal(100, 10): p50 = 100, p95 = 116.45
+        assertThat(actual.getQuantiles().get("p50")).isCloseTo(100.0, within(0.5));
+        assertThat(actual.getQuantiles().get("p95")).isCloseTo(116.45, within(0.5));
+    }
+
+    private static ProfileRequest tableRequest(String table) {
+        ProfileRequest request = new ProfileRequest();
+        request.setTable(table);
+        return request;
+    }
+}
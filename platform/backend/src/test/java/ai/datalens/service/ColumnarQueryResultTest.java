@@ -0,0 +1,219 @@
+package ai.datalens.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ColumnarQueryResultTest {
+
+    private static final String H2_URL = "jdbc:h2:mem:columnar_result;DB_CLOSE_DELAY=-1";
+
+    private Connection h2;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        h2 = DriverManager.getConnection(H2_URL, "sa", "");
+        try (Statement stmt = h2.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS events (id BIGINT, score DOUBLE, region VARCHAR(20), "
+                    + "active BOOLEAN, amount DECIMAL(38, 0), price DECIMAL(10, 2))");
+            stmt.execute("DELETE FROM events");
+            stmt.execute("INSERT INTO events VALUES "
+                    + "(1, 0.5, 'emea', TRUE, 10, 1.25), "
+                    + "(2, NULL, 'apac', FALSE, NULL, 2.50), "
+                    + "(3, 2.0, 'emea', NULL, 123456789012345678901234567890, NULL)");
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        h2.close();
+    }
+
+    @Test
+    void read_StoresColumnsAsVectors() throws SQLException {
+        // When
+        QueryResult result = query("SELECT * FROM events ORDER BY id", 10);
+
+        // Then
+        List<QueryColumn> columns = result.columns();
+        assertThat(columns).extracting(QueryColumn::kind).containsExactly(QueryColumn.Kind.LONG, QueryColumn.Kind.DOUBLE,
+                QueryColumn.Kind.STRING, QueryColumn.Kind.BOOLEAN, QueryColumn.Kind.DECIMAL, QueryColumn.Kind.SCALED);
+        assertThat(columns.get(2).dictionary()).containsExactly("emea", "apac");
+        assertThat(result.rows()).hasSize(3);
+        assertThat(result.rows().get(1)).containsExactly(2L, null, "apac", false, null, new BigDecimal("2.50"));
+        // The oversized value widened the integer column to decimals without losing earlier rows
+        assertThat(result.rows().get(0)[4]).isEqualTo(new BigDecimal("10"));
+        assertThat(result.rows().get(2)[4]).isEqualTo(new BigDecimal("123456789012345678901234567890"));
+    }
+
+    @Test
+    void writeTo_RoundTripsThroughDecoder() throws Exception {
+        // Given
+        QueryResult result = query("SELECT * FROM events ORDER BY id", 2);
+        ColumnarQueryResult columnar = new ColumnarQueryResult("abc123", result, true);
+
+        // When
+        List<Object[]> decoded = decode(encode(columnar));
+
+        // Then
+        assertThat(decoded).hasSize(2);
+        // The oversized amount is past the limit, so that column stayed a long vector
+        assertThat(decoded.get(0)).containsExactly(1L, 0.5, "emea", true, 10L, new BigDecimal("1.25"));
+        assertThat(decoded.get(1)).containsExactly(2L, null, "apac", false, null, new BigDecimal("2.50"));
+    }
+
+    @Test
+    void writeTo_RepetitiveResult_SmallerThanJson() throws Exception {
+        // Given
+        try (Statement stmt = h2.createStatement()) {
+            stmt.execute("INSERT INTO events SELECT x + 3, x * 0.25, CASE MOD(x, 3) WHEN 0 THEN 'emea' WHEN 1 THEN 'apac' "
+                    + "ELSE 'amer' END, MOD(x, 2) = 0, x, x / 100.0 FROM SYSTEM_RANGE(1, 2000)");
+        }
+        QueryResult result = query("SELECT id, score, region, active FROM events", 5000);
+
+        // When
+        byte[] binary = encode(new ColumnarQueryResult("abc123", result, false));
+        byte[] json = new ObjectMapper().writeValueAsBytes(result.rows());
+
+        // Then
+        assertThat(result.rowCount()).isEqualTo(2003);
+        assertThat(result.columns().get(2).dictionary()).hasSize(3);
+        assertThat(binary.length).isLessThan(json.length);
+    }
+
+    @Test
+    void read_FixedPointTooWideForLong_WidensToDictionary() throws Exception {
+        // Given
+        try (Statement stmt = h2.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS wide (amount DECIMAL(38, 2))");
+            stmt.execute("DELETE FROM wide");
+            stmt.execute("INSERT INTO wide VALUES (3.10), (NULL), (12345678901234567890123.45)");
+        }
+
+        // When
+        QueryResult result = query("SELECT amount FROM wide ORDER BY amount NULLS FIRST", 10);
+
+        // Then the rows read as scaled longs before the wide value kept their scale
+        QueryColumn column = result.columns().get(0);
+        assertThat(column.kind()).isEqualTo(QueryColumn.Kind.DECIMAL);
+        assertThat(column.dictionary()).containsExactly("3.10", "12345678901234567890123.45");
+        assertThat(column.like().kind()).isEqualTo(QueryColumn.Kind.DECIMAL);
+    }
+
+    private QueryResult query(String sql, int maxRows) throws SQLException {
+        try (Statement stmt = h2.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            return QueryResult.read(rs, maxRows, System.nanoTime());
+        }
+    }
+
+    private static byte[] encode(ColumnarQueryResult columnar) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        columnar.writeTo(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Reference decoder for the format documented on ColumnarQueryResult; dictionary decimals come back as strings
+     */
+    private static List<Object[]> decode(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        byte[] magic = new byte[4];
+        in.readFully(magic);
+        assertThat(magic).isEqualTo(ColumnarQueryResult.MAGIC);
+        assertThat(in.readUnsignedByte()).isEqualTo(ColumnarQueryResult.VERSION);
+        int flags = in.readUnsignedByte();
+        assertThat(flags & 1).as("truncated").isEqualTo(1);
+        assertThat(flags & 2).as("cached").isEqualTo(2);
+        assertThat(readString(in)).isEqualTo("abc123");
+        in.readLong();
+        in.readLong();
+        int rows = in.readInt();
+        int columnCount = in.readInt();
+        int[] kinds = new int[columnCount];
+        for (int c = 0; c < columnCount; c++) {
+            readString(in);
+            readString(in);
+            kinds[c] = in.readUnsignedByte();
+        }
+
+        Object[][] table = new Object[rows][columnCount];
+        for (int c = 0; c < columnCount; c++) {
+            byte[] nulls = in.readUnsignedByte() == 1 ? readBitmap(in, rows) : new byte[(rows + 7) / 8];
+            Object[] values = new Object[rows];
+            switch (QueryColumn.Kind.values()[kinds[c]]) {
+                case LONG -> {
+                    for (int r = 0; r < rows; r++) {
+                        values[r] = in.readLong();
+                    }
+                }
+                case DOUBLE -> {
+                    for (int r = 0; r < rows; r++) {
+                        values[r] = in.readDouble();
+                    }
+                }
+                case SCALED -> {
+                    int scale = in.readUnsignedByte();
+                    for (int r = 0; r < rows; r++) {
+                        values[r] = BigDecimal.valueOf(in.readLong(), scale);
+                    }
+                }
+                case BOOLEAN -> {
+                    byte[] bits = readBitmap(in, rows);
+                    for (int r = 0; r < rows; r++) {
+                        values[r] = bit(bits, r);
+                    }
+                }
+                case DECIMAL, STRING -> {
+                    List<String> dictionary = new ArrayList<>();
+                    int size = in.readInt();
+                    for (int i = 0; i < size; i++) {
+                        dictionary.add(readString(in));
+                    }
+                    int width = in.readUnsignedByte();
+                    for (int r = 0; r < rows; r++) {
+                        int code = width == 1 ? in.readUnsignedByte() : width == 2 ? in.readUnsignedShort() : in.readInt();
+                        values[r] = dictionary.get(code);
+                    }
+                }
+            }
+            for (int r = 0; r < rows; r++) {
+                table[r][c] = bit(nulls, r) ? null : values[r];
+            }
+        }
+        assertThat(in.read()).isEqualTo(-1);
+        return List.of(table);
+    }
+
+    private static byte[] readBitmap(DataInputStream in, int rows) throws IOException {
+        byte[] bits = new byte[(rows + 7) / 8];
+        in.readFully(bits);
+        return bits;
+    }
+
+    private static boolean bit(byte[] bits, int index) {
+        return (bits[index / 8] & (1 << (index % 8))) != 0;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
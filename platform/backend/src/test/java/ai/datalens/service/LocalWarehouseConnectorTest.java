@@ -0,0 +1,132 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.response.SnowflakeStageResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LocalWarehouseConnectorTest {
+
+    private LocalWarehouseConnector connector;
+
+    @TempDir
+    Path stageRoot;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.createDirectories(stageRoot.resolve("SALES/PUBLIC/RAW_STAGE/2024"));
+        Files.createDirectories(stageRoot.resolve("SALES/PUBLIC/EXPORT_STAGE"));
+        Files.createDirectories(stageRoot.resolve("ANALYTICS/RAW/EVENTS"));
+
+        connector = new LocalWarehouseConnector();
+        ReflectionTestUtils.setField(connector, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(connector, "stageRoot", stageRoot.toString());
+        ReflectionTestUtils.setField(connector, "database", "SALES");
+        ReflectionTestUtils.setField(connector, "schema", "PUBLIC");
+        ReflectionTestUtils.setField(connector, "url", "jdbc:h2:mem:local_warehouse;DB_CLOSE_DELAY=-1");
+        ReflectionTestUtils.setField(connector, "user", "sa");
+        ReflectionTestUtils.setField(connector, "password", "");
+        ReflectionTestUtils.setField(connector, "maxPoolSize", 2);
+        ReflectionTestUtils.setField(connector, "maxRowChars", 4096);
+    }
+
+    @AfterEach
+    void tearDown() {
+        connector.shutdown();
+    }
+
+    @Test
+    void listSchemasAndStages_FollowDirectoryLayout() throws SQLException {
+        // When
+        List<WarehouseConnector.SchemaRef> schemas = connector.listSchemas();
+        List<SnowflakeStageResponse> stages = connector.fetchStages();
+
+        // Then
+        assertThat(schemas).containsExactly(
+                new WarehouseConnector.SchemaRef("ANALYTICS", "RAW"),
+                new WarehouseConnector.SchemaRef("SALES", "PUBLIC"));
+        assertThat(stages).extracting(SnowflakeStageResponse::getStageName).containsExactly("EXPORT_STAGE", "RAW_STAGE");
+        assertThat(stages.get(0).getStageDatabase()).isEqualTo("SALES");
+        assertThat(connector.fetchStagesInSchema("analytics", "raw"))
+                .extracting(SnowflakeStageResponse::getStageName).containsExactly("EVENTS");
+    }
+
+    @Test
+    void streamStageFiles_FiltersByPrefixAndResolvesQualifiedNames() throws Exception {
+        // Given
+        Files.writeString(stageRoot.resolve("SALES/PUBLIC/RAW_STAGE/2024/a.csv"), "a\n1\n");
+        Files.writeString(stageRoot.resolve("SALES/PUBLIC/RAW_STAGE/top.csv"), "a\n");
+        List<String> names = new ArrayList<>();
+        List<String> modified = new ArrayList<>();
+
+        // When
+        connector.streamStageFiles("SALES.PUBLIC.RAW_STAGE", "2024/", (name, size, md5, lastModified) -> {
+            names.add(name);
+            modified.add(lastModified);
+        });
+
+        // Then
+        assertThat(names).containsExactly("2024/a.csv");
+        assertThat(modified.get(0)).endsWith("GMT");
+        assertThatThrownBy(() -> connector.streamStageFiles("MISSING", "", (name, size, md5, lastModified) -> {}))
+                .isInstanceOf(SQLException.class);
+    }
+
+    @Test
+    void scanStagedFile_StopsAtMaxRows() throws Exception {
+        // Given
+        Files.writeString(stageRoot.resolve("SALES/PUBLIC/RAW_STAGE/events.json"), "[{\"id\":1},{\"id\":2},{\"id\":3}]");
+        List<String> rows = new ArrayList<>();
+
+        // When
+        long count = connector.scanStagedFile(new WarehouseConnector.StagedFileScan("RAW_STAGE", "events.json",
+                StagePreviewService.Format.JSON, 16, 2, null), values -> rows.add(values[0]));
+
+        // Then
+        assertThat(count).isEqualTo(2);
+        assertThat(rows).containsExactly("{\"id\":1}", "{\"id\":2}");
+    }
+
+    @Test
+    void executeQuery_RunsAgainstJdbcDatabase() throws SQLException {
+        // When
+        Integer answer = connector.executeQuery("SELECT 6 * 7", 1, rs -> rs.next() ? rs.getInt(1) : null);
+
+        // Then
+        assertThat(answer).isEqualTo(42);
+    }
+
+    @Test
+    void executeQuery_DoesNotKeepWrites() throws SQLException {
+        // Given
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:local_warehouse;DB_CLOSE_DELAY=-1", "sa", "");
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS audit (id INT)");
+            stmt.execute("DELETE FROM audit");
+        }
+
+        // When
+        connector.executeQuery("SELECT 1", 1, rs -> rs.getStatement().getConnection().createStatement()
+                .executeUpdate("INSERT INTO audit VALUES (1)"));
+
+        // Then
+        Long rows = connector.executeQuery("SELECT COUNT(*) FROM audit", 1, rs -> rs.next() ? rs.getLong(1) : null);
+        assertThat(rows).isZero();
+    }
+}
@@ -0,0 +1,211 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.response.NameSearchResponse;
+import ai.datalens.entity.Project;
+import ai.datalens.entity.ProjectStage;
+import ai.datalens.repository.ProjectRepository;
+import ai.datalens.repository.ProjectStageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class NameSearchServiceTest {
+
+    private static final String STORE_URL = "jdbc:h2:mem:name_search;DB_CLOSE_DELAY=-1";
+
+    @Mock
+    private ProjectRepository projectRepository;
+
+    @Mock
+    private ProjectStageRepository projectStageRepository;
+
+    @InjectMocks
+    private NameSearchService nameSearchService;
+
+    private UUID userId;
+    private UUID projectId;
+    private JdbcTemplate store;
+    private SimpleMeterRegistry meterRegistry;
+    private final List<ProjectStage> stages = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        userId = UUID.randomUUID();
+        projectId = UUID.randomUUID();
+        store = new JdbcTemplate(new DriverManagerDataSource(STORE_URL, "sa", ""));
+        store.execute("DROP ALL OBJECTS");
+        store.execute("CREATE TABLE project_tables (id UUID PRIMARY KEY, project_id UUID NOT NULL, "
+                + "table_catalog VARCHAR(255) NOT NULL, table_schema VARCHAR(255) NOT NULL, table_name VARCHAR(255) NOT NULL)");
+        store.execute("CREATE TABLE project_columns (id UUID PRIMARY KEY, table_id UUID NOT NULL REFERENCES project_tables(id) "
+                + "ON DELETE CASCADE, column_name VARCHAR(255) NOT NULL, ordinal_position INTEGER NOT NULL)");
+
+        meterRegistry = new SimpleMeterRegistry();
+        ReflectionTestUtils.setField(nameSearchService, "jdbcTemplate", store);
+        ReflectionTestUtils.setField(nameSearchService, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(nameSearchService, "maxProjects", 10L);
+        ReflectionTestUtils.setField(nameSearchService, "expireAfterAccessMs", 3600000L);
+        ReflectionTestUtils.setField(nameSearchService, "batchSize", 2);
+        nameSearchService.init();
+
+        lenient().when(projectRepository.findByUserIdAndId(userId, projectId)).thenReturn(Optional.of(new Project()));
+        lenient().when(projectStageRepository.findByProjectIdOrderByStageNameAsc(projectId))
+                .thenAnswer(invocation -> List.copyOf(stages));
+
+        stages.add(stage("ORDERS_STAGE"));
+        stages.add(stage("RAW_EVENTS"));
+        addTable("PUBLIC", "ORDERS", "ORDER_ID", "CUSTOMER_ID", "AMOUNT");
+        addTable("PUBLIC", "ORDER_ITEMS", "ORDER_ID", "SKU", "QUANTITY");
+        addTable("SALES", "CUSTOMERS", "CUSTOMER_ID", "EMAIL");
+    }
+
+    @Test
+    void search_Prefix_RanksShortNamesFirstAcrossKinds() {
+        // When
+        List<NameSearchResponse> results = nameSearchService.search(userId, projectId, "ord", 10, false);
+
+        // Then
+        assertThat(results).extracting(NameSearchResponse::getName)
+                .containsExactly("ORDERS", "ORDER_ID", "ORDER_ID", "ORDER_ITEMS", "ORDERS_STAGE");
+        assertThat(results.get(0).getPath()).isEqualTo("ANALYTICS.PUBLIC.ORDERS");
+        assertThat(results.subList(1, 3)).extracting(NameSearchResponse::getPath).containsExactlyInAnyOrder(
+                "ANALYTICS.PUBLIC.ORDERS.ORDER_ID", "ANALYTICS.PUBLIC.ORDER_ITEMS.ORDER_ID");
+        assertThat(results).allMatch(result -> result.getDistance() == 0);
+        assertThat(results.get(0).getKind()).isEqualTo("table");
+        assertThat(results.get(4).getKind()).isEqualTo("stage");
+    }
+
+    @Test
+    void search_Fuzzy_FindsNamesWithATypo() {
+        // When
+        List<NameSearchResponse> strict = nameSearchService.search(userId, projectId, "custmer", 10, false);
+        List<NameSearchResponse> fuzzy = nameSearchService.search(userId, projectId, "custmer", 10, true);
+
+        // Then
+        assertThat(strict).isEmpty();
+        assertThat(fuzzy).extracting(NameSearchResponse::getName)
+                .containsExactlyInAnyOrder("CUSTOMERS", "CUSTOMER_ID", "CUSTOMER_ID");
+        assertThat(fuzzy).allMatch(result -> result.getDistance() == 1);
+    }
+
+    @Test
+    void tablesChanged_UpdatesOnlyTheChangedTables() {
+        // Given an index built by a first search
+        nameSearchService.search(userId, projectId, "ord", 10, false);
+        UUID itemsId = tableId("ORDER_ITEMS");
+        UUID shipmentsId = addTable("PUBLIC", "SHIPMENTS", "SHIPMENT_ID", "ORDER_ID");
+        store.update("DELETE FROM project_tables WHERE id = ?", itemsId);
+
+        // When
+        nameSearchService.tablesChanged(projectId, List.of(shipmentsId), List.of(itemsId));
+
+        // Then
+        assertThat(nameSearchService.search(userId, projectId, "ship", 10, false))
+                .extracting(NameSearchResponse::getPath)
+                .containsExactly("ANALYTICS.PUBLIC.SHIPMENTS", "ANALYTICS.PUBLIC.SHIPMENTS.SHIPMENT_ID");
+        assertThat(nameSearchService.search(userId, projectId, "order_", 10, false))
+                .extracting(NameSearchResponse::getPath)
+                .containsExactlyInAnyOrder("ANALYTICS.PUBLIC.ORDERS.ORDER_ID", "ANALYTICS.PUBLIC.SHIPMENTS.ORDER_ID");
+    }
+
+    @Test
+    void stagesChanged_ReindexesStageNames() {
+        // Given
+        nameSearchService.search(userId, projectId, "raw", 10, false);
+        stages.clear();
+        stages.add(stage("RAW_CLICKS"));
+
+        // When
+        nameSearchService.stagesChanged(projectId);
+
+        // Then
+        assertThat(nameSearchService.search(userId, projectId, "raw", 10, false))
+                .extracting(NameSearchResponse::getName)
+                .containsExactly("RAW_CLICKS");
+    }
+
+    @Test
+    void search_ReportsIndexMemory() {
+        // When
+        nameSearchService.search(userId, projectId, "a", 10, false);
+
+        // Then
+        assertThat(meterRegistry.get("warehouse.search.index.names").gauge().value()).isEqualTo(13.0);
+        assertThat(meterRegistry.get("warehouse.search.index.memory").gauge().value()).isGreaterThan(0.0);
+    }
+
+    @Test
+    void search_BlankQuery_Throws() {
+        assertThatThrownBy(() -> nameSearchService.search(userId, projectId, " ", 10, true))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void nameIndex_CompactsAfterManyRemovals() {
+        // Given
+        NameIndex index = new NameIndex();
+        for (int i = 0; i < 3000; i++) {
+            index.replaceGroup("table:" + i, List.of(
+                    new NameIndex.Entry(NameIndex.Kind.TABLE, "T_" + i, "DB.S"),
+                    new NameIndex.Entry(NameIndex.Kind.COLUMN, "C_" + i, "DB.S.T_" + i)));
+        }
+
+        // When
+        for (int i = 0; i < 2500; i++) {
+            index.removeGroup("table:" + i);
+        }
+
+        // Then
+        assertThat(index.size()).isEqualTo(1000);
+        assertThat(index.search("t_2999", 5, false)).singleElement()
+                .satisfies(match -> assertThat(match.path()).isEqualTo("DB.S.T_2999"));
+        assertThat(index.search("c_2499", 5, false)).isEmpty();
+        assertThat(index.search("c_2998", 5, false)).extracting(NameIndex.Match::path)
+                .containsExactly("DB.S.T_2998.C_2998");
+    }
+
+    @Test
+    void prefixDistance_MatchesAgainstTheClosestPrefix() {
+        assertThat(NameIndex.prefixDistance("custmer", "customer_id", 1)).isEqualTo(1);
+        assertThat(NameIndex.prefixDistance("ordes", "orders", 1)).isEqualTo(1);
+        assertThat(NameIndex.prefixDistance("amount", "quantity", 1)).isGreaterThan(1);
+    }
+
+    private UUID addTable(String schema, String name, String... columns) {
+        UUID tableId = UUID.randomUUID();
+        store.update("INSERT INTO project_tables VALUES (?, ?, 'ANALYTICS', ?, ?)", tableId, projectId, schema, name);
+        for (int i = 0; i < columns.length; i++) {
+            store.update("INSERT INTO project_columns VALUES (?, ?, ?, ?)", UUID.randomUUID(), tableId, columns[i], i + 1);
+        }
+        return tableId;
+    }
+
+    private UUID tableId(String name) {
+        return store.queryForObject("SELECT id FROM project_tables WHERE table_name = ?", UUID.class, name);
+    }
+
+    private ProjectStage stage(String name) {
+        ProjectStage stage = new ProjectStage();
+        stage.setProjectId(projectId);
+        stage.setStageDatabase("ANALYTICS");
+        stage.setStageSchema("PUBLIC");
+        stage.setStageName(name);
+        return stage;
+    }
+}
@@ -0,0 +1,180 @@
+package ai.datalens.service;
+
+import ai.datalens.entity.ProjectConnectionProfile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ProjectConnectionPoolsTest {
+
+    private SecretCipher secretCipher;
+    private SimpleMeterRegistry meterRegistry;
+    private ProjectConnectionPools pools;
+    private UUID projectId;
+
+    @BeforeEach
+    void setUp() {
+        projectId = UUID.randomUUID();
+        meterRegistry = new SimpleMeterRegistry();
+        secretCipher = new SecretCipher();
+        ReflectionTestUtils.setField(secretCipher, "encryptionKey", Base64.getEncoder().encodeToString(new byte[32]));
+
+        pools = new ProjectConnectionPools();
+        ReflectionTestUtils.setField(pools, "secretCipher", secretCipher);
+        ReflectionTestUtils.setField(pools, "meterRegistry", meterRegistry);
+        // The account names an in-memory H2 database standing in for the project's warehouse
+        ReflectionTestUtils.setField(pools, "urlTemplate", "jdbc:h2:mem:%s;DB_CLOSE_DELAY=-1;IGNORE_UNKNOWN_SETTINGS=TRUE");
+        ReflectionTestUtils.setField(pools, "driverClassName", "org.h2.Driver");
+        ReflectionTestUtils.setField(pools, "connectionTimeoutMs", 1000L);
+        ReflectionTestUtils.setField(pools, "idleTimeoutMs", 600000L);
+        ReflectionTestUtils.setField(pools, "maxLifetimeMs", 1800000L);
+        ReflectionTestUtils.setField(pools, "revalidateIntervalMs", 60000L);
+        ReflectionTestUtils.setField(pools, "networkTimeoutMs", 30000L);
+        ReflectionTestUtils.setField(pools, "loginTimeoutMs", 10000L);
+        ReflectionTestUtils.setField(pools, "fetchSize", 100);
+        ReflectionTestUtils.setField(pools, "queryTimeoutMs", 30000L);
+        pools.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        pools.shutdown();
+    }
+
+    @Test
+    void secretCipher_BoundToAssociatedData() {
+        // When
+        String sealed = secretCipher.encrypt("s3cret", projectId.toString());
+
+        // Then
+        assertThat(sealed).startsWith("v1:").doesNotContain("s3cret");
+        assertThat(secretCipher.decrypt(sealed, projectId.toString())).isEqualTo("s3cret");
+        assertThatThrownBy(() -> secretCipher.decrypt(sealed, UUID.randomUUID().toString()))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void open_RunsQueriesOnTheProjectsOwnPool() throws SQLException {
+        // When
+        WarehouseConnector connector = pools.open(profile("acme", 2, 0));
+        Integer answer = connector.executeQuery("SELECT 42", 1, rs -> rs.next() ? rs.getInt(1) : null);
+
+        // Then
+        assertThat(answer).isEqualTo(42);
+        assertThat(pools.current(projectId)).isSameAs(connector);
+        assertThat(pools.pool(projectId)).hasValueSatisfying(pool -> assertThat(pool.getMaxPoolSize()).isEqualTo(2));
+        assertThat(meterRegistry.get("warehouse.profiles.pools.open").gauge().value()).isEqualTo(1.0);
+    }
+
+    @Test
+    void open_AccountWithHostOrProperties_Refused() {
+        // When / Then
+        assertThatThrownBy(() -> pools.open(profile("evil.example/?authenticator=x", 1, 0)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(pools.pool(projectId)).isEmpty();
+    }
+
+    @Test
+    void open_ChangedProfile_ReopensPool() {
+        // Given
+        ProjectConnectionProfile profile = profile("acme", 2, 0);
+        WarehouseConnector first = pools.open(profile);
+
+        // When
+        WarehouseConnector same = pools.open(profile);
+        profile.setUpdatedAt(profile.getUpdatedAt().plusMinutes(1));
+        WarehouseConnector reopened = pools.open(profile);
+
+        // Then
+        assertThat(same).isSameAs(first);
+        assertThat(reopened).isNotSameAs(first);
+        assertThat(pools.pool(projectId)).hasValueSatisfying(pool ->
+                assertThat(pool.version()).isEqualTo(profile.getUpdatedAt()));
+    }
+
+    @Test
+    void execute_PoolAndQueueFull_RefusesAtOnce() throws Exception {
+        // Given one connection and no queue, held by a running call
+        pools.open(profile("acme", 1, 0));
+        ProjectConnectionPool pool = pools.pool(projectId).orElseThrow();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> held = executor.submit(() -> pool.execute("QUERY", () -> {
+                running.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "done";
+            }));
+            assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+
+            // When / Then
+            assertThatThrownBy(() -> pool.execute("QUERY", () -> "queued"))
+                    .isInstanceOf(SnowflakeUnavailableException.class);
+            assertThat(meterRegistry.get("warehouse.profiles.calls.rejected").counter().count()).isEqualTo(1.0);
+
+            release.countDown();
+            assertThat(held.get(5, TimeUnit.SECONDS)).isEqualTo("done");
+            assertThat(pool.execute("QUERY", () -> "admitted")).isEqualTo("admitted");
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void evictIdlePools_ClosesOnlyIdlePools() throws Exception {
+        // Given
+        pools.open(profile("acme", 1, 0));
+        ProjectConnectionPool pool = pools.pool(projectId).orElseThrow();
+        ReflectionTestUtils.setField(pools, "idleTimeoutMs", 0L);
+        Thread.sleep(5);
+
+        // When a call is still running, the pool stays
+        pool.execute("QUERY", () -> {
+            pools.evictIdlePools();
+            return null;
+        });
+        assertThat(pools.pool(projectId)).isPresent();
+
+        // When nothing has run since the cutoff, it goes
+        Thread.sleep(5);
+        pools.evictIdlePools();
+
+        // Then
+        assertThat(pools.pool(projectId)).isEmpty();
+        assertThat(pool.dataSource().isClosed()).isTrue();
+        assertThat(meterRegistry.get("warehouse.profiles.pools.evicted").counter().count()).isEqualTo(1.0);
+    }
+
+    private ProjectConnectionProfile profile(String account, int maxPoolSize, int queueDepth) {
+        ProjectConnectionProfile profile = new ProjectConnectionProfile();
+        profile.setProjectId(projectId);
+        profile.setAccount(account);
+        profile.setUsername("sa");
+        profile.setSecretCiphertext(secretCipher.encrypt("unused", projectId.toString()));
+        profile.setMaxPoolSize(maxPoolSize);
+        profile.setQueueDepth(queueDepth);
+        profile.setUpdatedAt(LocalDateTime.of(2026, 1, 5, 10, 0));
+        return profile;
+    }
+}
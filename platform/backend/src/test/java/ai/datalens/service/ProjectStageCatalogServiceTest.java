@@ -0,0 +1,240 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.response.SnowflakeStageResponse;
+import ai.datalens.entity.ProjectStage;
+import ai.datalens.entity.ProjectStageSync;
+import ai.datalens.repository.ProjectRepository;
+import ai.datalens.repository.ProjectStageRepository;
+import ai.datalens.repository.ProjectStageSyncRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ProjectStageCatalogServiceTest {
+
+    @Mock
+    private ProjectRepository projectRepository;
+
+    @Mock
+    private ProjectStageRepository projectStageRepository;
+
+    @Mock
+    private ProjectStageSyncRepository projectStageSyncRepository;
+
+    @Mock
+    private StageCatalogCache stageCatalogCache;
+
+    @Mock
+    private ProjectWarehouseConnectors projectConnectors;
+
+    @Mock
+    private SnowflakeCircuitBreaker circuitBreaker;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private NameSearchService nameSearchService;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @InjectMocks
+    private ProjectStageCatalogService catalogService;
+
+    private UUID projectId;
+
+    @BeforeEach
+    void setUp() {
+        projectId = UUID.randomUUID();
+        ReflectionTestUtils.setField(catalogService, "batchSize", 500);
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocation -> {
+            TransactionCallback<?> callback = invocation.getArgument(0);
+            return callback.doInTransaction(null);
+        });
+        lenient().when(projectStageSyncRepository.findById(projectId)).thenReturn(Optional.empty());
+    }
+
+    @Test
+    void syncProject_AppliesOnlyTheDiff() throws SQLException {
+        // Given
+        ProjectStage unchanged = storedStage("RAW", "INTERNAL", null);
+        ProjectStage changed = storedStage("EXPORT", "EXTERNAL", "s3://old/");
+        ProjectStage removed = storedStage("TEMP", "INTERNAL", null);
+        when(projectRepository.existsById(projectId)).thenReturn(true);
+        when(projectStageRepository.findByProjectIdOrderByStageNameAsc(projectId))
+                .thenReturn(List.of(changed, unchanged, removed));
+        when(stageCatalogCache.getStagesOrThrow(projectId)).thenReturn(List.of(
+                stage("RAW", "INTERNAL", null),
+                stage("EXPORT", "EXTERNAL", "s3://new/"),
+                stage("BACKUP", "INTERNAL", null)));
+
+        // When
+        ProjectStageCatalogService.SyncResult result = catalogService.syncProject(projectId);
+
+        // Then
+        assertThat(result.total()).isEqualTo(3);
+        assertThat(result.inserted()).isEqualTo(1);
+        assertThat(result.updated()).isEqualTo(1);
+        assertThat(result.deleted()).isEqualTo(1);
+
+        assertThat(capturedBatch("INSERT")).singleElement()
+                .satisfies(row -> assertThat(row[4]).isEqualTo("BACKUP"));
+        assertThat(capturedBatch("UPDATE")).singleElement()
+                .satisfies(row -> assertThat(row[1]).isEqualTo("s3://new/"));
+        assertThat(capturedBatch("DELETE")).singleElement()
+                .satisfies(row -> assertThat(row[0]).isEqualTo(removed.getId()));
+
+        ArgumentCaptor<ProjectStageSync> syncCaptor = ArgumentCaptor.forClass(ProjectStageSync.class);
+        verify(projectStageSyncRepository).save(syncCaptor.capture());
+        assertThat(syncCaptor.getValue().getStageCount()).isEqualTo(3);
+        assertThat(syncCaptor.getValue().getSyncedAt()).isNotNull();
+    }
+
+    @Test
+    void syncProject_NoChanges_WritesNoBatches() throws SQLException {
+        // Given
+        when(projectRepository.existsById(projectId)).thenReturn(true);
+        when(projectStageRepository.findByProjectIdOrderByStageNameAsc(projectId))
+                .thenReturn(List.of(storedStage("RAW", "INTERNAL", null)));
+        when(stageCatalogCache.getStagesOrThrow(projectId)).thenReturn(List.of(stage("RAW", "INTERNAL", null)));
+
+        // When
+        ProjectStageCatalogService.SyncResult result = catalogService.syncProject(projectId);
+
+        // Then
+        assertThat(result.inserted() + result.updated() + result.deleted()).isZero();
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+    }
+
+    @Test
+    void syncProject_ProjectNotFound_ThrowsException() {
+        // Given
+        when(projectRepository.existsById(projectId)).thenReturn(false);
+
+        // When & Then
+        assertThatThrownBy(() -> catalogService.syncProject(projectId))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("Project not found");
+    }
+
+    @Test
+    void getStages_AlreadySynced_ReadsFromDatabaseOnly() throws SQLException {
+        // Given
+        when(projectStageSyncRepository.existsById(projectId)).thenReturn(true);
+        when(projectStageRepository.findByProjectIdOrderByStageNameAsc(projectId))
+                .thenReturn(List.of(storedStage("RAW", "INTERNAL", null)));
+
+        // When
+        List<SnowflakeStageResponse> stages = catalogService.getStages(projectId);
+
+        // Then
+        assertThat(stages).extracting(SnowflakeStageResponse::getStageName).containsExactly("RAW");
+        verify(stageCatalogCache, never()).getStagesOrThrow(any());
+    }
+
+    @Test
+    void getCatalog_OtherUsersProject_ThrowsException() {
+        // Given
+        UUID userId = UUID.randomUUID();
+        when(projectRepository.findByUserIdAndId(userId, projectId)).thenReturn(Optional.empty());
+
+        // When & Then
+        assertThatThrownBy(() -> catalogService.getCatalog(userId, projectId))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("Project not found");
+        verifyNoInteractions(stageCatalogCache, projectStageRepository);
+    }
+
+    @Test
+    void getCatalog_InitialSyncFails_ServesLastGoodCatalogAsStale() throws SQLException {
+        // Given
+        when(projectStageSyncRepository.existsById(projectId)).thenReturn(false);
+        when(projectRepository.existsById(projectId)).thenReturn(true);
+        when(stageCatalogCache.getStagesOrThrow(projectId)).thenThrow(new SnowflakeUnavailableException("circuit open", 30));
+        when(stageCatalogCache.getCatalog(projectId)).thenReturn(
+                new StageCatalogSnapshot(List.of(stage("RAW", "INTERNAL", null)), Instant.now(), true));
+
+        // When
+        ProjectStageCatalogService.CatalogView catalog = catalogService.getCatalog(projectId);
+
+        // Then
+        assertThat(catalog.stale()).isTrue();
+        assertThat(catalog.stages()).extracting(SnowflakeStageResponse::getStageName).containsExactly("RAW");
+    }
+
+    @Test
+    void getCatalog_CircuitNotClosed_FlagsStoredCatalogStale() throws SQLException {
+        // Given
+        when(projectStageSyncRepository.existsById(projectId)).thenReturn(true);
+        when(projectStageRepository.findByProjectIdOrderByStageNameAsc(projectId))
+                .thenReturn(List.of(storedStage("RAW", "INTERNAL", null)));
+        when(circuitBreaker.isDegraded()).thenReturn(true);
+
+        // When
+        ProjectStageCatalogService.CatalogView catalog = catalogService.getCatalog(projectId);
+
+        // Then
+        assertThat(catalog.stale()).isTrue();
+        assertThat(catalog.stages()).hasSize(1);
+    }
+
+    @Test
+    void getCatalog_NoCatalogAnywhere_Throws() throws SQLException {
+        // Given
+        when(projectStageSyncRepository.existsById(projectId)).thenReturn(false);
+        when(projectRepository.existsById(projectId)).thenReturn(true);
+        when(stageCatalogCache.getStagesOrThrow(projectId)).thenThrow(new SQLException("unreachable"));
+        when(stageCatalogCache.getCatalog(projectId)).thenThrow(new SQLException("unreachable"));
+
+        // When & Then
+        assertThatThrownBy(() -> catalogService.getCatalog(projectId)).isInstanceOf(SQLException.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object[]> capturedBatch(String statement) {
+        ArgumentCaptor<Collection<Object[]>> rows = ArgumentCaptor.forClass(Collection.class);
+        verify(jdbcTemplate).batchUpdate(startsWith(statement), rows.capture(), eq(500), any(ParameterizedPreparedStatementSetter.class));
+        return List.copyOf(rows.getValue());
+    }
+
+    private ProjectStage storedStage(String name, String type, String location) {
+        ProjectStage stage = new ProjectStage();
+        stage.setId(UUID.randomUUID());
+        stage.setProjectId(projectId);
+        stage.setStageDatabase("SALES");
+        stage.setStageSchema("PUBLIC");
+        stage.setStageName(name);
+        stage.setStageType(type);
+        stage.setStageLocation(location);
+        stage.setOwner("SYSADMIN");
+        stage.setStageCreated("2024-01-01");
+        return stage;
+    }
+
+    private SnowflakeStageResponse stage(String name, String type, String location) {
+        return new SnowflakeStageResponse(name, "PUBLIC", "SALES", type, location, null, "SYSADMIN", "2024-01-01");
+    }
+}
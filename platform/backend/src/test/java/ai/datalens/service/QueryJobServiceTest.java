@@ -0,0 +1,272 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.request.QueryRequest;
+import ai.datalens.dto.response.QueryJobResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class QueryJobServiceTest {
+
+    private static final Set<String> DONE = Set.of("SUCCEEDED", "FAILED", "CANCELLED", "TIMED_OUT");
+
+    @Mock
+    private WarehouseQueryService warehouseQueryService;
+
+    @Mock
+    private WarehouseQueryScheduler scheduler;
+
+    @Mock
+    private QueryResultStore resultStore;
+
+    @Mock
+    private WarehouseConnector warehouseConnector;
+
+    @InjectMocks
+    private QueryJobService jobService;
+
+    private UUID userId;
+    private UUID projectId;
+
+    @BeforeEach
+    void setUp() {
+        userId = UUID.randomUUID();
+        projectId = UUID.randomUUID();
+        ReflectionTestUtils.setField(jobService, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(jobService, "defaultMaxRows", 100);
+        ReflectionTestUtils.setField(jobService, "maxRows", 1000);
+        ReflectionTestUtils.setField(jobService, "threads", 1);
+        ReflectionTestUtils.setField(jobService, "queueCapacity", 4);
+        ReflectionTestUtils.setField(jobService, "retentionMs", 60000L);
+        ReflectionTestUtils.setField(jobService, "maxResultBytes", 1_000_000L);
+        ReflectionTestUtils.setField(jobService, "abandonAfterMs", 60000L);
+        ReflectionTestUtils.setField(jobService, "sseTimeoutMs", 1000L);
+        jobService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        jobService.shutdown();
+    }
+
+    @Test
+    void submit_RunsInBackgroundAndKeepsResult() throws Exception {
+        // Given a query that runs once the submission has returned
+        WarehouseQueryService.PreparedQuery query = prepared("SELECT 1", 60000);
+        StoredQueryResult stored = StoredQueryResult.inMemory(result());
+        CountDownLatch release = new CountDownLatch(1);
+        when(warehouseQueryService.runStored(eq(query), any(QueryControl.class))).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return stored;
+        });
+        when(resultStore.page(stored, 0, null)).thenReturn(stored.page(0, 100));
+
+        // When
+        QueryJobResponse submitted = jobService.submit(userId, projectId, new QueryRequest("SELECT 1", null, null));
+        release.countDown();
+        QueryJobResponse finished = awaitDone(submitted.getQueryId());
+
+        // Then
+        assertThat(submitted.getStatus()).isIn("QUEUED", "RUNNING");
+        assertThat(finished.getStatus()).isEqualTo("SUCCEEDED");
+        assertThat(finished.getRowCount()).isEqualTo(1);
+        QueryJobService.ResultPage page = jobService.getResult(userId, projectId, submitted.getQueryId(), 0, null);
+        assertThat(page.result().getRowCount()).isEqualTo(1);
+        assertThat(page.totalRows()).isEqualTo(1);
+        assertThat(jobService.getJob(UUID.randomUUID(), projectId, submitted.getQueryId())).isNull();
+    }
+
+    @Test
+    void submit_CachedResult_FinishesAtOnce() throws SQLException {
+        // Given
+        WarehouseQueryService.PreparedQuery query = prepared("SELECT 1", 60000);
+        when(warehouseQueryService.cached(query)).thenReturn(new ColumnarQueryResult("f", result(), true));
+
+        // When
+        QueryJobResponse job = jobService.submit(userId, projectId, new QueryRequest("SELECT 1", null, null));
+
+        // Then
+        assertThat(job.getStatus()).isEqualTo("SUCCEEDED");
+        assertThat(job.getCached()).isTrue();
+        verify(warehouseQueryService, never()).runStored(any(), any());
+    }
+
+    @Test
+    void cancel_RunningQuery_CancelsStatement() throws Exception {
+        // Given
+        WarehouseQueryService.PreparedQuery query = prepared("SELECT * FROM big", 60000);
+        Statement statement = mock(Statement.class);
+        CountDownLatch started = new CountDownLatch(1);
+        blockUntilCancelled(query, statement, started);
+
+        // When
+        QueryJobResponse submitted = jobService.submit(userId, projectId, new QueryRequest("SELECT * FROM big", null, null));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        jobService.cancel(userId, projectId, submitted.getQueryId());
+        QueryJobResponse finished = awaitDone(submitted.getQueryId());
+
+        // Then
+        assertThat(finished.getStatus()).isEqualTo("CANCELLED");
+        verify(statement).cancel();
+        assertThatThrownBy(() -> jobService.getResult(userId, projectId, submitted.getQueryId(), 0, null))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void cancel_QueuedQuery_NeverRuns() throws Exception {
+        // Given the only worker is busy
+        WarehouseQueryService.PreparedQuery busy = prepared("SELECT * FROM big", 60000);
+        CountDownLatch started = new CountDownLatch(1);
+        blockUntilCancelled(busy, mock(Statement.class), started);
+        QueryJobResponse running = jobService.submit(userId, projectId, new QueryRequest("SELECT * FROM big", null, null));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        WarehouseQueryService.PreparedQuery waiting = prepared("SELECT 2", 60000);
+        QueryJobResponse queued = jobService.submit(userId, projectId, new QueryRequest("SELECT 2", null, null));
+
+        // When
+        QueryJobResponse cancelled = jobService.cancel(userId, projectId, queued.getQueryId());
+        jobService.cancel(userId, projectId, running.getQueryId());
+        awaitDone(running.getQueryId());
+
+        // Then
+        assertThat(cancelled.getStatus()).isEqualTo("CANCELLED");
+        assertThat(cancelled.getStartedAt()).isNull();
+        verify(warehouseQueryService, never()).runStored(eq(waiting), any(QueryControl.class));
+    }
+
+    @Test
+    void cancel_FinishedQuery_LeftAsIs() throws Exception {
+        // Given
+        WarehouseQueryService.PreparedQuery query = prepared("SELECT 1", 60000);
+        StoredQueryResult stored = StoredQueryResult.inMemory(result());
+        when(warehouseQueryService.runStored(eq(query), any(QueryControl.class))).thenReturn(stored);
+        when(resultStore.page(stored, 0, null)).thenReturn(stored.page(0, 100));
+        QueryJobResponse submitted = jobService.submit(userId, projectId, new QueryRequest("SELECT 1", null, null));
+        awaitDone(submitted.getQueryId());
+
+        // When
+        ReflectionTestUtils.setField(jobService, "abandonAfterMs", 0L);
+        jobService.cancelAbandoned();
+        QueryJobResponse cancelled = jobService.cancel(userId, projectId, submitted.getQueryId());
+
+        // Then
+        assertThat(cancelled.getStatus()).isEqualTo("SUCCEEDED");
+        assertThat(cancelled.getError()).isNull();
+        assertThat(jobService.getResult(userId, projectId, submitted.getQueryId(), 0, null).result().getRowCount())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void run_PastTimeout_CancelledAsTimedOut() throws Exception {
+        // Given
+        WarehouseQueryService.PreparedQuery query = prepared("SELECT * FROM big", 50);
+        Statement statement = mock(Statement.class);
+        blockUntilCancelled(query, statement, new CountDownLatch(1));
+
+        // When
+        QueryJobResponse finished = awaitDone(
+                jobService.submit(userId, projectId, new QueryRequest("SELECT * FROM big", null, null)).getQueryId());
+
+        // Then
+        assertThat(finished.getStatus()).isEqualTo("TIMED_OUT");
+        verify(statement).cancel();
+    }
+
+    @Test
+    void cancelAbandoned_UnpolledQuery_Cancelled() throws Exception {
+        // Given
+        ReflectionTestUtils.setField(jobService, "abandonAfterMs", 0L);
+        WarehouseQueryService.PreparedQuery query = prepared("SELECT * FROM big", 60000);
+        Statement statement = mock(Statement.class);
+        CountDownLatch started = new CountDownLatch(1);
+        blockUntilCancelled(query, statement, started);
+        QueryJobResponse submitted = jobService.submit(userId, projectId, new QueryRequest("SELECT * FROM big", null, null));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        Thread.sleep(5);
+
+        // When
+        jobService.cancelAbandoned();
+        QueryJobResponse finished = awaitDone(submitted.getQueryId());
+
+        // Then
+        assertThat(finished.getStatus()).isEqualTo("CANCELLED");
+        assertThat(finished.getError()).contains("not polled");
+        verify(statement).cancel();
+    }
+
+    private WarehouseQueryService.PreparedQuery prepared(String sql, long timeoutMs) {
+        WarehouseQueryService.PreparedQuery query = new WarehouseQueryService.PreparedQuery(userId, projectId,
+                warehouseConnector, sql, QueryFingerprint.of(sql), 100, timeoutMs, null, true);
+        lenient().when(warehouseQueryService.prepare(eq(userId), eq(projectId), any(QueryRequest.class), anyInt(), anyInt()))
+                .thenReturn(query);
+        return query;
+    }
+
+    /**
+     * Run like a connector would: attach a statement, then block until it is cancelled
+     */
+    private void blockUntilCancelled(WarehouseQueryService.PreparedQuery query, Statement statement,
+                                     CountDownLatch started) throws SQLException {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            cancelled.countDown();
+            return null;
+        }).when(statement).cancel();
+        when(warehouseQueryService.runStored(eq(query), any(QueryControl.class))).thenAnswer(invocation -> {
+            QueryControl control = invocation.getArgument(1);
+            control.attach(statement);
+            try {
+                started.countDown();
+                if (!cancelled.await(5, TimeUnit.SECONDS)) {
+                    throw new AssertionError("Statement was not cancelled");
+                }
+                throw control.translate(new SQLException("Statement cancelled", "57014"));
+            } finally {
+                control.detach();
+            }
+        });
+    }
+
+    private static QueryResult result() throws SQLException {
+        try (Connection h2 = DriverManager.getConnection("jdbc:h2:mem:query_jobs", "sa", "");
+             Statement stmt = h2.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT 1 AS ONE")) {
+            return QueryResult.read(rs, 100, System.nanoTime());
+        }
+    }
+
+    private QueryJobResponse awaitDone(UUID queryId) throws InterruptedException {
+        for (int i = 0; i < 200; i++) {
+            QueryJobResponse job = jobService.getJob(userId, projectId, queryId);
+            if (job != null && DONE.contains(job.getStatus())) {
+                return job;
+            }
+            Thread.sleep(25);
+        }
+        throw new AssertionError("Query " + queryId + " did not finish");
+    }
+}
@@ -0,0 +1,156 @@
+package ai.datalens.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class QueryResultStoreTest {
+
+    private static final String SQL = "SELECT X AS ID, 'row-' || X AS NAME, CAST(X AS DECIMAL(20,2)) AS AMOUNT,"
+            + " CASE WHEN MOD(X, 2) = 0 THEN NULL ELSE X END AS ODD FROM SYSTEM_RANGE(1, 20000)";
+
+    @TempDir
+    Path directory;
+
+    private QueryResultStore store;
+    private Connection h2;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        store = new QueryResultStore();
+        ReflectionTestUtils.setField(store, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(store, "directory", directory.toString());
+        ReflectionTestUtils.setField(store, "headRows", 100);
+        ReflectionTestUtils.setField(store, "chunkRows", 64);
+        // Small segments so the result spans many of them
+        ReflectionTestUtils.setField(store, "segmentBytes", 16384L);
+        ReflectionTestUtils.setField(store, "maxDiskBytes", 64L * 1024 * 1024);
+        ReflectionTestUtils.setField(store, "ttlMs", 60000L);
+        ReflectionTestUtils.setField(store, "defaultPageRows", 50);
+        ReflectionTestUtils.setField(store, "maxPageRows", 1000);
+        store.init();
+        h2 = DriverManager.getConnection("jdbc:h2:mem:query_result_store", "sa", "");
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        store.shutdown();
+        h2.close();
+    }
+
+    @Test
+    void write_LargeResult_SpillsAndServesAnyPage() throws Exception {
+        // When
+        StoredQueryResult result = write(50000);
+
+        // Then
+        assertThat(result.rowCount()).isEqualTo(20000);
+        assertThat(result.truncated()).isFalse();
+        assertThat(result.isSpilled()).isTrue();
+        assertThat(segments()).hasSizeGreaterThan(1);
+
+        QueryResult deep = store.page(result, 15000, 3);
+        assertThat(deep.rowCount()).isEqualTo(3);
+        assertThat(deep.truncated()).isTrue();
+        assertThat(deep.rows().get(0)).containsExactly(15001L, "row-15001", new BigDecimal("15001.00"), 15001L);
+        assertThat(deep.rows().get(1)).containsExactly(15002L, "row-15002", new BigDecimal("15002.00"), null);
+
+        // Across the end of the in-memory head
+        QueryResult boundary = store.page(result, 98, 4);
+        assertThat(boundary.rows()).extracting(row -> row[0]).containsExactly(99L, 100L, 101L, 102L);
+
+        QueryResult last = store.page(result, 19998, 10);
+        assertThat(last.rows()).extracting(row -> row[1]).containsExactly("row-19999", "row-20000");
+        assertThat(last.truncated()).isFalse();
+        assertThat(store.page(result, 30000, 10).rowCount()).isZero();
+    }
+
+    @Test
+    void write_SmallResult_StaysInMemory() throws Exception {
+        // When
+        StoredQueryResult result = write(10);
+
+        // Then
+        assertThat(result.isSpilled()).isFalse();
+        assertThat(result.rowCount()).isEqualTo(10);
+        assertThat(result.truncated()).isTrue();
+        assertThat(segments()).isEmpty();
+        assertThat(store.page(result, 0, null).rowCount()).isEqualTo(10);
+    }
+
+    @Test
+    void write_PastMaxRowsOrDiskBudget_Truncated() throws Exception {
+        // When
+        StoredQueryResult limited = write(500);
+        ReflectionTestUtils.setField(store, "maxDiskBytes", 4096L);
+        store.init();
+        StoredQueryResult overBudget = write(50000);
+
+        // Then
+        assertThat(limited.rowCount()).isEqualTo(500);
+        assertThat(limited.truncated()).isTrue();
+        assertThat(overBudget.truncated()).isTrue();
+        assertThat(overBudget.rowCount()).isBetween(101L, 19999L);
+        assertThat(overBudget.diskBytes()).isLessThanOrEqualTo(4096L);
+        assertThat(store.page(overBudget, overBudget.rowCount() - 1, 1).rowCount()).isEqualTo(1);
+    }
+
+    @Test
+    void discard_DeletesSegments() throws Exception {
+        // Given
+        StoredQueryResult result = write(50000);
+        assertThat(segments()).isNotEmpty();
+
+        // When
+        store.discard(result);
+
+        // Then the removal listener runs asynchronously
+        Path resultDirectory = directory.resolve("result-" + result.id());
+        for (int i = 0; i < 200 && Files.exists(resultDirectory); i++) {
+            Thread.sleep(10);
+        }
+        assertThat(segments()).isEmpty();
+        assertThatThrownBy(() -> store.page(result, 0, 10)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void page_InvalidArguments_Rejected() throws Exception {
+        // Given
+        StoredQueryResult result = write(10);
+
+        // When / Then
+        assertThatThrownBy(() -> store.page(result, -1, 10)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> store.page(result, 0, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private StoredQueryResult write(int maxRows) throws SQLException {
+        try (Statement stmt = h2.createStatement();
+             ResultSet rs = stmt.executeQuery(SQL)) {
+            return store.write(rs, maxRows, System.nanoTime());
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(path -> path.getFileName().toString().startsWith("segment-")).toList();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package ai.datalens.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.SocketTimeoutException;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SnowflakeCircuitBreakerTest {
+
+    private SnowflakeCircuitBreaker circuitBreaker;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        circuitBreaker = new SnowflakeCircuitBreaker();
+        ReflectionTestUtils.setField(circuitBreaker, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(circuitBreaker, "failureRateThreshold", 50);
+        ReflectionTestUtils.setField(circuitBreaker, "slidingWindow", 4);
+        ReflectionTestUtils.setField(circuitBreaker, "minimumCalls", 4);
+        ReflectionTestUtils.setField(circuitBreaker, "openDurationMs", 100L);
+        ReflectionTestUtils.setField(circuitBreaker, "halfOpenCalls", 1);
+        ReflectionTestUtils.setField(circuitBreaker, "maxConcurrent", 1);
+        ReflectionTestUtils.setField(circuitBreaker, "maxWaitMs", 10L);
+        circuitBreaker.init();
+    }
+
+    @Test
+    void execute_FailureRateReached_OpensAndFailsFast() throws SQLException {
+        // Given
+        circuitBreaker.execute("ok", () -> 1);
+        circuitBreaker.execute("ok", () -> 1);
+        fail();
+        fail();
+        AtomicInteger attempts = new AtomicInteger();
+
+        // When & Then
+        assertThat(circuitBreaker.getState()).isEqualTo(SnowflakeCircuitBreaker.State.OPEN);
+        assertThatThrownBy(() -> circuitBreaker.execute("blocked", attempts::incrementAndGet))
+                .isInstanceOf(SnowflakeUnavailableException.class);
+        assertThat(attempts.get()).isZero();
+        assertThat(meterRegistry.get("snowflake.circuit.transitions").tag("to", "OPEN").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void execute_BelowMinimumCalls_StaysClosed() {
+        // When
+        fail();
+        fail();
+
+        // Then
+        assertThat(circuitBreaker.getState()).isEqualTo(SnowflakeCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void execute_HalfOpenProbeSucceeds_Closes() throws Exception {
+        // Given
+        openCircuit();
+        Thread.sleep(150);
+
+        // When
+        int result = circuitBreaker.execute("probe", () -> 42);
+
+        // Then
+        assertThat(result).isEqualTo(42);
+        assertThat(circuitBreaker.getState()).isEqualTo(SnowflakeCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void execute_HalfOpenProbeFails_Reopens() throws Exception {
+        // Given
+        openCircuit();
+        Thread.sleep(150);
+
+        // When
+        fail();
+
+        // Then
+        assertThat(circuitBreaker.getState()).isEqualTo(SnowflakeCircuitBreaker.State.OPEN);
+        assertThat(circuitBreaker.retryAfterSeconds()).isPositive();
+    }
+
+    @Test
+    void execute_BulkheadFull_RejectsWithoutCalling() throws Exception {
+        // Given
+        CountDownLatch inCall = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.submit(() -> circuitBreaker.execute("slow", () -> {
+            inCall.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        assertThat(inCall.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // When & Then
+        assertThatThrownBy(() -> circuitBreaker.execute("second", () -> 1))
+                .isInstanceOf(SnowflakeUnavailableException.class)
+                .hasMessageContaining("concurrent");
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    void execute_RuntimeException_NotCountedAsFailure() {
+        // When
+        for (int i = 0; i < 4; i++) {
+            assertThatThrownBy(() -> circuitBreaker.execute("client gone", () -> {
+                throw new IllegalStateException("broken pipe");
+            })).isInstanceOf(IllegalStateException.class);
+        }
+
+        // Then
+        assertThat(circuitBreaker.getState()).isEqualTo(SnowflakeCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void execute_StatementError_NotCountedAsFailure() {
+        // When
+        for (int i = 0; i < 4; i++) {
+            assertThatThrownBy(() -> circuitBreaker.execute("bad query", () -> {
+                throw new SQLException("SQL compilation error: Stage 'X' does not exist", "02000", 2003);
+            })).isInstanceOf(SQLException.class);
+        }
+
+        // Then
+        assertThat(circuitBreaker.getState()).isEqualTo(SnowflakeCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void isTransient_ConnectivityFailures() {
+        assertThat(SnowflakeCircuitBreaker.isTransient(new SQLTimeoutException("timeout"))).isTrue();
+        assertThat(SnowflakeCircuitBreaker.isTransient(new SQLException("connection lost", "08006"))).isTrue();
+        assertThat(SnowflakeCircuitBreaker.isTransient(
+                new SQLException("JDBC driver encountered communication error", new SocketTimeoutException()))).isTrue();
+        assertThat(SnowflakeCircuitBreaker.isTransient(new SQLException("syntax error", "42000"))).isFalse();
+        assertThat(SnowflakeCircuitBreaker.isTransient(new SQLException("Insufficient privileges", "42501"))).isFalse();
+    }
+
+    private void openCircuit() {
+        for (int i = 0; i < 4; i++) {
+            fail();
+        }
+        assertThat(circuitBreaker.getState()).isEqualTo(SnowflakeCircuitBreaker.State.OPEN);
+    }
+
+    private void fail() {
+        assertThatThrownBy(() -> circuitBreaker.execute("failing", () -> {
+            throw new SQLTimeoutException("timeout");
+        })).isInstanceOf(SQLException.class);
+    }
+}
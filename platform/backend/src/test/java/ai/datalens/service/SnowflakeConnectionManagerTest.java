@@ -0,0 +1,88 @@
+package ai.datalens.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SnowflakeConnectionManagerTest {
+
+    private SnowflakeConnectionManager connectionManager;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        connectionManager = new SnowflakeConnectionManager();
+        ReflectionTestUtils.setField(connectionManager, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(connectionManager, "driverClassName", "org.h2.Driver");
+        ReflectionTestUtils.setField(connectionManager, "maxPoolSize", 2);
+        ReflectionTestUtils.setField(connectionManager, "minPoolSize", 0);
+        ReflectionTestUtils.setField(connectionManager, "initialPoolSize", 0);
+        ReflectionTestUtils.setField(connectionManager, "connectionTimeoutMs", 2000L);
+        ReflectionTestUtils.setField(connectionManager, "networkTimeoutMs", 300000L);
+        ReflectionTestUtils.setField(connectionManager, "loginTimeoutMs", 60000L);
+        ReflectionTestUtils.setField(connectionManager, "idleTimeoutMs", 600000L);
+        ReflectionTestUtils.setField(connectionManager, "maxLifetimeMs", 1800000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        connectionManager.shutdown();
+    }
+
+    @Test
+    void getConnection_NotConfigured_Throws() {
+        ReflectionTestUtils.setField(connectionManager, "snowflakeUrl", "");
+        connectionManager.init();
+
+        assertThat(connectionManager.isConfigured()).isFalse();
+        assertThatThrownBy(() -> connectionManager.getConnection())
+                .isInstanceOf(SQLException.class)
+                .hasMessageContaining("not configured");
+    }
+
+    @Test
+    void getConnection_ReusesPhysicalConnection() throws SQLException {
+        ReflectionTestUtils.setField(connectionManager, "snowflakeUrl", "jdbc:h2:mem:snowflake_pool_test;DB_CLOSE_DELAY=-1");
+        connectionManager.init();
+
+        try (Connection connection = connectionManager.getConnection()) {
+            assertThat(connection.isValid(1)).isTrue();
+        }
+        try (Connection connection = connectionManager.getConnection()) {
+            assertThat(connection.isValid(1)).isTrue();
+        }
+
+        assertThat(meterRegistry.get("snowflake.pool.connections.created").counter().count()).isEqualTo(1.0);
+        assertThat(meterRegistry.get("hikaricp.connections.acquire").tag("pool", "snowflake").timer().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("snowflake.pool.connections.age.max").gauge().value()).isGreaterThanOrEqualTo(0.0);
+    }
+
+    @Test
+    void getConnection_DriverMissing_Throws() {
+        ReflectionTestUtils.setField(connectionManager, "snowflakeUrl", "jdbc:snowflake://example.snowflakecomputing.com");
+        ReflectionTestUtils.setField(connectionManager, "driverClassName", "com.example.MissingDriver");
+        connectionManager.init();
+
+        assertThatThrownBy(() -> connectionManager.getConnection())
+                .isInstanceOf(SQLException.class);
+    }
+
+    @Test
+    void connectionProperties_AllowsOneStatementPerExecute() {
+        Properties props = SnowflakeConnectionManager.connectionProperties("analyst", "secret", null, "WH", null, null,
+                300000L, 60000L);
+
+        assertThat(props.getProperty("MULTI_STATEMENT_COUNT")).isEqualTo("1");
+        assertThat(props).doesNotContainKey("role");
+    }
+}
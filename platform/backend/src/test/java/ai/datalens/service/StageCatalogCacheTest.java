@@ -0,0 +1,178 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.response.SnowflakeStageResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StageCatalogCacheTest {
+
+    @Mock
+    private WarehouseConnector warehouseConnector;
+
+    @Mock
+    private ProjectWarehouseConnectors projectConnectors;
+
+    @InjectMocks
+    private StageCatalogCache stageCatalogCache;
+
+    private SimpleMeterRegistry meterRegistry;
+    private StageCatalogKey key;
+    private UUID projectId;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        ReflectionTestUtils.setField(stageCatalogCache, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(stageCatalogCache, "refreshAfterMs", 60000L);
+        ReflectionTestUtils.setField(stageCatalogCache, "maxStaleMs", 600000L);
+        ReflectionTestUtils.setField(stageCatalogCache, "maxStages", 1000L);
+        ReflectionTestUtils.setField(stageCatalogCache, "refreshThreads", 1);
+        stageCatalogCache.init();
+
+        key = new StageCatalogKey("ACME", "SALES", "PUBLIC");
+        lenient().when(warehouseConnector.catalogKey()).thenReturn(key);
+        projectId = UUID.randomUUID();
+        lenient().when(projectConnectors.forProject(projectId)).thenReturn(warehouseConnector);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stageCatalogCache.shutdown();
+    }
+
+    @Test
+    void getStages_SecondCallIsServedFromCache() throws SQLException {
+        // Given
+        when(warehouseConnector.fetchStages()).thenReturn(List.of(stage("RAW")));
+
+        // When
+        List<SnowflakeStageResponse> first = stageCatalogCache.getStages(projectId);
+        List<SnowflakeStageResponse> second = stageCatalogCache.getStages(projectId);
+
+        // Then
+        assertThat(first).extracting(SnowflakeStageResponse::getStageName).containsExactly("RAW");
+        assertThat(second).isSameAs(first);
+        verify(warehouseConnector, times(1)).fetchStages();
+        assertThat(meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count()).isEqualTo(1.0);
+        assertThat(meterRegistry.get("cache.gets").tag("result", "miss").functionCounter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void getStages_ConcurrentMissesShareOneLoad() throws Exception {
+        // Given
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch releaseLoad = new CountDownLatch(1);
+        when(warehouseConnector.fetchStages()).thenAnswer(invocation -> {
+            loadStarted.countDown();
+            releaseLoad.await(5, TimeUnit.SECONDS);
+            return List.of(stage("RAW"));
+        });
+
+        // When
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        List<Future<List<SnowflakeStageResponse>>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(callers.submit(() -> stageCatalogCache.getStages(projectId)));
+        }
+        assertThat(loadStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        releaseLoad.countDown();
+
+        // Then
+        for (Future<List<SnowflakeStageResponse>> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS)).hasSize(1);
+        }
+        callers.shutdown();
+        verify(warehouseConnector, times(1)).fetchStages();
+    }
+
+    @Test
+    void refresh_ReloadsFromSnowflake() throws SQLException {
+        // Given
+        when(warehouseConnector.fetchStages())
+                .thenReturn(List.of(stage("RAW")))
+                .thenReturn(List.of(stage("RAW"), stage("EXPORT")));
+        stageCatalogCache.getStages(projectId);
+
+        // When
+        List<SnowflakeStageResponse> refreshed = stageCatalogCache.refresh(projectId);
+
+        // Then
+        assertThat(refreshed).hasSize(2);
+        verify(warehouseConnector, times(2)).fetchStages();
+    }
+
+    @Test
+    void getCatalog_LoadFailure_ServesLastGoodCatalogAsStale() throws SQLException {
+        // Given
+        when(warehouseConnector.fetchStages())
+                .thenReturn(List.of(stage("RAW")))
+                .thenThrow(new SnowflakeUnavailableException("circuit open", 30));
+        stageCatalogCache.getStages(projectId);
+        stageCatalogCache.invalidate(projectId);
+
+        // When
+        StageCatalogSnapshot snapshot = stageCatalogCache.getCatalog(projectId);
+
+        // Then
+        assertThat(snapshot.stale()).isTrue();
+        assertThat(snapshot.stages()).extracting(SnowflakeStageResponse::getStageName).containsExactly("RAW");
+    }
+
+    @Test
+    void getCatalog_LoadFailureWithoutPriorCatalog_Throws() throws SQLException {
+        // Given
+        when(warehouseConnector.fetchStages()).thenThrow(new SQLException("unreachable"));
+
+        // When & Then
+        assertThatThrownBy(() -> stageCatalogCache.getCatalog(projectId))
+                .isInstanceOf(SQLException.class)
+                .hasMessage("unreachable");
+    }
+
+    @Test
+    void getStages_ProjectsOnDifferentWarehousesGetTheirOwnCatalog() throws SQLException {
+        // Given
+        UUID otherProject = UUID.randomUUID();
+        WarehouseConnector otherConnector = mock(WarehouseConnector.class);
+        when(projectConnectors.forProject(otherProject)).thenReturn(otherConnector);
+        when(otherConnector.catalogKey()).thenReturn(new StageCatalogKey("OTHER", "SALES", "PUBLIC"));
+        when(warehouseConnector.fetchStages()).thenReturn(List.of(stage("RAW")));
+        when(otherConnector.fetchStages()).thenReturn(List.of(stage("EXPORT")));
+
+        // When
+        List<SnowflakeStageResponse> own = stageCatalogCache.getStages(projectId);
+        List<SnowflakeStageResponse> other = stageCatalogCache.getStages(otherProject);
+
+        // Then
+        assertThat(own).extracting(SnowflakeStageResponse::getStageName).containsExactly("RAW");
+        assertThat(other).extracting(SnowflakeStageResponse::getStageName).containsExactly("EXPORT");
+        verify(warehouseConnector, times(1)).fetchStages();
+        verify(otherConnector, times(1)).fetchStages();
+    }
+
+    private SnowflakeStageResponse stage(String name) {
+        return new SnowflakeStageResponse(name, "PUBLIC", "SALES", "INTERNAL", null, null, "SYSADMIN", "2024-01-01");
+    }
+}
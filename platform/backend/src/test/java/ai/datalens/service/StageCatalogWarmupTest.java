@@ -0,0 +1,182 @@
+package ai.datalens.service;
+
+import ai.datalens.repository.ProjectRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StageCatalogWarmupTest {
+
+    @Mock
+    private ProjectRepository projectRepository;
+
+    @Mock
+    private ProjectStageCatalogService projectStageCatalogService;
+
+    @Mock
+    private WarehouseConnector warehouseConnector;
+
+    @Mock
+    private ProjectWarehouseConnectors projectConnectors;
+
+    @Mock
+    private SnowflakeCircuitBreaker circuitBreaker;
+
+    @InjectMocks
+    private StageCatalogWarmup warmup;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        ReflectionTestUtils.setField(warmup, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(warmup, "enabled", true);
+        ReflectionTestUtils.setField(warmup, "maxProjects", 50);
+        ReflectionTestUtils.setField(warmup, "activeWithinMs", 86400000L);
+        ReflectionTestUtils.setField(warmup, "parallelism", 2);
+        ReflectionTestUtils.setField(warmup, "readyFraction", 0.5);
+        ReflectionTestUtils.setField(warmup, "maxStartupWaitMs", 60000L);
+        warmup.init();
+        lenient().when(warehouseConnector.isConfigured()).thenReturn(true);
+        lenient().when(projectConnectors.shared()).thenReturn(warehouseConnector);
+        lenient().when(projectConnectors.forProject(any(UUID.class))).thenReturn(warehouseConnector);
+    }
+
+    @AfterEach
+    void tearDown() {
+        warmup.shutdown();
+    }
+
+    @Test
+    void warmOnStartup_EnoughProjectsLoaded_Ready() throws Exception {
+        // Given four recently active projects, one of which fails to load
+        List<UUID> projectIds = List.of(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+        when(projectRepository.findActiveProjectIdsUpdatedSince(any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(projectIds);
+        when(projectStageCatalogService.getCatalog(any(UUID.class))).thenReturn(catalog(false));
+        when(projectStageCatalogService.getCatalog(projectIds.get(3))).thenThrow(new SQLException("login failed"));
+        assertThat(warmup.health().getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+
+        // When
+        warmup.warmOnStartup();
+        awaitRoundFinished();
+
+        // Then
+        assertThat(warmup.health().getStatus()).isEqualTo(Status.UP);
+        assertThat(warmup.health().getDetails()).containsEntry("warmed", 3).containsEntry("failed", 1);
+        assertThat(meterRegistry.get("snowflake.warmup.projects").tag("outcome", "warmed").counter().count())
+                .isEqualTo(3.0);
+        verify(projectRepository).findActiveProjectIdsUpdatedSince(any(LocalDateTime.class),
+                argThat(pageable -> pageable.getPageSize() == 50));
+        for (UUID projectId : projectIds) {
+            verify(projectStageCatalogService).getCatalog(projectId);
+        }
+    }
+
+    @Test
+    void warmOnStartup_TooFewLoaded_OutOfServiceUntilMaxWait() throws Exception {
+        // Given every catalog comes back stale
+        when(projectRepository.findActiveProjectIdsUpdatedSince(any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(UUID.randomUUID(), UUID.randomUUID()));
+        when(projectStageCatalogService.getCatalog(any(UUID.class))).thenReturn(catalog(true));
+
+        // When
+        warmup.warmOnStartup();
+        awaitRoundFinished();
+
+        // Then
+        assertThat(warmup.health().getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+        ReflectionTestUtils.setField(warmup, "maxStartupWaitMs", 0L);
+        assertThat(warmup.health().getStatus()).isEqualTo(Status.UP);
+    }
+
+    @Test
+    void warmOnStartup_NotConfigured_ReadyWithoutWarming() throws Exception {
+        // Given
+        when(warehouseConnector.isConfigured()).thenReturn(false);
+        when(projectRepository.findActiveProjectIdsUpdatedSince(any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(UUID.randomUUID()));
+
+        // When
+        warmup.warmOnStartup();
+        awaitRoundFinished();
+
+        // Then
+        assertThat(warmup.health().getStatus()).isEqualTo(Status.UP);
+        verifyNoInteractions(projectStageCatalogService);
+    }
+
+    @Test
+    void warm_RoundRunning_NotStartedAgain() throws Exception {
+        // Given a round blocked on its only project
+        CountDownLatch release = new CountDownLatch(1);
+        when(projectRepository.findActiveProjectIdsUpdatedSince(any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(UUID.randomUUID()));
+        when(projectStageCatalogService.getCatalog(any(UUID.class))).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return catalog(false);
+        });
+        assertThat(warmup.warm(true)).isTrue();
+
+        // When / Then
+        assertThat(warmup.warm(true)).isFalse();
+        release.countDown();
+        awaitRoundFinished();
+        assertThat(warmup.warm(true)).isTrue();
+    }
+
+    @Test
+    void rewarm_CircuitOpen_WarmsOnlyProjectsWithTheirOwnConnection() throws Exception {
+        // Given
+        UUID sharedProject = UUID.randomUUID();
+        UUID ownProject = UUID.randomUUID();
+        WarehouseConnector ownConnector = mock(WarehouseConnector.class);
+        when(ownConnector.isConfigured()).thenReturn(true);
+        when(projectConnectors.forProject(ownProject)).thenReturn(ownConnector);
+        when(circuitBreaker.getState()).thenReturn(SnowflakeCircuitBreaker.State.OPEN);
+        when(projectRepository.findActiveProjectIdsUpdatedSince(any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(sharedProject, ownProject));
+        when(projectStageCatalogService.getCatalog(ownProject)).thenReturn(catalog(false));
+
+        // When
+        warmup.rewarm();
+        awaitRoundFinished();
+
+        // Then
+        verify(projectStageCatalogService).getCatalog(ownProject);
+        verify(projectStageCatalogService, never()).getCatalog(sharedProject);
+    }
+
+    private static ProjectStageCatalogService.CatalogView catalog(boolean stale) {
+        return new ProjectStageCatalogService.CatalogView(List.of(), LocalDateTime.now(), stale);
+    }
+
+    private void awaitRoundFinished() throws InterruptedException {
+        for (int i = 0; i < 200 && meterRegistry.get("snowflake.warmup.duration").timer().count() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(meterRegistry.get("snowflake.warmup.duration").timer().count()).isPositive();
+    }
+}
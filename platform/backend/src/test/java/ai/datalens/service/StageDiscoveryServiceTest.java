@@ -0,0 +1,167 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.response.SnowflakeStageResponse;
+import ai.datalens.entity.Project;
+import ai.datalens.repository.ProjectRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StageDiscoveryServiceTest {
+
+    @Mock
+    private WarehouseConnector warehouseConnector;
+
+    @Mock
+    private ProjectWarehouseConnectors projectConnectors;
+
+    @Mock
+    private ProjectRepository projectRepository;
+
+    @InjectMocks
+    private StageDiscoveryService discoveryService;
+
+    private SimpleMeterRegistry meterRegistry;
+    private UUID userId;
+    private UUID projectId;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        ReflectionTestUtils.setField(discoveryService, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(discoveryService, "parallelism", 4);
+        ReflectionTestUtils.setField(discoveryService, "timeoutMs", 5000L);
+        ReflectionTestUtils.setField(discoveryService, "excludedDatabases", Set.of("SNOWFLAKE"));
+        discoveryService.init();
+
+        userId = UUID.randomUUID();
+        projectId = UUID.randomUUID();
+        lenient().when(projectRepository.findByUserIdAndId(userId, projectId)).thenReturn(Optional.of(new Project()));
+        lenient().when(projectConnectors.forProject(projectId)).thenReturn(warehouseConnector);
+        lenient().when(warehouseConnector.maxConcurrency()).thenReturn(10);
+    }
+
+    @AfterEach
+    void tearDown() {
+        discoveryService.shutdown();
+    }
+
+    @Test
+    void discover_MergesAllSchemasSorted() throws SQLException {
+        // Given
+        when(warehouseConnector.listSchemas()).thenReturn(List.of(
+                schema("SALES", "PUBLIC"), schema("ANALYTICS", "RAW")));
+        when(warehouseConnector.fetchStagesInSchema("SALES", "PUBLIC"))
+                .thenReturn(List.of(stage("SALES", "PUBLIC", "EXPORT")));
+        when(warehouseConnector.fetchStagesInSchema("ANALYTICS", "RAW"))
+                .thenReturn(List.of(stage("ANALYTICS", "RAW", "LANDING"), stage("ANALYTICS", "RAW", "ARCHIVE")));
+
+        // When
+        StageDiscoveryService.DiscoveryResult result = discoveryService.discover(userId, projectId);
+
+        // Then
+        assertThat(result.isPartial()).isFalse();
+        assertThat(result.schemasScanned()).isEqualTo(2);
+        assertThat(result.stages()).extracting(SnowflakeStageResponse::getStageName)
+                .containsExactly("ARCHIVE", "LANDING", "EXPORT");
+        assertThat(meterRegistry.get("snowflake.discovery.schema").tag("outcome", "success").timer().count())
+                .isEqualTo(2);
+    }
+
+    @Test
+    void discover_SchemaFails_ReportsFailureAndKeepsOthers() throws SQLException {
+        // Given
+        when(warehouseConnector.listSchemas()).thenReturn(List.of(
+                schema("SALES", "PUBLIC"), schema("SALES", "LOCKED")));
+        when(warehouseConnector.fetchStagesInSchema("SALES", "PUBLIC"))
+                .thenReturn(List.of(stage("SALES", "PUBLIC", "EXPORT")));
+        when(warehouseConnector.fetchStagesInSchema("SALES", "LOCKED"))
+                .thenThrow(new SQLException("Insufficient privileges"));
+
+        // When
+        StageDiscoveryService.DiscoveryResult result = discoveryService.discover(userId, projectId);
+
+        // Then
+        assertThat(result.isPartial()).isTrue();
+        assertThat(result.stages()).extracting(SnowflakeStageResponse::getStageName).containsExactly("EXPORT");
+        assertThat(result.failures()).singleElement().satisfies(failure -> {
+            assertThat(failure.schema()).isEqualTo("LOCKED");
+            assertThat(failure.error()).contains("Insufficient privileges");
+        });
+    }
+
+    @Test
+    void discover_SkipsInformationSchemaAndExcludedDatabases() throws SQLException {
+        // Given
+        when(warehouseConnector.listSchemas()).thenReturn(List.of(
+                schema("SALES", "INFORMATION_SCHEMA"), schema("SNOWFLAKE", "ACCOUNT_USAGE"), schema("SALES", "PUBLIC")));
+        when(warehouseConnector.fetchStagesInSchema("SALES", "PUBLIC")).thenReturn(List.of());
+
+        // When
+        StageDiscoveryService.DiscoveryResult result = discoveryService.discover(userId, projectId);
+
+        // Then
+        assertThat(result.schemasScanned()).isEqualTo(1);
+        verify(warehouseConnector, times(1)).fetchStagesInSchema(anyString(), anyString());
+    }
+
+    @Test
+    void discover_UsesTheProjectsConnector() throws SQLException {
+        // Given
+        WarehouseConnector ownConnector = mock(WarehouseConnector.class);
+        when(projectConnectors.forProject(projectId)).thenReturn(ownConnector);
+        when(ownConnector.maxConcurrency()).thenReturn(2);
+        when(ownConnector.listSchemas()).thenReturn(List.of(schema("SALES", "PUBLIC")));
+        when(ownConnector.fetchStagesInSchema("SALES", "PUBLIC")).thenReturn(List.of(stage("SALES", "PUBLIC", "EXPORT")));
+
+        // When
+        StageDiscoveryService.DiscoveryResult result = discoveryService.discover(userId, projectId);
+
+        // Then
+        assertThat(result.stages()).extracting(SnowflakeStageResponse::getStageName).containsExactly("EXPORT");
+        verifyNoInteractions(warehouseConnector);
+    }
+
+    @Test
+    void discover_OtherUsersProject_Throws() {
+        // Given
+        UUID otherUser = UUID.randomUUID();
+        when(projectRepository.findByUserIdAndId(otherUser, projectId)).thenReturn(Optional.empty());
+
+        // When & Then
+        assertThatThrownBy(() -> discoveryService.discover(otherUser, projectId))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("Project not found");
+        verifyNoInteractions(projectConnectors);
+    }
+
+    @Test
+    void quoteIdentifier_EscapesEmbeddedQuotes() {
+        assertThat(SnowflakeStageService.quoteIdentifier("my\"schema")).isEqualTo("\"my\"\"schema\"");
+    }
+
+    private WarehouseConnector.SchemaRef schema(String database, String schema) {
+        return new WarehouseConnector.SchemaRef(database, schema);
+    }
+
+    private SnowflakeStageResponse stage(String database, String schema, String name) {
+        return new SnowflakeStageResponse(name, schema, database, "INTERNAL", null, null, "SYSADMIN", "2024-01-01");
+    }
+}
@@ -0,0 +1,163 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.response.StageFilePageResponse;
+import ai.datalens.dto.response.StageFileResponse;
+import ai.datalens.entity.Project;
+import ai.datalens.repository.ProjectRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StageFileServiceTest {
+
+    @Mock
+    private WarehouseConnector warehouseConnector;
+
+    @Mock
+    private ProjectWarehouseConnectors projectConnectors;
+
+    @Mock
+    private ProjectRepository projectRepository;
+
+    @Mock
+    private WarehouseQueryScheduler scheduler;
+
+    @InjectMocks
+    private StageFileService stageFileService;
+
+    private final UUID userId = UUID.randomUUID();
+    private final UUID projectId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(stageFileService, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(stageFileService, "maxAgeMs", 60000L);
+        ReflectionTestUtils.setField(stageFileService, "cacheMaxFiles", 1000L);
+        ReflectionTestUtils.setField(stageFileService, "defaultPageSize", 2);
+        ReflectionTestUtils.setField(stageFileService, "maxPageSize", 10);
+        stageFileService.init();
+        lenient().when(warehouseConnector.catalogKey()).thenReturn(new StageCatalogKey("acme", "SALES", "PUBLIC"));
+        lenient().when(projectConnectors.forProject(projectId)).thenReturn(warehouseConnector);
+        lenient().when(projectRepository.findByUserIdAndId(userId, projectId)).thenReturn(Optional.of(new Project()));
+    }
+
+    @Test
+    void listFiles_PagesWithCursorAndListsOnce() throws SQLException {
+        // Given
+        emitFiles("raw/c.csv", "raw/a.csv", "raw/b.csv");
+
+        // When
+        StageFilePageResponse first = stageFileService.listFiles(userId, projectId, "RAW_STAGE", null, null, null, false);
+        StageFilePageResponse second = stageFileService.listFiles(userId, projectId, "RAW_STAGE", null, first.getNextCursor(), null, false);
+
+        // Then
+        assertThat(first.getFiles()).extracting(StageFileResponse::getPath).containsExactly("raw/a.csv", "raw/b.csv");
+        assertThat(first.getTotalFiles()).isEqualTo(3);
+        assertThat(second.getFiles()).extracting(StageFileResponse::getPath).containsExactly("raw/c.csv");
+        assertThat(second.getNextCursor()).isNull();
+        verify(warehouseConnector, times(1)).streamStageFiles(eq("RAW_STAGE"), eq(""), any());
+        // Only the LIST took a slot; the cached page didn't queue
+        verify(scheduler, times(1)).acquire(eq(userId), eq(projectId), any());
+    }
+
+    @Test
+    void listFiles_ParsesManifestFields() throws SQLException {
+        // Given
+        doAnswer(invocation -> {
+            WarehouseConnector.StageFileRowHandler handler = invocation.getArgument(2);
+            handler.handle("raw/a.csv", 42L, "abc123", "Tue, 5 Mar 2024 10:00:00 GMT");
+            return 1L;
+        }).when(warehouseConnector).streamStageFiles(any(), any(), any());
+
+        // When
+        StageFileResponse file = stageFileService.listFiles(userId, projectId, "SALES.PUBLIC.RAW_STAGE", "/raw/", null, 10, false).getFiles().get(0);
+
+        // Then
+        assertThat(file.getSize()).isEqualTo(42L);
+        assertThat(file.getMd5()).isEqualTo("abc123");
+        assertThat(file.getLastModified()).isEqualTo(Instant.parse("2024-03-05T10:00:00Z"));
+        verify(warehouseConnector).streamStageFiles(eq("SALES.PUBLIC.RAW_STAGE"), eq("raw/"), any());
+    }
+
+    @Test
+    void listFiles_InvalidStageOrPrefix_ThrowsIllegalArgument() {
+        assertThatThrownBy(() -> stageFileService.listFiles(userId, projectId, "RAW; DROP TABLE x", null, null, null, false))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> stageFileService.listFiles(userId, projectId, "RAW_STAGE", "a' OR '1", null, null, false))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> stageFileService.listFiles(userId, projectId, "RAW_STAGE", null, "not base64!", null, false))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void listFiles_Refresh_RunsListAgain() throws SQLException {
+        // Given
+        emitFiles("raw/a.csv");
+        stageFileService.listFiles(userId, projectId, "RAW_STAGE", null, null, null, false);
+
+        // When
+        stageFileService.listFiles(userId, projectId, "RAW_STAGE", null, null, null, true);
+
+        // Then
+        verify(warehouseConnector, times(2)).streamStageFiles(eq("RAW_STAGE"), eq(""), any());
+    }
+
+    @Test
+    void listFiles_ProjectsOnDifferentWarehousesListSeparately() throws SQLException {
+        // Given
+        UUID otherProject = UUID.randomUUID();
+        WarehouseConnector otherConnector = mock(WarehouseConnector.class);
+        when(projectRepository.findByUserIdAndId(userId, otherProject)).thenReturn(Optional.of(new Project()));
+        when(projectConnectors.forProject(otherProject)).thenReturn(otherConnector);
+        when(otherConnector.catalogKey()).thenReturn(new StageCatalogKey("other", "SALES", "PUBLIC"));
+        emitFiles("raw/a.csv");
+
+        // When
+        stageFileService.listFiles(userId, projectId, "RAW_STAGE", null, null, null, false);
+        stageFileService.listFiles(userId, otherProject, "RAW_STAGE", null, null, null, false);
+
+        // Then
+        verify(warehouseConnector, times(1)).streamStageFiles(eq("RAW_STAGE"), eq(""), any());
+        verify(otherConnector, times(1)).streamStageFiles(eq("RAW_STAGE"), eq(""), any());
+    }
+
+    @Test
+    void listFiles_OtherUsersProject_Throws() {
+        // Given
+        UUID otherUser = UUID.randomUUID();
+        when(projectRepository.findByUserIdAndId(otherUser, projectId)).thenReturn(Optional.empty());
+
+        // When & Then
+        assertThatThrownBy(() -> stageFileService.listFiles(otherUser, projectId, "RAW_STAGE", null, null, null, false))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("Project not found");
+        verifyNoInteractions(projectConnectors, scheduler);
+    }
+
+    private void emitFiles(String... paths) throws SQLException {
+        doAnswer(invocation -> {
+            WarehouseConnector.StageFileRowHandler handler = invocation.getArgument(2);
+            for (String path : paths) {
+                handler.handle(path, 10L, "md5", null);
+            }
+            return (long) paths.length;
+        }).when(warehouseConnector).streamStageFiles(any(), any(), any());
+    }
+}
@@ -0,0 +1,167 @@
+package ai.datalens.service;
+
+import ai.datalens.entity.Project;
+import ai.datalens.repository.ProjectRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class StagePreviewServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final UUID userId = UUID.randomUUID();
+    private final UUID projectId = UUID.randomUUID();
+
+    private StagePreviewService previewService;
+
+    @TempDir
+    Path stageRoot;
+
+    private Path stageDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stageDir = Files.createDirectories(stageRoot.resolve("LOCAL").resolve("PUBLIC").resolve("RAW_STAGE"));
+
+        LocalWarehouseConnector warehouseConnector = new LocalWarehouseConnector();
+        ReflectionTestUtils.setField(warehouseConnector, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(warehouseConnector, "stageRoot", stageRoot.toString());
+        ReflectionTestUtils.setField(warehouseConnector, "database", "LOCAL");
+        ReflectionTestUtils.setField(warehouseConnector, "schema", "PUBLIC");
+        ReflectionTestUtils.setField(warehouseConnector, "maxRowChars", 4096);
+
+        WarehouseQueryScheduler scheduler = mock(WarehouseQueryScheduler.class);
+        ProjectWarehouseConnectors projectConnectors = mock(ProjectWarehouseConnectors.class);
+        when(projectConnectors.forProject(projectId)).thenReturn(warehouseConnector);
+        ProjectRepository projectRepository = mock(ProjectRepository.class);
+        when(projectRepository.findByUserIdAndId(userId, projectId)).thenReturn(Optional.of(new Project()));
+
+        StageFileService stageFileService = new StageFileService();
+        ReflectionTestUtils.setField(stageFileService, "projectConnectors", projectConnectors);
+        ReflectionTestUtils.setField(stageFileService, "projectRepository", projectRepository);
+        ReflectionTestUtils.setField(stageFileService, "scheduler", scheduler);
+        ReflectionTestUtils.setField(stageFileService, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(stageFileService, "maxAgeMs", 60000L);
+        ReflectionTestUtils.setField(stageFileService, "cacheMaxFiles", 1000L);
+        stageFileService.init();
+
+        previewService = new StagePreviewService();
+        ReflectionTestUtils.setField(previewService, "projectConnectors", projectConnectors);
+        ReflectionTestUtils.setField(previewService, "projectRepository", projectRepository);
+        ReflectionTestUtils.setField(previewService, "stageFileService", stageFileService);
+        ReflectionTestUtils.setField(previewService, "scheduler", scheduler);
+        ReflectionTestUtils.setField(previewService, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(previewService, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(previewService, "defaultRows", 100);
+        ReflectionTestUtils.setField(previewService, "maxRows", 1000);
+        ReflectionTestUtils.setField(previewService, "maxColumns", 16);
+        ReflectionTestUtils.setField(previewService, "cacheMaxCells", 100000L);
+        ReflectionTestUtils.setField(previewService, "cacheTtlMs", 60000L);
+        previewService.init();
+    }
+
+    @Test
+    void preview_Csv_InfersTypesAndStopsAtRowLimit() throws Exception {
+        // Given
+        try (Writer writer = Files.newBufferedWriter(stageDir.resolve("orders.csv"))) {
+            writer.write("id,amount,paid,note\n");
+            for (int i = 0; i < 10000; i++) {
+                writer.write(i + "," + (i % 2 == 0 ? "10" : "10.5") + ",true,\"row, " + i + "\"\n");
+            }
+        }
+
+        // When
+        StagePreview preview = previewService.preview(userId, projectId, "RAW_STAGE", "orders.csv", null, 5, true, null);
+
+        // Then
+        assertThat(preview.getRowCount()).isEqualTo(5);
+        assertThat(preview.getColumnNames()).containsExactly("id", "amount", "paid", "note");
+        assertThat(preview.getColumnTypes()).containsExactly("LONG", "DOUBLE", "BOOLEAN", "STRING");
+
+        JsonNode json = objectMapper.readTree(objectMapper.writeValueAsString(preview));
+        assertThat(json.get("rows").get(1).get(1).asDouble()).isEqualTo(10.5);
+        assertThat(json.get("rows").get(1).get(3).asText()).isEqualTo("row, 1");
+        assertThat(json.get("source").asText()).isEqualTo("local");
+    }
+
+    @Test
+    void preview_Ndjson_ColumnsFromFieldsWithNullPadding() throws Exception {
+        // Given
+        Files.writeString(stageDir.resolve("events.ndjson"),
+                "{\"id\":1,\"kind\":\"click\"}\n{\"id\":2,\"extra\":{\"a\":1}}\n");
+
+        // When
+        StagePreview preview = previewService.preview(userId, projectId, "RAW_STAGE", "events.ndjson", null, null, true, null);
+
+        // Then
+        assertThat(preview.getColumnNames()).containsExactly("id", "kind", "extra");
+        assertThat(preview.getColumnTypes()).containsExactly("LONG", "STRING", "STRING");
+        JsonNode rows = objectMapper.readTree(objectMapper.writeValueAsString(preview)).get("rows");
+        assertThat(rows.get(0).get(2).isNull()).isTrue();
+        assertThat(rows.get(1).get(1).isNull()).isTrue();
+    }
+
+    @Test
+    void preview_CachedUntilFileChanges() throws Exception {
+        // Given
+        Path file = stageDir.resolve("data.csv");
+        Files.writeString(file, "a\n1\n");
+        StagePreview first = previewService.preview(userId, projectId, "RAW_STAGE", "data.csv", null, 10, true, null);
+
+        // When
+        StagePreview again = previewService.preview(userId, projectId, "RAW_STAGE", "data.csv", null, 10, true, null);
+        Files.writeString(file, "a\n1\n2\n");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+        StagePreview changed = previewService.preview(userId, projectId, "RAW_STAGE", "data.csv", null, 10, true, null);
+
+        // Then
+        assertThat(again).isSameAs(first);
+        assertThat(changed.getRowCount()).isEqualTo(2);
+        assertThat(changed.getEtag()).isNotEqualTo(first.getEtag());
+    }
+
+    @Test
+    void preview_RejectsUnsafePathsAndUnknownFormats() {
+        assertThatThrownBy(() -> previewService.preview(userId, projectId, "RAW_STAGE", "../secret.csv", null, 10, true, null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> previewService.preview(userId, projectId, "RAW_STAGE", "a.csv' --", null, 10, true, null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> previewService.preview(userId, projectId, "RAW_STAGE", "blob.bin", null, 10, true, null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void columnBuffer_WidensLongToDoubleToString() {
+        // Given
+        PreviewColumnBuffer column = new PreviewColumnBuffer("value", 4);
+
+        // When
+        column.appendText("1");
+        column.appendText("2.5");
+        column.appendText(null);
+        column.appendText("n/a");
+
+        // Then
+        assertThat(column.type()).isEqualTo(PreviewColumnBuffer.Type.STRING);
+        assertThat(column.isNull(2)).isTrue();
+        assertThat(column.size()).isEqualTo(4);
+    }
+}
@@ -0,0 +1,178 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.response.StageRefreshJobResponse;
+import ai.datalens.entity.Project;
+import ai.datalens.repository.ProjectRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.SQLException;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StageRefreshJobServiceTest {
+
+    @Mock
+    private ProjectStageCatalogService projectStageCatalogService;
+
+    @Mock
+    private ProjectRepository projectRepository;
+
+    @InjectMocks
+    private StageRefreshJobService jobService;
+
+    private UUID userId;
+    private UUID projectId;
+
+    @BeforeEach
+    void setUp() {
+        userId = UUID.randomUUID();
+        projectId = UUID.randomUUID();
+        ReflectionTestUtils.setField(jobService, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(jobService, "threads", 1);
+        ReflectionTestUtils.setField(jobService, "queueCapacity", 1);
+        ReflectionTestUtils.setField(jobService, "retentionMs", 60000L);
+        ReflectionTestUtils.setField(jobService, "sseTimeoutMs", 1000L);
+        jobService.init();
+        lenient().when(projectRepository.findByUserIdAndId(eq(userId), any())).thenReturn(Optional.of(new Project()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        jobService.shutdown();
+    }
+
+    @Test
+    void submit_RunsInBackgroundAndReportsResult() throws Exception {
+        // Given
+        when(projectStageCatalogService.resyncProject(projectId))
+                .thenReturn(new ProjectStageCatalogService.SyncResult(3, 1, 1, 0));
+
+        // When
+        StageRefreshJobResponse submitted = jobService.submit(userId, projectId);
+        StageRefreshJobResponse finished = awaitDone(submitted.getJobId());
+
+        // Then
+        assertThat(finished.getStatus()).isEqualTo("SUCCEEDED");
+        assertThat(finished.getStageCount()).isEqualTo(3);
+        assertThat(finished.getFinishedAt()).isNotNull();
+    }
+
+    @Test
+    void submit_WhileRunning_JoinsExistingJob() throws Exception {
+        // Given
+        CountDownLatch release = new CountDownLatch(1);
+        when(projectStageCatalogService.resyncProject(projectId)).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return new ProjectStageCatalogService.SyncResult(0, 0, 0, 0);
+        });
+
+        // When
+        StageRefreshJobResponse first = jobService.submit(userId, projectId);
+        StageRefreshJobResponse second = jobService.submit(userId, projectId);
+        release.countDown();
+        awaitDone(first.getJobId());
+
+        // Then
+        assertThat(second.getJobId()).isEqualTo(first.getJobId());
+        verify(projectStageCatalogService, times(1)).resyncProject(projectId);
+    }
+
+    @Test
+    void submit_Failure_ReportsError() throws Exception {
+        // Given
+        when(projectStageCatalogService.resyncProject(projectId)).thenThrow(new SQLException("warehouse suspended"));
+
+        // When
+        StageRefreshJobResponse finished = awaitDone(jobService.submit(userId, projectId).getJobId());
+
+        // Then
+        assertThat(finished.getStatus()).isEqualTo("FAILED");
+        assertThat(finished.getError()).contains("warehouse suspended");
+    }
+
+    @Test
+    void submit_QueueFull_Rejects() throws Exception {
+        // Given
+        CountDownLatch release = new CountDownLatch(1);
+        lenient().when(projectStageCatalogService.resyncProject(any())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return new ProjectStageCatalogService.SyncResult(0, 0, 0, 0);
+        });
+        jobService.submit(userId, UUID.randomUUID());
+        jobService.submit(userId, UUID.randomUUID());
+
+        // When & Then
+        assertThatThrownBy(() -> jobService.submit(userId, UUID.randomUUID())).isInstanceOf(RejectedExecutionException.class);
+        release.countDown();
+    }
+
+    @Test
+    void getJob_OtherProject_ReturnsNull() throws Exception {
+        // Given
+        when(projectStageCatalogService.resyncProject(projectId))
+                .thenReturn(new ProjectStageCatalogService.SyncResult(0, 0, 0, 0));
+        UUID jobId = jobService.submit(userId, projectId).getJobId();
+        awaitDone(jobId);
+
+        // When & Then
+        assertThat(jobService.getJob(userId, UUID.randomUUID(), jobId)).isNull();
+    }
+
+    @Test
+    void submit_OtherUsersProject_ThrowsException() {
+        // Given
+        UUID otherUser = UUID.randomUUID();
+        when(projectRepository.findByUserIdAndId(otherUser, projectId)).thenReturn(Optional.empty());
+
+        // When & Then
+        assertThatThrownBy(() -> jobService.submit(otherUser, projectId))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("Project not found");
+        verifyNoInteractions(projectStageCatalogService);
+    }
+
+    @Test
+    void getJob_OtherUser_ThrowsException() throws Exception {
+        // Given
+        when(projectStageCatalogService.resyncProject(projectId))
+                .thenReturn(new ProjectStageCatalogService.SyncResult(0, 0, 0, 0));
+        UUID jobId = jobService.submit(userId, projectId).getJobId();
+        awaitDone(jobId);
+        UUID otherUser = UUID.randomUUID();
+        when(projectRepository.findByUserIdAndId(otherUser, projectId)).thenReturn(Optional.empty());
+
+        // When & Then
+        assertThatThrownBy(() -> jobService.getJob(otherUser, projectId, jobId))
+                .hasMessage("Project not found");
+        assertThatThrownBy(() -> jobService.subscribe(otherUser, projectId, jobId))
+                .hasMessage("Project not found");
+    }
+
+    private StageRefreshJobResponse awaitDone(UUID jobId) throws InterruptedException {
+        for (int i = 0; i < 200; i++) {
+            StageRefreshJobResponse job = jobService.getJob(userId, projectId, jobId);
+            if (job != null && (job.getStatus().equals("SUCCEEDED") || job.getStatus().equals("FAILED"))) {
+                return job;
+            }
+            Thread.sleep(25);
+        }
+        throw new AssertionError("Job " + jobId + " did not finish");
+    }
+}
@@ -0,0 +1,156 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.response.SnowflakeStageResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.Spy;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StageStreamWriterTest {
+
+    @Mock
+    private WarehouseConnector warehouseConnector;
+
+    @Mock
+    private ProjectWarehouseConnectors projectConnectors;
+
+    @Mock
+    private WarehouseQueryScheduler scheduler;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @InjectMocks
+    private StageStreamWriter stageStreamWriter;
+
+    private final UUID userId = UUID.randomUUID();
+    private final UUID projectId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(stageStreamWriter, "flushEvery", 2);
+        lenient().when(projectConnectors.forProject(projectId)).thenReturn(warehouseConnector);
+    }
+
+    @Test
+    void write_Ndjson_OneObjectPerLine() throws Exception {
+        // Given
+        emitStages(3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        stageStreamWriter.write(userId, projectId, out, StageStreamWriter.Format.NDJSON);
+
+        // Then
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(3);
+        assertThat(objectMapper.readTree(lines[2]).get("stage_name").asText()).isEqualTo("STAGE_2");
+    }
+
+    @Test
+    void write_Json_WritesSingleArray() throws Exception {
+        // Given
+        emitStages(3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        stageStreamWriter.write(userId, projectId, out, StageStreamWriter.Format.JSON);
+
+        // Then
+        JsonNode array = objectMapper.readTree(out.toByteArray());
+        assertThat(array.isArray()).isTrue();
+        assertThat(array).hasSize(3);
+    }
+
+    @Test
+    void write_Ndjson_FailureMidStream_AppendsErrorLine() throws Exception {
+        // Given
+        doAnswer(invocation -> {
+            WarehouseConnector.StageRowHandler handler = invocation.getArgument(0);
+            handler.handle(stage(0));
+            throw new SQLException("connection reset");
+        }).when(warehouseConnector).streamStages(any());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        stageStreamWriter.write(userId, projectId, out, StageStreamWriter.Format.NDJSON);
+
+        // Then
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(objectMapper.readTree(lines[1]).get("error").asText()).contains("connection reset");
+    }
+
+    @Test
+    void write_Json_FailureMidStream_LeavesArrayOpen() throws Exception {
+        // Given
+        doAnswer(invocation -> {
+            WarehouseConnector.StageRowHandler handler = invocation.getArgument(0);
+            handler.handle(stage(0));
+            throw new SQLException("connection reset");
+        }).when(warehouseConnector).streamStages(any());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When / Then
+        assertThatThrownBy(() -> stageStreamWriter.write(userId, projectId, out, StageStreamWriter.Format.JSON))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("connection reset");
+        assertThat(out.toString(StandardCharsets.UTF_8)).doesNotEndWith("]");
+    }
+
+    @Test
+    void write_Ndjson_NoSlotFree_ReportsErrorWithoutListing() throws Exception {
+        // Given
+        when(scheduler.acquire(eq(userId), eq(projectId), any()))
+                .thenThrow(new SnowflakeUnavailableException("Warehouse busy; try again later", 30));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        stageStreamWriter.write(userId, projectId, out, StageStreamWriter.Format.NDJSON);
+
+        // Then
+        assertThat(objectMapper.readTree(out.toString(StandardCharsets.UTF_8)).get("error").asText())
+                .contains("Warehouse busy");
+        verify(warehouseConnector, never()).streamStages(any());
+    }
+
+    @Test
+    void formatFrom_DefaultsToNdjson() {
+        assertThat(StageStreamWriter.Format.from("json")).isEqualTo(StageStreamWriter.Format.JSON);
+        assertThat(StageStreamWriter.Format.from("ndjson")).isEqualTo(StageStreamWriter.Format.NDJSON);
+        assertThat(StageStreamWriter.Format.from(null)).isEqualTo(StageStreamWriter.Format.NDJSON);
+    }
+
+    private void emitStages(int count) throws SQLException {
+        doAnswer(invocation -> {
+            WarehouseConnector.StageRowHandler handler = invocation.getArgument(0);
+            for (int i = 0; i < count; i++) {
+                handler.handle(stage(i));
+            }
+            return (long) count;
+        }).when(warehouseConnector).streamStages(any());
+    }
+
+    private SnowflakeStageResponse stage(int index) {
+        return new SnowflakeStageResponse("STAGE_" + index, "PUBLIC", "SALES", "INTERNAL", null, null, "SYSADMIN", "2024-01-01");
+    }
+}
@@ -5,6 +5,8 @@ import ai.datalens.dto.response.UserResponse;
 import ai.datalens.entity.Role;
 import ai.datalens.entity.User;
 import ai.datalens.repository.UserRepository;
+import ai.datalens.security.SecurityVersions;
+import ai.datalens.security.UserPrincipalCache;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -28,6 +30,12 @@ class UserServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private UserPrincipalCache principalCache;
+
+    @Mock
+    private SecurityVersions securityVersions;
+
     @InjectMocks
     private UserService userService;
 
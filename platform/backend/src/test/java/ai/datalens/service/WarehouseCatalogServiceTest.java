@@ -0,0 +1,293 @@
+package ai.datalens.service;
+
+import ai.datalens.entity.ProjectCatalogCrawl;
+import ai.datalens.repository.ProjectCatalogCrawlRepository;
+import ai.datalens.repository.ProjectColumnRepository;
+import ai.datalens.repository.ProjectRepository;
+import ai.datalens.repository.ProjectTableRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class WarehouseCatalogServiceTest {
+
+    private static final String WAREHOUSE_URL = "jdbc:h2:mem:catalog_warehouse;DB_CLOSE_DELAY=-1";
+    private static final String STORE_URL = "jdbc:h2:mem:catalog_store;DB_CLOSE_DELAY=-1";
+    private static final LocalDateTime T0 = LocalDateTime.of(2026, 1, 5, 10, 0);
+    private static final LocalDateTime T1 = T0.plusHours(1);
+
+    @Mock
+    private WarehouseConnector warehouseConnector;
+
+    @Mock
+    private ProjectWarehouseConnectors projectConnectors;
+
+    @Mock
+    private SnowflakeCircuitBreaker circuitBreaker;
+
+    @Mock
+    private ProjectRepository projectRepository;
+
+    @Mock
+    private ProjectTableRepository projectTableRepository;
+
+    @Mock
+    private ProjectColumnRepository projectColumnRepository;
+
+    @Mock
+    private ProjectCatalogCrawlRepository projectCatalogCrawlRepository;
+
+    @Mock
+    private NameSearchService nameSearchService;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @InjectMocks
+    private WarehouseCatalogService catalogService;
+
+    private UUID projectId;
+    private Connection warehouse;
+    private JdbcTemplate store;
+    private ProjectCatalogCrawl savedCrawl;
+    private final List<String> warehouseQueries = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        projectId = UUID.randomUUID();
+        store = new JdbcTemplate(new DriverManagerDataSource(STORE_URL, "sa", ""));
+        store.execute("DROP ALL OBJECTS");
+        store.execute("CREATE TABLE project_tables (id UUID PRIMARY KEY, project_id UUID NOT NULL, "
+                + "table_catalog VARCHAR(255) NOT NULL, table_schema VARCHAR(255) NOT NULL, table_name VARCHAR(255) NOT NULL, "
+                + "table_type VARCHAR(50), row_count BIGINT, bytes BIGINT, comment VARCHAR(2000), last_altered TIMESTAMP, "
+                + "created_at TIMESTAMP NOT NULL, updated_at TIMESTAMP NOT NULL, "
+                + "UNIQUE (project_id, table_catalog, table_schema, table_name))");
+        store.execute("CREATE TABLE project_columns (id UUID PRIMARY KEY, "
+                + "table_id UUID NOT NULL REFERENCES project_tables(id) ON DELETE CASCADE, column_name VARCHAR(255) NOT NULL, "
+                + "ordinal_position INTEGER NOT NULL, data_type VARCHAR(255), character_maximum_length BIGINT, "
+                + "numeric_precision INTEGER, numeric_scale INTEGER, is_nullable BOOLEAN NOT NULL, comment VARCHAR(2000), "
+                + "UNIQUE (table_id, column_name))");
+
+        // A stand-in for Snowflake's INFORMATION_SCHEMA, with the same column layout
+        warehouse = DriverManager.getConnection(WAREHOUSE_URL, "sa", "");
+        try (Statement stmt = warehouse.createStatement()) {
+            stmt.execute("DROP ALL OBJECTS");
+            stmt.execute("CREATE SCHEMA WH_INFO");
+            stmt.execute("CREATE TABLE WH_INFO.TABLES (TABLE_CATALOG VARCHAR(255), TABLE_SCHEMA VARCHAR(255), "
+                    + "TABLE_NAME VARCHAR(255), TABLE_TYPE VARCHAR(50), ROW_COUNT BIGINT, BYTES BIGINT, "
+                    + "COMMENT VARCHAR(2000), LAST_ALTERED TIMESTAMP)");
+            stmt.execute("CREATE TABLE WH_INFO.COLUMNS (TABLE_CATALOG VARCHAR(255), TABLE_SCHEMA VARCHAR(255), "
+                    + "TABLE_NAME VARCHAR(255), COLUMN_NAME VARCHAR(255), ORDINAL_POSITION INT, DATA_TYPE VARCHAR(255), "
+                    + "CHARACTER_MAXIMUM_LENGTH BIGINT, NUMERIC_PRECISION INT, NUMERIC_SCALE INT, "
+                    + "IS_NULLABLE VARCHAR(3), COMMENT VARCHAR(2000))");
+        }
+        addTable("PUBLIC", "ORDERS", T0, "ID", "AMOUNT");
+        addTable("PUBLIC", "USERS", T0, "ID", "EMAIL");
+        addTable("RAW", "EVENTS", T0, "ID", "PAYLOAD", "RECEIVED_AT");
+
+        ReflectionTestUtils.setField(catalogService, "jdbcTemplate", store);
+        ReflectionTestUtils.setField(catalogService, "meterRegistry", new SimpleMeterRegistry());
+        // Small pages and thresholds so a handful of tables exercises pagination and both column paths
+        ReflectionTestUtils.setField(catalogService, "pageSize", 2);
+        ReflectionTestUtils.setField(catalogService, "tablesPerQuery", 2);
+        ReflectionTestUtils.setField(catalogService, "columnScanThreshold", 2);
+        ReflectionTestUtils.setField(catalogService, "watermarkOverlapMs", 300000L);
+        ReflectionTestUtils.setField(catalogService, "fullCrawlIntervalMs", 86400000L);
+        ReflectionTestUtils.setField(catalogService, "batchSize", 500);
+
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocation -> {
+            TransactionCallback<?> callback = invocation.getArgument(0);
+            return callback.doInTransaction(null);
+        });
+        lenient().when(projectCatalogCrawlRepository.findById(projectId))
+                .thenAnswer(invocation -> Optional.ofNullable(savedCrawl));
+        lenient().when(projectCatalogCrawlRepository.save(any(ProjectCatalogCrawl.class))).thenAnswer(invocation -> {
+            savedCrawl = invocation.getArgument(0);
+            return savedCrawl;
+        });
+        lenient().when(projectConnectors.forProject(any())).thenReturn(warehouseConnector);
+        lenient().when(warehouseConnector.executeQuery(anyString(), anyList(), anyInt(), any())).thenAnswer(invocation -> {
+            String sql = invocation.<String>getArgument(0).replace("INFORMATION_SCHEMA.", "WH_INFO.");
+            List<?> parameters = invocation.getArgument(1);
+            WarehouseConnector.QueryHandler<?> handler = invocation.getArgument(3);
+            warehouseQueries.add(sql);
+            try (PreparedStatement stmt = warehouse.prepareStatement(sql)) {
+                for (int i = 0; i < parameters.size(); i++) {
+                    stmt.setObject(i + 1, parameters.get(i));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return handler.handle(rs);
+                }
+            }
+        });
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        warehouse.close();
+    }
+
+    @Test
+    void crawlProject_FirstCrawl_StoresEveryTableAndColumn() throws SQLException {
+        // When
+        WarehouseCatalogService.CrawlResult result = catalogService.crawlProject(projectId, false);
+
+        // Then
+        assertThat(result.full()).isTrue();
+        assertThat(result.tableCount()).isEqualTo(3);
+        assertThat(result.columnCount()).isEqualTo(7);
+        assertThat(result.changedCount()).isEqualTo(3);
+        assertThat(result.watermark()).isEqualTo(T0);
+        assertThat(store.queryForList("SELECT column_name FROM project_columns c JOIN project_tables t ON c.table_id = t.id "
+                + "WHERE t.table_name = 'EVENTS' ORDER BY ordinal_position", String.class))
+                .containsExactly("ID", "PAYLOAD", "RECEIVED_AT");
+        assertThat(store.queryForObject("SELECT COUNT(*) FROM project_tables WHERE last_altered IS NULL", Integer.class))
+                .isZero();
+        // Three tables in pages of two, then the columns in one keyset-paginated scan
+        assertThat(warehouseQueries).filteredOn(sql -> sql.contains("WH_INFO.TABLES")).hasSize(2);
+        assertThat(warehouseQueries).filteredOn(sql -> sql.contains("WH_INFO.COLUMNS"))
+                .allMatch(sql -> sql.contains("ORDINAL_POSITION > ?") || !sql.contains("TABLE_NAME = ?"));
+    }
+
+    @Test
+    void crawlProject_Incremental_RewritesOnlyAlteredTablesAndDropsMissingOnes() throws SQLException {
+        // Given
+        catalogService.crawlProject(projectId, false);
+        UUID usersColumn = store.queryForObject("SELECT c.id FROM project_columns c JOIN project_tables t "
+                + "ON c.table_id = t.id WHERE t.table_name = 'USERS' AND c.column_name = 'EMAIL'", UUID.class);
+        addColumn("PUBLIC", "ORDERS", "STATUS", 3);
+        touch("PUBLIC", "ORDERS", T1);
+        addTable("PUBLIC", "ITEMS", T1, "SKU");
+        dropTable("RAW", "EVENTS");
+        warehouseQueries.clear();
+
+        // When
+        WarehouseCatalogService.CrawlResult result = catalogService.crawlProject(projectId, false);
+
+        // Then
+        assertThat(result.full()).isFalse();
+        assertThat(result.tableCount()).isEqualTo(3);
+        assertThat(result.changedCount()).isEqualTo(2);
+        assertThat(result.deletedCount()).isEqualTo(1);
+        assertThat(result.columnCount()).isEqualTo(6);
+        assertThat(result.watermark()).isEqualTo(T1);
+        assertThat(store.queryForList("SELECT table_name FROM project_tables ORDER BY table_name", String.class))
+                .containsExactly("ITEMS", "ORDERS", "USERS");
+        assertThat(store.queryForList("SELECT column_name FROM project_columns c JOIN project_tables t ON c.table_id = t.id "
+                + "WHERE t.table_name = 'ORDERS' ORDER BY ordinal_position", String.class))
+                .containsExactly("ID", "AMOUNT", "STATUS");
+        // The unchanged table's columns were left where they were
+        assertThat(store.queryForObject("SELECT COUNT(*) FROM project_columns WHERE id = ?", Integer.class, usersColumn))
+                .isEqualTo(1);
+        assertThat(warehouseQueries).filteredOn(sql -> sql.contains("LAST_ALTERED > ?")).isNotEmpty();
+        assertThat(warehouseQueries).filteredOn(sql -> sql.contains("WH_INFO.COLUMNS"))
+                .singleElement()
+                .satisfies(sql -> assertThat(sql).contains("(TABLE_SCHEMA = ? AND TABLE_NAME = ?) OR"));
+    }
+
+    @Test
+    void crawlProject_NothingAltered_WritesNothing() throws SQLException {
+        // Given
+        catalogService.crawlProject(projectId, false);
+        LocalDateTime updatedAt = store.queryForObject("SELECT MAX(updated_at) FROM project_tables", LocalDateTime.class);
+        warehouseQueries.clear();
+
+        // When
+        WarehouseCatalogService.CrawlResult result = catalogService.crawlProject(projectId, false);
+
+        // Then the overlap window re-reads the T0 tables but recognises them as stored
+        assertThat(result.full()).isFalse();
+        assertThat(result.changedCount()).isZero();
+        assertThat(result.deletedCount()).isZero();
+        assertThat(result.columnCount()).isEqualTo(7);
+        assertThat(warehouseQueries).noneMatch(sql -> sql.contains("WH_INFO.COLUMNS"));
+        assertThat(store.queryForObject("SELECT MAX(updated_at) FROM project_tables", LocalDateTime.class))
+                .isEqualTo(updatedAt);
+    }
+
+    @Test
+    void crawlProject_UnfinishedEarlierCrawl_FallsBackToFullCrawl() throws SQLException {
+        // Given a crawl that stored its tables but died before marking them
+        catalogService.crawlProject(projectId, false);
+        store.update("UPDATE project_tables SET last_altered = NULL WHERE table_name = 'USERS'");
+        store.update("DELETE FROM project_columns WHERE table_id = (SELECT id FROM project_tables WHERE table_name = 'USERS')");
+
+        // When
+        WarehouseCatalogService.CrawlResult result = catalogService.crawlProject(projectId, false);
+
+        // Then
+        assertThat(result.full()).isTrue();
+        assertThat(result.changedCount()).isEqualTo(1);
+        assertThat(result.columnCount()).isEqualTo(7);
+    }
+
+    private void addTable(String schema, String name, LocalDateTime lastAltered, String... columns) throws SQLException {
+        try (PreparedStatement stmt = warehouse.prepareStatement(
+                "INSERT INTO WH_INFO.TABLES VALUES ('ANALYTICS', ?, ?, 'BASE TABLE', 10, 1024, NULL, ?)")) {
+            stmt.setString(1, schema);
+            stmt.setString(2, name);
+            stmt.setObject(3, lastAltered);
+            stmt.executeUpdate();
+        }
+        for (int i = 0; i < columns.length; i++) {
+            addColumn(schema, name, columns[i], i + 1);
+        }
+    }
+
+    private void addColumn(String schema, String table, String column, int position) throws SQLException {
+        try (PreparedStatement stmt = warehouse.prepareStatement(
+                "INSERT INTO WH_INFO.COLUMNS VALUES ('ANALYTICS', ?, ?, ?, ?, 'TEXT', 16777216, NULL, NULL, 'YES', NULL)")) {
+            stmt.setString(1, schema);
+            stmt.setString(2, table);
+            stmt.setString(3, column);
+            stmt.setInt(4, position);
+            stmt.executeUpdate();
+        }
+    }
+
+    private void touch(String schema, String table, LocalDateTime lastAltered) throws SQLException {
+        try (PreparedStatement stmt = warehouse.prepareStatement(
+                "UPDATE WH_INFO.TABLES SET LAST_ALTERED = ? WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ?")) {
+            stmt.setObject(1, lastAltered);
+            stmt.setString(2, schema);
+            stmt.setString(3, table);
+            stmt.executeUpdate();
+        }
+    }
+
+    private void dropTable(String schema, String table) throws SQLException {
+        try (PreparedStatement stmt = warehouse.prepareStatement(
+                "DELETE FROM WH_INFO.TABLES WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ?")) {
+            stmt.setString(1, schema);
+            stmt.setString(2, table);
+            stmt.executeUpdate();
+        }
+    }
+}
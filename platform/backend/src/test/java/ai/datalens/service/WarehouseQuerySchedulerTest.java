@@ -0,0 +1,200 @@
+package ai.datalens.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WarehouseQuerySchedulerTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private WarehouseQueryScheduler scheduler;
+    private ExecutorService executor;
+    private final List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+    private final List<Future<?>> waiters = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        scheduler = new WarehouseQueryScheduler();
+        ReflectionTestUtils.setField(scheduler, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(scheduler, "maxConcurrent", 1);
+        ReflectionTestUtils.setField(scheduler, "maxRunningPerProject", 8);
+        ReflectionTestUtils.setField(scheduler, "maxRunningPerUser", 4);
+        ReflectionTestUtils.setField(scheduler, "maxQueuedPerProject", 32);
+        ReflectionTestUtils.setField(scheduler, "maxQueuedPerUser", 8);
+        ReflectionTestUtils.setField(scheduler, "maxWaitMs", 5000L);
+        ReflectionTestUtils.setField(scheduler, "projectWeights", "");
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void acquire_FreeSlot_GrantedAtOnce() throws Exception {
+        // Given
+        scheduler.init();
+
+        // When
+        WarehouseQueryScheduler.Slot slot = scheduler.acquire(UUID.randomUUID(), UUID.randomUUID(), QueryControl.defaults());
+
+        // Then
+        assertThat(scheduler.running()).isEqualTo(1);
+        slot.close();
+        slot.close();
+        assertThat(scheduler.running()).isZero();
+        assertThat(meterRegistry.get("warehouse.scheduler.queue-time").tag("outcome", "admitted").timer().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void dispatch_QuietUserOvertakesNoisyOne() throws Exception {
+        // Given the only slot is taken, and one user queues three queries before another queues one
+        scheduler.init();
+        UUID projectId = UUID.randomUUID();
+        UUID noisy = UUID.randomUUID();
+        UUID quiet = UUID.randomUUID();
+        WarehouseQueryScheduler.Slot held = scheduler.acquire(UUID.randomUUID(), projectId, QueryControl.defaults());
+        queue(noisy, projectId, "noisy-1");
+        queue(noisy, projectId, "noisy-2");
+        queue(noisy, projectId, "noisy-3");
+        queue(quiet, projectId, "quiet-1");
+
+        // When
+        held.close();
+        awaitWaiters();
+
+        // Then
+        assertThat(admitted).containsExactly("noisy-1", "quiet-1", "noisy-2", "noisy-3");
+    }
+
+    @Test
+    void dispatch_SharesSlotsByProjectWeight() throws Exception {
+        // Given project A has twice project B's weight
+        UUID projectA = UUID.randomUUID();
+        UUID projectB = UUID.randomUUID();
+        ReflectionTestUtils.setField(scheduler, "projectWeights", projectA + "=2, " + projectB + "=1");
+        scheduler.init();
+        WarehouseQueryScheduler.Slot held = scheduler.acquire(UUID.randomUUID(), UUID.randomUUID(), QueryControl.defaults());
+        for (int i = 0; i < 4; i++) {
+            queue(UUID.randomUUID(), projectA, "A");
+        }
+        for (int i = 0; i < 4; i++) {
+            queue(UUID.randomUUID(), projectB, "B");
+        }
+
+        // When
+        held.close();
+        awaitWaiters();
+
+        // Then A gets two slots for every one of B's while both are waiting
+        assertThat(admitted).containsExactly("A", "B", "A", "A", "B", "A", "B", "B");
+    }
+
+    @Test
+    void acquire_UserQueueFull_Throttled() throws Exception {
+        // Given
+        ReflectionTestUtils.setField(scheduler, "maxQueuedPerUser", 1);
+        scheduler.init();
+        UUID projectId = UUID.randomUUID();
+        UUID userId = UUID.randomUUID();
+        WarehouseQueryScheduler.Slot held = scheduler.acquire(userId, projectId, QueryControl.defaults());
+        queue(userId, projectId, "queued");
+
+        // When / Then the user's next query is refused, someone else's still queues
+        assertThatThrownBy(() -> scheduler.acquire(userId, projectId, QueryControl.defaults()))
+                .isInstanceOfSatisfying(QueryThrottledException.class,
+                        e -> assertThat(e.getRetryAfterSeconds()).isPositive());
+        assertThatThrownBy(() -> scheduler.checkAdmission(userId, projectId))
+                .isInstanceOf(QueryThrottledException.class);
+        scheduler.checkAdmission(UUID.randomUUID(), projectId);
+        assertThat(scheduler.queued()).isEqualTo(1);
+        assertThat(meterRegistry.get("warehouse.scheduler.rejected").tag("reason", "user").counter().count())
+                .isEqualTo(2.0);
+
+        held.close();
+        awaitWaiters();
+        assertThat(admitted).containsExactly("queued");
+    }
+
+    @Test
+    void acquire_CancelledWhileWaiting_LeavesQueue() throws Exception {
+        // Given
+        scheduler.init();
+        UUID projectId = UUID.randomUUID();
+        WarehouseQueryScheduler.Slot held = scheduler.acquire(UUID.randomUUID(), projectId, QueryControl.defaults());
+        QueryControl control = new QueryControl(60000);
+        Future<?> waiting = executor.submit(() -> scheduler.acquire(UUID.randomUUID(), projectId, control));
+        awaitQueued(1);
+
+        // When
+        control.cancel();
+
+        // Then
+        assertThatThrownBy(() -> waiting.get(5, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(QueryCancelledException.class);
+        assertThat(scheduler.queued()).isZero();
+        held.close();
+        assertThat(scheduler.running()).isZero();
+    }
+
+    @Test
+    void acquire_NoSlotWithinMaxWait_Unavailable() throws Exception {
+        // Given
+        ReflectionTestUtils.setField(scheduler, "maxWaitMs", 50L);
+        scheduler.init();
+        UUID projectId = UUID.randomUUID();
+        WarehouseQueryScheduler.Slot held = scheduler.acquire(UUID.randomUUID(), projectId, QueryControl.defaults());
+
+        // When / Then
+        assertThatThrownBy(() -> scheduler.acquire(UUID.randomUUID(), projectId, QueryControl.defaults()))
+                .isInstanceOf(SnowflakeUnavailableException.class);
+        assertThat(scheduler.queued()).isZero();
+        assertThat(meterRegistry.get("warehouse.scheduler.queue-time").tag("outcome", "timeout").timer().count())
+                .isEqualTo(1);
+        held.close();
+    }
+
+    /**
+     * Queue a query on another thread and wait until it is in the queue, so waiters queue in order
+     */
+    private void queue(UUID userId, UUID projectId, String label) throws InterruptedException {
+        int before = scheduler.queued();
+        waiters.add(executor.submit(() -> {
+            try (WarehouseQueryScheduler.Slot slot = scheduler.acquire(userId, projectId, QueryControl.defaults())) {
+                admitted.add(label);
+            }
+            return null;
+        }));
+        awaitQueued(before + 1);
+    }
+
+    private void awaitQueued(int count) throws InterruptedException {
+        for (int i = 0; i < 200 && scheduler.queued() < count; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(scheduler.queued()).isEqualTo(count);
+    }
+
+    private void awaitWaiters() throws Exception {
+        for (Future<?> waiter : waiters) {
+            waiter.get(5, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package ai.datalens.service;
+
+import ai.datalens.dto.request.QueryRequest;
+import ai.datalens.dto.response.QueryResultResponse;
+import ai.datalens.entity.Project;
+import ai.datalens.repository.ProjectRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class WarehouseQueryServiceTest {
+
+    private static final String H2_URL = "jdbc:h2:mem:warehouse_query;DB_CLOSE_DELAY=-1";
+
+    @Mock
+    private WarehouseConnector warehouseConnector;
+
+    @Mock
+    private ProjectWarehouseConnectors projectConnectors;
+
+    @Mock
+    private WarehouseQueryScheduler scheduler;
+
+    @Mock
+    private ProjectRepository projectRepository;
+
+    @InjectMocks
+    private WarehouseQueryService queryService;
+
+    private Connection h2;
+    private UUID userId;
+    private UUID projectId;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        userId = UUID.randomUUID();
+        projectId = UUID.randomUUID();
+        ReflectionTestUtils.setField(queryService, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(queryService, "defaultMaxRows", 100);
+        ReflectionTestUtils.setField(queryService, "maxRows", 1000);
+        ReflectionTestUtils.setField(queryService, "cacheMaxBytes", 1_000_000L);
+        ReflectionTestUtils.setField(queryService, "cacheMaxEntryBytes", 100_000L);
+        ReflectionTestUtils.setField(queryService, "cacheTtlMs", 60000L);
+        ReflectionTestUtils.setField(queryService, "timeoutMs", 30000L);
+        ReflectionTestUtils.setField(queryService, "maxTimeoutMs", 60000L);
+        queryService.init();
+
+        h2 = DriverManager.getConnection(H2_URL, "sa", "");
+        try (Statement stmt = h2.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS orders (id BIGINT, amount DOUBLE, status VARCHAR(20))");
+            stmt.execute("DELETE FROM orders");
+            stmt.execute("INSERT INTO orders VALUES (1, 10.5, 'open'), (2, 20.0, 'paid'), (3, 5.25, 'paid')");
+        }
+
+        lenient().when(projectRepository.findByUserIdAndId(userId, projectId)).thenReturn(Optional.of(new Project()));
+        lenient().when(projectConnectors.forProject(projectId)).thenReturn(warehouseConnector);
+        lenient().when(warehouseConnector.catalogKey()).thenReturn(new StageCatalogKey("ACME", "SALES", "PUBLIC"));
+        lenient().when(warehouseConnector.role()).thenReturn("ANALYST");
+        lenient().when(warehouseConnector.warehouse()).thenReturn("COMPUTE_WH");
+        lenient().when(warehouseConnector.executeQuery(anyString(), anyList(), anyInt(), any(QueryControl.class), any()))
+                .thenAnswer(invocation -> {
+                    WarehouseConnector.QueryHandler<?> handler = invocation.getArgument(4);
+                    try (Statement stmt = h2.createStatement()) {
+                        stmt.setMaxRows(invocation.getArgument(2));
+                        try (ResultSet rs = stmt.executeQuery(invocation.getArgument(0))) {
+                            return handler.handle(rs);
+                        }
+                    }
+                });
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        h2.close();
+    }
+
+    @Test
+    void fingerprint_IgnoresFormattingButKeepsLiteralsApart() {
+        // When
+        QueryFingerprint first = QueryFingerprint.of("select id, amount\n  from orders -- open ones\n where status = 'open'");
+        QueryFingerprint second = QueryFingerprint.of("SELECT id,amount FROM orders /* note */ WHERE status='open';");
+        QueryFingerprint other = QueryFingerprint.of("SELECT id, amount FROM orders WHERE status = 'paid' AND id > 1.5e2");
+
+        // Then
+        assertThat(first.normalized()).isEqualTo("SELECT ID,AMOUNT FROM ORDERS WHERE STATUS=?");
+        assertThat(second.normalized()).isEqualTo(first.normalized());
+        assertThat(second.literals()).containsExactly("'open'");
+        assertThat(other.literals()).containsExactly("'paid'", "1.5e2");
+        assertThat(QueryFingerprint.of("SELECT \"Mixed\" FROM t").normalized()).isEqualTo("SELECT \"Mixed\" FROM T");
+        assertThat(QueryFingerprint.of("SELECT CURRENT_TIMESTAMP()").isCacheable()).isFalse();
+    }
+
+    @Test
+    void execute_ReformattedQuery_ServedFromCache() throws SQLException {
+        // When
+        QueryResultResponse first = queryService.execute(userId, projectId,
+                new QueryRequest("SELECT id, amount FROM orders WHERE status = 'paid' ORDER BY id", null, null));
+        QueryResultResponse second = queryService.execute(userId, projectId,
+                new QueryRequest("select id,amount from orders where status='paid' order by id;", null, null));
+
+        // Then
+        assertThat(first.isCached()).isFalse();
+        assertThat(first.getColumns()).containsExactly("ID", "AMOUNT");
+        assertThat(first.getRows()).hasSize(2);
+        assertThat(first.getRows().get(0)).containsExactly(2L, 20.0);
+        assertThat(second.isCached()).isTrue();
+        assertThat(second.getFingerprint()).isEqualTo(first.getFingerprint());
+        verify(warehouseConnector, times(1)).executeQuery(anyString(), anyList(), anyInt(), any(QueryControl.class), any());
+    }
+
+    @Test
+    void execute_DifferentLiteralsOrVolatileFunctions_RunAgain() throws SQLException {
+        // When
+        queryService.execute(userId, projectId, new QueryRequest("SELECT COUNT(*) FROM orders WHERE status = 'paid'", null, null));
+        QueryResultResponse open = queryService.execute(userId, projectId,
+                new QueryRequest("SELECT COUNT(*) FROM orders WHERE status = 'open'", null, null));
+        queryService.execute(userId, projectId, new QueryRequest("SELECT RANDOM() FROM orders", null, null));
+        QueryResultResponse random = queryService.execute(userId, projectId, new QueryRequest("SELECT RANDOM() FROM orders", null, null));
+
+        // Then
+        assertThat(open.isCached()).isFalse();
+        assertThat(open.getRows().get(0)).containsExactly(1L);
+        assertThat(random.isCached()).isFalse();
+        verify(warehouseConnector, times(4)).executeQuery(anyString(), anyList(), anyInt(), any(QueryControl.class), any());
+    }
+
+    @Test
+    void execute_MoreRowsThanLimit_Truncates() throws SQLException {
+        // When
+        QueryResultResponse result = queryService.execute(userId, projectId,
+                new QueryRequest("SELECT id FROM orders ORDER BY id", 2, null));
+
+        // Then
+        assertThat(result.getRowCount()).isEqualTo(2);
+        assertThat(result.isTruncated()).isTrue();
+    }
+
+    @Test
+    void execute_RejectsWritesMultipleStatementsAndForeignProjects() {
+        assertThatThrownBy(() -> queryService.execute(userId, projectId, new QueryRequest("DELETE FROM orders", null, null)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> queryService.execute(userId, projectId,
+                new QueryRequest("SELECT 1; DROP TABLE orders", null, null)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> queryService.execute(userId, projectId,
+                new QueryRequest("SELECT 1; -- done\nDELETE FROM orders", null, null)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Only one statement can be run at a time");
+        assertThatThrownBy(() -> queryService.execute(UUID.randomUUID(), projectId, new QueryRequest("SELECT 1", null, null)))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("Project not found");
+    }
+}
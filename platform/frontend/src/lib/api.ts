@@ -254,9 +254,19 @@ class ApiClient {
     return response.data
   }
 
-  async refreshProjectStages(projectId: string) {
-    const response = await this.client.post(`/projects/${projectId}/stages/refresh`)
-    return response.data
+  async refreshProjectStages(projectId: string, pollIntervalMs = 1000) {
+    // Refresh runs as a background job: submit it, poll until it finishes, then reload the catalog
+    const submitted = await this.client.post(`/projects/${projectId}/stages/refresh`)
+    let job = submitted.data
+    while (job.status === 'QUEUED' || job.status === 'RUNNING') {
+      await new Promise(resolve => setTimeout(resolve, pollIntervalMs))
+      const response = await this.client.get(`/projects/${projectId}/stages/refresh/${job.job_id}`)
+      job = response.data
+    }
+    if (job.status === 'FAILED') {
+      throw new Error(job.error || 'Stage refresh failed')
+    }
+    return this.getProjectStages(projectId)
   }
 
   async getActiveProjectStages(projectId: string) {